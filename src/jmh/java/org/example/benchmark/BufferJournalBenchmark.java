@@ -0,0 +1,84 @@
+package org.example.benchmark;
+
+import org.example.buffer.BufferJournal;
+import org.example.buffer.TerminalBuffer;
+import org.example.model.Color;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The cost of recording into a {@link BufferJournal}: chunks of colored log output written with no journal,
+ * with a journal committed once per chunk, and with one that also forces every batch to the device. The
+ * log is restarted with a checkpoint every iteration so it does not grow without bound.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferJournalBenchmark {
+    private static final int LOG_LINES = 100;
+    private static final int BATCH_BYTES = 64 << 10;
+
+    /** none, commit or sync. */
+    @Param({"none", "commit", "sync"})
+    public String journal;
+
+    private TerminalBuffer buffer;
+    private BufferJournal log;
+    private Path directory;
+    private String[] lines;
+
+    @Setup
+    public void setUp() throws IOException {
+        buffer = new TerminalBuffer(120, 40, 10_000);
+        lines = new String[LOG_LINES];
+        for (int i = 0; i < LOG_LINES; i++) {
+            lines[i] = WriteTextBenchmark.asciiRun(60 + i % 50, i) + "\n";
+        }
+        if (!journal.equals("none")) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            log = new BufferJournal(directory, BATCH_BYTES, journal.equals("sync"));
+            buffer.setJournal(log);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void checkpoint() throws IOException {
+        if (log != null) {
+            log.checkpoint(buffer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (log != null) {
+            log.close();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /** A chunk of log output with a color change per line, then a commit as a session would make. */
+    @Benchmark
+    @OperationsPerInvocation(LOG_LINES)
+    public void writeLogChunk() throws IOException {
+        for (int i = 0; i < LOG_LINES; i++) {
+            buffer.setForegroundColor(i % 4 == 0 ? Color.YELLOW : Color.DEFAULT);
+            buffer.writeText(lines[i]);
+        }
+        if (log != null) {
+            log.commit();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.benchmark;
+
+import org.example.buffer.TerminalBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The individual TerminalBuffer operations on a buffer whose scrollback is already full,
+ * across screen sizes and scrollback depths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferOperationsBenchmark {
+    /** Screen size as columns x rows. */
+    @Param({"80x24", "200x60"})
+    public String screen;
+
+    @Param({"1000", "10000"})
+    public int scrollback;
+
+    private TerminalBuffer buffer;
+    private int width;
+    private int height;
+    private String line;
+    private String shortText;
+    private boolean resized;
+    private int probe;
+
+    @Setup
+    public void setUp() {
+        int x = screen.indexOf('x');
+        width = Integer.parseInt(screen.substring(0, x));
+        height = Integer.parseInt(screen.substring(x + 1));
+        buffer = new TerminalBuffer(width, height, scrollback);
+        line = WriteTextBenchmark.asciiRun(width - 1, 0);
+        shortText = WriteTextBenchmark.asciiRun(8, 3);
+        fill(buffer, scrollback + height, width);
+    }
+
+    /** Fills the scrollback and the screen with printable lines. */
+    static void fill(TerminalBuffer buffer, int lines, int width) {
+        for (int i = 0; i < lines; i++) {
+            buffer.writeText(WriteTextBenchmark.asciiRun(width - 1, i));
+            buffer.writeText("\n");
+        }
+    }
+
+    @Benchmark
+    public void writeText() {
+        buffer.setCursorPosition(0, height / 2);
+        buffer.writeText(line);
+    }
+
+    @Benchmark
+    public void insertText() {
+        buffer.setCursorPosition(width / 3, height / 2);
+        buffer.insertText(shortText);
+    }
+
+    @Benchmark
+    public void insertEmptyLineAtBottom() {
+        buffer.insertEmptyLineAtBottom();
+    }
+
+    @Benchmark
+    public String getAllContent() {
+        return buffer.getAllContent();
+    }
+
+    /**
+     * Alternates between two widths, so every call changes the width of every line.
+     * Only the screen is rewrapped here; see {@link #resizeThenReadScrollback()} for the scrollback.
+     */
+    @Benchmark
+    public void resize() {
+        resized = !resized;
+        buffer.resize(resized ? width + 1 : width, height);
+    }
+
+    /** A resize followed by the first scrollback read at the new width, as a renderer would do. */
+    @Benchmark
+    public String resizeThenReadScrollback() {
+        resized = !resized;
+        buffer.resize(resized ? width + 1 : width, height);
+        return buffer.getLine(buffer.getScrollbackSize() / 2, true);
+    }
+
+    /** Reads walk over the whole buffer, scrollback first. */
+    @Benchmark
+    public char getCharAtIncludingScrollback() {
+        int total = buffer.getScrollbackSize() + height;
+        probe = (probe + 7919) % (total * width);
+        return buffer.getCharAt(probe % width, probe / width, true);
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.benchmark;
+
+import org.example.buffer.BufferSerializer;
+import org.example.buffer.TerminalBuffer;
+import org.example.model.Color;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save and restore throughput of {@link BufferSerializer} for a buffer with 100k lines of scrollback.
+ * Saving writes to a channel that discards the bytes and restoring reads from an image held in memory,
+ * so the channel costs nothing; megabytes in the auxiliary counters is the throughput in MB/s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferSerializerBenchmark {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 40;
+    private static final int SCROLLBACK = 100_000;
+
+    /** Image megabytes moved during an iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            megabytes = 0;
+        }
+    }
+
+    /** Consumes everything written to it. */
+    private static final class Discard implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Reads an image held in a direct buffer. */
+    private static final class Replay implements ReadableByteChannel {
+        private final ByteBuffer image;
+
+        Replay(ByteBuffer image) {
+            this.image = image;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!image.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), image.remaining());
+            dst.put(dst.position(), image, image.position(), n);
+            dst.position(dst.position() + n);
+            image.position(image.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** The number of newest scrollback lines kept uncompressed, or -1 for no compression. */
+    @Param({"-1", "1024"})
+    public int hotLines;
+
+    private TerminalBuffer buffer;
+    private ByteBuffer image;
+    private final Discard discard = new Discard();
+
+    @Setup
+    public void setUp() throws IOException {
+        buffer = new TerminalBuffer(WIDTH, HEIGHT, SCROLLBACK);
+        buffer.setScrollbackCompression(hotLines);
+        String[] lines = new String[64];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "[" + i + "] " + WriteTextBenchmark.asciiRun(40 + i, i) + "\n";
+        }
+        for (int i = 0; i < SCROLLBACK + HEIGHT; i++) {
+            buffer.setForegroundColor(i % 8 == 0 ? Color.RED : Color.DEFAULT);
+            buffer.writeText(lines[i % lines.length]);
+        }
+
+        ByteBuffer[] captured = new ByteBuffer[1];
+        long size = BufferSerializer.save(buffer, new WritableByteChannel() {
+            private ByteBuffer copy = ByteBuffer.allocateDirect(64 << 20);
+
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                if (copy.remaining() < n) {
+                    copy = ByteBuffer.allocateDirect(copy.capacity() * 2).put(copy.flip());
+                }
+                copy.put(src);
+                captured[0] = copy;
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        image = captured[0].flip();
+        System.out.printf("%nhotLines=%d: image of %d lines is %.1f MB%n", hotLines, SCROLLBACK + HEIGHT, size / 1e6);
+    }
+
+    @Benchmark
+    public long save(Throughput throughput) throws IOException {
+        long bytes = BufferSerializer.save(buffer, discard);
+        throughput.megabytes += bytes / 1e6;
+        return bytes;
+    }
+
+    @Benchmark
+    public TerminalBuffer restore(Throughput throughput) throws IOException {
+        TerminalBuffer restored = BufferSerializer.restore(new Replay(image.duplicate()));
+        throughput.megabytes += image.limit() / 1e6;
+        return restored;
+    }
+}
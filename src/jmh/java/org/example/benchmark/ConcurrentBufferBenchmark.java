@@ -0,0 +1,117 @@
+package org.example.benchmark;
+
+import org.example.buffer.ConcurrentTerminalBuffer;
+import org.example.buffer.TerminalBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One writer streaming log lines against readers polling cells, lines and the whole screen.
+ * The stamped group uses {@link ConcurrentTerminalBuffer}; the synchronized group guards a plain
+ * buffer with its monitor for comparison. Reader latency is the figure to watch, so the mode is
+ * sample time. Each group runs one writer, three cell readers, three line readers and one screen reader;
+ * change the split with {@code -tg writer,cells,lines,screen}, e.g. {@code -tg 1,8,8,1}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentBufferBenchmark {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 40;
+    private static final int LINES = 64;
+
+    private ConcurrentTerminalBuffer stamped;
+    private TerminalBuffer monitor;
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        stamped = new ConcurrentTerminalBuffer(WIDTH, HEIGHT, 1000);
+        monitor = new TerminalBuffer(WIDTH, HEIGHT, 1000);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = WriteTextBenchmark.asciiRun(40 + i % (WIDTH - 40), i) + "\n";
+        }
+    }
+
+    private String nextLine() {
+        next = (next + 1) % LINES;
+        return lines[next];
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(1)
+    public void stampedWriter() {
+        stamped.writeText(nextLine());
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(3)
+    public char stampedCellReader() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return stamped.getCharAt(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(3)
+    public String stampedLineReader() {
+        return stamped.getLine(ThreadLocalRandom.current().nextInt(HEIGHT));
+    }
+
+    @Benchmark
+    @Group("stamped")
+    @GroupThreads(1)
+    public String stampedScreenReader() {
+        return stamped.getScreenContent();
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(1)
+    public void synchronizedWriter() {
+        String line = nextLine();
+        synchronized (monitor) {
+            monitor.writeText(line);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(3)
+    public char synchronizedCellReader() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int column = random.nextInt(WIDTH);
+        int row = random.nextInt(HEIGHT);
+        synchronized (monitor) {
+            return monitor.getCharAt(column, row);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(3)
+    public String synchronizedLineReader() {
+        int row = ThreadLocalRandom.current().nextInt(HEIGHT);
+        synchronized (monitor) {
+            return monitor.getLine(row);
+        }
+    }
+
+    @Benchmark
+    @Group("synchronized")
+    @GroupThreads(1)
+    public String synchronizedScreenReader() {
+        synchronized (monitor) {
+            return monitor.getScreenContent();
+        }
+    }
+}
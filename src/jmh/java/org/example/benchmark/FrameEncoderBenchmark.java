@@ -0,0 +1,119 @@
+package org.example.benchmark;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.model.Color;
+import org.example.vt.FrameEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode time and frame size of the frame encoder for typical TUI workloads. Each operation mutates
+ * the screen like one frame of the workload and encodes the difference; bytes / frames in the
+ * auxiliary counters is the average frame size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameEncoderBenchmark {
+    private static final Color[] PALETTE = {Color.RED, Color.GREEN, Color.YELLOW, Color.CYAN};
+
+    /** Bytes and frames produced during an iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FrameSize {
+        public long bytes;
+        public long frames;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytes = 0;
+            frames = 0;
+        }
+    }
+
+    /** Screen size as columns x rows. */
+    @Param({"80x24", "200x60"})
+    public String screen;
+
+    private TerminalBuffer buffer;
+    private FrameEncoder encoder;
+    private ByteBuffer out;
+    private int width;
+    private int height;
+    private String[] cells;
+    private String[] logLines;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        int x = screen.indexOf('x');
+        width = Integer.parseInt(screen.substring(0, x));
+        height = Integer.parseInt(screen.substring(x + 1));
+        buffer = new TerminalBuffer(width, height, 1000);
+        BufferOperationsBenchmark.fill(buffer, height, width);
+        encoder = new FrameEncoder();
+        out = ByteBuffer.allocateDirect(1 << 20);
+        encoder.encode(buffer, out);
+        cells = new String[16];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = String.format("%6.2f", i * 1.37);
+        }
+        logLines = new String[8];
+        for (int i = 0; i < logLines.length; i++) {
+            logLines[i] = WriteTextBenchmark.asciiRun(20 + i * 5, i) + "\n";
+        }
+    }
+
+    private int encode(FrameSize size) {
+        out.clear();
+        int n = encoder.encode(buffer, out);
+        size.bytes += n;
+        size.frames++;
+        frame++;
+        return n;
+    }
+
+    /** A dashboard refresh: a few dozen short colored fields rewritten in place. */
+    @Benchmark
+    public int tuiUpdate(FrameSize size) {
+        for (int i = 0; i < 32; i++) {
+            buffer.setCursorPosition((i * 13) % (width - 8), (i * 7 + frame) % height);
+            buffer.setForegroundColor(PALETTE[(i + frame) & 3]);
+            buffer.writeText(cells[(i + frame) & 15]);
+        }
+        buffer.resetAttributes();
+        return encode(size);
+    }
+
+    /** A few log lines arriving per frame, scrolling the screen. */
+    @Benchmark
+    public int logTailing(FrameSize size) {
+        for (int i = 0; i < 3; i++) {
+            buffer.writeText(logLines[(frame + i) & 7]);
+        }
+        return encode(size);
+    }
+
+    /** Every row rewritten with different content. */
+    @Benchmark
+    public int fullScreenRedraw(FrameSize size) {
+        for (int row = 0; row < height; row++) {
+            buffer.setCursorPosition(0, row);
+            buffer.writeText(WriteTextBenchmark.asciiRun(width, frame * 31 + row * 3));
+        }
+        return encode(size);
+    }
+
+    /** A single cell changes, e.g. a spinner. */
+    @Benchmark
+    public int cursorBlink(FrameSize size) {
+        buffer.setCursorPosition(0, 0);
+        buffer.writeText(cells[frame & 15].substring(5));
+        return encode(size);
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Terminal output for parser and encoder benchmarks.
+ * Either a recording loaded from a file (e.g. captured with {@code script -q -c cmd out.log})
+ * or a built-in mix shaped like one: colored directory listings, compiler logs with SGR,
+ * a progress bar redrawn with CR and EL, and full-screen redraws positioned with CUP.
+ */
+final class OutputCorpus {
+    private static final String CSI = "\u001b[";
+
+    private OutputCorpus() {
+    }
+
+    /**
+     * @param file A recording to load, or an empty string for the built-in corpus.
+     * @return The corpus as UTF-8 bytes.
+     */
+    static byte[] load(String file) {
+        if (file == null || file.isEmpty()) {
+            return generate().getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return Files.readAllBytes(Path.of(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String generate() {
+        StringBuilder sb = new StringBuilder(1 << 20);
+        for (int round = 0; round < 20; round++) {
+            listing(sb, round);
+            compilerLog(sb, round);
+            progressBar(sb);
+            fullScreenRedraw(sb, round);
+        }
+        return sb.toString();
+    }
+
+    private static void listing(StringBuilder sb, int seed) {
+        for (int i = 0; i < 200; i++) {
+            sb.append("-rw-r--r-- 1 user user ").append(1000 + (i * 7919 + seed) % 90000)
+                    .append(" Oct 17 12:").append(10 + i % 50).append(' ');
+            if (i % 4 == 0) {
+                sb.append(CSI).append("01;34m").append("dir").append(i).append(CSI).append("0m");
+            } else if (i % 4 == 1) {
+                sb.append(CSI).append("01;32m").append("script").append(i).append(".sh").append(CSI).append("0m");
+            } else {
+                sb.append("file").append(i).append(".txt");
+            }
+            sb.append("\r\n");
+        }
+    }
+
+    private static void compilerLog(StringBuilder sb, int seed) {
+        for (int i = 0; i < 150; i++) {
+            switch ((i + seed) % 5) {
+                case 0 -> sb.append(CSI).append("1;31m").append("error").append(CSI).append("0m")
+                        .append(": cannot find symbol ").append("résumé_").append(i);
+                case 1 -> sb.append(CSI).append("1;33m").append("warning").append(CSI).append("0m")
+                        .append(": unchecked conversion in Module").append(i).append(".java");
+                default -> sb.append("[INFO] Compiling ").append(i).append(" source files to target/classes");
+            }
+            sb.append("\r\n");
+        }
+    }
+
+    private static void progressBar(StringBuilder sb) {
+        for (int percent = 0; percent <= 100; percent++) {
+            sb.append('\r').append(CSI).append('K').append(CSI).append("32m[");
+            for (int i = 0; i < 50; i++) {
+                sb.append(i * 2 < percent ? '█' : ' ');
+            }
+            sb.append(']').append(CSI).append("0m ").append(percent).append('%');
+        }
+        sb.append("\r\n");
+    }
+
+    private static void fullScreenRedraw(StringBuilder sb, int seed) {
+        sb.append(CSI).append("H").append(CSI).append("2J");
+        for (int row = 1; row <= 24; row++) {
+            sb.append(CSI).append(row).append(";1H");
+            sb.append(CSI).append(row % 2 == 0 ? "7m" : "0m");
+            sb.append(String.format("%5d  %-20s %8.2f%%  ", row + seed, "process-" + row, (row * 3.7) % 100));
+            sb.append(CSI).append("0m").append(CSI).append('K');
+        }
+        sb.append(CSI).append("24;1H");
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.benchmark;
+
+import org.example.buffer.ScrollbackBudget;
+import org.example.buffer.TerminalBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of compressed scrollback: scrolling while cold chunks are compressed, reading history
+ * in order (mostly cache hits) and at random rows (mostly misses). hotLines of -1 is the uncompressed
+ * baseline. The accounted scrollback bytes are printed once per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScrollbackCompressionBenchmark {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 40;
+    private static final int SCROLLBACK = 10_000;
+
+    @Param({"-1", "256"})
+    public int hotLines;
+
+    private TerminalBuffer buffer;
+    private ScrollbackBudget budget;
+    private String[] lines;
+    private int next;
+    private int row;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(WIDTH, HEIGHT, SCROLLBACK);
+        budget = new ScrollbackBudget(Long.MAX_VALUE);
+        buffer.setScrollbackBudget(budget);
+        buffer.setScrollbackCompression(hotLines);
+        lines = new String[64];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "[" + i + "] " + WriteTextBenchmark.asciiRun(40 + i, i) + "\n";
+        }
+        for (int i = 0; i < SCROLLBACK + HEIGHT; i++) {
+            buffer.writeText(lines[i % lines.length]);
+        }
+    }
+
+    @TearDown
+    public void report() {
+        System.out.printf("%nhotLines=%d: %d KiB of scrollback%n", hotLines, budget.getUsedBytes() >> 10);
+    }
+
+    @Benchmark
+    public void scroll() {
+        next = (next + 1) % lines.length;
+        buffer.writeText(lines[next]);
+    }
+
+    @Benchmark
+    public String readHistoryInOrder() {
+        row = row + 1 < buffer.getScrollbackSize() ? row + 1 : 0;
+        return buffer.getLine(row, true);
+    }
+
+    @Benchmark
+    public String readHistoryAtRandom() {
+        row = (row + 7919) % buffer.getScrollbackSize();
+        return buffer.getLine(row, true);
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.benchmark;
+
+import org.example.buffer.SearchQuery;
+import org.example.buffer.TerminalBuffer;
+import org.example.model.SearchHit;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding a rare string in 500k lines of history: {@link TerminalBuffer#search} against the previous
+ * route of scanning {@link TerminalBuffer#getAllLines()} with {@link String#indexOf}, with and without
+ * the trigram index. The index's heap per line is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScrollbackSearchBenchmark {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 40;
+    private static final int SCROLLBACK = 500_000;
+    private static final String NEEDLE = "ERROR: disk quota exceeded";
+
+    @Param({"LITERAL", "IGNORE_CASE", "REGEX"})
+    public SearchQuery.Mode mode;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private TerminalBuffer buffer;
+    private SearchQuery query;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(WIDTH, HEIGHT, SCROLLBACK);
+        buffer.setSearchIndex(indexed);
+        for (int i = 0; i < SCROLLBACK + HEIGHT; i++) {
+            if (i % 50_000 == 25_000) {
+                buffer.writeText("[" + i + "] " + NEEDLE + "\n");
+            } else {
+                buffer.writeText("[" + i + "] " + WriteTextBenchmark.asciiRun(40 + i % 64, i) + "\n");
+            }
+        }
+        query = new SearchQuery(mode == SearchQuery.Mode.REGEX ? "ERROR: \\w+ quota" : NEEDLE, mode);
+    }
+
+    @TearDown
+    public void report() {
+        if (indexed) {
+            System.out.printf("%nindex: %.1f bytes per line%n", buffer.getSearchIndex().getBytesPerLine());
+        }
+    }
+
+    @Benchmark
+    public List<SearchHit> search() {
+        return buffer.search(query);
+    }
+
+    @Benchmark
+    public List<SearchHit> scanAllLines() {
+        List<SearchHit> hits = new ArrayList<>();
+        List<String> lines = buffer.getAllLines();
+        long firstLineId = buffer.getFirstLineId();
+        for (int row = 0; row < lines.size(); row++) {
+            int column = lines.get(row).indexOf(NEEDLE);
+            if (column >= 0) {
+                hits.add(new SearchHit(row, column, NEEDLE.length(), firstLineId + row));
+            }
+        }
+        return hits;
+    }
+}
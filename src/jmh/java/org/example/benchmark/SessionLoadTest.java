@@ -0,0 +1,101 @@
+package org.example.benchmark;
+
+import org.example.buffer.ScrollbackBudget;
+import org.example.session.HostStatistics;
+import org.example.session.LocalPipe;
+import org.example.session.Session;
+import org.example.session.SessionHost;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for {@link SessionHost}: opens many sessions on {@link LocalPipe}s and feeds each from its own
+ * virtual thread at a steady rate, printing aggregate statistics once a second.
+ * Not a JMH benchmark; run with
+ * {@code mvn -Pjmh compile exec:exec@load-test -Dload.args="10000 30"}.
+ * <p>
+ * Arguments: sessions (default 10000), seconds (default 30), chunks per session per second (default 10),
+ * and a shared scrollback budget in MiB (default none).
+ * Each chunk is a colored log line, so the parser, attribute table and scrollback are all exercised.
+ */
+public class SessionLoadTest {
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 40;
+    private static final int SCROLLBACK = 1000;
+    private static final int PIPE_CAPACITY = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int chunksPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        ScrollbackBudget budget = args.length > 3 ? new ScrollbackBudget(Long.parseLong(args[3]) << 20) : null;
+        byte[][] chunks = new byte[64][];
+        for (int i = 0; i < chunks.length; i++) {
+            String line = "\u001b[3" + (1 + i % 7) + "m" + i + "\u001b[m " + WriteTextBenchmark.asciiRun(60 + i, i) + "\r\n";
+            chunks[i] = line.getBytes(StandardCharsets.UTF_8);
+        }
+
+        long heapBefore = usedHeap();
+        try (SessionHost host = new SessionHost(SessionHost.DEFAULT_READ_BUFFER_SIZE, budget)) {
+            List<Thread> producers = new ArrayList<>(sessions);
+            long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+            long periodNanos = 1_000_000_000L / chunksPerSecond;
+            for (int s = 0; s < sessions; s++) {
+                LocalPipe pipe = new LocalPipe(PIPE_CAPACITY);
+                host.open(WIDTH, HEIGHT, SCROLLBACK, pipe.source());
+                int offset = s;
+                producers.add(Thread.ofVirtual().start(() -> produce(pipe, chunks, offset, periodNanos, deadline)));
+            }
+            System.out.printf("opened %d sessions, %d KiB heap per session%n",
+                    sessions, (usedHeap() - heapBefore) / sessions / 1024);
+
+            HostStatistics previous = host.getStatistics();
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(1000);
+                HostStatistics current = host.getStatistics();
+                System.out.printf("%s, %.1f MB/s, %d KiB heap per session%n", current,
+                        current.bytesPerSecondSince(previous) / 1e6,
+                        (usedHeap() - heapBefore) / Math.max(1, current.getSessionCount()) / 1024);
+                if (budget != null) {
+                    System.out.printf("  scrollback %d MiB of %d MiB, %d lines evicted in %d runs%n",
+                            budget.getUsedBytes() >> 20, budget.getLimitBytes() >> 20,
+                            budget.getEvictedLines(), budget.getEvictionRuns());
+                }
+                previous = current;
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            for (Session session : host.getSessions()) {
+                session.awaitEnd(Duration.ofSeconds(30));
+            }
+            System.out.println("final " + host.getStatistics());
+        }
+    }
+
+    private static void produce(LocalPipe pipe, byte[][] chunks, int offset, long periodNanos, long deadline) {
+        long next = System.nanoTime() + (offset * 7919L) % periodNanos;
+        try {
+            for (int i = offset; next < deadline; i++) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                pipe.sink().write(ByteBuffer.wrap(chunks[i % chunks.length]));
+                next += periodNanos;
+            }
+            pipe.sink().close();
+        } catch (IOException e) {
+            // The session was closed under us.
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
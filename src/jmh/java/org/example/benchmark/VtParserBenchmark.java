@@ -0,0 +1,77 @@
+package org.example.benchmark;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.io.Utf8Ingestor;
+import org.example.vt.VtParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the VT parser on a terminal output corpus, one operation per pass over the corpus.
+ * Pass {@code -p corpus=/path/to/recording} to parse a real recording instead of the built-in corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VtParserBenchmark {
+    @Param({""})
+    public String corpus;
+
+    private TerminalBuffer buffer;
+    private VtParser parser;
+    private Utf8Ingestor ingestor;
+    private char[] chars;
+    private ByteBuffer bytes;
+    private final ReadableByteChannel channel = new ReadableByteChannel() {
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), bytes.remaining());
+            dst.put(bytes.array(), bytes.position(), n);
+            bytes.position(bytes.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        byte[] data = OutputCorpus.load(corpus);
+        chars = new String(data, StandardCharsets.UTF_8).toCharArray();
+        bytes = ByteBuffer.wrap(data);
+        buffer = new TerminalBuffer(120, 40, 1000);
+        parser = new VtParser(buffer);
+        ingestor = new Utf8Ingestor(parser::parse);
+    }
+
+    /** Decoded text straight into the parser. */
+    @Benchmark
+    public void parseChars() {
+        parser.parse(chars, 0, chars.length);
+    }
+
+    /** UTF-8 bytes decoded by the ingestor and handed to the parser. */
+    @Benchmark
+    public long ingestBytes() throws IOException {
+        bytes.rewind();
+        return ingestor.ingest(channel);
+    }
+}
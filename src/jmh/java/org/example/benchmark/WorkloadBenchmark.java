@@ -0,0 +1,100 @@
+package org.example.benchmark;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.model.Color;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Realistic mixes of calls, one frame or batch per operation:
+ * log tailing, full-screen redraws and cursor-addressed TUI updates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkloadBenchmark {
+    private static final int LOG_BATCH = 50;
+    private static final Color[] PALETTE = {Color.RED, Color.GREEN, Color.YELLOW, Color.CYAN};
+
+    /** Screen size as columns x rows. */
+    @Param({"80x24", "200x60"})
+    public String screen;
+
+    @Param({"1000", "10000"})
+    public int scrollback;
+
+    private TerminalBuffer buffer;
+    private int width;
+    private int height;
+    private String[] logLines;
+    private String[] rows;
+    private String[] cells;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        int x = screen.indexOf('x');
+        width = Integer.parseInt(screen.substring(0, x));
+        height = Integer.parseInt(screen.substring(x + 1));
+        buffer = new TerminalBuffer(width, height, scrollback);
+        BufferOperationsBenchmark.fill(buffer, scrollback + height, width);
+
+        logLines = new String[LOG_BATCH];
+        for (int i = 0; i < LOG_BATCH; i++) {
+            int length = 20 + (i * 37) % (width - 20);
+            logLines[i] = WriteTextBenchmark.asciiRun(length, i) + "\n";
+        }
+        rows = new String[height];
+        for (int i = 0; i < height; i++) {
+            rows[i] = WriteTextBenchmark.asciiRun(width, i * 3);
+        }
+        cells = new String[16];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = String.format("%6.2f", i * 1.37);
+        }
+    }
+
+    /** A batch of log lines of varying length, each scrolling a line into history. */
+    @Benchmark
+    @OperationsPerInvocation(LOG_BATCH)
+    public void logTailing() {
+        for (String logLine : logLines) {
+            buffer.writeText(logLine);
+        }
+    }
+
+    /** Every row rewritten from the left edge, with a highlighted status row. */
+    @Benchmark
+    public void fullScreenRedraw() {
+        buffer.resetAttributes();
+        for (int row = 0; row < height - 1; row++) {
+            buffer.setCursorPosition(0, row);
+            buffer.writeText(rows[(row + frame) % height]);
+        }
+        buffer.setCursorPosition(0, height - 1);
+        buffer.setBackgroundColor(Color.BLUE);
+        buffer.setBold(true);
+        buffer.fillLine(' ');
+        buffer.writeText(rows[frame % height]);
+        frame++;
+    }
+
+    /** A dashboard refresh: a few dozen short fields rewritten in place with their own colors. */
+    @Benchmark
+    public void tuiUpdate() {
+        for (int i = 0; i < 32; i++) {
+            int row = (i * 7 + frame) % height;
+            int column = (i * 13) % (width - 8);
+            buffer.setCursorPosition(column, row);
+            buffer.setForegroundColor(PALETTE[(i + frame) & 3]);
+            buffer.setBold((i & 1) == 0);
+            buffer.writeText(cells[(i + frame) & 15]);
+        }
+        buffer.resetAttributes();
+        frame++;
+    }
+}
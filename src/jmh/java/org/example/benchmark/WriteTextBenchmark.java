@@ -0,0 +1,59 @@
+package org.example.benchmark;
+
+import org.example.buffer.TerminalBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of writeText on long printable ASCII runs, as produced by build logs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteTextBenchmark {
+    private static final int LOG_LINES = 100;
+
+    @Param({"80", "200"})
+    public int width;
+
+    private TerminalBuffer buffer;
+    private String fullLine;
+    private String logChunk;
+
+    @Setup
+    public void setUp() {
+        buffer = new TerminalBuffer(width, 50, 1000);
+        fullLine = asciiRun(width, 0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LOG_LINES; i++) {
+            sb.append(asciiRun(width - 1, i)).append('\n');
+        }
+        logChunk = sb.toString();
+    }
+
+    static String asciiRun(int length, int seed) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) (' ' + (i * 7 + seed) % 95));
+        }
+        return sb.toString();
+    }
+
+    /** One screen-wide run of printable ASCII at the start of a row. */
+    @Benchmark
+    public void writeFullLine() {
+        buffer.setCursorPosition(0, 0);
+        buffer.writeText(fullLine);
+    }
+
+    /** A chunk of log output: many ASCII lines separated by newlines, scrolling into history. */
+    @Benchmark
+    @OperationsPerInvocation(LOG_LINES)
+    public void writeLogLines() {
+        buffer.writeText(logChunk);
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.buffer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the lines of the last few decompressed {@link ScrollbackBlock}s, so reading through
+ * history decompresses each block once. Lock-free and safe for concurrent readers; entries are
+ * replaced in round-robin order.
+ */
+final class BlockCache {
+    /** The number of blocks kept, a power of two. */
+    static final int CAPACITY = 4;
+
+    private static final class Entry {
+        final ScrollbackBlock block;
+        final TerminalLine[] lines;
+
+        Entry(ScrollbackBlock block, TerminalLine[] lines) {
+            this.block = block;
+            this.lines = lines;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param block The block to read.
+     * @return The block's lines. They must not be changed.
+     */
+    TerminalLine[] lines(ScrollbackBlock block) {
+        for (int i = 0; i < CAPACITY; i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && entry.block == block) {
+                return entry.lines;
+            }
+        }
+        misses.increment();
+        TerminalLine[] lines = block.decompress();
+        entries.set(next.getAndIncrement() & (CAPACITY - 1), new Entry(block, lines));
+        return lines;
+    }
+
+    /**
+     * @return The number of blocks decompressed so far.
+     */
+    long misses() {
+        return misses.sum();
+    }
+}
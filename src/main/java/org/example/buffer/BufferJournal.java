@@ -0,0 +1,506 @@
+package org.example.buffer;
+
+import org.example.model.AttributeTable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of the changes made to a {@link TerminalBuffer}, from which the buffer can be rebuilt
+ * after a crash, see {@link TerminalBuffer#setJournal}. A directory holds checkpoints, images written by
+ * {@link BufferSerializer}, and the log of the records made since each:
+ * <pre>
+ * checkpoint-NNNNNNNNNNNN.img, journal-NNNNNNNNNNNN.log
+ * </pre>
+ * {@link #recover} restores the newest checkpoint and replays the logs from its number on. Older files are
+ * deleted once a newer checkpoint is complete.
+ * <p>
+ * Records collect in a direct buffer and are written as one batch when the buffer fills or on
+ * {@link #commit()}, which the owner calls at natural boundaries, such as after each chunk of output;
+ * a crash loses at most the records not yet committed. A batch is framed by its length and a CRC-32C, so
+ * a batch torn by a crash is recognized and replay stops before it. All values are little-endian:
+ * <pre>
+ * u32 length, u32 crc32c, RECORD records[]
+ * u8 op, then by op: u32 length, u16 characters[length] for text; u64 line id, u32 rows for a trim;
+ * u32 arguments otherwise
+ * </pre>
+ * Attributes are recorded as packed codes, not as ids, so logs can be replayed in another process.
+ * A trim by a {@link ScrollbackBudget} on behalf of other buffers is recorded as the id of the line of the
+ * oldest scrollback row it kept and the number of that line's rows left, since replay runs without the budget.
+ * <p>
+ * Not thread-safe on its own; the owning buffer serializes access.
+ */
+public class BufferJournal implements AutoCloseable {
+    /** The smallest accepted batch size. */
+    public static final int MIN_BATCH_BYTES = 4096;
+    private static final int FRAME_BYTES = 2 * Integer.BYTES;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    static final byte WRITE_TEXT = 1;
+    static final byte INSERT_TEXT = 2;
+    static final byte LINE_FEED = 3;
+    static final byte CARRIAGE_RETURN = 4;
+    static final byte INSERT_EMPTY_LINE = 5;
+    static final byte FILL_LINE = 6;
+    static final byte FILL_RANGE = 7;
+    static final byte CLEAR_SCREEN = 8;
+    static final byte CLEAR_SCROLLBACK = 9;
+    static final byte RESIZE = 10;
+    static final byte SET_CURSOR = 11;
+    static final byte MOVE_UP = 12;
+    static final byte MOVE_DOWN = 13;
+    static final byte MOVE_LEFT = 14;
+    static final byte MOVE_RIGHT = 15;
+    static final byte ATTRIBUTES = 16;
+    static final byte APPLY_ATTRIBUTES = 17;
+    static final byte AUTO_WRAP = 18;
+    /** The oldest scrollback rows were evicted by a {@link ScrollbackBudget}, up to the line and rows recorded. */
+    static final byte TRIM_SCROLLBACK = 19;
+
+    private final Path directory;
+    private final boolean sync;
+    private final CRC32C crc = new CRC32C();
+    /** The batch being collected, after room for its frame. */
+    private ByteBuffer batch;
+    private char[] text = new char[256];
+    /** The log records are appended to, or null before the first checkpoint. */
+    private FileChannel log;
+    /** The number of the current checkpoint and log. */
+    private long sequence;
+    private long records;
+    private long batches;
+    private long committedBytes;
+    private boolean closed;
+
+    /**
+     * Opens a journal in a directory, creating it if needed. Files left there by an earlier journal are kept
+     * until the first checkpoint, so {@link #recover} can still read them until then.
+     * @param directory The directory for the checkpoints and logs.
+     * @param batchBytes The size of a batch; records are committed when the next one does not fit.
+     * @param sync true to force every batch to the device before going on, false to leave that to the OS.
+     * @throws IOException if the directory cannot be created or listed
+     * @throws IllegalArgumentException if directory is null or the batch size is too small
+     */
+    public BufferJournal(Path directory, int batchBytes, boolean sync) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        if (batchBytes < MIN_BATCH_BYTES) {
+            throw new IllegalArgumentException("Batch size must be at least " + MIN_BATCH_BYTES);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.sync = sync;
+        this.batch = ByteBuffer.allocateDirect(batchBytes).order(ByteOrder.LITTLE_ENDIAN).position(FRAME_BYTES);
+        for (Long number : sequenceNumbers(directory, ".img")) {
+            sequence = Math.max(sequence, number);
+        }
+        for (Long number : sequenceNumbers(directory, ".log")) {
+            sequence = Math.max(sequence, number);
+        }
+    }
+
+    void record(byte op) {
+        reserve(1).put(op);
+        records++;
+    }
+
+    void record(byte op, int argument) {
+        reserve(1 + Integer.BYTES).put(op).putInt(argument);
+        records++;
+    }
+
+    void record(byte op, long first, int second) {
+        reserve(1 + Long.BYTES + Integer.BYTES).put(op).putLong(first).putInt(second);
+        records++;
+    }
+
+    void record(byte op, int first, int second) {
+        reserve(1 + 2 * Integer.BYTES).put(op).putInt(first).putInt(second);
+        records++;
+    }
+
+    void record(byte op, int first, int second, int third) {
+        reserve(1 + 3 * Integer.BYTES).put(op).putInt(first).putInt(second).putInt(third);
+        records++;
+    }
+
+    void recordText(byte op, CharSequence characters) {
+        int length = characters.length();
+        if (length > text.length) {
+            text = new char[Math.max(length, text.length * 2)];
+        }
+        CharSequences.copy(characters, 0, length, text, 0);
+        ByteBuffer out = reserve(1 + Integer.BYTES + (long) length * Character.BYTES);
+        out.put(op).putInt(length);
+        out.asCharBuffer().put(text, 0, length);
+        out.position(out.position() + length * Character.BYTES);
+        records++;
+    }
+
+    /**
+     * Makes room for a record, committing the batch if it does not fit and growing the buffer for a record
+     * larger than a whole batch.
+     */
+    private ByteBuffer reserve(long bytes) {
+        if (log == null) {
+            throw new IllegalStateException(closed ? "Journal is closed" : "Journal has no checkpoint");
+        }
+        if (batch.remaining() < bytes) {
+            try {
+                commit();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write journal batch", e);
+            }
+            if (batch.remaining() < bytes) {
+                if (FRAME_BYTES + bytes > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Record is too large for the journal");
+                }
+                batch = ByteBuffer.allocateDirect((int) (FRAME_BYTES + bytes)).order(ByteOrder.LITTLE_ENDIAN)
+                        .position(FRAME_BYTES);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Writes the records collected so far as one batch, forcing it to the device if the journal syncs.
+     * @throws IOException if the log cannot be written
+     */
+    public void commit() throws IOException {
+        if (log == null || batch.position() == FRAME_BYTES) {
+            return;
+        }
+        int length = batch.position() - FRAME_BYTES;
+        crc.reset();
+        crc.update(batch.slice(FRAME_BYTES, length));
+        batch.putInt(0, length);
+        batch.putInt(Integer.BYTES, (int) crc.getValue());
+        batch.flip();
+        while (batch.hasRemaining()) {
+            committedBytes += log.write(batch);
+        }
+        if (sync) {
+            log.force(false);
+        }
+        batch.clear().position(FRAME_BYTES);
+        batches++;
+    }
+
+    /**
+     * Writes a checkpoint of the buffer and starts a new log after it. The buffer must not change until this
+     * returns; a {@link ConcurrentTerminalBuffer} is checkpointed with
+     * {@link ConcurrentTerminalBuffer#checkpointJournal()} instead.
+     * @param buffer The buffer the journal records.
+     * @throws IOException if the checkpoint or the new log cannot be written
+     */
+    public void checkpoint(TerminalBuffer buffer) throws IOException {
+        finishCheckpoint(beginCheckpoint(buffer));
+    }
+
+    /**
+     * A checkpoint captured by {@link #beginCheckpoint} and not yet written.
+     */
+    static final class Checkpoint {
+        final BufferSerializer.Image image;
+        final long number;
+
+        private Checkpoint(BufferSerializer.Image image, long number) {
+            this.image = image;
+            this.number = number;
+        }
+    }
+
+    /**
+     * Captures the buffer and switches to the log that follows the new checkpoint, so that records made from
+     * here on are replayed on top of it.
+     * @return The captured checkpoint, to be written by {@link #finishCheckpoint}.
+     */
+    Checkpoint beginCheckpoint(TerminalBuffer buffer) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        BufferSerializer.Image image = BufferSerializer.capture(buffer);
+        commit();
+        FileChannel next = FileChannel.open(file(sequence + 1, ".log"), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        if (log != null) {
+            log.close();
+        }
+        log = next;
+        sequence++;
+        return new Checkpoint(image, sequence);
+    }
+
+    /**
+     * Writes the checkpoint for the log started by {@link #beginCheckpoint} and deletes the files it replaces.
+     * Touches only files, so it may run without holding the buffer.
+     */
+    void finishCheckpoint(Checkpoint pending) throws IOException {
+        long number = pending.number;
+        Path checkpoint = file(number, ".img");
+        Path partial = file(number, ".tmp");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BufferSerializer.write(pending.image, channel);
+            channel.force(true);
+        }
+        Files.move(partial, checkpoint, StandardCopyOption.ATOMIC_MOVE);
+        for (Long older : sequenceNumbers(directory, ".img")) {
+            if (older < number) {
+                Files.deleteIfExists(file(older, ".img"));
+            }
+        }
+        for (Long older : sequenceNumbers(directory, ".log")) {
+            if (older < number) {
+                Files.deleteIfExists(file(older, ".log"));
+            }
+        }
+    }
+
+    /**
+     * Rebuilds a buffer from the newest checkpoint in a directory and the logs written after it. A batch torn
+     * by a crash ends the replay. The journal's directory must not be written while this runs.
+     * @param directory The journal's directory.
+     * @return The rebuilt buffer, without a journal.
+     * @throws IOException if there is no checkpoint or a file cannot be read
+     */
+    public static TerminalBuffer recover(Path directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        List<Long> checkpoints = sequenceNumbers(directory, ".img");
+        if (checkpoints.isEmpty()) {
+            throw new IOException("No checkpoint in " + directory);
+        }
+        long first = checkpoints.getLast();
+        TerminalBuffer buffer;
+        try (FileChannel channel = FileChannel.open(directory.resolve(fileName(first, ".img")))) {
+            buffer = BufferSerializer.restore(channel);
+        }
+        Replay replay = new Replay(buffer);
+        for (Long number : sequenceNumbers(directory, ".log")) {
+            if (number < first) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(directory.resolve(fileName(number, ".log")))) {
+                if (!replay.apply(channel)) {
+                    break;
+                }
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Applies the records of logs to a buffer through its public methods.
+     */
+    static final class Replay {
+        private final TerminalBuffer buffer;
+        /** The bytes read and not yet applied; grown for a batch larger than it. */
+        private ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private char[] text = new char[256];
+        private long records;
+
+        Replay(TerminalBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Applies every complete batch of a log.
+         * @return false if the log ended with a torn batch, so later logs must not be applied.
+         */
+        boolean apply(ReadableByteChannel channel) throws IOException {
+            in.clear().limit(0);
+            while (true) {
+                if (!fill(channel, FRAME_BYTES)) {
+                    return in.remaining() == 0;
+                }
+                int length = in.getInt(in.position());
+                int checksum = in.getInt(in.position() + Integer.BYTES);
+                if (length <= 0) {
+                    return false;
+                }
+                if (FRAME_BYTES + length > in.capacity()) {
+                    grow(FRAME_BYTES + length);
+                }
+                if (!fill(channel, FRAME_BYTES + length)) {
+                    return false;
+                }
+                crc.reset();
+                crc.update(in.slice(in.position() + FRAME_BYTES, length));
+                if ((int) crc.getValue() != checksum) {
+                    return false;
+                }
+                in.position(in.position() + FRAME_BYTES);
+                int end = in.position() + length;
+                while (in.position() < end) {
+                    applyRecord();
+                }
+            }
+        }
+
+        private void grow(int bytes) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            grown.put(in).flip();
+            in = grown;
+        }
+
+        /**
+         * Reads until at least the given number of bytes remain.
+         * @return false if the channel ended first.
+         */
+        private boolean fill(ReadableByteChannel channel, int bytes) throws IOException {
+            if (in.remaining() >= bytes) {
+                return true;
+            }
+            in.compact();
+            try {
+                while (in.position() < bytes) {
+                    if (channel.read(in) < 0) {
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                in.flip();
+            }
+        }
+
+        private void applyRecord() {
+            byte op = in.get();
+            switch (op) {
+                case WRITE_TEXT, INSERT_TEXT -> {
+                    int length = in.getInt();
+                    if (length > text.length) {
+                        text = new char[Math.max(length, text.length * 2)];
+                    }
+                    in.asCharBuffer().get(text, 0, length);
+                    in.position(in.position() + length * Character.BYTES);
+                    if (op == WRITE_TEXT) {
+                        buffer.writeText(text, 0, length);
+                    } else {
+                        buffer.insertText(text, 0, length);
+                    }
+                }
+                case LINE_FEED -> buffer.lineFeed();
+                case CARRIAGE_RETURN -> buffer.carriageReturn();
+                case INSERT_EMPTY_LINE -> buffer.insertEmptyLineAtBottom();
+                case FILL_LINE -> buffer.fillLine((char) in.getInt());
+                case FILL_RANGE -> buffer.fillLine((char) in.getInt(), in.getInt(), in.getInt());
+                case CLEAR_SCREEN -> buffer.clearScreen();
+                case CLEAR_SCROLLBACK -> buffer.clearScrollback();
+                case RESIZE -> buffer.resize(in.getInt(), in.getInt());
+                case SET_CURSOR -> buffer.setCursorPosition(in.getInt(), in.getInt());
+                case MOVE_UP -> buffer.moveCursorUp(in.getInt());
+                case MOVE_DOWN -> buffer.moveCursorDown(in.getInt());
+                case MOVE_LEFT -> buffer.moveCursorLeft(in.getInt());
+                case MOVE_RIGHT -> buffer.moveCursorRight(in.getInt());
+                case ATTRIBUTES -> buffer.setAttributes(AttributeTable.attributesOf(AttributeTable.intern(in.getInt())));
+                case APPLY_ATTRIBUTES -> buffer.applyToCurrentCell(AttributeTable.attributesOf(AttributeTable.intern(in.getInt())));
+                case AUTO_WRAP -> buffer.setAutoWrap(in.getInt() != 0);
+                case TRIM_SCROLLBACK -> buffer.trimScrollbackBefore(in.getLong(), in.getInt());
+                default -> throw new IllegalStateException("Unknown journal record " + op);
+            }
+            records++;
+        }
+
+        long records() {
+            return records;
+        }
+    }
+
+    private Path file(long number, String suffix) {
+        return directory.resolve(fileName(number, suffix));
+    }
+
+    private static String fileName(long number, String suffix) {
+        return String.format(suffix.equals(".log") ? "journal-%012d%s" : "checkpoint-%012d%s", number, suffix);
+    }
+
+    /**
+     * @return The numbers of the files with the suffix in the directory, ascending.
+     */
+    private static List<Long> sequenceNumbers(Path directory, String suffix) throws IOException {
+        String prefix = suffix.equals(".log") ? "journal-" : "checkpoint-";
+        List<Long> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours.
+                    }
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * @return The number of records made.
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return The number of batches written.
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return The bytes written to logs, frames included.
+     */
+    public long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    /**
+     * @return The number of the current checkpoint and log, 0 before the first checkpoint.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Commits the pending records and closes the log. The files stay for {@link #recover}.
+     * @throws IOException if the pending records cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            commit();
+        } finally {
+            closed = true;
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        }
+    }
+}
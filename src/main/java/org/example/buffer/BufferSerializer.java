@@ -0,0 +1,334 @@
+package org.example.buffer;
+
+import org.example.model.AttributeTable;
+import org.example.model.CursorPosition;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saves a {@link TerminalBuffer} to a compact binary image and restores it, for moving a live session
+ * to another process. The image holds the dimensions, the cursor, the current attributes, the auto-wrap
+ * setting, the line ids, and every screen and in-memory scrollback line with its attributes. Scrollback lines
+ * are saved as stored, each at the width it was stored with, so the restored buffer shows them rewrapped as the
+ * saved one did; with the id and offset of the oldest one, this carries every line id and offset over, see
+ * {@link TerminalBuffer#getLineId}. Spilled lines, the search index and the budget membership are not part of it.
+ * <p>
+ * All values are little-endian:
+ * <pre>
+ * u32 magic "TBUF", u16 version, u16 flags (bit 0: auto-wrap, bit 1: wrap pending)
+ * u32 width, u32 height, u32 maxScrollbackLines, u32 cursorColumn, u32 cursorRow
+ * u32 currentAttributes, i64 firstLineId, i64 firstLineOffset
+ * u32 attributeCount, u32 attributeCodes[attributeCount]
+ * u32 scrollbackLines, LINE scrollback[scrollbackLines], LINE screen[height]
+ * </pre>
+ * Lines are stored as in {@link ScrollbackSpill}: width, flags (bit 0: wrapped), the number of cells up to
+ * the last one that is not a blank with default attributes, those characters, and their attribute ids as runs:
+ * <pre>
+ * u16 width, u16 flags, u16 length, u16 characters[length], u16 runCount, (u16 runLength, u16 attributeId)[runCount]
+ * </pre>
+ * Attribute ids are those of the process-wide {@link AttributeTable} that wrote the image, so the image
+ * carries the packed code of every id and restoring interns them again in the reading process.
+ * <p>
+ * Both directions go through a direct buffer of {@value #BUFFER_BYTES} bytes: characters are moved in bulk
+ * and the channel sees one call per full buffer.
+ */
+public final class BufferSerializer {
+    /** The size of the direct buffer the image passes through. */
+    public static final int BUFFER_BYTES = 1 << 20;
+    /** The format version written, and the only one read. */
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x46554254;
+    private static final int HEADER_BYTES = 48;
+    private static final int AUTO_WRAP = 1;
+    private static final int WRAP_PENDING = 2;
+    private static final int WRAPPED = 1;
+    /** The most bytes a line takes: its three fields, a character and a run per cell, and the run count. */
+    private static final int MAX_LINE_BYTES = 8 + 0xFFFF * 6;
+
+    private BufferSerializer() {
+    }
+
+    /**
+     * The state of a buffer to save, captured at once so that it can be written without holding the buffer.
+     */
+    static final class Image {
+        final BufferSnapshot snapshot;
+        final int maxScrollbackLines;
+        final int currentAttributes;
+        final boolean autoWrap;
+        final boolean wrapPending;
+
+        private Image(BufferSnapshot snapshot, int maxScrollbackLines, int currentAttributes, boolean autoWrap,
+                      boolean wrapPending) {
+            this.snapshot = snapshot;
+            this.maxScrollbackLines = maxScrollbackLines;
+            this.currentAttributes = currentAttributes;
+            this.autoWrap = autoWrap;
+            this.wrapPending = wrapPending;
+        }
+    }
+
+    /**
+     * Captures a buffer through a {@link TerminalBuffer#snapshot()}, which shares the lines rather than
+     * copying them.
+     */
+    static Image capture(TerminalBuffer buffer) {
+        return new Image(buffer.snapshot(), buffer.getMaxScrollbackLines(), buffer.getCurrentAttributes().encode(),
+                buffer.isAutoWrap(), buffer.isWrapPending());
+    }
+
+    /**
+     * Writes the image of a buffer. The buffer must not change until this returns; a
+     * {@link ConcurrentTerminalBuffer} is saved with {@link ConcurrentTerminalBuffer#save} instead.
+     * @param buffer The buffer to save.
+     * @param channel The channel to write to; it is not closed.
+     * @return The number of bytes written.
+     * @throws IOException if the channel fails
+     * @throws IllegalArgumentException if buffer or channel is null, or a line is wider than 65535 cells
+     */
+    public static long save(TerminalBuffer buffer, WritableByteChannel channel) throws IOException {
+        if (buffer == null || channel == null) {
+            throw new IllegalArgumentException("Buffer and channel cannot be null");
+        }
+        return write(capture(buffer), channel);
+    }
+
+    static long write(Image image, WritableByteChannel channel) throws IOException {
+        BufferSnapshot snapshot = image.snapshot;
+        List<TerminalLine> scrollback = snapshot.getScrollbackLines();
+        CursorPosition cursor = snapshot.getCursorPosition();
+        Output out = new Output(channel);
+        ByteBuffer buffer = out.buffer;
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) ((image.autoWrap ? AUTO_WRAP : 0) | (image.wrapPending ? WRAP_PENDING : 0)));
+        buffer.putInt(snapshot.getWidth());
+        buffer.putInt(snapshot.getHeight());
+        buffer.putInt(image.maxScrollbackLines);
+        buffer.putInt(cursor.getColumn());
+        buffer.putInt(cursor.getRow());
+        buffer.putInt(image.currentAttributes);
+        buffer.putLong(snapshot.getFirstLineId());
+        buffer.putLong(snapshot.getFirstLineOffset());
+
+        int attributeCount = AttributeTable.size();
+        out.reserve(Integer.BYTES);
+        buffer.putInt(attributeCount);
+        for (int id = 0; id < attributeCount; id++) {
+            out.reserve(Integer.BYTES);
+            buffer.putInt(AttributeTable.codeOf(id));
+        }
+
+        out.reserve(Integer.BYTES);
+        buffer.putInt(scrollback.size());
+        for (TerminalLine line : scrollback) {
+            out.writeLine(line);
+        }
+        for (int row = 0; row < snapshot.getHeight(); row++) {
+            out.writeLine(snapshot.getScreenLine(row));
+        }
+        out.flush();
+        return out.written;
+    }
+
+    /**
+     * Reads an image written by {@link #save} into a new buffer.
+     * @param channel The channel to read from; it is not closed, and may have been read past the image.
+     * @return The restored buffer.
+     * @throws EOFException if the channel ends before the image does
+     * @throws StreamCorruptedException if the data is not an image of a supported version
+     * @throws IOException if the channel fails
+     * @throws IllegalArgumentException if channel is null
+     */
+    public static TerminalBuffer restore(ReadableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel cannot be null");
+        }
+        Input in = new Input(channel);
+        ByteBuffer buffer = in.buffer;
+        in.require(HEADER_BYTES);
+        if (buffer.getInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a terminal buffer image");
+        }
+        int version = buffer.getShort() & 0xFFFF;
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported terminal buffer image version " + version);
+        }
+        int flags = buffer.getShort();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int maxScrollbackLines = buffer.getInt();
+        int cursorColumn = buffer.getInt();
+        int cursorRow = buffer.getInt();
+        int currentAttributes = buffer.getInt();
+        long firstLineId = buffer.getLong();
+        long firstLineOffset = buffer.getLong();
+        if (firstLineOffset < 0) {
+            throw new StreamCorruptedException("Invalid line offset in terminal buffer image");
+        }
+        if (width <= 0 || height <= 0 || maxScrollbackLines < 0 || cursorColumn < 0 || cursorColumn >= width
+                || cursorRow < 0 || cursorRow >= height) {
+            throw new StreamCorruptedException("Invalid dimensions or cursor in terminal buffer image");
+        }
+
+        in.require(Integer.BYTES);
+        int attributeCount = buffer.getInt();
+        if (attributeCount <= 0 || attributeCount > AttributeTable.MAX_IDS) {
+            throw new StreamCorruptedException("Invalid attribute table in terminal buffer image");
+        }
+        short[] attributeIds = new short[attributeCount];
+        for (int id = 0; id < attributeCount; id++) {
+            in.require(Integer.BYTES);
+            attributeIds[id] = (short) AttributeTable.intern(buffer.getInt());
+        }
+        in.attributeIds = attributeIds;
+
+        TerminalBuffer restored = new TerminalBuffer(width, height, maxScrollbackLines);
+        restored.setAutoWrap((flags & AUTO_WRAP) != 0);
+        restored.setAttributes(AttributeTable.attributesOf(AttributeTable.intern(currentAttributes)));
+        in.require(Integer.BYTES);
+        int scrollbackLines = buffer.getInt();
+        if (scrollbackLines < 0 || scrollbackLines > maxScrollbackLines) {
+            throw new StreamCorruptedException("Invalid scrollback size in terminal buffer image");
+        }
+        for (int i = 0; i < scrollbackLines; i++) {
+            restored.restoreScrollbackLine(in.readLine());
+        }
+        TerminalLine[] rows = new TerminalLine[height];
+        for (int row = 0; row < height; row++) {
+            rows[row] = in.readLine();
+        }
+        restored.restoreScreen(rows, firstLineId, firstLineOffset, cursorColumn, cursorRow, (flags & WRAP_PENDING) != 0);
+        return restored;
+    }
+
+    /**
+     * The write side: a direct buffer that is drained into the channel whenever the next value does not fit.
+     */
+    private static final class Output {
+        final WritableByteChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        char[] characters = new char[256];
+        short[] attributes = new short[256];
+        long written;
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void reserve(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        void writeLine(TerminalLine line) throws IOException {
+            int width = line.getWidth();
+            if (width > 0xFFFF) {
+                throw new IllegalArgumentException("Line is too wide to save: " + width);
+            }
+            if (width > characters.length) {
+                characters = new char[Math.max(width, characters.length * 2)];
+                attributes = new short[characters.length];
+            }
+            line.copyTo(characters, attributes, 0);
+            int length = line.contentLength();
+            reserve(MAX_LINE_BYTES);
+            buffer.putShort((short) width);
+            buffer.putShort((short) (line.isWrapped() ? WRAPPED : 0));
+            buffer.putShort((short) length);
+            buffer.asCharBuffer().put(characters, 0, length);
+            buffer.position(buffer.position() + length * Character.BYTES);
+
+            int countAt = buffer.position();
+            buffer.position(countAt + Short.BYTES);
+            int runs = 0;
+            for (int start = 0; start < length; runs++) {
+                short id = attributes[start];
+                int end = start + 1;
+                while (end < length && attributes[end] == id) {
+                    end++;
+                }
+                buffer.putShort((short) (end - start));
+                buffer.putShort(id);
+                start = end;
+            }
+            buffer.putShort(countAt, (short) runs);
+        }
+    }
+
+    /**
+     * The read side: a direct buffer refilled from the channel whenever fewer bytes remain than the next value needs.
+     */
+    private static final class Input {
+        final ReadableByteChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN).limit(0);
+        /** The ids this process interned for the ids of the image. */
+        short[] attributeIds;
+
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Terminal buffer image is truncated");
+                }
+            }
+            buffer.flip();
+        }
+
+        TerminalLine readLine() throws IOException {
+            require(3 * Short.BYTES);
+            int width = buffer.getShort() & 0xFFFF;
+            int flags = buffer.getShort();
+            int length = buffer.getShort() & 0xFFFF;
+            if (width == 0 || length > width) {
+                throw new StreamCorruptedException("Invalid line in terminal buffer image");
+            }
+            char[] characters = new char[width];
+            short[] attributes = new short[width];
+            require(length * Character.BYTES + Short.BYTES);
+            buffer.asCharBuffer().get(characters, 0, length);
+            buffer.position(buffer.position() + length * Character.BYTES);
+            Arrays.fill(characters, length, width, ' ');
+
+            int runs = buffer.getShort() & 0xFFFF;
+            require(runs * 2 * Short.BYTES);
+            for (int r = 0, cell = 0; r < runs; r++) {
+                int runLength = buffer.getShort() & 0xFFFF;
+                int id = buffer.getShort() & 0xFFFF;
+                if (cell + runLength > length || id >= attributeIds.length) {
+                    throw new StreamCorruptedException("Invalid attribute run in terminal buffer image");
+                }
+                Arrays.fill(attributes, cell, cell + runLength, attributeIds[id]);
+                cell += runLength;
+            }
+
+            TerminalLine line = TerminalLine.of(characters, attributes);
+            line.setWrapped((flags & WRAPPED) != 0);
+            return line;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.example.buffer;
+
+import org.example.model.AttributeTable;
+import org.example.model.CellAttributes;
+import org.example.model.CursorPosition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable view of a {@link TerminalBuffer} at the time {@link TerminalBuffer#snapshot()} was called.
+ * Reads mirror the buffer's own read methods, so a renderer or another thread can read a consistent
+ * frame while the buffer keeps changing. The lines are shared with the buffer, which copies a line
+ * before changing it once a snapshot holds it.
+ */
+public final class BufferSnapshot {
+    private final int width;
+    private final int cursorColumn;
+    private final int cursorRow;
+    /** The screen rows, top first. */
+    private final TerminalLine[] screen;
+    /** The scrollback lines and the rows they take at the snapshot's width. */
+    private final LineIndex scrollback;
+
+    BufferSnapshot(int width, int cursorColumn, int cursorRow, TerminalLine[] screen, LineIndex scrollback) {
+        this.width = width;
+        this.cursorColumn = cursorColumn;
+        this.cursorRow = cursorRow;
+        this.screen = screen;
+        this.scrollback = scrollback;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return screen.length;
+    }
+
+    /**
+     * @return The cursor position at the time of the snapshot.
+     */
+    public CursorPosition getCursorPosition() {
+        return new CursorPosition(cursorColumn, cursorRow);
+    }
+
+    public int getScrollbackSize() {
+        return (int) Math.min(Integer.MAX_VALUE - screen.length, scrollback.size());
+    }
+
+    /**
+     * @param row The row, scrollback included.
+     * @return The line id of the row, the same the buffer gave it, see {@link TerminalBuffer#getLineId}.
+     * @throws IndexOutOfBoundsException if the row is out of bounds
+     */
+    public long getLineId(int row) {
+        int scrollbackSize = getScrollbackSize();
+        if (row < 0 || row >= scrollbackSize + screen.length) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
+        if (row < scrollbackSize) {
+            return scrollback.lineAt(row);
+        }
+        long lineId = scrollback.topId();
+        for (int screenRow = 0; screenRow < row - scrollbackSize; screenRow++) {
+            if (!screen[screenRow].isWrapped()) {
+                lineId++;
+            }
+        }
+        return lineId;
+    }
+
+    /**
+     * @param lineId The line id.
+     * @return The line's text, the rows it is wrapped onto joined, or null if the snapshot does not hold the line.
+     */
+    public String getLineById(long lineId) {
+        int scrollbackSize = getScrollbackSize();
+        int rows = scrollbackSize + screen.length;
+        int row;
+        if (scrollback.holds(lineId)) {
+            row = (int) scrollback.rowOf(lineId);
+        } else {
+            long id = scrollback.topId();
+            row = scrollbackSize;
+            while (id < lineId && row < rows) {
+                if (!screen[row - scrollbackSize].isWrapped()) {
+                    id++;
+                }
+                row++;
+            }
+            if (id != lineId || row == rows) {
+                return null;
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        TerminalLine line;
+        do {
+            line = getTerminalLine(row++, true);
+            line.appendText(text);
+        } while (line.isWrapped() && row < rows);
+        return text.toString();
+    }
+
+    public char getCharAt(int column, int row) {
+        return getCharAt(column, row, false);
+    }
+
+    public char getCharAt(int column, int row, boolean includeScrollback) {
+        return getTerminalLine(row, includeScrollback).getCharacter(column);
+    }
+
+    public CellAttributes getAttributesAt(int column, int row) {
+        return getAttributesAt(column, row, false);
+    }
+
+    /**
+     * @return The shared immutable attributes of the cell, see {@link AttributeTable}.
+     */
+    public CellAttributes getAttributesAt(int column, int row, boolean includeScrollback) {
+        return AttributeTable.attributesOf(getTerminalLine(row, includeScrollback).getAttributeId(column));
+    }
+
+    public String getLine(int row) {
+        return getLine(row, false);
+    }
+
+    public String getLine(int row, boolean includeScrollback) {
+        return getTerminalLine(row, includeScrollback).getText();
+    }
+
+    public String getScreenContent() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < screen.length; i++) {
+            screen[i].appendText(sb);
+            if (i < screen.length - 1) {
+                sb.append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    public String getAllContent() {
+        return String.join("\n", getAllLines());
+    }
+
+    public List<String> getScreenLines() {
+        List<String> lines = new ArrayList<>(screen.length);
+        for (TerminalLine line : screen) {
+            lines.add(line.getText());
+        }
+        return lines;
+    }
+
+    public List<String> getAllLines() {
+        int scrollbackSize = getScrollbackSize();
+        List<String> lines = new ArrayList<>(scrollbackSize + screen.length);
+        for (int row = 0; row < scrollbackSize; row++) {
+            lines.add(scrollback.get(row).getText());
+        }
+        lines.addAll(getScreenLines());
+        return lines;
+    }
+
+    private TerminalLine getTerminalLine(int row, boolean includeScrollback) {
+        if (includeScrollback) {
+            int scrollbackSize = getScrollbackSize();
+            if (row >= 0 && row < scrollbackSize) {
+                return scrollback.get(row);
+            }
+            row -= scrollbackSize;
+            if (row >= 0 && row < screen.length) {
+                return screen[row];
+            }
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + (row + scrollbackSize));
+        }
+        if (row >= 0 && row < screen.length) {
+            return screen[row];
+        }
+        throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+    }
+
+    /**
+     * @return The line at a screen row, for checking structural sharing in tests and for serializing.
+     */
+    TerminalLine getScreenLine(int row) {
+        return screen[row];
+    }
+
+    /**
+     * @return The scrollback lines as stored, oldest first, each at the width it was stored with, for serializing.
+     */
+    List<TerminalLine> getScrollbackLines() {
+        return scrollback.stored();
+    }
+
+    /**
+     * @return The id of the oldest stored scrollback line, or of the top screen row without scrollback, for
+     * serializing.
+     */
+    long getFirstLineId() {
+        return scrollback.firstId();
+    }
+
+    /**
+     * @return The offset within its line of the oldest stored scrollback line, or of the top screen row without
+     * scrollback, for serializing.
+     */
+    long getFirstLineOffset() {
+        return scrollback.firstOffset();
+    }
+}
@@ -0,0 +1,211 @@
+package org.example.buffer;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Off-heap memory for scrollback cells, see {@link TerminalBuffer#setCellArena}. Piece sizes are rounded up
+ * to size classes, powers of two and the midpoints between them, so chunks stored at many different widths
+ * share a few classes. Each slab of {@value #SLAB_BYTES} bytes is carved into pieces of one class; a freed
+ * piece is reused by its class, and a slab whose pieces are all free is given back to the system, keeping one
+ * spare for the next slab of any class. Larger pieces get memory of their own, given back when freed.
+ * Reserved memory therefore follows the pieces in use rather than the most ever used. {@link #close()} frees
+ * everything at once, so a session that closes its arena releases all its history deterministically.
+ * <p>
+ * Thread-safe, so several buffers may share one arena.
+ */
+public class CellArena implements AutoCloseable {
+    /** The size of the slabs pieces are carved from. Pieces larger than a quarter of it get memory of their own. */
+    public static final long SLAB_BYTES = 1 << 20;
+    private static final long ALIGNMENT = 64;
+
+    /** A slab carved into pieces of one size class. */
+    private static final class Slab {
+        final Arena arena;
+        final MemorySegment memory;
+        long pieceBytes;
+        /** The bytes carved so far; pieces past it have never been handed out. */
+        long carved;
+        /** The pieces handed out and not yet freed. */
+        int live;
+        final ArrayDeque<MemorySegment> freePieces = new ArrayDeque<>();
+
+        Slab(Arena arena, MemorySegment memory) {
+            this.arena = arena;
+            this.memory = memory;
+        }
+
+        boolean isFull() {
+            return freePieces.isEmpty() && carved + pieceBytes > memory.byteSize();
+        }
+
+        MemorySegment take() {
+            live++;
+            if (!freePieces.isEmpty()) {
+                return freePieces.pop().fill((byte) 0);
+            }
+            MemorySegment piece = memory.asSlice(carved, pieceBytes);
+            carved += pieceBytes;
+            return piece;
+        }
+    }
+
+    /** Slabs by the address of their memory. */
+    private final TreeMap<Long, Slab> slabs = new TreeMap<>();
+    /** The slabs of each size class that have room for another piece. */
+    private final Map<Long, ArrayDeque<Slab>> partialSlabs = new HashMap<>();
+    /** The arenas of large pieces by the address of the piece. */
+    private final Map<Long, Arena> largePieces = new HashMap<>();
+    /** An empty slab kept for the next class that needs one, or null. */
+    private Slab spare;
+    private long reservedBytes;
+    private long usedBytes;
+    private boolean closed;
+
+    /**
+     * @param bytes The size of the piece.
+     * @return Zeroed memory of at least that size, valid until freed or the arena closes.
+     * @throws IllegalStateException if the arena is closed
+     */
+    synchronized MemorySegment allocate(long bytes) {
+        if (closed) {
+            throw new IllegalStateException("Cell arena is closed");
+        }
+        long size = sizeClass(bytes);
+        usedBytes += size;
+        if (size > SLAB_BYTES / 4) {
+            Arena own = Arena.ofShared();
+            MemorySegment piece = own.allocate(size, ALIGNMENT);
+            largePieces.put(piece.address(), own);
+            reservedBytes += size;
+            return piece;
+        }
+        ArrayDeque<Slab> partial = partialSlabs.computeIfAbsent(size, s -> new ArrayDeque<>());
+        Slab slab = partial.peek();
+        if (slab == null) {
+            slab = newSlab(size);
+            partial.push(slab);
+        }
+        MemorySegment piece = slab.take();
+        if (slab.isFull()) {
+            partial.pop();
+        }
+        return piece;
+    }
+
+    /**
+     * Returns a piece for reuse, giving its memory back to the system if nothing else uses it. Ignored once
+     * the arena is closed.
+     * @param piece Memory returned by {@link #allocate}.
+     */
+    synchronized void free(MemorySegment piece) {
+        if (closed) {
+            return;
+        }
+        usedBytes -= piece.byteSize();
+        Arena own = largePieces.remove(piece.address());
+        if (own != null) {
+            reservedBytes -= piece.byteSize();
+            own.close();
+            return;
+        }
+        Slab slab = slabs.floorEntry(piece.address()).getValue();
+        ArrayDeque<Slab> partial = partialSlabs.get(slab.pieceBytes);
+        boolean wasFull = slab.isFull();
+        slab.live--;
+        slab.freePieces.push(piece);
+        if (slab.live == 0) {
+            if (!wasFull) {
+                partial.remove(slab);
+            }
+            retire(slab);
+        } else if (wasFull) {
+            partial.push(slab);
+        }
+    }
+
+    /**
+     * @return The size class of a piece: a power of two or three quarters of one, a multiple of the
+     * 64-byte alignment.
+     */
+    static long sizeClass(long bytes) {
+        long size = Math.max(ALIGNMENT, bytes);
+        long power = Long.highestOneBit(size - 1) << 1;
+        long threeQuarters = power / 4 * 3;
+        return size <= threeQuarters && threeQuarters % ALIGNMENT == 0 ? threeQuarters : power;
+    }
+
+    private Slab newSlab(long pieceBytes) {
+        Slab slab;
+        if (spare != null) {
+            slab = new Slab(spare.arena, spare.memory.fill((byte) 0));
+            spare = null;
+        } else {
+            Arena own = Arena.ofShared();
+            slab = new Slab(own, own.allocate(SLAB_BYTES, ALIGNMENT));
+            reservedBytes += SLAB_BYTES;
+        }
+        slab.pieceBytes = pieceBytes;
+        slabs.put(slab.memory.address(), slab);
+        return slab;
+    }
+
+    /**
+     * Takes an empty slab out of use, keeping it as the spare if there is none and freeing it otherwise.
+     */
+    private void retire(Slab slab) {
+        slabs.remove(slab.memory.address());
+        if (spare == null) {
+            spare = slab;
+        } else {
+            reservedBytes -= SLAB_BYTES;
+            slab.arena.close();
+        }
+    }
+
+    /**
+     * @return The bytes reserved from the system.
+     */
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * @return The bytes in pieces that have not been freed.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Frees all memory. Buffers still using the arena fail when they next read their off-heap scrollback.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Slab slab : slabs.values()) {
+            slab.arena.close();
+        }
+        if (spare != null) {
+            spare.arena.close();
+        }
+        for (Arena own : largePieces.values()) {
+            own.close();
+        }
+        slabs.clear();
+        partialSlabs.clear();
+        largePieces.clear();
+        spare = null;
+    }
+}
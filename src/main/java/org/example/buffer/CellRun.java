@@ -0,0 +1,42 @@
+package org.example.buffer;
+
+import java.util.Arrays;
+
+/**
+ * A reusable run of cells in the same packed layout as {@link TerminalLine}.
+ * Used as scratch space when inserted text pushes cells from one row into the next.
+ */
+final class CellRun {
+    /** The characters of the run. */
+    char[] characters = new char[0];
+    /** The attribute ids of the run. */
+    short[] attributes = new short[0];
+    /** The number of valid cells. */
+    int length;
+
+    /**
+     * Grows the backing arrays so the run can hold at least the given number of cells.
+     * Existing contents are not preserved.
+     * @param capacity The required capacity.
+     */
+    void ensureCapacity(int capacity) {
+        if (characters.length < capacity) {
+            characters = new char[capacity];
+            attributes = new short[capacity];
+        }
+    }
+
+    /**
+     * Drops trailing blank cells, which do not need to be carried into the next row.
+     */
+    void trimTrailingBlanks() {
+        while (length > 0 && characters[length - 1] == ' ') {
+            length--;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CellRun{" + new String(Arrays.copyOf(characters, length)) + '}';
+    }
+}
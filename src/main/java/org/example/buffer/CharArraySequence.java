@@ -0,0 +1,58 @@
+package org.example.buffer;
+
+import java.util.Objects;
+
+/**
+ * A reusable, mutable {@link CharSequence} view over a slice of a char array.
+ * Lets the buffer run char[] input through its CharSequence write paths without copying or allocating.
+ */
+final class CharArraySequence implements CharSequence {
+    char[] array;
+    int offset;
+    int length;
+
+    /**
+     * Points the view at a new slice. The array is referenced, not copied.
+     * @param array The backing array.
+     * @param offset The index of the first character.
+     * @param length The number of characters.
+     * @return This view.
+     */
+    CharArraySequence reset(char[] array, int offset, int length) {
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Drops the reference to the backing array.
+     */
+    void release() {
+        reset(null, 0, 0);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        return array[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new String(array, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(array, offset, length);
+    }
+}
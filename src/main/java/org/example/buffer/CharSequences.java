@@ -0,0 +1,66 @@
+package org.example.buffer;
+
+import java.nio.CharBuffer;
+
+/**
+ * Bulk operations on the character sources accepted by the buffer's write paths.
+ * Array-backed sources are handled with array copies and scans; others fall back to charAt.
+ */
+final class CharSequences {
+    private CharSequences() {
+    }
+
+    /**
+     * Copies characters into an array.
+     * @param text The source.
+     * @param start The index of the first character to copy.
+     * @param end The index after the last character to copy.
+     * @param destination The destination array.
+     * @param offset The destination index of the first character.
+     */
+    static void copy(CharSequence text, int start, int end, char[] destination, int offset) {
+        if (text instanceof String string) {
+            string.getChars(start, end, destination, offset);
+        } else if (text instanceof CharArraySequence chars) {
+            System.arraycopy(chars.array, chars.offset + start, destination, offset, end - start);
+        } else if (text instanceof StringBuilder builder) {
+            builder.getChars(start, end, destination, offset);
+        } else if (text instanceof CharBuffer buffer && buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position() + start,
+                    destination, offset, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                destination[offset++] = text.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Finds the first occurrence of a character in a range.
+     * @param text The text to search.
+     * @param c The character to find.
+     * @param start The index to start at.
+     * @param end The index to stop before.
+     * @return The index of the character, or -1 if it does not occur in the range.
+     */
+    static int indexOf(CharSequence text, char c, int start, int end) {
+        if (text instanceof String string) {
+            return string.indexOf(c, start, end);
+        }
+        if (text instanceof CharArraySequence chars) {
+            char[] array = chars.array;
+            for (int i = chars.offset + start, last = chars.offset + end; i < last; i++) {
+                if (array[i] == c) {
+                    return i - chars.offset;
+                }
+            }
+            return -1;
+        }
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
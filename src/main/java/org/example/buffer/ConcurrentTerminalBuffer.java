@@ -0,0 +1,557 @@
+package org.example.buffer;
+
+import org.example.model.CellAttributes;
+import org.example.model.Color;
+import org.example.model.CursorPosition;
+import org.example.model.DamageRegion;
+import org.example.model.SearchHit;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe {@link TerminalBuffer} for one writer and any number of readers.
+ * <p>
+ * Writes take a short exclusive stamp of a {@link StampedLock}. The cell reads ({@link #getCharAt},
+ * {@link #getAttributesAt}, {@link #getLine}, {@link #getScreenContent}) and the cursor read first run
+ * without locking and then validate the stamp; only if a write overlapped them are they repeated under
+ * a read lock, so readers never block the writer and never block each other while output is quiet.
+ * An optimistic read may observe a half-written buffer and fail with an exception, which is discarded
+ * unless the stamp is still valid. Longer reads and reads that change buffer state, such as
+ * {@link #snapshot()} and {@link #collectDamage()}, take the lock outright.
+ * <p>
+ * After a width change, scrollback reads need the number of rows each part of the history takes at the new
+ * width, see {@link TerminalBuffer#resize}. The first read that reaches the scrollback counts them under the
+ * read lock, in one pass of arithmetic that reads no cells, and the reads after it run optimistically again;
+ * the writer keeps the counts up to date. The wrapped buffer's own reads never keep counts, since they may
+ * run beside the writer.
+ * <p>
+ * A writer that applies many small changes at once, such as a {@link org.example.vt.VtParser} handling
+ * one chunk of output, should do it in a single {@link #update} to take the stamp once per chunk.
+ */
+public class ConcurrentTerminalBuffer {
+    private final TerminalBuffer buffer;
+    private final StampedLock lock = new StampedLock();
+    /** The number of optimistic reads that had to be repeated under the read lock. */
+    private final LongAdder lockedRetries = new LongAdder();
+
+    public ConcurrentTerminalBuffer(int width, int height, int maxScrollbackLines) {
+        this(new TerminalBuffer(width, height, maxScrollbackLines));
+    }
+
+    /**
+     * Wraps an existing buffer. The buffer must not be used directly afterwards.
+     * @param buffer The buffer to guard.
+     * @throws IllegalArgumentException if buffer is null
+     */
+    public ConcurrentTerminalBuffer(TerminalBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        this.buffer = buffer;
+        buffer.setGuarded(true);
+    }
+
+    /**
+     * Runs a batch of changes under one exclusive stamp.
+     * The buffer passed to the action must not be kept or used after it returns.
+     * @param action The changes to apply.
+     */
+    public void update(Consumer<TerminalBuffer> action) {
+        long stamp = lock.writeLock();
+        buffer.setGuarded(false);
+        try {
+            action.accept(buffer);
+        } finally {
+            buffer.setGuarded(true);
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void write(Runnable action) {
+        long stamp = lock.writeLock();
+        try {
+            action.run();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Runs a read without locking and returns its result if no write overlapped it,
+     * otherwise runs it again under the read lock.
+     */
+    private <T> T readOptimistic(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        lockedRetries.increment();
+        return readLocked(reader);
+    }
+
+    /**
+     * Runs a read that reaches the scrollback like {@link #readOptimistic}, or under the read lock if the
+     * scrollback rows must first be counted at the current width. A resize that slips in after the check
+     * fails the stamp, and the read is repeated under the lock.
+     */
+    private <T> T readScrollback(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0 && buffer.hasScrollbackRows()) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        lockedRetries.increment();
+        return readScrollbackLocked(reader);
+    }
+
+    /**
+     * Runs a read that reaches the scrollback under the read lock, first counting the scrollback rows at the
+     * current width if needed. Readers that count at once store the same counts.
+     */
+    private <T> T readScrollbackLocked(Supplier<T> reader) {
+        return readLocked(() -> {
+            buffer.prepareScrollbackRows();
+            return reader.get();
+        });
+    }
+
+    public void writeText(String text) {
+        write(() -> buffer.writeText(text));
+    }
+
+    public void writeText(CharSequence text) {
+        write(() -> buffer.writeText(text));
+    }
+
+    public void writeText(char[] buf, int off, int len) {
+        write(() -> buffer.writeText(buf, off, len));
+    }
+
+    public void insertText(String text) {
+        write(() -> buffer.insertText(text));
+    }
+
+    public void insertText(CharSequence text) {
+        write(() -> buffer.insertText(text));
+    }
+
+    public void insertText(char[] buf, int off, int len) {
+        write(() -> buffer.insertText(buf, off, len));
+    }
+
+    public void lineFeed() {
+        write(buffer::lineFeed);
+    }
+
+    public void carriageReturn() {
+        write(buffer::carriageReturn);
+    }
+
+    public void fillLine(char c) {
+        write(() -> buffer.fillLine(c));
+    }
+
+    public void fillLine(char c, int from, int to) {
+        write(() -> buffer.fillLine(c, from, to));
+    }
+
+    public void insertEmptyLineAtBottom() {
+        write(buffer::insertEmptyLineAtBottom);
+    }
+
+    public void clearScreen() {
+        write(buffer::clearScreen);
+    }
+
+    public void clearScreenAndScrollback() {
+        write(buffer::clearScreenAndScrollback);
+    }
+
+    public void clearScrollback() {
+        write(buffer::clearScrollback);
+    }
+
+    /**
+     * Resizes under the exclusive stamp. Only the screen is rewrapped; the scrollback is shown rewrapped as it
+     * is read, see {@link TerminalBuffer#resize}.
+     * @see TerminalBuffer#resize(int, int)
+     */
+    public void resize(int newWidth, int newHeight) {
+        write(() -> buffer.resize(newWidth, newHeight));
+    }
+
+    /**
+     * @see TerminalBuffer#setAutoWrap(boolean)
+     */
+    public void setAutoWrap(boolean autoWrap) {
+        write(() -> buffer.setAutoWrap(autoWrap));
+    }
+
+    public void setCursorPosition(int column, int row) {
+        write(() -> buffer.setCursorPosition(column, row));
+    }
+
+    public void moveCursorUp(int n) {
+        write(() -> buffer.moveCursorUp(n));
+    }
+
+    public void moveCursorDown(int n) {
+        write(() -> buffer.moveCursorDown(n));
+    }
+
+    public void moveCursorLeft(int n) {
+        write(() -> buffer.moveCursorLeft(n));
+    }
+
+    public void moveCursorRight(int n) {
+        write(() -> buffer.moveCursorRight(n));
+    }
+
+    public void setForegroundColor(Color color) {
+        write(() -> buffer.setForegroundColor(color));
+    }
+
+    public void setBackgroundColor(Color color) {
+        write(() -> buffer.setBackgroundColor(color));
+    }
+
+    public void setBold(boolean bold) {
+        write(() -> buffer.setBold(bold));
+    }
+
+    public void setItalic(boolean italic) {
+        write(() -> buffer.setItalic(italic));
+    }
+
+    public void setUnderline(boolean underline) {
+        write(() -> buffer.setUnderline(underline));
+    }
+
+    public void setAttributes(CellAttributes attrs) {
+        write(() -> buffer.setAttributes(attrs));
+    }
+
+    public void resetAttributes() {
+        write(buffer::resetAttributes);
+    }
+
+    public void applyToCurrentCell(CellAttributes attrs) {
+        write(() -> buffer.applyToCurrentCell(attrs));
+    }
+
+    /**
+     * Reads a character without locking unless a write overlaps the read.
+     * Written out rather than going through readOptimistic to avoid boxing the result.
+     */
+    public char getCharAt(int column, int row, boolean includeScrollback) {
+        if (includeScrollback) {
+            return readScrollback(() -> buffer.getCharAt(column, row, true));
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                char c = buffer.getCharAt(column, row, false);
+                if (lock.validate(stamp)) {
+                    return c;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        lockedRetries.increment();
+        stamp = lock.readLock();
+        try {
+            return buffer.getCharAt(column, row, false);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public char getCharAt(int column, int row) {
+        return getCharAt(column, row, false);
+    }
+
+    public CellAttributes getAttributesAt(int column, int row, boolean includeScrollback) {
+        return includeScrollback
+                ? readScrollback(() -> buffer.getAttributesAt(column, row, true))
+                : readOptimistic(() -> buffer.getAttributesAt(column, row, false));
+    }
+
+    public CellAttributes getAttributesAt(int column, int row) {
+        return getAttributesAt(column, row, false);
+    }
+
+    public String getLine(int row, boolean includeScrollback) {
+        return includeScrollback
+                ? readScrollback(() -> buffer.getLine(row, true))
+                : readOptimistic(() -> buffer.getLine(row, false));
+    }
+
+    public String getLine(int row) {
+        return getLine(row, false);
+    }
+
+    public String getScreenContent() {
+        return readOptimistic(buffer::getScreenContent);
+    }
+
+    public CursorPosition getCurrentCursorPosition() {
+        return readOptimistic(buffer::getCurrentCursorPosition);
+    }
+
+    public int getWidth() {
+        return readOptimistic(buffer::getWidth);
+    }
+
+    public int getHeight() {
+        return readOptimistic(buffer::getHeight);
+    }
+
+    public int getScrollbackSize() {
+        return readScrollback(buffer::getScrollbackSize);
+    }
+
+    /**
+     * @see TerminalBuffer#getLineId(int)
+     */
+    public long getLineId(int row) {
+        return readScrollback(() -> buffer.getLineId(row));
+    }
+
+    public long getFirstLineId() {
+        return readScrollback(buffer::getFirstLineId);
+    }
+
+    /**
+     * @see TerminalBuffer#getRowOfLineId(long)
+     */
+    public int getRowOfLineId(long lineId) {
+        return readScrollback(() -> buffer.getRowOfLineId(lineId));
+    }
+
+    /**
+     * @see TerminalBuffer#getRowOfLineId(long, long)
+     */
+    public int getRowOfLineId(long lineId, long offset) {
+        return readScrollback(() -> buffer.getRowOfLineId(lineId, offset));
+    }
+
+    /**
+     * Resolves the id and reads the line as one read, so the line cannot shift in between.
+     * @see TerminalBuffer#getLineById(long)
+     */
+    public String getLineById(long lineId) {
+        return readScrollback(() -> buffer.getLineById(lineId));
+    }
+
+    /**
+     * Reads the whole scrollback under the read lock; an optimistic attempt would rarely survive heavy output.
+     */
+    public String getAllContent() {
+        return readScrollbackLocked(buffer::getAllContent);
+    }
+
+    public List<String> getAllLines() {
+        return readScrollbackLocked(buffer::getAllLines);
+    }
+
+    /**
+     * @see TerminalBuffer#setSearchIndex(boolean)
+     */
+    public void setSearchIndex(boolean enabled) {
+        write(() -> buffer.setSearchIndex(enabled));
+    }
+
+    /**
+     * Searches under the read lock, which holds off the writer for the length of the search.
+     * @see TerminalBuffer#search(SearchQuery, ForkJoinPool)
+     */
+    public List<SearchHit> search(SearchQuery query, ForkJoinPool pool) {
+        return readScrollbackLocked(() -> buffer.search(query, pool));
+    }
+
+    public List<SearchHit> search(SearchQuery query) {
+        return search(query, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Takes a snapshot under the exclusive stamp, since taking one marks lines shared.
+     * The snapshot can then be read from any thread without locking.
+     * @see TerminalBuffer#snapshot()
+     */
+    public BufferSnapshot snapshot() {
+        long stamp = lock.writeLock();
+        try {
+            return buffer.snapshot();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Saves the buffer with {@link BufferSerializer}. The state is captured under the exclusive stamp as a
+     * snapshot, so the writer is held off only for that and not while the image is written to the channel.
+     * @param channel The channel to write to; it is not closed.
+     * @return The number of bytes written.
+     * @throws IOException if the channel fails
+     * @see BufferSerializer#save(TerminalBuffer, WritableByteChannel)
+     */
+    public long save(WritableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel cannot be null");
+        }
+        BufferSerializer.Image image;
+        long stamp = lock.writeLock();
+        try {
+            image = BufferSerializer.capture(buffer);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return BufferSerializer.write(image, channel);
+    }
+
+    /**
+     * @see TerminalBuffer#setJournal(BufferJournal)
+     */
+    public void setJournal(BufferJournal journal) {
+        write(() -> buffer.setJournal(journal));
+    }
+
+    /**
+     * Commits the records collected by the buffer's journal, under the exclusive stamp.
+     * @throws IOException if the log cannot be written
+     * @throws IllegalStateException if the buffer has no journal
+     * @see BufferJournal#commit()
+     */
+    public void commitJournal() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            journal().commit();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Writes a checkpoint to the buffer's journal. Like {@link #save}, the state is captured and the new log
+     * started under the exclusive stamp, and the checkpoint is written to its file after releasing it.
+     * @throws IOException if the checkpoint or the new log cannot be written
+     * @throws IllegalStateException if the buffer has no journal
+     * @see BufferJournal#checkpoint(TerminalBuffer)
+     */
+    public void checkpointJournal() throws IOException {
+        BufferJournal journal;
+        BufferJournal.Checkpoint checkpoint;
+        long stamp = lock.writeLock();
+        try {
+            journal = journal();
+            checkpoint = journal.beginCheckpoint(buffer);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.finishCheckpoint(checkpoint);
+    }
+
+    private BufferJournal journal() {
+        BufferJournal journal = buffer.getJournal();
+        if (journal == null) {
+            throw new IllegalStateException("Buffer has no journal");
+        }
+        return journal;
+    }
+
+    /**
+     * @see TerminalBuffer#collectDamage()
+     */
+    public List<DamageRegion> collectDamage() {
+        long stamp = lock.writeLock();
+        try {
+            return buffer.collectDamage();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @see TerminalBuffer#setScrollbackSpill(ScrollbackSpill)
+     */
+    public void setScrollbackSpill(ScrollbackSpill spill) {
+        write(() -> buffer.setScrollbackSpill(spill));
+    }
+
+    /**
+     * @see TerminalBuffer#setScrollbackCompression(int)
+     */
+    public void setScrollbackCompression(int hotLines) {
+        write(() -> buffer.setScrollbackCompression(hotLines));
+    }
+
+    /**
+     * @see TerminalBuffer#setCellArena(CellArena)
+     */
+    public void setCellArena(CellArena arena) {
+        write(() -> buffer.setCellArena(arena));
+    }
+
+    /**
+     * Makes the scrollback count towards a shared memory budget, or leaves it if budget is null.
+     * When another buffer's growth exceeds the budget, this buffer is trimmed only if its write stamp
+     * is free at that moment, so buffers never wait on each other.
+     * @see TerminalBuffer#setScrollbackBudget(ScrollbackBudget)
+     */
+    public void setScrollbackBudget(ScrollbackBudget budget) {
+        write(() -> buffer.setScrollbackBudget(budget, bytes -> {
+            long stamp = lock.tryWriteLock();
+            if (stamp == 0) {
+                return 0;
+            }
+            try {
+                return buffer.trimScrollback(bytes);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }));
+    }
+
+    /**
+     * @return The number of reads that overlapped a write and were repeated under the read lock.
+     */
+    public long getLockedRetries() {
+        return lockedRetries.sum();
+    }
+}
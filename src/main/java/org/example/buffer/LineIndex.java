@@ -0,0 +1,748 @@
+package org.example.buffer;
+
+import org.example.model.AttributeTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The logical lines of the scrollback and the rows they take at the current width, see
+ * {@link TerminalBuffer#getLineId}. Scrollback rows are stored as they left the screen and a resize never
+ * rewrites them. All rows of a logical line have the same width, since a resize rewraps the line the screen
+ * continues before any more of it is stored. A line stored at another width than the current one is shown
+ * rewrapped: each of its rows is cut out of the stored rows when it is read, so a resize costs nothing per
+ * scrollback line.
+ * <p>
+ * A line is described by the absolute number of its first stored row, its number of cells and its width,
+ * kept in chunks of {@link #CHUNK_LINES} lines once the line is complete. Lines have consecutive ids. The open
+ * line, whose newest row is wrapped, and the rows evicted from the oldest line are kept apart, so a chunk slot
+ * is never changed once written and {@link #snapshot} shares the chunks like {@link ScrollbackRing} does.
+ * <p>
+ * While every stored row has the current width, rows are stored rows and lines are found by their first row.
+ * Otherwise rows are found through running totals of the rows each chunk takes at the current width. They are
+ * computed by one pass of arithmetic over the line entries the first time a read needs them after a width
+ * change, and kept up to date as lines are added and evicted.
+ * <p>
+ * Not thread-safe; the owning buffer serializes access. A snapshot may be read from any number of threads.
+ */
+final class LineIndex {
+    /** The number of lines per chunk, a power of two. */
+    static final int CHUNK_LINES = 64;
+    private static final int CHUNK_SHIFT = 6;
+    private static final int INITIAL_CHUNKS = 4;
+
+    /**
+     * The entries of {@link #CHUNK_LINES} consecutive complete lines. A slot is written once.
+     */
+    private static final class Chunk {
+        final long[] starts = new long[CHUNK_LINES];
+        final long[] cells = new long[CHUNK_LINES];
+        final int[] widths = new int[CHUNK_LINES];
+    }
+
+    /**
+     * Running totals of rows at one width. Rows are counted from the first line of chunk {@link #origin}, and
+     * every complete line counts with the rows it had when it was completed, rows evicted since included.
+     */
+    private static final class Rows {
+        final int width;
+        /** The absolute number of the chunk that {@link #bounds}[0] is for. */
+        long origin;
+        /** The row at which the first line of each chunk from {@link #origin} on starts. */
+        long[] bounds;
+        int boundCount;
+        /** The row at which the oldest complete line starts. */
+        long first;
+        /** The row after the newest complete line. */
+        long end;
+
+        Rows(int width, long origin, int capacity) {
+            this.width = width;
+            this.origin = origin;
+            this.bounds = new long[Math.max(capacity, INITIAL_CHUNKS)];
+        }
+
+        /**
+         * @return A copy sharing the bounds array, which the original only writes past its bound count.
+         */
+        Rows copy() {
+            Rows copy = new Rows(width, origin, 0);
+            copy.bounds = bounds;
+            copy.boundCount = boundCount;
+            copy.first = first;
+            copy.end = end;
+            return copy;
+        }
+
+        /**
+         * Records where a new chunk starts, dropping the bounds of chunks before headChunk when the array is full.
+         */
+        void addBound(long chunk, long headChunk, long row) {
+            if (boundCount == bounds.length) {
+                int dropped = (int) (headChunk - origin);
+                long[] grown = new long[Math.max(INITIAL_CHUNKS, (boundCount - dropped) * 2)];
+                System.arraycopy(bounds, dropped, grown, 0, boundCount - dropped);
+                bounds = grown;
+                boundCount -= dropped;
+                origin = headChunk;
+            }
+            if (chunk == origin + boundCount) {
+                bounds[boundCount++] = row;
+            }
+        }
+    }
+
+    /** The stored rows, oldest first: the buffer's scrollback, or a snapshot of it. */
+    private final List<TerminalLine> stored;
+    /** The width rows are shown at. */
+    private int width;
+
+    /** The chunks, {@link #headChunk} is the array index of the one holding the oldest line. */
+    private Chunk[] chunks = new Chunk[INITIAL_CHUNKS];
+    private int headChunk;
+    private int chunkCount;
+    /** The absolute number of the oldest chunk, counted since the last {@link #clear()}. */
+    private long headChunkNumber;
+    /** The id of the line in the first slot of the oldest chunk. */
+    private long headChunkId;
+
+    /** The id of the oldest line held, or if no complete line is held, of the open or the next line. */
+    private long firstId;
+    /** The number of complete lines held. */
+    private int count;
+    /** The absolute number of the oldest stored row. */
+    private long firstRow;
+    /** The absolute number of the next stored row. */
+    private long endRow;
+    /** The number of rows evicted from the oldest complete line. */
+    private int headCut;
+    /** The offset within its logical line of the first cell the oldest complete line had when it was completed. */
+    private long headBase;
+
+    /** Whether the newest row stored was wrapped, so that its line continues on the screen. */
+    private boolean open;
+    /** The absolute number of the first row of the open line still stored. */
+    private long openStart;
+    /** The number of rows of the open line still stored. */
+    private int openRows;
+    private int openWidth;
+    /** The offset within its logical line of the first cell of the open line still stored. */
+    private long openOffset;
+
+    /** The number of stored rows per width, and the entry for the current width; null in a snapshot. */
+    private final Map<Integer, long[]> rowsByWidth;
+    private long[] currentWidthRows;
+    /** Whether every row of a snapshot has the snapshot's width. */
+    private boolean uniform;
+
+    /** The totals for the current width, or null until a read needs them. */
+    private volatile Rows rows;
+    /** Whether reads may keep the totals they compute, false while reads may run beside changes. */
+    private boolean keepRows = true;
+
+    /**
+     * @param stored The stored rows, which the owner changes in step with this index.
+     * @param width The width rows are shown at.
+     */
+    LineIndex(List<TerminalLine> stored, int width) {
+        this.stored = stored;
+        this.width = width;
+        this.rowsByWidth = new HashMap<>();
+        this.currentWidthRows = new long[1];
+        rowsByWidth.put(width, currentWidthRows);
+    }
+
+    private LineIndex(List<TerminalLine> stored, LineIndex source) {
+        this.stored = stored;
+        this.width = source.width;
+        this.rowsByWidth = null;
+        this.uniform = source.isUniform();
+    }
+
+    /**
+     * Adds a row that entered the scrollback as the newest one. It continues the open line, if any,
+     * and otherwise starts a new line.
+     * @param line The row; it is read, not kept.
+     * @return The id of the row's line.
+     */
+    long append(TerminalLine line) {
+        if (!open) {
+            open = true;
+            openOffset = 0;
+        }
+        if (openRows == 0) {
+            openStart = endRow;
+            openWidth = line.getWidth();
+        }
+        openRows++;
+        endRow++;
+        countRows(openWidth, 1);
+        long id = firstId + count;
+        if (!line.isWrapped()) {
+            complete((long) (openRows - 1) * openWidth + line.contentLength());
+        }
+        return id;
+    }
+
+    /**
+     * Moves the open line into the chunks.
+     */
+    private void complete(long cells) {
+        long id = firstId + count;
+        int chunk = (int) ((id - headChunkId) >> CHUNK_SHIFT);
+        if (chunk == chunkCount) {
+            if (chunkCount == chunks.length) {
+                growChunks();
+            }
+            chunks[chunkIndex(chunkCount)] = new Chunk();
+            chunkCount++;
+        }
+        Chunk entries = chunks[chunkIndex(chunk)];
+        int slot = slot(id);
+        entries.starts[slot] = openStart;
+        entries.cells[slot] = cells;
+        entries.widths[slot] = openWidth;
+        if (count == 0) {
+            headCut = 0;
+            headBase = openOffset;
+        }
+        count++;
+        open = false;
+        openRows = 0;
+        openOffset = 0;
+
+        Rows totals = rows;
+        if (totals != null) {
+            if (slot == 0) {
+                totals.addBound(headChunkNumber + chunk, headChunkNumber, totals.end);
+            }
+            totals.end += entryRows(id, totals.width);
+        }
+    }
+
+    /**
+     * Removes the oldest stored row.
+     */
+    void evictOldest() {
+        if (firstRow == endRow) {
+            throw new IllegalStateException("Scrollback is empty");
+        }
+        firstRow++;
+        if (count == 0) {
+            countRows(openWidth, -1);
+            openStart++;
+            openRows--;
+            openOffset += openWidth;
+            return;
+        }
+        int lineWidth = width(firstId);
+        countRows(lineWidth, -1);
+        if (firstRow < nextStart(firstId)) {
+            headCut++;
+            return;
+        }
+        Rows totals = rows;
+        if (totals != null) {
+            totals.first += entryRows(firstId, totals.width);
+        }
+        firstId++;
+        count--;
+        headCut = 0;
+        headBase = 0;
+        if (firstId - headChunkId == CHUNK_LINES) {
+            chunks[headChunk] = null;
+            headChunk = chunkIndex(1);
+            chunkCount--;
+            headChunkNumber++;
+            headChunkId += CHUNK_LINES;
+        }
+    }
+
+    /**
+     * Removes the newest stored row, which must belong to the open line. The line stays open, so rows
+     * appended next continue it.
+     */
+    void removeNewest() {
+        if (openRows == 0) {
+            throw new IllegalStateException("The newest row is not wrapped");
+        }
+        openRows--;
+        endRow--;
+        countRows(openWidth, -1);
+    }
+
+    /**
+     * Drops every stored row. Ids continue after the last line; the open line keeps its id.
+     */
+    void clear() {
+        if (open) {
+            openOffset += (long) openRows * openWidth;
+            openRows = 0;
+        }
+        firstId += count;
+        count = 0;
+        headCut = 0;
+        headBase = 0;
+        chunks = new Chunk[INITIAL_CHUNKS];
+        headChunk = 0;
+        chunkCount = 0;
+        headChunkNumber = 0;
+        headChunkId = firstId;
+        firstRow = endRow;
+        rowsByWidth.clear();
+        currentWidthRows = new long[1];
+        rowsByWidth.put(width, currentWidthRows);
+        rows = rows == null ? null : new Rows(width, 0, 0);
+    }
+
+    /**
+     * Sets the width rows are shown at.
+     * @param width The new width.
+     */
+    void setWidth(int width) {
+        if (width != this.width) {
+            this.width = width;
+            currentWidthRows = rowsByWidth.computeIfAbsent(width, w -> new long[1]);
+            rows = null;
+        }
+    }
+
+    /**
+     * Gives the lines new ids, keeping them consecutive, and sets where the oldest stored row starts within its
+     * line, such as when restoring a saved buffer.
+     * @param id The id of the oldest stored row's line, or of the top screen row if no row is stored.
+     * @param offset The offset of that row's first cell within its line.
+     */
+    void renumber(long id, long offset) {
+        long shift = id - firstId;
+        firstId += shift;
+        headChunkId += shift;
+        if (count > 0) {
+            headBase = offset - (long) headCut * width(firstId);
+        } else if (open || offset > 0) {
+            open = true;
+            openOffset = offset;
+        }
+    }
+
+    /**
+     * @param keep Whether reads may keep the row totals they compute. Reads that may run beside changes
+     * must not, so the owner then builds them with {@link #prepareRows()} while it holds changes off.
+     */
+    void setKeepRows(boolean keep) {
+        keepRows = keep;
+    }
+
+    /**
+     * Computes the row totals for the current width if reads need them and they are missing.
+     */
+    void prepareRows() {
+        if (!isUniform() && rows == null) {
+            rows = computeRows();
+        }
+    }
+
+    /**
+     * @return true if reads need row totals that are missing, see {@link #prepareRows()}.
+     */
+    boolean needsRows() {
+        return !isUniform() && rows == null;
+    }
+
+    /**
+     * @param stored A snapshot of the stored rows, taken at the same time.
+     * @return An immutable copy sharing the chunks.
+     */
+    LineIndex snapshot(List<TerminalLine> stored) {
+        LineIndex copy = new LineIndex(stored, this);
+        copy.chunks = new Chunk[Math.max(INITIAL_CHUNKS, Integer.highestOneBit(Math.max(1, chunkCount)) * 2)];
+        for (int i = 0; i < chunkCount; i++) {
+            copy.chunks[i] = chunks[chunkIndex(i)];
+        }
+        copy.chunkCount = chunkCount;
+        copy.headChunkNumber = headChunkNumber;
+        copy.headChunkId = headChunkId;
+        copy.firstId = firstId;
+        copy.count = count;
+        copy.firstRow = firstRow;
+        copy.endRow = endRow;
+        copy.headCut = headCut;
+        copy.headBase = headBase;
+        copy.open = open;
+        copy.openStart = openStart;
+        copy.openRows = openRows;
+        copy.openWidth = openWidth;
+        copy.openOffset = openOffset;
+        Rows totals = rows;
+        copy.rows = totals == null ? null : totals.copy();
+        return copy;
+    }
+
+    /**
+     * @return The stored rows, oldest first.
+     */
+    List<TerminalLine> stored() {
+        return stored;
+    }
+
+    /**
+     * @return The id of the oldest stored row's line, or the id of the top screen row if no row is stored.
+     */
+    long firstId() {
+        return firstId;
+    }
+
+    /**
+     * @return The id of the line of the top screen row: the open line, or the line after the newest one.
+     */
+    long topId() {
+        return firstId + count;
+    }
+
+    /**
+     * @return The offset within its logical line of the first cell of the top screen row.
+     */
+    long topOffset() {
+        return open ? openOffset + (long) openRows * openWidth : 0;
+    }
+
+    /**
+     * @return The offset within its logical line of the oldest stored row's first cell.
+     */
+    long firstOffset() {
+        return count > 0 ? headBase + (long) headCut * width(firstId) : openOffset;
+    }
+
+    /**
+     * @return The number of stored rows of the oldest line, which eviction takes one at a time.
+     */
+    long firstLineStoredRows() {
+        return count > 0 ? nextStart(firstId) - firstRow : openRows;
+    }
+
+    /**
+     * @return The number of rows at the current width.
+     */
+    long size() {
+        if (isUniform()) {
+            return endRow - firstRow;
+        }
+        long size = openRowsAt(width);
+        if (count > 0) {
+            Rows totals = rows();
+            size += headRowsAt(width) + totals.end - totals.first - entryRows(firstId, width);
+        }
+        return size;
+    }
+
+    /**
+     * @param id A line id.
+     * @return true if rows of the line are stored.
+     */
+    boolean holds(long id) {
+        return id >= firstId && (id < firstId + count || id == firstId + count && openRows > 0);
+    }
+
+    /**
+     * @param row A row at the current width, 0 being the oldest.
+     * @return The id of the row's line.
+     */
+    long lineAt(long row) {
+        if (isUniform()) {
+            return lineAtStoredRow(firstRow + row);
+        }
+        if (count > 0) {
+            long headRows = headRowsAt(width);
+            if (row < headRows) {
+                return firstId;
+            }
+            Rows totals = rows();
+            long target = totals.first + entryRows(firstId, width) + row - headRows;
+            if (target < totals.end) {
+                return lineAtTotal(totals, target);
+            }
+        }
+        return firstId + count;
+    }
+
+    /**
+     * @param row A stored row, 0 being the oldest.
+     * @return The id of the row's line.
+     */
+    long storedLineId(int row) {
+        return lineAtStoredRow(firstRow + row);
+    }
+
+    /**
+     * @param id The id of a line whose rows are stored, see {@link #holds}.
+     * @return The first of its rows at the current width.
+     */
+    long rowOf(long id) {
+        if (isUniform()) {
+            return heldStart(id) - firstRow;
+        }
+        if (id == firstId) {
+            return 0;
+        }
+        Rows totals = rows();
+        long total = id == firstId + count ? totals.end : totalAt(totals, id);
+        return headRowsAt(width) + total - totals.first - entryRows(firstId, width);
+    }
+
+    /**
+     * @param id The id of a line whose rows are stored, see {@link #holds}.
+     * @return The number of its rows at the current width.
+     */
+    long rowsOf(long id) {
+        if (id == firstId + count) {
+            return openRowsAt(width);
+        }
+        if (id == firstId) {
+            return headRowsAt(width);
+        }
+        return entryRows(id, width);
+    }
+
+    /**
+     * @param row A row at the current width.
+     * @return The offset of the row's first cell within its logical line.
+     */
+    long lineOffset(long row) {
+        long id = lineAt(row);
+        return heldOffset(id) + (row - rowOf(id)) * width;
+    }
+
+    /**
+     * Reads a row at the current width. A row of a line stored at that width is the stored row itself;
+     * any other is cut out of the stored rows of its line into a new line.
+     * @param row The row, 0 being the oldest.
+     * @return The row.
+     */
+    TerminalLine get(long row) {
+        if (isUniform()) {
+            return stored.get((int) row);
+        }
+        long id = lineAt(row);
+        long segment = row - rowOf(id);
+        long start = heldStart(id);
+        int lineWidth = id == firstId + count ? openWidth : width(id);
+        if (lineWidth == width) {
+            return stored.get((int) (start + segment - firstRow));
+        }
+        long cells = heldCells(id);
+        long rowCount = rowsOf(id);
+        char[] characters = new char[width];
+        short[] attributes = new short[width];
+        Arrays.fill(characters, ' ');
+        Arrays.fill(attributes, (short) AttributeTable.DEFAULT_ID);
+        long from = segment * width;
+        long to = Math.min(cells, from + width);
+        for (long cell = from; cell < to; ) {
+            TerminalLine line = stored.get((int) (start + cell / lineWidth - firstRow));
+            int column = (int) (cell % lineWidth);
+            int n = (int) Math.min(to - cell, lineWidth - column);
+            for (int i = 0; i < n; i++) {
+                characters[(int) (cell - from) + i] = line.getCharacter(column + i);
+                attributes[(int) (cell - from) + i] = (short) line.getAttributeId(column + i);
+            }
+            cell += n;
+        }
+        TerminalLine result = TerminalLine.of(characters, attributes);
+        result.setWrapped(segment < rowCount - 1 || id == firstId + count);
+        return result;
+    }
+
+    private boolean isUniform() {
+        return rowsByWidth == null ? uniform : currentWidthRows[0] == endRow - firstRow;
+    }
+
+    private void countRows(int rowWidth, int delta) {
+        if (rowWidth == width) {
+            currentWidthRows[0] += delta;
+        } else {
+            rowsByWidth.computeIfAbsent(rowWidth, w -> new long[1])[0] += delta;
+        }
+    }
+
+    private Rows rows() {
+        Rows totals = rows;
+        if (totals == null) {
+            totals = computeRows();
+            if (keepRows) {
+                rows = totals;
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Counts the rows of every complete line at the current width, from the first slot of the oldest chunk.
+     */
+    private Rows computeRows() {
+        Rows totals = new Rows(width, headChunkNumber, chunkCount);
+        long total = 0;
+        long last = firstId + count;
+        for (long id = headChunkId; id < last; id++) {
+            if (slot(id) == 0) {
+                totals.bounds[totals.boundCount++] = total;
+            }
+            if (id == firstId) {
+                totals.first = total;
+            }
+            total += entryRows(id, width);
+        }
+        if (count == 0) {
+            totals.first = total;
+        }
+        totals.end = total;
+        return totals;
+    }
+
+    /**
+     * @return The total at which a complete line starts, see {@link Rows}.
+     */
+    private long totalAt(Rows totals, long id) {
+        long chunkId = id - slot(id);
+        long total = totals.bounds[(int) (headChunkNumber + ((chunkId - headChunkId) >> CHUNK_SHIFT) - totals.origin)];
+        for (long other = chunkId; other < id; other++) {
+            total += entryRows(other, totals.width);
+        }
+        return total;
+    }
+
+    /**
+     * @return The complete line whose rows include the given total, which is below {@link Rows#end}.
+     */
+    private long lineAtTotal(Rows totals, long target) {
+        int low = (int) (headChunkNumber - totals.origin);
+        int high = totals.boundCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (totals.bounds[mid] <= target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        long id = headChunkId + ((totals.origin + low - headChunkNumber) << CHUNK_SHIFT);
+        long total = totals.bounds[low];
+        long last = firstId + count - 1;
+        while (id < last) {
+            total += entryRows(id, totals.width);
+            if (target < total) {
+                break;
+            }
+            id++;
+        }
+        return id;
+    }
+
+    /**
+     * @return The line of a stored row, found by binary search over the first rows of the lines.
+     */
+    private long lineAtStoredRow(long storedRow) {
+        if (count == 0 || storedRow >= closedEnd()) {
+            return firstId + count;
+        }
+        long low = firstId;
+        long high = firstId + count - 1;
+        while (low < high) {
+            long mid = (low + high + 1) >>> 1;
+            if (start(mid) <= storedRow) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The number of rows a complete line had when it was completed, at the given width.
+     */
+    private long entryRows(long id, int atWidth) {
+        return rowsAt(nextStart(id) - start(id), cells(id), width(id), atWidth);
+    }
+
+    private long headRowsAt(int atWidth) {
+        return rowsAt(nextStart(firstId) - firstRow, heldCells(firstId), width(firstId), atWidth);
+    }
+
+    private long openRowsAt(int atWidth) {
+        return openRows == 0 ? 0 : rowsAt(openRows, (long) openRows * openWidth, openWidth, atWidth);
+    }
+
+    private static long rowsAt(long storedRows, long cells, int storedWidth, int atWidth) {
+        return storedWidth == atWidth ? storedRows : Math.max(1, (cells + atWidth - 1) / atWidth);
+    }
+
+    /**
+     * @return The absolute number of the first stored row of a line whose rows are stored.
+     */
+    private long heldStart(long id) {
+        if (id == firstId + count) {
+            return openStart;
+        }
+        return id == firstId ? firstRow : start(id);
+    }
+
+    private long heldCells(long id) {
+        if (id == firstId + count) {
+            return (long) openRows * openWidth;
+        }
+        return id == firstId ? cells(id) - (long) headCut * width(id) : cells(id);
+    }
+
+    private long heldOffset(long id) {
+        if (id == firstId + count) {
+            return openOffset;
+        }
+        return id == firstId ? firstOffset() : 0;
+    }
+
+    /**
+     * @return The absolute number of the row after the newest complete line.
+     */
+    private long closedEnd() {
+        return openRows > 0 ? openStart : endRow;
+    }
+
+    private long nextStart(long id) {
+        return id + 1 < firstId + count ? start(id + 1) : closedEnd();
+    }
+
+    private long start(long id) {
+        return chunkOf(id).starts[slot(id)];
+    }
+
+    private long cells(long id) {
+        return chunkOf(id).cells[slot(id)];
+    }
+
+    private int width(long id) {
+        return chunkOf(id).widths[slot(id)];
+    }
+
+    private Chunk chunkOf(long id) {
+        return chunks[chunkIndex((int) ((id - headChunkId) >> CHUNK_SHIFT))];
+    }
+
+    private int slot(long id) {
+        return (int) ((id - headChunkId) & (CHUNK_LINES - 1));
+    }
+
+    private int chunkIndex(int chunk) {
+        return (headChunk + chunk) & (chunks.length - 1);
+    }
+
+    private void growChunks() {
+        Chunk[] grown = new Chunk[chunks.length * 2];
+        for (int i = 0; i < chunkCount; i++) {
+            grown[i] = chunks[chunkIndex(i)];
+        }
+        chunks = grown;
+        headChunk = 0;
+    }
+}
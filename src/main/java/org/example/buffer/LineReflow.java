@@ -0,0 +1,111 @@
+package org.example.buffer;
+
+import org.example.model.AttributeTable;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Rewraps logical lines to a new width. A logical line is a run of lines each {@link TerminalLine#isWrapped()
+ * wrapped} into the next, ended by one that is not. Its content is the full width of every line but the last,
+ * and the last one up to its {@link TerminalLine#contentLength()}. Lines are fed oldest first, and the
+ * rewrapped lines are handed on as each logical line ends, every one but the last of them marked wrapped.
+ * <p>
+ * A logical line made of a single line that already has the new width is handed on as it is; any other
+ * is copied into scratch arrays that are reused from one logical line to the next. Not thread-safe.
+ */
+final class LineReflow {
+    private final int width;
+    private final Consumer<TerminalLine> output;
+    private char[] characters = new char[256];
+    private short[] attributes = new short[256];
+    /** The number of cells of the current logical line collected so far. */
+    private int length;
+    /** The number of lines of the current logical line collected so far. */
+    private int parts;
+
+    /**
+     * @param width The width to rewrap to.
+     * @param output Receives the rewrapped lines in order.
+     */
+    LineReflow(int width, Consumer<TerminalLine> output) {
+        this.width = width;
+        this.output = output;
+    }
+
+    /**
+     * Adds the next line.
+     * @param line The line; it is read, and handed on unchanged only if it has the new width and is a
+     * logical line of its own.
+     */
+    void add(TerminalLine line) {
+        add(line, 0);
+    }
+
+    /**
+     * Adds the next line, keeping at least the given number of its cells even if they are blank.
+     * @param line The line.
+     * @param minLength The number of cells to keep, such as those up to and including the cursor.
+     */
+    void add(TerminalLine line, int minLength) {
+        if (parts == 0 && !line.isWrapped() && line.getWidth() == width && minLength <= width) {
+            output.accept(line);
+            return;
+        }
+        int lineLength = line.isWrapped() ? line.getWidth() : Math.max(line.contentLength(), minLength);
+        if (length + lineLength > characters.length) {
+            int capacity = Math.max(characters.length * 2, length + lineLength);
+            characters = Arrays.copyOf(characters, capacity);
+            attributes = Arrays.copyOf(attributes, capacity);
+        }
+        int copied = Math.min(lineLength, line.getWidth());
+        for (int column = 0; column < copied; column++) {
+            characters[length + column] = line.getCharacter(column);
+            attributes[length + column] = (short) line.getAttributeId(column);
+        }
+        Arrays.fill(characters, length + copied, length + lineLength, ' ');
+        Arrays.fill(attributes, length + copied, length + lineLength, (short) AttributeTable.DEFAULT_ID);
+        length += lineLength;
+        parts++;
+        if (!line.isWrapped()) {
+            emit(false);
+        }
+    }
+
+    /**
+     * @return The number of cells of the current logical line collected so far, which is the offset
+     * within the logical line of the first cell of the next line added.
+     */
+    int pendingLength() {
+        return length;
+    }
+
+    /**
+     * Hands on the logical line still being collected, if the last line added was wrapped.
+     * Its last rewrapped line stays marked wrapped, since its continuation was not added.
+     */
+    void finish() {
+        if (parts > 0) {
+            emit(true);
+        }
+    }
+
+    private void emit(boolean wrappedAfter) {
+        int rows = Math.max(1, (length + width - 1) / width);
+        for (int row = 0; row < rows; row++) {
+            int from = row * width;
+            int to = Math.min(length, from + width);
+            char[] rowCharacters = new char[width];
+            short[] rowAttributes = new short[width];
+            System.arraycopy(characters, from, rowCharacters, 0, to - from);
+            System.arraycopy(attributes, from, rowAttributes, 0, to - from);
+            Arrays.fill(rowCharacters, to - from, width, ' ');
+            Arrays.fill(rowAttributes, to - from, width, (short) AttributeTable.DEFAULT_ID);
+            TerminalLine line = TerminalLine.of(rowCharacters, rowAttributes);
+            line.setWrapped(row < rows - 1 || wrappedAfter);
+            output.accept(line);
+        }
+        length = 0;
+        parts = 0;
+    }
+}
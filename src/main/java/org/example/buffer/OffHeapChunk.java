@@ -0,0 +1,113 @@
+package org.example.buffer;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scrollback chunk whose cells live in a {@link CellArena}.
+ * The memory holds the {@link StoredChunk#widthWord width word} of each line, followed by the cells
+ * of every line at a fixed stride:
+ * <pre>
+ * u32 widths[CHUNK_SIZE], CELL cells[CHUNK_SIZE][stride]
+ * </pre>
+ * The heap holds only this object, so the chunk adds nothing to what the collector has to scan.
+ */
+final class OffHeapChunk implements StoredChunk {
+    /** The layout of a cell: its character and its attribute id. */
+    static final StructLayout CELL = MemoryLayout.structLayout(
+            ValueLayout.JAVA_CHAR_UNALIGNED.withName("character"),
+            ValueLayout.JAVA_SHORT_UNALIGNED.withName("attribute"));
+    private static final long CHARACTER_OFFSET = CELL.byteOffset(MemoryLayout.PathElement.groupElement("character"));
+    private static final long ATTRIBUTE_OFFSET = CELL.byteOffset(MemoryLayout.PathElement.groupElement("attribute"));
+    private static final long HEADER_BYTES = ScrollbackRing.CHUNK_SIZE * Integer.BYTES;
+    private static final ValueLayout.OfChar CHAR = ValueLayout.JAVA_CHAR_UNALIGNED;
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    /** The heap cost of the chunk and its storage objects. */
+    private static final int OVERHEAD_BYTES = 96;
+
+    /**
+     * The memory, shared with snapshots.
+     */
+    private static final class Cells {
+        final CellArena arena;
+        final MemorySegment memory;
+        final int stride;
+        final AtomicInteger holders = new AtomicInteger(1);
+
+        Cells(CellArena arena, MemorySegment memory, int stride) {
+            this.arena = arena;
+            this.memory = memory;
+            this.stride = stride;
+        }
+    }
+
+    private final Cells cells;
+
+    private OffHeapChunk(Cells cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * @param lines The lines of a full chunk; they are read, not kept. Null entries, the unused slots
+     * of a chunk, are stored as empty lines.
+     * @param arena The arena to allocate from.
+     * @return A chunk holding the lines.
+     */
+    static OffHeapChunk store(TerminalLine[] lines, CellArena arena) {
+        int stride = 0;
+        for (TerminalLine line : lines) {
+            stride = Math.max(stride, StoredChunk.widthWord(line) & WIDTH_MASK);
+        }
+        MemorySegment memory = arena.allocate(HEADER_BYTES + (long) lines.length * stride * CELL.byteSize());
+        for (int slot = 0; slot < lines.length; slot++) {
+            TerminalLine line = lines[slot];
+            int stored = StoredChunk.widthWord(line);
+            int lineWidth = stored & WIDTH_MASK;
+            memory.set(INT, (long) slot * Integer.BYTES, stored);
+            long at = HEADER_BYTES + (long) slot * stride * CELL.byteSize();
+            for (int column = 0; column < lineWidth; column++, at += CELL.byteSize()) {
+                memory.set(CHAR, at + CHARACTER_OFFSET, line.getCharacter(column));
+                memory.set(SHORT, at + ATTRIBUTE_OFFSET, (short) line.getAttributeId(column));
+            }
+        }
+        return new OffHeapChunk(new Cells(arena, memory, stride));
+    }
+
+    @Override
+    public TerminalLine line(int slot, BlockCache cache) {
+        MemorySegment memory = cells.memory;
+        int stored = memory.get(INT, (long) slot * Integer.BYTES);
+        int lineWidth = stored & WIDTH_MASK;
+        char[] characters = new char[lineWidth];
+        short[] attributes = new short[lineWidth];
+        long at = HEADER_BYTES + (long) slot * cells.stride * CELL.byteSize();
+        for (int column = 0; column < lineWidth; column++, at += CELL.byteSize()) {
+            characters[column] = memory.get(CHAR, at + CHARACTER_OFFSET);
+            attributes[column] = memory.get(SHORT, at + ATTRIBUTE_OFFSET);
+        }
+        TerminalLine line = TerminalLine.of(characters, attributes);
+        line.setWrapped((stored & WRAPPED) != 0);
+        return line;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return cells.memory.byteSize() + OVERHEAD_BYTES;
+    }
+
+    @Override
+    public void retain() {
+        cells.holders.incrementAndGet();
+    }
+
+    @Override
+    public void release() {
+        if (cells.holders.decrementAndGet() == 0) {
+            cells.arena.free(cells.memory);
+        }
+    }
+}
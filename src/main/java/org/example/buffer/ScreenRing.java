@@ -0,0 +1,64 @@
+package org.example.buffer;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The visible screen as a ring of rows with a moving top offset.
+ * Scrolling up by one line swaps a single slot and advances the offset,
+ * so the other rows never move in memory.
+ * The list view is read-only and indexed by screen row, top first.
+ */
+class ScreenRing extends AbstractList<TerminalLine> implements RandomAccess {
+    /** The rows of the screen, {@link #top} is the array index of screen row 0. */
+    private final TerminalLine[] rows;
+    /** The array index of the top screen row. */
+    private int top;
+
+    /**
+     * Creates a screen from rows given top first. The array is used as-is.
+     * @param rows The screen rows.
+     */
+    ScreenRing(TerminalLine[] rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Scrolls the screen up by one line.
+     * @param bottom The line that becomes the new bottom row.
+     * @return The line that left the top of the screen.
+     */
+    TerminalLine scrollUp(TerminalLine bottom) {
+        TerminalLine leaving = rows[top];
+        rows[top] = bottom;
+        top = top + 1 == rows.length ? 0 : top + 1;
+        return leaving;
+    }
+
+    @Override
+    public TerminalLine get(int row) {
+        return rows[physicalIndex(row)];
+    }
+
+    /**
+     * Replaces a row. Used by the buffer to swap in a private copy of a shared line.
+     * @param row The screen row.
+     * @param line The new line.
+     */
+    void replace(int row, TerminalLine line) {
+        rows[physicalIndex(row)] = line;
+    }
+
+    private int physicalIndex(int row) {
+        if (row < 0 || row >= rows.length) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
+        int i = top + row;
+        return i >= rows.length ? i - rows.length : i;
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+}
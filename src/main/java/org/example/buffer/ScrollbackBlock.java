@@ -0,0 +1,125 @@
+package org.example.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A chunk of scrollback lines compressed with {@link Deflater}. Immutable, so it can be shared
+ * with snapshots and read from any thread.
+ * <p>
+ * Each line is stored as its {@link StoredChunk#widthWord width word}, followed by its characters and
+ * attribute ids. Lines are read back at the width they were stored with, which a width change
+ * leaves as it is, see {@link TerminalBuffer#resize}.
+ */
+final class ScrollbackBlock implements StoredChunk {
+    /** The approximate heap cost of a block besides its compressed bytes. */
+    private static final int OVERHEAD_BYTES = 48;
+
+    private final byte[] data;
+    private final int rawLength;
+    private final int lineCount;
+
+    private ScrollbackBlock(byte[] data, int rawLength, int lineCount) {
+        this.data = data;
+        this.rawLength = rawLength;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * @param lines The lines to store; they are read, not kept. Null entries, the unused slots
+     * of a chunk, are stored as empty lines.
+     * @return A block holding the lines.
+     */
+    static ScrollbackBlock compress(TerminalLine[] lines) {
+        int rawLength = 0;
+        for (TerminalLine line : lines) {
+            int lineWidth = StoredChunk.widthWord(line) & WIDTH_MASK;
+            rawLength += Integer.BYTES + lineWidth * (Character.BYTES + Short.BYTES);
+        }
+        ByteBuffer raw = ByteBuffer.allocate(rawLength);
+        for (TerminalLine line : lines) {
+            int stored = StoredChunk.widthWord(line);
+            int lineWidth = stored & WIDTH_MASK;
+            raw.putInt(stored);
+            for (int i = 0; i < lineWidth; i++) {
+                raw.putChar(line.getCharacter(i));
+            }
+            for (int i = 0; i < lineWidth; i++) {
+                raw.putShort((short) line.getAttributeId(i));
+            }
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            byte[] out = new byte[rawLength / 4 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return new ScrollbackBlock(Arrays.copyOf(out, length), rawLength, lines.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return New lines holding the block's content at its current width.
+     */
+    TerminalLine[] decompress() {
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while (length < rawLength) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Scrollback block is truncated");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Scrollback block is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        TerminalLine[] lines = new TerminalLine[lineCount];
+        for (int l = 0; l < lineCount; l++) {
+            int stored = in.getInt();
+            int lineWidth = stored & WIDTH_MASK;
+            char[] characters = new char[lineWidth];
+            short[] attributes = new short[lineWidth];
+            in.asCharBuffer().get(characters);
+            in.position(in.position() + lineWidth * Character.BYTES);
+            in.asShortBuffer().get(attributes);
+            in.position(in.position() + lineWidth * Short.BYTES);
+            TerminalLine line = TerminalLine.of(characters, attributes);
+            line.setWrapped((stored & WRAPPED) != 0);
+            lines[l] = line;
+        }
+        return lines;
+    }
+
+    @Override
+    public TerminalLine line(int slot, BlockCache cache) {
+        return cache.lines(this)[slot];
+    }
+
+    /**
+     * @return The approximate heap held by the block.
+     */
+    @Override
+    public long memoryBytes() {
+        return data.length + OVERHEAD_BYTES;
+    }
+}
@@ -0,0 +1,216 @@
+package org.example.buffer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A memory limit for the scrollback of many buffers together, in bytes rather than lines.
+ * Buffers join with {@link TerminalBuffer#setScrollbackBudget} and account their scrollback
+ * at {@link #bytesPerLine} per line. When a line pushes the total over the limit, the oldest scrollback
+ * lines of the buffer whose scrollback was read least recently are evicted, then those of the next,
+ * until the total is back under {@link #getLowWaterBytes()}. Evicting below the limit rather than
+ * just to it keeps eviction runs rare. A buffer counts as read when it joins.
+ * <p>
+ * The budget is thread-safe. A buffer owned by another thread is trimmed only if its lock can be taken
+ * without waiting, otherwise it is skipped for this run; plain buffers sharing a budget across threads
+ * must therefore join through {@link ConcurrentTerminalBuffer#setScrollbackBudget}.
+ */
+public class ScrollbackBudget {
+    /** The approximate heap cost of a line besides its cells: object headers and array headers. */
+    static final int LINE_OVERHEAD_BYTES = 64;
+
+    private final long limitBytes;
+    private final long lowWaterBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final Set<Member> members = ConcurrentHashMap.newKeySet();
+    /** Held by the thread running an eviction; others skip theirs rather than wait. */
+    private final ReentrantLock evicting = new ReentrantLock();
+    private final LongAdder evictedLines = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder evictionRuns = new LongAdder();
+
+    /**
+     * @param limitBytes The most scrollback bytes all members may hold together.
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public ScrollbackBudget(long limitBytes) {
+        if (limitBytes < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        this.limitBytes = limitBytes;
+        this.lowWaterBytes = limitBytes - limitBytes / 16;
+    }
+
+    /**
+     * @param width The line width.
+     * @return The bytes a scrollback line of that width is accounted at: two per character,
+     * two per attribute id, plus a fixed overhead.
+     */
+    public static long bytesPerLine(int width) {
+        return width * 4L + LINE_OVERHEAD_BYTES;
+    }
+
+    /**
+     * A buffer that joined the budget.
+     */
+    static final class Member {
+        private final ScrollbackBudget budget;
+        private final TerminalBuffer buffer;
+        /** Trims the buffer from another thread, returning the bytes freed, or 0 if it is busy. */
+        private final LongUnaryOperator trimmer;
+        /** The bytes this member has added to the budget. Changed only with exclusive access to the buffer. */
+        private volatile long bytes;
+        private volatile long lastRead = System.nanoTime();
+        /** {@link #lastRead} frozen for sorting during an eviction run. */
+        private long readOrder;
+
+        private Member(ScrollbackBudget budget, TerminalBuffer buffer, LongUnaryOperator trimmer) {
+            this.budget = budget;
+            this.buffer = buffer;
+            this.trimmer = trimmer;
+        }
+
+        /**
+         * Records a read of the scrollback for least-recently-read ordering.
+         */
+        void touch() {
+            lastRead = System.nanoTime();
+        }
+
+        /**
+         * Accounts a new scrollback size and evicts across the budget if the limit is exceeded.
+         * Called with exclusive access to the buffer.
+         * @param newBytes The bytes the buffer's scrollback now takes.
+         */
+        void resize(long newBytes) {
+            long delta = newBytes - bytes;
+            if (delta == 0) {
+                return;
+            }
+            bytes = newBytes;
+            if (budget.usedBytes.addAndGet(delta) > budget.limitBytes && delta > 0) {
+                budget.evict(this);
+            }
+        }
+
+        /**
+         * Accounts lines evicted by the budget without evicting further.
+         * Called with exclusive access to the buffer.
+         */
+        void evicted(int lines, long freed) {
+            bytes -= freed;
+            budget.usedBytes.addAndGet(-freed);
+            budget.evictedLines.add(lines);
+            budget.evictedBytes.add(freed);
+        }
+
+        /**
+         * Leaves the budget, releasing all accounted bytes. Called with exclusive access to the buffer.
+         */
+        void leave() {
+            budget.members.remove(this);
+            budget.usedBytes.addAndGet(-bytes);
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Adds a buffer. Its bytes are accounted by the first call to {@link Member#resize}.
+     * @param buffer The buffer.
+     * @param trimmer Trims the buffer's scrollback by at least the given bytes from another thread,
+     * returning the bytes freed, or 0 if the buffer is busy.
+     */
+    Member join(TerminalBuffer buffer, LongUnaryOperator trimmer) {
+        Member member = new Member(this, buffer, trimmer);
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * Evicts from the least recently read members until usage is under the low-water mark.
+     * @param caller The member whose growth triggered the run; it is trimmed directly, since the
+     * calling thread already has exclusive access to it.
+     */
+    private void evict(Member caller) {
+        if (!evicting.tryLock()) {
+            return;
+        }
+        try {
+            evictionRuns.increment();
+            List<Member> victims = new ArrayList<>(members);
+            for (Member member : victims) {
+                member.readOrder = member.lastRead;
+            }
+            victims.sort(Comparator.comparingLong(m -> m.readOrder));
+            for (Member victim : victims) {
+                long excess = usedBytes.get() - lowWaterBytes;
+                if (excess <= 0) {
+                    break;
+                }
+                if (victim.bytes == 0) {
+                    continue;
+                }
+                if (victim == caller) {
+                    caller.buffer.trimScrollback(excess);
+                } else {
+                    victim.trimmer.applyAsLong(excess);
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    /**
+     * @return The most scrollback bytes all members may hold together.
+     */
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    /**
+     * @return The usage an eviction run brings the budget down to, 1/16 below the limit.
+     */
+    public long getLowWaterBytes() {
+        return lowWaterBytes;
+    }
+
+    /**
+     * @return The scrollback bytes held by all members.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * @return The number of scrollback lines evicted by the budget.
+     */
+    public long getEvictedLines() {
+        return evictedLines.sum();
+    }
+
+    /**
+     * @return The number of bytes evicted by the budget.
+     */
+    public long getEvictedBytes() {
+        return evictedBytes.sum();
+    }
+
+    /**
+     * @return The number of times the limit was exceeded and an eviction ran.
+     */
+    public long getEvictionRuns() {
+        return evictionRuns.sum();
+    }
+}
@@ -0,0 +1,373 @@
+package org.example.buffer;
+
+import java.lang.ref.Cleaner;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-capacity scrollback, oldest line first, stored in chunks of {@link #CHUNK_SIZE} lines
+ * that are held in a circular array. Appending, evicting the oldest line and indexed reads are all O(1).
+ * The chunk array grows by doubling, so buffers with a large scrollback limit only pay for the lines they hold.
+ * <p>
+ * A slot that holds a line is never overwritten: appending fills slots past the newest line,
+ * eviction only moves the start offset and drops a chunk once all its lines are gone, and clearing
+ * or resizing replaces the chunks. That is what lets {@link #snapshot()} share the chunks with a
+ * snapshot by copying only the chunk references.
+ * <p>
+ * With compression enabled, chunks whose lines are all older than the newest {@code hotLines} are
+ * replaced by {@link ScrollbackBlock}s. The compressed chunks always form a prefix of the ring.
+ * Reads decompress a block through a small {@link BlockCache} shared with snapshots, and the lines
+ * they return are not kept by the ring.
+ * <p>
+ * With a {@link CellArena} set, cold chunks are moved to {@link OffHeapChunk}s in the arena instead
+ * of being compressed, and if compression is off every full chunk is cold. Their memory is returned to
+ * the arena when the chunk is evicted, cleared or resized and no snapshot still holds it; a snapshot
+ * lets go of its chunks when it becomes unreachable.
+ * <p>
+ * The list view is read-only; the buffer mutates it through {@link #append}, {@link #evictOldest} and
+ * {@link #removeNewest}.
+ */
+class ScrollbackRing extends AbstractList<TerminalLine> implements RandomAccess {
+    /** The number of lines per chunk, a power of two. */
+    static final int CHUNK_SIZE = 64;
+    private static final int CHUNK_SHIFT = 6;
+    private static final int INITIAL_CHUNKS = 4;
+    /** Releases the off-heap chunks held by unreachable snapshots. */
+    private static final Cleaner SNAPSHOT_CLEANER = Cleaner.create();
+
+    /** The maximum number of lines the ring holds. */
+    private final int capacity;
+    /** The chunks, {@link #headChunk} is the array index of the oldest one. Null where stored. */
+    private TerminalLine[][] chunks = new TerminalLine[INITIAL_CHUNKS][];
+    /** The compressed or off-heap chunks, at the same indices as {@link #chunks}. */
+    private StoredChunk[] blocks = new StoredChunk[INITIAL_CHUNKS];
+    private int headChunk;
+    private int chunkCount;
+    /** The index of the oldest line within the oldest chunk. */
+    private int headOffset;
+    /** The number of lines held. */
+    private int size;
+    /** The number of newest lines not yet marked shared by {@link #snapshot()}. */
+    private int unshared;
+    /** The number of oldest chunks that are compressed or off-heap. */
+    private int coldChunks;
+    /** The number of newest lines kept uncompressed, or -1 if compression is off. */
+    private int hotLines = -1;
+    /** The arena cold chunks are moved to, or null to compress them. */
+    private CellArena arena;
+    /** The memory held by the compressed and off-heap chunks. */
+    private long storedBytes;
+    private final BlockCache cache = new BlockCache();
+
+    /**
+     * Creates an empty ring.
+     * @param capacity The maximum number of lines the ring holds.
+     */
+    ScrollbackRing(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Appends a line after the newest one. The ring must not be full.
+     * @param line The line to append.
+     */
+    void append(TerminalLine line) {
+        if (size == capacity) {
+            throw new IllegalStateException("Scrollback is full");
+        }
+        int position = headOffset + size;
+        int chunk = position >>> CHUNK_SHIFT;
+        if (chunk == chunkCount) {
+            if (chunkCount == chunks.length) {
+                growChunks();
+            }
+            chunks[chunkIndex(chunkCount)] = new TerminalLine[CHUNK_SIZE];
+            chunkCount++;
+        }
+        chunks[chunkIndex(chunk)][position & (CHUNK_SIZE - 1)] = line;
+        size++;
+        unshared++;
+        if (hotLines >= 0 || arena != null) {
+            storeColdChunks();
+        }
+    }
+
+    /**
+     * Removes the oldest line. Its slot is left as it is, a snapshot may still read it.
+     * @return The removed line, or null if it was compressed or off-heap.
+     */
+    TerminalLine evictOldest() {
+        if (size == 0) {
+            throw new IllegalStateException("Scrollback is empty");
+        }
+        TerminalLine[] head = chunks[headChunk];
+        TerminalLine line = head == null ? null : head[headOffset];
+        size--;
+        unshared = Math.min(unshared, size);
+        if (++headOffset == CHUNK_SIZE || size == 0) {
+            if (blocks[headChunk] != null) {
+                storedBytes -= blocks[headChunk].memoryBytes();
+                blocks[headChunk].release();
+                blocks[headChunk] = null;
+                coldChunks--;
+            }
+            chunks[headChunk] = null;
+            headChunk = chunkIndex(1);
+            chunkCount--;
+            headOffset = 0;
+            if (size == 0) {
+                clear();
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Takes the newest line back out of the ring, such as when a resize rewraps it together with the screen.
+     * Its chunk is copied first, or turned back into lines if it was stored, since a snapshot may still
+     * read the slot that the next append fills.
+     * @return The removed line.
+     */
+    TerminalLine removeNewest() {
+        if (size == 0) {
+            throw new IllegalStateException("Scrollback is empty");
+        }
+        int position = headOffset + size - 1;
+        int chunk = position >>> CHUNK_SHIFT;
+        int i = chunkIndex(chunk);
+        int slot = position & (CHUNK_SIZE - 1);
+        TerminalLine[] lines = new TerminalLine[CHUNK_SIZE];
+        if (chunks[i] == null) {
+            // Cold chunks form a prefix, so a stored newest chunk is the last of them. Its lines may be
+            // those of the block cache, so they are marked shared to keep eviction from recycling them.
+            for (int s = 0; s <= slot; s++) {
+                lines[s] = blocks[i].line(s, cache);
+                lines[s].markShared();
+            }
+            storedBytes -= blocks[i].memoryBytes();
+            blocks[i].release();
+            blocks[i] = null;
+            coldChunks--;
+        } else {
+            System.arraycopy(chunks[i], 0, lines, 0, slot);
+        }
+        TerminalLine line = chunks[i] == null ? lines[slot] : chunks[i][slot];
+        lines[slot] = null;
+        chunks[i] = lines;
+        size--;
+        unshared = Math.max(0, unshared - 1);
+        if (size == 0) {
+            clear();
+        } else if (slot == 0) {
+            chunks[i] = null;
+            chunkCount--;
+        }
+        return line;
+    }
+
+    /**
+     * @return true if no more lines can be appended without eviction.
+     */
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * @return The maximum number of lines the ring holds.
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets how many of the newest lines stay uncompressed and compresses the chunks that are now cold.
+     * @param hotLines The number of newest lines kept uncompressed, or a negative number to stop
+     * compressing. Lines already compressed stay compressed.
+     */
+    void setCompression(int hotLines) {
+        this.hotLines = Math.max(-1, hotLines);
+        storeColdChunks();
+    }
+
+    /**
+     * Sets the arena cold chunks are moved to and moves the chunks that are now cold.
+     * @param arena The arena, or null to compress cold chunks again. Chunks already stored stay as they are.
+     */
+    void setCellArena(CellArena arena) {
+        this.arena = arena;
+        storeColdChunks();
+    }
+
+    /**
+     * Compresses or moves off-heap every chunk whose lines are all older than the newest {@link #hotLines},
+     * or every full chunk if only an arena is set.
+     */
+    private void storeColdChunks() {
+        int hot = hotLines >= 0 ? hotLines : arena != null ? 0 : -1;
+        if (hot < 0) {
+            return;
+        }
+        int target = Math.min(chunkCount, (headOffset + size - hot) >> CHUNK_SHIFT);
+        while (coldChunks < target) {
+            int i = chunkIndex(coldChunks);
+            StoredChunk block = arena != null ? OffHeapChunk.store(chunks[i], arena) : ScrollbackBlock.compress(chunks[i]);
+            blocks[i] = block;
+            chunks[i] = null;
+            storedBytes += block.memoryBytes();
+            coldChunks++;
+        }
+    }
+
+    /**
+     * @param bytesPerLine The heap cost of an uncompressed line.
+     * @return The approximate memory held by the lines, on the heap or off it.
+     */
+    long memoryBytes(long bytesPerLine) {
+        return (size - coldLines()) * bytesPerLine + storedBytes;
+    }
+
+    /**
+     * @return The number of oldest lines that are compressed or off-heap.
+     */
+    int coldLines() {
+        return coldChunks == 0 ? 0 : Math.min(size, (coldChunks << CHUNK_SHIFT) - headOffset);
+    }
+
+    /**
+     * @return The number of blocks decompressed for reading so far.
+     */
+    long decompressedBlocks() {
+        return cache.misses();
+    }
+
+    /**
+     * Marks the lines appended since the last snapshot as shared and returns an immutable view of
+     * the current lines. Costs one reference per chunk plus one mark per new line.
+     * Off-heap chunks are retained until the snapshot becomes unreachable.
+     * @return The lines held now, oldest first.
+     */
+    List<TerminalLine> snapshot() {
+        for (int i = Math.max(size - unshared, coldLines()); i < size; i++) {
+            get(i).markShared();
+        }
+        unshared = 0;
+        TerminalLine[][] sharedChunks = new TerminalLine[chunkCount][];
+        StoredChunk[] sharedBlocks = new StoredChunk[coldChunks];
+        for (int i = 0; i < chunkCount; i++) {
+            sharedChunks[i] = chunks[chunkIndex(i)];
+        }
+        List<StoredChunk> retained = null;
+        for (int i = 0; i < coldChunks; i++) {
+            StoredChunk block = blocks[chunkIndex(i)];
+            sharedBlocks[i] = block;
+            if (block instanceof OffHeapChunk) {
+                if (retained == null) {
+                    retained = new ArrayList<>();
+                }
+                block.retain();
+                retained.add(block);
+            }
+        }
+        Snapshot snapshot = new Snapshot(sharedChunks, sharedBlocks, cache, headOffset, size);
+        if (retained != null) {
+            List<StoredChunk> held = retained;
+            SNAPSHOT_CLEANER.register(snapshot, () -> held.forEach(StoredChunk::release));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public TerminalLine get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + index);
+        }
+        int position = headOffset + index;
+        int i = chunkIndex(position >>> CHUNK_SHIFT);
+        TerminalLine[] chunk = chunks[i];
+        if (chunk == null) {
+            return blocks[i].line(position & (CHUNK_SIZE - 1), cache);
+        }
+        return chunk[position & (CHUNK_SIZE - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < coldChunks; i++) {
+            blocks[chunkIndex(i)].release();
+        }
+        chunks = new TerminalLine[INITIAL_CHUNKS][];
+        blocks = new StoredChunk[INITIAL_CHUNKS];
+        headChunk = 0;
+        chunkCount = 0;
+        headOffset = 0;
+        size = 0;
+        unshared = 0;
+        coldChunks = 0;
+        storedBytes = 0;
+    }
+
+    private int chunkIndex(int chunk) {
+        int i = headChunk + chunk;
+        return i >= chunks.length ? i - chunks.length : i;
+    }
+
+    private void growChunks() {
+        TerminalLine[][] grown = new TerminalLine[chunks.length * 2][];
+        StoredChunk[] grownBlocks = new StoredChunk[chunks.length * 2];
+        for (int i = 0; i < chunkCount; i++) {
+            grown[i] = chunks[chunkIndex(i)];
+            grownBlocks[i] = blocks[chunkIndex(i)];
+        }
+        chunks = grown;
+        blocks = grownBlocks;
+        headChunk = 0;
+    }
+
+    /**
+     * An immutable view of the scrollback at the time it was taken, sharing the ring's chunks and blocks.
+     */
+    private static final class Snapshot extends AbstractList<TerminalLine> implements RandomAccess {
+        private final TerminalLine[][] chunks;
+        private final StoredChunk[] blocks;
+        private final BlockCache cache;
+        private final int headOffset;
+        private final int size;
+
+        Snapshot(TerminalLine[][] chunks, StoredChunk[] blocks, BlockCache cache, int headOffset, int size) {
+            this.chunks = chunks;
+            this.blocks = blocks;
+            this.cache = cache;
+            this.headOffset = headOffset;
+            this.size = size;
+        }
+
+        @Override
+        public TerminalLine get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Row index out of bounds: " + index);
+            }
+            int position = headOffset + index;
+            int chunk = position >>> CHUNK_SHIFT;
+            TerminalLine[] lines = chunks[chunk];
+            if (lines == null) {
+                return blocks[chunk].line(position & (CHUNK_SIZE - 1), cache);
+            }
+            return lines[position & (CHUNK_SIZE - 1)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
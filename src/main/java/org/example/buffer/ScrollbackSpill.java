@@ -0,0 +1,368 @@
+package org.example.buffer;
+
+import org.example.model.AttributeTable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Disk-backed history for lines that leave a buffer's in-memory scrollback, see
+ * {@link TerminalBuffer#setScrollbackSpill}. Lines are appended to fixed-size segment files that are
+ * memory-mapped, so the history takes page cache rather than heap, and the heap holds only an
+ * offset per line. When more than {@code maxSegments} segments exist the oldest is unmapped and deleted,
+ * and its lines leave the history.
+ * <p>
+ * A line is stored as the id of the logical line it belongs to and the offset of its first cell within that
+ * line (see {@link TerminalBuffer#getLineId}), its width, its flags (bit 0 set if the line is wrapped), the
+ * number of cells up to the last one that is not a blank with default attributes, those characters, and their
+ * attribute ids as runs:
+ * <pre>
+ * i64 lineId, i64 lineOffset, u16 width, u16 flags, u16 length, u16 characters[length],
+ * u16 runCount, (u16 runLength, u16 attributeId)[runCount]
+ * </pre>
+ * Attribute ids are those of the process-wide {@link AttributeTable}, so the files are only meaningful to
+ * the process that wrote them. They live in a directory of their own that {@link #close()} deletes.
+ * <p>
+ * Not thread-safe on its own; the owning buffer serializes access.
+ */
+public class ScrollbackSpill implements AutoCloseable {
+    /** The smallest accepted segment size. */
+    public static final long MIN_SEGMENT_BYTES = 4096;
+    private static final ValueLayout.OfChar CHAR = ValueLayout.JAVA_CHAR_UNALIGNED;
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED;
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    /** The retained segments, oldest first; the last one is being written. */
+    private final List<Segment> segments = new ArrayList<>();
+    /** The number of lines ever appended, which is also the absolute number of the next line. */
+    private long appended;
+    private long nextSegmentId;
+    private long deletedSegments;
+    private boolean closed;
+
+    /** The width lines are presented at, or -1 to keep the width they were spilled with. */
+    private int width = -1;
+
+    /**
+     * One mapped segment file.
+     */
+    private static final class Segment {
+        final Path path;
+        final Arena arena;
+        final MemorySegment memory;
+        /** The absolute number of the first line. */
+        final long firstLine;
+        int[] offsets = new int[256];
+        int lineCount;
+        int used;
+
+        Segment(Path path, Arena arena, MemorySegment memory, long firstLine) {
+            this.path = path;
+            this.arena = arena;
+            this.memory = memory;
+            this.firstLine = firstLine;
+        }
+    }
+
+    /**
+     * Creates a spill in a new directory under the given one.
+     * @param parent The directory to create the spill's directory in.
+     * @param segmentBytes The size of each segment file.
+     * @param maxSegments The number of segments kept; older ones are deleted.
+     * @throws IOException if the directory cannot be created
+     * @throws IllegalArgumentException if a size is out of range
+     */
+    public ScrollbackSpill(Path parent, long segmentBytes, int maxSegments) throws IOException {
+        if (parent == null) {
+            throw new IllegalArgumentException("Directory cannot be null");
+        }
+        if (segmentBytes < MIN_SEGMENT_BYTES || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between " + MIN_SEGMENT_BYTES + " and " + Integer.MAX_VALUE);
+        }
+        if (maxSegments < 1) {
+            throw new IllegalArgumentException("At least one segment must be kept");
+        }
+        this.directory = Files.createTempDirectory(Files.createDirectories(parent), "scrollback-");
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Appends a line after the newest one.
+     * @param line The line; it is read, not kept.
+     * @param lineId The id of the logical line it belongs to.
+     * @param lineOffset The offset of its first cell within the logical line.
+     * @throws UncheckedIOException if a new segment file cannot be created
+     * @throws IllegalArgumentException if the line is too wide for a segment
+     */
+    void append(TerminalLine line, long lineId, long lineOffset) {
+        if (closed) {
+            throw new IllegalStateException("Scrollback spill is closed");
+        }
+        int lineWidth = line.getWidth();
+        int length = line.contentLength();
+        int runs = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || line.getAttributeId(i) != line.getAttributeId(i - 1)) {
+                runs++;
+            }
+        }
+        int bytes = 2 * Long.BYTES + 4 * Short.BYTES + length * Character.BYTES + runs * 2 * Short.BYTES;
+        if (lineWidth > 0xFFFF || bytes > segmentBytes) {
+            throw new IllegalArgumentException("Line does not fit in a segment");
+        }
+
+        Segment segment = segments.isEmpty() ? null : segments.getLast();
+        if (segment == null || segment.used + bytes > segmentBytes) {
+            segment = openSegment();
+        }
+        MemorySegment memory = segment.memory;
+        long at = segment.used;
+        memory.set(LONG, at, lineId);
+        memory.set(LONG, at + 8, lineOffset);
+        at += 16;
+        memory.set(SHORT, at, (short) lineWidth);
+        memory.set(SHORT, at + 2, (short) (line.isWrapped() ? 1 : 0));
+        memory.set(SHORT, at + 4, (short) length);
+        at += 6;
+        for (int i = 0; i < length; i++, at += 2) {
+            memory.set(CHAR, at, line.getCharacter(i));
+        }
+        memory.set(SHORT, at, (short) runs);
+        at += 2;
+        for (int start = 0; start < length; ) {
+            int id = line.getAttributeId(start);
+            int end = start + 1;
+            while (end < length && line.getAttributeId(end) == id && end - start < 0xFFFF) {
+                end++;
+            }
+            memory.set(SHORT, at, (short) (end - start));
+            memory.set(SHORT, at + 2, (short) id);
+            at += 4;
+            start = end;
+        }
+
+        if (segment.lineCount == segment.offsets.length) {
+            segment.offsets = Arrays.copyOf(segment.offsets, segment.lineCount * 2);
+        }
+        segment.offsets[segment.lineCount++] = segment.used;
+        segment.used = (int) at;
+        appended++;
+    }
+
+    private Segment openSegment() {
+        Path path = directory.resolve(String.format("%08d.seg", nextSegmentId++));
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.SPARSE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes, arena);
+            Segment segment = new Segment(path, arena, memory, appended);
+            segments.add(segment);
+            if (segments.size() > maxSegments) {
+                delete(segments.removeFirst());
+                deletedSegments++;
+            }
+            return segment;
+        } catch (IOException e) {
+            arena.close();
+            throw new UncheckedIOException("Cannot create scrollback segment " + path, e);
+        }
+    }
+
+    private static void delete(Segment segment) {
+        segment.arena.close();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // The mapping is gone; a file that cannot be deleted now is removed with the directory or left behind.
+        }
+    }
+
+    /**
+     * @return The number of lines retained, oldest first.
+     */
+    long size() {
+        return segments.isEmpty() ? 0 : appended - segments.getFirst().firstLine;
+    }
+
+    /**
+     * Reads a retained line.
+     * @param index The index of the line, 0 being the oldest retained one.
+     * @return A new line holding the content.
+     */
+    TerminalLine get(long index) {
+        Segment segment = segmentOf(index);
+        MemorySegment memory = segment.memory;
+        long at = offsetOf(segment, index) + 2 * Long.BYTES;
+        int lineWidth = memory.get(SHORT, at) & 0xFFFF;
+        boolean wrapped = (memory.get(SHORT, at + 2) & 1) != 0;
+        int length = memory.get(SHORT, at + 4) & 0xFFFF;
+        at += 6;
+        char[] characters = new char[lineWidth];
+        short[] attributes = new short[lineWidth];
+        MemorySegment.copy(memory, CHAR, at, characters, 0, length);
+        Arrays.fill(characters, length, lineWidth, ' ');
+        at += (long) length * Character.BYTES;
+        int runs = memory.get(SHORT, at) & 0xFFFF;
+        at += 2;
+        for (int r = 0, cell = 0; r < runs; r++, at += 4) {
+            int runLength = memory.get(SHORT, at) & 0xFFFF;
+            Arrays.fill(attributes, cell, cell + runLength, memory.get(SHORT, at + 2));
+            cell += runLength;
+        }
+
+        TerminalLine result = TerminalLine.of(characters, attributes);
+        result.setWrapped(wrapped);
+        if (width >= 0) {
+            result.setWidth(width);
+        }
+        return result;
+    }
+
+    /**
+     * @param index The index of a retained line, 0 being the oldest.
+     * @return The id of the logical line it belongs to.
+     */
+    long lineId(long index) {
+        Segment segment = segmentOf(index);
+        return segment.memory.get(LONG, offsetOf(segment, index));
+    }
+
+    /**
+     * @param index The index of a retained line, 0 being the oldest.
+     * @return The offset of its first cell within its logical line.
+     */
+    long lineOffset(long index) {
+        Segment segment = segmentOf(index);
+        return segment.memory.get(LONG, offsetOf(segment, index) + Long.BYTES);
+    }
+
+    /**
+     * Finds the first retained line of a logical line, by binary search over the ids.
+     * @param lineId The id.
+     * @return The index of the first retained line with that id or a higher one, or {@link #size()} if none has.
+     */
+    long indexOfLineId(long lineId) {
+        long low = 0;
+        long high = size();
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (lineId(mid) < lineId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Segment segmentOf(long index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + index);
+        }
+        long line = segments.getFirst().firstLine + index;
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).firstLine <= line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private long offsetOf(Segment segment, long index) {
+        return segment.offsets[(int) (segments.getFirst().firstLine + index - segment.firstLine)];
+    }
+
+    /**
+     * Presents all lines at a new width. Spilled lines are not rewrapped: they are cut or padded to it when
+     * read, and keep their stored cells, so widening again shows what a narrower width cut.
+     * @param width The new width.
+     */
+    void setWidth(int width) {
+        this.width = width;
+    }
+
+    /**
+     * Deletes all segments. Lines appended afterwards start a new history.
+     */
+    void clear() {
+        for (Segment segment : segments) {
+            delete(segment);
+        }
+        segments.clear();
+    }
+
+    /**
+     * @return The number of lines retained.
+     */
+    public long getLineCount() {
+        return size();
+    }
+
+    /**
+     * @return The number of segment files on disk.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return The bytes written to the retained segments.
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.used;
+        }
+        return used;
+    }
+
+    /**
+     * @return The number of segments deleted by the retention limit.
+     */
+    public long getDeletedSegments() {
+        return deletedSegments;
+    }
+
+    /**
+     * @return The directory holding the segment files.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Unmaps and deletes all segments and the spill's directory.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        clear();
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            // Left behind; it is under the caller's directory and holds nothing the process still uses.
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.example.buffer;
+
+import org.example.model.SearchHit;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What to look for with {@link TerminalBuffer#search}. Matches never span lines, and matches within
+ * a line do not overlap. A query can be cancelled from another thread while a search runs.
+ */
+public final class SearchQuery {
+    /**
+     * How the text of a query is matched.
+     */
+    public enum Mode {
+        /** The text matches exactly. */
+        LITERAL,
+        /** The text matches ignoring case, character by character. */
+        IGNORE_CASE,
+        /** The text is a {@link Pattern}. Zero-length matches are skipped. */
+        REGEX
+    }
+
+    private final String text;
+    private final Mode mode;
+    private final int limit;
+    /** The compiled pattern for {@link Mode#REGEX}, otherwise null. */
+    private final Pattern pattern;
+    /** The text in upper and lower case for {@link Mode#IGNORE_CASE}, otherwise null. */
+    private final char[] upper;
+    private final char[] lower;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a query without a hit limit.
+     * @param text The text or pattern to find.
+     * @param mode How to match it.
+     */
+    public SearchQuery(String text, Mode mode) {
+        this(text, mode, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param text The text or pattern to find.
+     * @param mode How to match it.
+     * @param limit The most hits to return; the first ones by position are kept.
+     * @throws IllegalArgumentException if text or mode is null, text is empty or limit is not positive
+     * @throws java.util.regex.PatternSyntaxException if the mode is {@link Mode#REGEX} and the pattern is invalid
+     */
+    public SearchQuery(String text, Mode mode, int limit) {
+        if (text == null || mode == null) {
+            throw new IllegalArgumentException("Text and mode cannot be null");
+        }
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Text cannot be empty");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        this.text = text;
+        this.mode = mode;
+        this.limit = limit;
+        this.pattern = mode == Mode.REGEX ? Pattern.compile(text) : null;
+        if (mode == Mode.IGNORE_CASE) {
+            upper = new char[text.length()];
+            lower = new char[text.length()];
+            for (int i = 0; i < text.length(); i++) {
+                upper[i] = Character.toUpperCase(text.charAt(i));
+                lower[i] = Character.toLowerCase(upper[i]);
+            }
+        } else {
+            upper = null;
+            lower = null;
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Stops searches running with this query; they throw {@link CancellationException}.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the query was cancelled
+     */
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Search was cancelled");
+        }
+    }
+
+    /**
+     * @return A matcher to reuse across lines for {@link Mode#REGEX}, otherwise null.
+     */
+    Matcher newMatcher() {
+        return pattern == null ? null : pattern.matcher("");
+    }
+
+    /**
+     * Adds the matches in one line.
+     * @param line The line's characters.
+     * @param row The row of the line.
+     * @param rows The rows, which give the line id and offset of each hit.
+     * @param matcher The matcher from {@link #newMatcher()}.
+     * @param hits The list to add to.
+     * @param max The size the list may grow to.
+     */
+    void find(CharArraySequence line, int row, SearchTask.Rows rows, Matcher matcher, List<SearchHit> hits, int max) {
+        if (matcher != null) {
+            matcher.reset(line);
+            while (hits.size() < max && matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    hits.add(hit(row, matcher.start(), matcher.end() - matcher.start(), rows));
+                }
+            }
+            return;
+        }
+        char[] characters = line.array;
+        int end = line.offset + line.length - text.length();
+        for (int column = line.offset; column <= end && hits.size() < max; ) {
+            if (matchesAt(characters, column)) {
+                hits.add(hit(row, column - line.offset, text.length(), rows));
+                column += text.length();
+            } else {
+                column++;
+            }
+        }
+    }
+
+    private static SearchHit hit(int row, int column, int length, SearchTask.Rows rows) {
+        return new SearchHit(row, column, length, rows.lineId(row), rows.lineOffset(row) + column);
+    }
+
+    private boolean matchesAt(char[] characters, int at) {
+        if (upper == null) {
+            for (int i = 0; i < text.length(); i++) {
+                if (characters[at + i] != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        for (int i = 0; i < upper.length; i++) {
+            char c = characters[at + i];
+            if (c != upper[i] && c != lower[i]) {
+                char u = Character.toUpperCase(c);
+                if (u != upper[i] && Character.toLowerCase(u) != lower[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
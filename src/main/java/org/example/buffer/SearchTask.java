@@ -0,0 +1,101 @@
+package org.example.buffer;
+
+import org.example.model.SearchHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+
+/**
+ * Searches a range of rows for {@link TerminalBuffer#search}. Ranges longer than {@link #CHUNK_LINES}
+ * are split in half and searched in parallel; the halves' hits are concatenated, so they stay in order.
+ * Lines are matched in their own storage, through a {@link CharArraySequence} view reused for every line.
+ * <p>
+ * Once a range alone has found the query's limit of hits, no row after its last hit can be among the
+ * first hits, so ranges further on stop at that row.
+ */
+final class SearchTask extends RecursiveTask<List<SearchHit>> {
+    /** The number of rows searched by one task without splitting. */
+    static final int CHUNK_LINES = 2048;
+
+    /**
+     * The rows searched, read from pool threads, so they must be safe for concurrent reads.
+     */
+    interface Rows {
+        /**
+         * @return The row's cells.
+         */
+        TerminalLine line(int row);
+
+        /**
+         * @return The id of the row's logical line, see {@link TerminalBuffer#getLineId}.
+         */
+        long lineId(int row);
+
+        /**
+         * @return The offset of the row's first cell within its logical line.
+         */
+        long lineOffset(int row);
+    }
+
+    private final SearchQuery query;
+    private final Rows rows;
+    private final int from;
+    private final int to;
+    /** The row past which no task needs to search, shared by all tasks of a search. */
+    private final AtomicInteger cutoff;
+
+    /**
+     * @param query The query.
+     * @param rows The rows.
+     * @param from The first row.
+     * @param to The row after the last one.
+     */
+    SearchTask(SearchQuery query, Rows rows, int from, int to) {
+        this(query, rows, from, to, new AtomicInteger(Integer.MAX_VALUE));
+    }
+
+    private SearchTask(SearchQuery query, Rows rows, int from, int to, AtomicInteger cutoff) {
+        this.query = query;
+        this.rows = rows;
+        this.from = from;
+        this.to = to;
+        this.cutoff = cutoff;
+    }
+
+    @Override
+    protected List<SearchHit> compute() {
+        if (to - from > CHUNK_LINES) {
+            int middle = (from + to) >>> 1;
+            SearchTask right = new SearchTask(query, rows, middle, to, cutoff);
+            right.fork();
+            List<SearchHit> hits = new SearchTask(query, rows, from, middle, cutoff).compute();
+            List<SearchHit> rightHits = right.join();
+            int room = query.getLimit() - hits.size();
+            if (room > 0) {
+                hits.addAll(rightHits.size() > room ? rightHits.subList(0, room) : rightHits);
+            }
+            return hits;
+        }
+
+        List<SearchHit> hits = new ArrayList<>();
+        CharArraySequence view = new CharArraySequence();
+        Matcher matcher = query.newMatcher();
+        int limit = query.getLimit();
+        try {
+            for (int row = from; row < to && row <= cutoff.get(); row++) {
+                query.checkCancelled();
+                query.find(rows.line(row).viewCharacters(view), row, rows, matcher, hits, limit);
+                if (hits.size() >= limit) {
+                    cutoff.accumulateAndGet(row, Math::min);
+                    break;
+                }
+            }
+        } finally {
+            view.release();
+        }
+        return hits;
+    }
+}
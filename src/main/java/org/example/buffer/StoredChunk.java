@@ -0,0 +1,53 @@
+package org.example.buffer;
+
+/**
+ * A full scrollback chunk moved out of its {@code TerminalLine[]} form, see {@link ScrollbackRing}.
+ * Immutable, so it can be shared with snapshots.
+ */
+interface StoredChunk {
+    /** The bits of a stored width word that hold the width. */
+    int WIDTH_MASK = 0xFFFF;
+    /** Set in a stored width word when the line is {@link TerminalLine#isWrapped() wrapped}. */
+    int WRAPPED = 1 << 16;
+
+    /**
+     * Packs the width of a line and whether it is wrapped into the word stored chunks keep per line.
+     * @param line The line, or null for an unused slot of a chunk, stored as an empty line.
+     * @return The width word.
+     * @throws IllegalArgumentException if the line is wider than {@value #WIDTH_MASK} cells
+     */
+    static int widthWord(TerminalLine line) {
+        if (line == null) {
+            return 0;
+        }
+        int width = line.getWidth();
+        if (width > WIDTH_MASK) {
+            throw new IllegalArgumentException("Line is wider than " + WIDTH_MASK + " cells");
+        }
+        return width | (line.isWrapped() ? WRAPPED : 0);
+    }
+
+    /**
+     * @param slot The index of the line within the chunk.
+     * @param cache The cache to decompress through, if the chunk needs one.
+     * @return The line. It must not be changed.
+     */
+    TerminalLine line(int slot, BlockCache cache);
+
+    /**
+     * @return The approximate memory held by the chunk.
+     */
+    long memoryBytes();
+
+    /**
+     * Adds a holder of the chunk's storage, such as a snapshot.
+     */
+    default void retain() {
+    }
+
+    /**
+     * Drops a holder of the chunk's storage; the storage is freed when none is left.
+     */
+    default void release() {
+    }
+}
@@ -2,42 +2,179 @@ package org.example.buffer;
 
 import org.example.model.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongUnaryOperator;
+import java.util.regex.Matcher;
 
 public class TerminalBuffer {
     private int width;
     private int height;
     private int maxScrollbackLines;
-    private ArrayList<TerminalLine> screen;
-    private LinkedList<TerminalLine> scrollback;
+    private ScreenRing screen;
+    private ScrollbackRing scrollback;
     CursorPosition cursor;
+    /** Interned id of the attributes applied to future writes, see {@link AttributeTable}. */
+    private int currentAttributes = AttributeTable.DEFAULT_ID;
+    /** Scratch runs for cells cascading from one row into the next during insertText. */
+    private final CellRun insertCarry = new CellRun();
+    private final CellRun insertOverflow = new CellRun();
+    /** Reusable view that lets char[] input go through the CharSequence write paths. */
+    private final CharArraySequence charArrayView = new CharArraySequence();
+    /**
+     * Changed columns per screen row since the last {@link #collectDamage()}, from inclusive and to exclusive.
+     * A row is clean when its to is not past its from.
+     */
+    private int[] damageFrom;
+    private int[] damageTo;
+    /** The shared scrollback budget this buffer accounts to, or null. */
+    private ScrollbackBudget.Member budgetMember;
+    /** Disk-backed history that lines leaving the scrollback are appended to, or null. */
+    private ScrollbackSpill spill;
+    /** Trigram index over the in-memory scrollback, or null. */
+    private TrigramIndex searchIndex;
+    /** The logical lines of the scrollback and the rows they take at the current width, see {@link #getLineId}. */
+    private final LineIndex lines;
+    /** The scrollback rows at the current width, see {@link #getScrollback()}. */
+    private final List<TerminalLine> scrollbackRows = new AbstractList<>() {
+        @Override
+        public TerminalLine get(int index) {
+            return lines.get(Objects.checkIndex(index, size()));
+        }
+
+        @Override
+        public int size() {
+            return heldRows();
+        }
+    };
+    /** Reads rows for {@link #search}, see {@link #searchLine}. */
+    private final SearchTask.Rows searchRows = new SearchTask.Rows() {
+        @Override
+        public TerminalLine line(int row) {
+            return searchLine(row);
+        }
+
+        @Override
+        public long lineId(int row) {
+            return lineIdAt(row);
+        }
+
+        @Override
+        public long lineOffset(int row) {
+            return lineOffsetAt(row);
+        }
+    };
+    /** Whether writing past the last column continues on the next line, see {@link #setAutoWrap}. */
+    private boolean autoWrap;
+    /** Set when the last column was written with auto-wrap on; the next character wraps to the next line. */
+    private boolean wrapPending;
+    /** The journal changes are recorded in, or null. */
+    private BufferJournal journal;
 
     public TerminalBuffer(int width, int height, int maxScrollbackLines) {
         this.width = width;
         this.height = height;
         this.maxScrollbackLines = maxScrollbackLines;
 
-        this.screen = new ArrayList<>(height);
         initializeScreen();
         
-        this.scrollback = new LinkedList<>();
+        this.scrollback = new ScrollbackRing(maxScrollbackLines);
+        this.lines = new LineIndex(scrollback, width);
         this.cursor = new CursorPosition(0, 0);
     }
 
     private void initializeScreen() {
+        TerminalLine[] rows = new TerminalLine[height];
         for (int i = 0; i < height; i++) {
-            screen.add(createEmptyLine());
+            rows[i] = createEmptyLine();
+        }
+        screen = new ScreenRing(rows);
+        resetDamageTracking();
+    }
+
+    /**
+     * Sizes the damage arrays to the screen and marks the whole screen damaged.
+     */
+    private void resetDamageTracking() {
+        damageFrom = new int[height];
+        damageTo = new int[height];
+        damageAll();
+    }
+
+    private void damage(int row, int from, int to) {
+        if (from < damageFrom[row]) {
+            damageFrom[row] = from;
+        }
+        if (to > damageTo[row]) {
+            damageTo[row] = to;
+        }
+    }
+
+    private void damageAll() {
+        Arrays.fill(damageFrom, 0);
+        Arrays.fill(damageTo, width);
+    }
+
+    /**
+     * Returns the screen regions changed since the last call and marks the screen clean.
+     * A new or resized buffer starts out fully damaged, and scrolling damages every row.
+     * Changes made through the lines returned by {@link #getScreen()} are not tracked.
+     * @return one region per changed row, top first
+     */
+    public List<DamageRegion> collectDamage() {
+        List<DamageRegion> regions = new ArrayList<>();
+        for (int row = 0; row < height; row++) {
+            if (damageTo[row] > damageFrom[row]) {
+                regions.add(new DamageRegion(row, damageFrom[row], damageTo[row]));
+                damageFrom[row] = Integer.MAX_VALUE;
+                damageTo[row] = 0;
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * @return true if the screen changed since the last {@link #collectDamage()}
+     */
+    public boolean hasDamage() {
+        for (int row = 0; row < height; row++) {
+            if (damageTo[row] > damageFrom[row]) {
+                return true;
+            }
         }
+        return false;
     }
 
     private TerminalLine createEmptyLine() {
         return new TerminalLine(width);
     }
 
+    /**
+     * Turns a line that dropped out of the buffer into an empty line of the current width,
+     * or allocates one if there is nothing to reuse.
+     * @param line the dropped line, or null
+     * @return an empty line
+     */
+    private TerminalLine recycleLine(TerminalLine line) {
+        if (line == null || line.isShared()) {
+            return createEmptyLine();
+        }
+        line.setWidth(width);
+        line.clear();
+        return line;
+    }
+
+    /**
+     * @return A copy of the attributes applied to future writes.
+     */
     public CellAttributes getCurrentAttributes(){
-        return screen.get(cursor.getRow()).getCell(cursor.getColumn()).getAttributes();
+        return new CellAttributes(AttributeTable.attributesOf(currentAttributes));
     }
 
     public int getWidth() {
@@ -52,20 +189,36 @@ public class TerminalBuffer {
         return maxScrollbackLines;
     }
 
-    public ArrayList<TerminalLine> getScreen() {
+    /**
+     * @return A read-only view of the screen lines, top first.
+     */
+    public List<TerminalLine> getScreen() {
         return screen;
     }
 
-    public LinkedList<TerminalLine> getScrollback() {
-        return scrollback;
+    /**
+     * @return A read-only view of the scrollback lines at the current width, oldest first. Lines stored at
+     * another width are rewrapped as they are read, into new lines.
+     */
+    public List<TerminalLine> getScrollback() {
+        return scrollbackRows;
     }
 
     public CursorPosition getCursor() {
         return cursor;
     }
 
+    /**
+     * Makes the given attributes current and applies them to the cell under the cursor.
+     * @param attrs the attributes to apply
+     */
     public void applyToCurrentCell(CellAttributes attrs){
-        screen.get(cursor.getRow()).getCell(cursor.getColumn()).setAttributes(attrs);
+        currentAttributes = AttributeTable.intern(attrs);
+        record(BufferJournal.APPLY_ATTRIBUTES, currentAttributesCode());
+        TerminalLine line = getCurrentLine();
+        int column = cursor.getColumn();
+        line.set(column, line.getCharacter(column), currentAttributes);
+        damage(cursor.getRow(), column, column + 1);
     }
 
     /**
@@ -78,7 +231,7 @@ public class TerminalBuffer {
             throw new IllegalArgumentException("Color cannot be null");
         }
 
-        getCurrentAttributes().setForegroundColor(color);
+        updateCurrentAttributes(CellAttributes.withForeground(currentAttributesCode(), color));
     }
 
     /**
@@ -90,7 +243,7 @@ public class TerminalBuffer {
         if (color == null) {
             throw new IllegalArgumentException("Color cannot be null");
         }
-        getCurrentAttributes().setBackgroundColor(color);
+        updateCurrentAttributes(CellAttributes.withBackground(currentAttributesCode(), color));
     }
 
     /**
@@ -98,7 +251,7 @@ public class TerminalBuffer {
      * @param bold true to enable bold, false to disable
      */
     public void setBold(boolean bold) {
-        getCurrentAttributes().getStyle().setBold(bold);
+        updateCurrentAttributes(CellAttributes.withStyleBit(currentAttributesCode(), StyleFlags.BOLD, bold));
     }
 
     /**
@@ -106,7 +259,7 @@ public class TerminalBuffer {
      * @param italic true to enable italic, false to disable
      */
     public void setItalic(boolean italic) {
-        getCurrentAttributes().getStyle().setItalic(italic);
+        updateCurrentAttributes(CellAttributes.withStyleBit(currentAttributesCode(), StyleFlags.ITALIC, italic));
     }
 
     /**
@@ -114,7 +267,7 @@ public class TerminalBuffer {
      * @param underline true to enable underline, false to disable
      */
     public void setUnderline(boolean underline) {
-        getCurrentAttributes().getStyle().setUnderline(underline);
+        updateCurrentAttributes(CellAttributes.withStyleBit(currentAttributesCode(), StyleFlags.UNDERLINE, underline));
     }
 
     /**
@@ -126,19 +279,32 @@ public class TerminalBuffer {
         if (attrs == null) {
             throw new IllegalArgumentException("Attributes cannot be null");
         }
-        setForegroundColor(attrs.getForegroundColor());
-        setBackgroundColor(attrs.getBackgroundColor());
-        getCurrentAttributes().setStyle(new StyleFlags(attrs.getStyle()));
+        if (attrs.getForegroundColor() == null || attrs.getBackgroundColor() == null) {
+            throw new IllegalArgumentException("Color cannot be null");
+        }
+        currentAttributes = AttributeTable.intern(attrs);
+        record(BufferJournal.ATTRIBUTES, currentAttributesCode());
     }
 
     /**
      * Resets attributes to defaults.
      */
     public void resetAttributes() {
-        getCurrentAttributes().reset();
+        currentAttributes = AttributeTable.DEFAULT_ID;
+        record(BufferJournal.ATTRIBUTES, currentAttributesCode());
+    }
+
+    private int currentAttributesCode() {
+        return AttributeTable.codeOf(currentAttributes);
+    }
+
+    private void updateCurrentAttributes(int code) {
+        currentAttributes = AttributeTable.intern(code);
+        record(BufferJournal.ATTRIBUTES, code);
     }
 
     private void clampCursorToBounds(){
+        wrapPending = false;
         if (cursor.getRow() < 0)  {
             cursor.setRow(0);
         }else if (cursor.getRow() >= height-1) {
@@ -161,155 +327,289 @@ public class TerminalBuffer {
 
     public void setCursorPosition(int  column, int row){
         if (validatePosition(column, row)){
+            wrapPending = false;
             cursor.setColumn(column);
             cursor.setRow(row);
+            record(BufferJournal.SET_CURSOR, column, row);
             return;
         }
         throw new IllegalArgumentException("Invalid cursor position");
     }
 
     public void moveCursorUp(int n){
+        record(BufferJournal.MOVE_UP, n);
         cursor.setRow(cursor.getRow() - n);
         clampCursorToBounds();
     }
 
     public void moveCursorDown(int n){
+        record(BufferJournal.MOVE_DOWN, n);
         cursor.setRow(cursor.getRow() + n);
         clampCursorToBounds();
     }
 
     public void moveCursorLeft(int n){
+        record(BufferJournal.MOVE_LEFT, n);
         cursor.setColumn(cursor.getColumn() - n);
         clampCursorToBounds();
     }
 
     public void moveCursorRight(int n){
+        record(BufferJournal.MOVE_RIGHT, n);
         cursor.setColumn(cursor.getColumn() + n);
         clampCursorToBounds();
     }
 
     private TerminalLine getCurrentLine(){
-        return screen.get(cursor.getRow());
+        return writableLine(cursor.getRow());
     }
 
     /**
-     * Inserts a character at the current cursor position, shifting existing content right.
-     * If content is pushed off the end of the line, it wraps to the next line recursively.
-     * Preserves the attributes of wrapped characters.
-     *
-     * @param line the line to insert into
-     * @param c the character to insert
+     * Returns a screen row that may be changed in place. A row held by a snapshot is first replaced
+     * with a private copy, so the snapshot keeps the old content.
+     * @param row the screen row
+     * @return the line at the row, not shared with any snapshot
      */
-    private void insertAndShift(TerminalLine line, char c) {
-        int col = cursor.getColumn();
-        int row = cursor.getRow();
-
-        // Save the cell that will fall off the right edge (if any)
-        Cell overflowCell = new Cell(line.getCell(width - 1));
-
-        CellAttributes currentCellAttributes = getCurrentAttributes();
-
-        // CurrentAttributes.style is already a new instance of StyleAttributes
-        Cell newCell = new Cell(c, currentCellAttributes.getForegroundColor(),
-                currentCellAttributes.getBackgroundColor(), currentCellAttributes.getStyle());
-
-        // Shift all cells to the right, starting from the end
-        for (int i = width - 1; i > col; i--) {
-            line.setCell(i, new Cell(line.getCell(i - 1)));
+    private TerminalLine writableLine(int row) {
+        TerminalLine line = screen.get(row);
+        if (line.isShared()) {
+            line = line.copy();
+            screen.replace(row, line);
         }
+        return line;
+    }
 
-        // Insert the new cell at the cursor position
-        line.setCell(col, newCell);
-
-        // Handle wrapping if we pushed a non-empty cell off the edge
-        if (!overflowCell.isEmpty() && row < height - 1) {
-            // Save current state
-            int originalCol = cursor.getColumn();
-            int originalRow = cursor.getRow();
-            CellAttributes originalAttrs = new CellAttributes(getCurrentAttributes());
-
-            // Set cursor to the beginning of the next line
-            cursor.setColumn(0);
-            cursor.setRow(row + 1);
-
-            // Set attributes to match the overflow cell (to preserve its formatting)
-            CellAttributes currentAttributes = getCurrentAttributes();
-            currentAttributes.setForegroundColor(overflowCell.getForegroundColor());
-            currentAttributes.setBackgroundColor(overflowCell.getBackgroundColor());
-            currentAttributes.setStyle(overflowCell.getStyle());
-
-            // Recursively insert the overflow character into the next line
-            TerminalLine nextLine = screen.get(row + 1);
-            insertAndShift(nextLine, overflowCell.getCharacter());
-
-            // Restore the original cursor position and attributes
-            cursor.setColumn(originalCol);
-            cursor.setRow(originalRow);
-            currentAttributes = originalAttrs;
+    /**
+     * Inserts a run of text without newlines at the cursor, shifting existing content right.
+     * Cells pushed off the end of a row are inserted at the start of the next row, cascading
+     * down in a single forward pass until nothing but blanks overflows or the bottom row is reached.
+     * Wrapped cells keep their attributes. The cursor moves right by the length of the run.
+     *
+     * @param text the text to insert from
+     * @param start the index of the first character of the run
+     * @param end the index after the last character of the run
+     */
+    private void insertRun(CharSequence text, int start, int end) {
+        if (start == end) {
+            return;
         }
-
-        // Move cursor right after insertion
-        moveCursorRight(1);
+        int row = cursor.getRow();
+        CellRun carry = insertCarry;
+        CellRun overflow = insertOverflow;
+        writableLine(row).insert(cursor.getColumn(), text, start, end, currentAttributes, overflow);
+        damage(row, cursor.getColumn(), width);
+        overflow.trimTrailingBlanks();
+        while (overflow.length > 0 && row < height - 1) {
+            row++;
+            CellRun next = carry;
+            carry = overflow;
+            overflow = next;
+            writableLine(row).insert(0, carry, overflow);
+            damage(row, 0, width);
+            overflow.trimTrailingBlanks();
+        }
+        cursor.setColumn(cursor.getColumn() + end - start);
+        clampCursorToBounds();
     }
 
     /**
      * Inserts text at the current cursor position.
-     * Each character is inserted using insertAndShift, which may cause line wrapping.
+     * Each run of characters between newlines is inserted at once by insertRun,
+     * which may push content into the following rows.
      * The cursor moves right as characters are inserted.
      *
      * @param text the text to insert
      */
     public void insertText(String text) {
+        insertText((CharSequence) text);
+    }
+
+    /**
+     * Inserts text at the current cursor position without copying it first.
+     * Array-backed {@link java.nio.CharBuffer}s are read directly from their array;
+     * the buffer's position is not changed.
+     *
+     * @param text the text to insert
+     * @see #insertText(String)
+     */
+    public void insertText(CharSequence text) {
         if (text == null) {
             throw new IllegalArgumentException("Text cannot be null");
         }
+        if (journal != null) {
+            journal.recordText(BufferJournal.INSERT_TEXT, text);
+        }
 
-        for (char c : text.toCharArray()) {
-            if (c == '\n') {
-                newline();
-                continue;
-            }
-            TerminalLine line = getCurrentLine();
-            insertAndShift(line, c);
+        int length = text.length();
+        int start = 0;
+        int newline;
+        while ((newline = CharSequences.indexOf(text, '\n', start, length)) >= 0) {
+            insertRun(text, start, newline);
+            newline();
+            start = newline + 1;
         }
+        insertRun(text, start, length);
     }
 
+    /**
+     * Inserts a slice of a char array at the current cursor position without copying it first.
+     *
+     * @param buf the array holding the text
+     * @param off the index of the first character
+     * @param len the number of characters
+     * @throws IndexOutOfBoundsException if the slice is outside the array
+     * @see #insertText(String)
+     */
+    public void insertText(char[] buf, int off, int len) {
+        if (buf == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        Objects.checkFromIndexSize(off, len, buf.length);
+        try {
+            insertText(charArrayView.reset(buf, off, len));
+        } finally {
+            charArrayView.release();
+        }
+    }
+
+    /**
+     * Writes text at the cursor, overwriting existing content with the current attributes.
+     * Each run of characters up to the next newline or the end of the line is copied into
+     * the line in one operation and the cursor is updated once per run.
+     * Writing stops once the last column of a line has been written, unless auto-wrap is on,
+     * see {@link #setAutoWrap}.
+     *
+     * @param text the text to write
+     */
     public void writeText(String text){
+        writeText((CharSequence) text);
+    }
+
+    /**
+     * Writes text at the cursor without copying it first.
+     * Array-backed {@link java.nio.CharBuffer}s are read directly from their array;
+     * the buffer's position is not changed.
+     *
+     * @param text the text to write
+     * @see #writeText(String)
+     */
+    public void writeText(CharSequence text){
         if (text == null) {
             throw new IllegalArgumentException("Text cannot be null");
         }
+        if (journal != null) {
+            journal.recordText(BufferJournal.WRITE_TEXT, text);
+        }
 
-        for(char c : text.toCharArray()){
-            if (c == '\n') {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (text.charAt(i) == '\n') {
+                newline();
+                i++;
+                continue;
+            }
+            if (wrapPending) {
+                getCurrentLine().setWrapped(true);
                 newline();
+            }
+
+            int column = cursor.getColumn();
+            int limit = Math.min(length, i + width - column);
+            int newline = CharSequences.indexOf(text, '\n', i, limit);
+            int end = newline >= 0 ? newline : limit;
+
+            getCurrentLine().write(column, text, i, end, currentAttributes);
+            damage(cursor.getRow(), column, column + end - i);
+            column += end - i;
+            if (column >= width) {
+                cursor.setColumn(width - 1);
+                if (!autoWrap) {
+                    return;
+                }
+                wrapPending = true;
+                i = end;
                 continue;
             }
-            
-            if (cursor.getColumn() >= width) break;
-            
-            TerminalLine line = getCurrentLine();
-            boolean isLast = (cursor.getColumn() == width - 1);
-            Cell cell = line.getCell(cursor.getColumn());
-            cell.setCharacter(c);
-            moveCursorRight(1);
-            if (isLast) break;
+            cursor.setColumn(column);
+            i = end;
         }
     }
 
+    /**
+     * Writes a slice of a char array at the cursor without copying it first.
+     *
+     * @param buf the array holding the text
+     * @param off the index of the first character
+     * @param len the number of characters
+     * @throws IndexOutOfBoundsException if the slice is outside the array
+     * @see #writeText(String)
+     */
+    public void writeText(char[] buf, int off, int len){
+        if (buf == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        Objects.checkFromIndexSize(off, len, buf.length);
+        try {
+            writeText(charArrayView.reset(buf, off, len));
+        } finally {
+            charArrayView.release();
+        }
+    }
+
+    /**
+     * Makes {@link #writeText} continue on the next line when it runs past the last column, marking the
+     * line it leaves {@link TerminalLine#isWrapped() wrapped}, so that {@link #resize} rewraps the two
+     * together. The cursor stays on the last column until the next character is written, so a line exactly
+     * as wide as the screen followed by a newline does not leave an empty line behind. Off by default.
+     * @param autoWrap true to wrap, false to stop writing at the last column.
+     */
+    public void setAutoWrap(boolean autoWrap) {
+        this.autoWrap = autoWrap;
+        wrapPending = false;
+        record(BufferJournal.AUTO_WRAP, autoWrap ? 1 : 0);
+    }
+
+    public boolean isAutoWrap() {
+        return autoWrap;
+    }
+
     private void newline() {
+        nextRow();
+        cursor.setColumn(0);
+    }
+
+    /**
+     * Moves the cursor down one row, scrolling the screen up when it is on the bottom row.
+     * The column is kept.
+     */
+    public void lineFeed() {
+        record(BufferJournal.LINE_FEED);
+        nextRow();
+    }
+
+    private void nextRow() {
+        wrapPending = false;
         if (cursor.getRow() < height - 1) {
             cursor.setRow(cursor.getRow() + 1);
         } else {
-            insertEmptyLineAtBottom();
+            scrollUp();
         }
+    }
+
+    /**
+     * Moves the cursor to the first column of its row.
+     */
+    public void carriageReturn() {
+        record(BufferJournal.CARRIAGE_RETURN);
+        wrapPending = false;
         cursor.setColumn(0);
     }
 
     public void fillLine(char c){
-        TerminalLine line = getCurrentLine();
-        for(Cell cell : line.getCells()){
-            cell.setCharacter(c);
-        }
+        record(BufferJournal.FILL_LINE, c);
+        getCurrentLine().fill(0, width, c, currentAttributes);
+        damage(cursor.getRow(), 0, width);
     }
 
     //user is responsible for index checking
@@ -318,47 +618,313 @@ public class TerminalBuffer {
         if(!(from >= 0 && from <= to && from < width && to < width)){
             throw new IllegalArgumentException("Invalid bounds.");
         }
+        record(BufferJournal.FILL_RANGE, c, from, to);
 
-        TerminalLine line = getCurrentLine();
-        for(int i = from; i <= to; i++){
-            Cell cell = line.getCell(i);
-            cell.setCharacter(c);
+        getCurrentLine().fill(from, to + 1, c, currentAttributes);
+        damage(cursor.getRow(), from, to + 1);
+    }
+
+    /**
+     * Moves a line that left the screen into the scrollback.
+     * @param line the line that left the screen
+     * @return the line that dropped out of the buffer as a result, or null if none did
+     */
+    private TerminalLine scrollLineToScrollback(TerminalLine line) {
+        if (maxScrollbackLines == 0) {
+            long offset = lines.topOffset();
+            long lineId = lines.append(line);
+            if (spill != null) {
+                spill.append(line, lineId, offset);
+            }
+            lines.evictOldest();
+            return line;
         }
+        TerminalLine evicted = trimScrollback();
+        scrollback.append(line);
+        long lineId = lines.append(line);
+        if (searchIndex != null) {
+            searchIndex.add(line, lineId);
+        }
+        accountScrollback();
+        return evicted;
     }
 
-    private void scrollLineToScrollback(TerminalLine line) {
-        scrollback.add(line);
-        trimScrollback();
+    /**
+     * Reports the scrollback size to the budget, if any. The budget may evict from this buffer in turn.
+     */
+    private void accountScrollback() {
+        if (budgetMember != null) {
+            budgetMember.resize(scrollback.memoryBytes(ScrollbackBudget.bytesPerLine(width)));
+        }
+    }
+
+    /**
+     * Makes the scrollback count towards a memory budget shared with other buffers, replacing any previous one.
+     * The budget may then evict this buffer's oldest scrollback lines when another buffer grows, so a buffer
+     * used from more than one thread must join through {@link ConcurrentTerminalBuffer#setScrollbackBudget}.
+     * @param budget The budget to join, or null to leave the current one.
+     */
+    public void setScrollbackBudget(ScrollbackBudget budget) {
+        setScrollbackBudget(budget, this::trimScrollback);
     }
 
-    private void trimScrollback() {
-        while (scrollback.size() > maxScrollbackLines) {
-            scrollback.removeFirst();
+    void setScrollbackBudget(ScrollbackBudget budget, LongUnaryOperator trimmer) {
+        if (budgetMember != null) {
+            budgetMember.leave();
+            budgetMember = null;
+        }
+        if (budget != null) {
+            budgetMember = budget.join(this, trimmer);
+            accountScrollback();
         }
     }
 
-    public void insertEmptyLineAtBottom() {
-        if (screen.size() >= height) {
-            scrollLineToScrollback(screen.removeFirst());
+    /**
+     * Evicts the oldest scrollback lines on behalf of the budget.
+     * @param bytes The number of bytes to free at least, if the scrollback holds that many.
+     * @return The number of bytes freed.
+     */
+    long trimScrollback(long bytes) {
+        long lineBytes = ScrollbackBudget.bytesPerLine(width);
+        long before = scrollback.memoryBytes(lineBytes);
+        long target = before - bytes;
+        int lines = 0;
+        while (scrollback.size() > 0 && scrollback.memoryBytes(lineBytes) > target) {
+            evictOldestScrollbackLine();
+            lines++;
         }
-        screen.add(createEmptyLine());
+        long freed = before - scrollback.memoryBytes(lineBytes);
+        if (lines > 0) {
+            record(BufferJournal.TRIM_SCROLLBACK, this.lines.firstId(), (int) this.lines.firstLineStoredRows());
+            if (budgetMember != null) {
+                budgetMember.evicted(lines, freed);
+            }
+        }
+        return freed;
     }
 
-    public void clearScreen() {
-        for (TerminalLine line : screen) {
-            for (int i = 0; i < width; i++) {
-                Cell cell = line.getCell(i);
-                cell.setCharacter(' ');
+    /**
+     * Replays a trim by the budget: evicts the oldest stored scrollback rows until the oldest left belongs to
+     * the given line, with at most the given number of its rows stored, or to a later line. Rows the buffer
+     * has evicted since for its own limit are not evicted twice.
+     * @param lineId The id of the line of the oldest stored row after the trim.
+     * @param rows The number of rows of that line still stored after the trim.
+     */
+    void trimScrollbackBefore(long lineId, int rows) {
+        while (scrollback.size() > 0
+                && (lines.firstId() < lineId || lines.firstId() == lineId && lines.firstLineStoredRows() > rows)) {
+            evictOldestScrollbackLine();
+        }
+        accountScrollback();
+    }
+
+    /**
+     * Compresses scrollback lines that are unlikely to be read again. Lines older than the newest
+     * {@code hotLines} are compressed in blocks of {@value ScrollbackRing#CHUNK_SIZE} and decompressed
+     * on demand when a read reaches them; the last few blocks read are kept decompressed, so scrolling
+     * through history decompresses each block once. With a {@link ScrollbackBudget}, the buffer is
+     * accounted at its compressed size.
+     * @param hotLines The number of newest scrollback lines kept uncompressed, or a negative number to
+     * stop compressing. Lines already compressed stay compressed.
+     */
+    public void setScrollbackCompression(int hotLines) {
+        scrollback.setCompression(hotLines);
+        accountScrollback();
+    }
+
+    /**
+     * Moves scrollback cells off the heap. Full blocks of {@value ScrollbackRing#CHUNK_SIZE} lines are
+     * copied into the arena with a fixed cell layout, so long histories add nothing for the garbage
+     * collector to scan; reads copy a line back on demand. Blocks move once all their lines are older than
+     * the newest {@code hotLines} given to {@link #setScrollbackCompression}, taking the place of
+     * compression, or as soon as they fill if compression is off. The screen stays on the heap.
+     * <p>
+     * The caller owns the arena, and closing it frees the scrollback at once; the buffer must not be read
+     * afterwards. Several buffers may share an arena.
+     * @param arena The arena, or null to keep new scrollback on the heap. Lines already moved stay in the arena.
+     */
+    public void setCellArena(CellArena arena) {
+        scrollback.setCellArena(arena);
+        accountScrollback();
+    }
+
+    /**
+     * Evicts the oldest line if the scrollback is full, making room for one more.
+     * @return the evicted line, or null if the scrollback had room
+     */
+    private TerminalLine trimScrollback() {
+        if (scrollback.isFull()) {
+            return evictOldestScrollbackLine();
+        }
+        return null;
+    }
+
+    /**
+     * Evicts the oldest scrollback line, appending it to the spill if there is one.
+     * @return the evicted line, or null if it was compressed
+     */
+    private TerminalLine evictOldestScrollbackLine() {
+        if (spill != null) {
+            spill.append(scrollback.get(0), lines.firstId(), lines.firstOffset());
+        }
+        lines.evictOldest();
+        if (searchIndex != null) {
+            searchIndex.evictBefore(lines.firstId());
+        }
+        return scrollback.evictOldest();
+    }
+
+    /**
+     * Maintains a {@link TrigramIndex} over the in-memory scrollback, so that {@link #search} checks only
+     * lines containing every trigram of the text instead of scanning the whole history. Logical lines are
+     * indexed as their rows scroll into the scrollback and dropped once all their rows are evicted, so a
+     * resize leaves the index as it is. Regular expressions and texts shorter than three characters are
+     * still searched by scanning.
+     * @param enabled true to build the index from the current scrollback, false to drop it.
+     */
+    public void setSearchIndex(boolean enabled) {
+        if (!enabled) {
+            searchIndex = null;
+        } else if (searchIndex == null) {
+            searchIndex = new TrigramIndex();
+            for (int row = 0; row < scrollback.size(); row++) {
+                searchIndex.add(scrollback.get(row), lines.storedLineId(row));
             }
         }
+    }
 
+    /**
+     * @return The trigram index over the scrollback, for its statistics, or null if there is none.
+     */
+    public TrigramIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Records every change made through the buffer's public methods in a journal, from which
+     * {@link BufferJournal#recover} rebuilds the buffer after a crash. Attaching writes a checkpoint of the
+     * buffer first, so the journal holds only changes made after it. Changes made through the lines returned
+     * by {@link #getScreen()} are not recorded.
+     * @param journal The journal, or null to stop recording after committing what was recorded. The journal
+     * is not closed by the buffer.
+     * @throws UncheckedIOException if the checkpoint or the last batch cannot be written
+     */
+    public void setJournal(BufferJournal journal) {
+        try {
+            if (this.journal != null) {
+                this.journal.commit();
+            }
+            this.journal = null;
+            if (journal != null) {
+                journal.checkpoint(this);
+                this.journal = journal;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write journal", e);
+        }
+    }
+
+    /**
+     * @return The journal changes are recorded in, or null.
+     */
+    public BufferJournal getJournal() {
+        return journal;
+    }
+
+    private void record(byte op) {
+        if (journal != null) {
+            journal.record(op);
+        }
+    }
+
+    private void record(byte op, int argument) {
+        if (journal != null) {
+            journal.record(op, argument);
+        }
+    }
+
+    private void record(byte op, long first, int second) {
+        if (journal != null) {
+            journal.record(op, first, second);
+        }
+    }
+
+    private void record(byte op, int first, int second) {
+        if (journal != null) {
+            journal.record(op, first, second);
+        }
+    }
+
+    private void record(byte op, int first, int second, int third) {
+        if (journal != null) {
+            journal.record(op, first, second, third);
+        }
+    }
+
+    /**
+     * Keeps lines that leave the scrollback, through the line limit or a {@link ScrollbackBudget},
+     * in memory-mapped files instead of dropping them. Spilled lines come before the in-memory scrollback
+     * in row numbering, so reads with includeScrollback reach the whole history and
+     * {@link #getScrollbackSize()} counts them. They keep their line ids and are not rewrapped by a resize;
+     * they are shown cut or padded to the width. Snapshots cover only the in-memory scrollback.
+     * The spill is not closed by the buffer.
+     * @param spill The spill to append to, or null to stop spilling. Lines already spilled are then no longer visible.
+     */
+    public void setScrollbackSpill(ScrollbackSpill spill) {
+        this.spill = spill;
+        if (spill != null) {
+            spill.setWidth(width);
+        }
+    }
+
+    /**
+     * Scrolls the screen up by one line. The top line is handed to the scrollback as-is
+     * and the line evicted from the scrollback, if any, is cleared and reused as the new bottom row.
+     */
+    public void insertEmptyLineAtBottom() {
+        record(BufferJournal.INSERT_EMPTY_LINE);
+        scrollUp();
+    }
+
+    private void scrollUp() {
+        TerminalLine dropped = scrollLineToScrollback(screen.get(0));
+        screen.scrollUp(recycleLine(dropped));
+        damageAll();
+    }
+
+    public void clearScreen() {
+        record(BufferJournal.CLEAR_SCREEN);
+        for (int row = 0; row < height; row++) {
+            TerminalLine line = writableLine(row);
+            line.fillCharacters(0, width, ' ');
+            line.setWrapped(false);
+        }
+        damageAll();
+
+        wrapPending = false;
         cursor.setColumn(0);
         cursor.setRow(0);
     }
 
     public void clearScreenAndScrollback() {
         clearScreen();
+        clearScrollback();
+    }
+
+    /**
+     * Drops all scrollback lines, leaving the screen and cursor as they are.
+     */
+    public void clearScrollback() {
+        record(BufferJournal.CLEAR_SCROLLBACK);
         scrollback.clear();
+        lines.clear();
+        if (searchIndex != null) {
+            searchIndex.clear();
+        }
+        if (spill != null) {
+            spill.clear();
+        }
+        accountScrollback();
     }
 
     public char getCharAt(int column, int row) {
@@ -367,16 +933,19 @@ public class TerminalBuffer {
 
     public char getCharAt(int column, int row, boolean includeScrollback) {
         TerminalLine line = getTerminalLine(row, includeScrollback);
-        return line.getCell(column).getCharacter();
+        return line.getCharacter(column);
     }
 
     public CellAttributes getAttributesAt(int column, int row) {
         return getAttributesAt(column, row, false);
     }
 
+    /**
+     * @return The shared immutable attributes of the cell, see {@link AttributeTable}.
+     */
     public CellAttributes getAttributesAt(int column, int row, boolean includeScrollback) {
         TerminalLine line = getTerminalLine(row, includeScrollback);
-        return line.getCell(column).getAttributes();
+        return AttributeTable.attributesOf(line.getAttributeId(column));
     }
 
     public String getLine(int row) {
@@ -384,18 +953,13 @@ public class TerminalBuffer {
     }
 
     public String getLine(int row, boolean includeScrollback) {
-        TerminalLine line = getTerminalLine(row, includeScrollback);
-        StringBuilder sb = new StringBuilder();
-        for (Cell cell : line.getCells()) {
-            sb.append(cell.getCharacter());
-        }
-        return sb.toString();
+        return getTerminalLine(row, includeScrollback).getText();
     }
 
     public String getScreenContent() {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < screen.size(); i++) {
-            sb.append(getLine(i, false));
+            screen.get(i).appendText(sb);
             if (i < screen.size() - 1) {
                 sb.append("\n");
             }
@@ -418,7 +982,7 @@ public class TerminalBuffer {
 
     public List<String> getAllLines() {
         List<String> lines = new ArrayList<>();
-        int totalRows = scrollback.size() + screen.size();
+        int totalRows = getScrollbackSize() + screen.size();
         for (int i = 0; i < totalRows; i++) {
             lines.add(getLine(i, true));
         }
@@ -426,11 +990,28 @@ public class TerminalBuffer {
     }
 
     private TerminalLine getTerminalLine(int row, boolean includeScrollback) {
+        if (includeScrollback && spill != null && row >= 0) {
+            long spilled = spill.size();
+            if (row < spilled) {
+                return spill.get(row);
+            }
+            return getTerminalLine((int) (row - spilled), true, row);
+        }
+        return getTerminalLine(row, includeScrollback, row);
+    }
+
+    /**
+     * @param requestedRow the row as given by the caller, for the error message
+     */
+    private TerminalLine getTerminalLine(int row, boolean includeScrollback, int requestedRow) {
         if (includeScrollback) {
-            int scrollbackSize = scrollback.size();
+            int scrollbackSize = heldRows();
             if (row < scrollbackSize) {
-                if (row < 0) throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
-                return scrollback.get(row);
+                if (row < 0) throw new IndexOutOfBoundsException("Row index out of bounds: " + requestedRow);
+                if (budgetMember != null) {
+                    budgetMember.touch();
+                }
+                return lines.get(row);
             } else {
                 int screenRow = row - scrollbackSize;
                 if (screenRow < screen.size()) {
@@ -442,47 +1023,430 @@ public class TerminalBuffer {
                 return screen.get(row);
             }
         }
-        throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        throw new IndexOutOfBoundsException("Row index out of bounds: " + requestedRow);
+    }
+
+    /**
+     * Searches the scrollback, spilled lines included, and the screen on the common fork-join pool.
+     * @see #search(SearchQuery, ForkJoinPool)
+     */
+    public List<SearchHit> search(SearchQuery query) {
+        return search(query, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Searches the scrollback, spilled lines included, and the screen. Lines are matched in place rather
+     * than converted to strings, in ranges of {@value SearchTask#CHUNK_LINES} rows searched in parallel
+     * on the pool; smaller buffers are searched on the calling thread. The buffer must not change until
+     * the search returns.
+     * @param query What to find.
+     * @param pool The pool to search on.
+     * @return The first hits by position, up to the query's limit, ordered by row and then column.
+     * Rows count scrollback and screen together, as with {@code getLine(row, true)}.
+     * @throws IllegalArgumentException if query or pool is null
+     * @throws java.util.concurrent.CancellationException if the query is cancelled during the search
+     */
+    public List<SearchHit> search(SearchQuery query, ForkJoinPool pool) {
+        if (query == null || pool == null) {
+            throw new IllegalArgumentException("Query and pool cannot be null");
+        }
+        if (budgetMember != null) {
+            budgetMember.touch();
+        }
+        if (searchIndex != null && query.getMode() != SearchQuery.Mode.REGEX && query.getText().length() >= 3) {
+            return indexedSearch(query, pool);
+        }
+        int rows = getScrollbackSize() + height;
+        SearchTask task = new SearchTask(query, searchRows, 0, rows);
+        return rows <= SearchTask.CHUNK_LINES ? task.invoke() : pool.invoke(task);
+    }
+
+    /**
+     * Searches the spill by scanning, the in-memory scrollback through the index and the screen by scanning.
+     */
+    private List<SearchHit> indexedSearch(SearchQuery query, ForkJoinPool pool) {
+        int spilled = getScrollbackSize() - heldRows();
+        SearchTask spillTask = new SearchTask(query, searchRows, 0, spilled);
+        List<SearchHit> hits = spilled <= SearchTask.CHUNK_LINES ? spillTask.invoke() : pool.invoke(spillTask);
+        int limit = query.getLimit();
+        CharArraySequence view = new CharArraySequence();
+        Matcher matcher = query.newMatcher();
+        searchIndex.forEachCandidate(query.getText(), lineId -> {
+            if (hits.size() >= limit) {
+                return false;
+            }
+            if (!lines.holds(lineId)) {
+                return true;
+            }
+            query.checkCancelled();
+            int first = (int) lines.rowOf(lineId);
+            int end = (int) (first + lines.rowsOf(lineId));
+            for (int row = first; row < end && hits.size() < limit; row++) {
+                query.find(lines.get(row).viewCharacters(view), spilled + row, searchRows, matcher, hits, limit);
+            }
+            return true;
+        });
+        int scrollbackRows = spilled + heldRows();
+        for (int row = 0; row < height && hits.size() < limit; row++) {
+            query.find(screen.get(row).viewCharacters(view), scrollbackRows + row, searchRows, matcher, hits, limit);
+        }
+        return hits;
+    }
+
+    /**
+     * Reads a row for {@link #search} without recording a read with the budget, since pool threads
+     * would contend on it.
+     */
+    private TerminalLine searchLine(int row) {
+        if (spill != null) {
+            long spilled = spill.size();
+            if (row < spilled) {
+                return spill.get(row);
+            }
+            row -= (int) spilled;
+        }
+        int scrollbackSize = heldRows();
+        return row < scrollbackSize ? lines.get(row) : screen.get(row - scrollbackSize);
+    }
+
+    /**
+     * Returns the id of a row's logical line. A logical line is a run of rows {@link TerminalLine#isWrapped()
+     * wrapped} into the next, and the rows it is wrapped onto share its id; each line gets the id after the
+     * line before it. A line keeps its id as it scrolls into the scrollback, as older lines are evicted and
+     * as resizes rewrap it, so an id stays a valid reference to the same line while the row numbering shifts
+     * under it. {@link #getLineOffset} tells the rows of a line apart. Screen rows take their ids from the rows
+     * above them, so writing that wraps a screen row into the next one gives the next one its id.
+     * @param row The row, scrollback included, as with {@code getLine(row, true)}.
+     * @return The line id.
+     * @throws IndexOutOfBoundsException if the row is out of bounds
+     */
+    public long getLineId(int row) {
+        if (row < 0 || row >= getScrollbackSize() + height) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
+        return lineIdAt(row);
+    }
+
+    /**
+     * Returns where a row starts within its logical line, see {@link #getLineId}. A resize changes the
+     * offsets of rows but not the offset of a cell, so a line id and offset find a cell again afterwards.
+     * @param row The row, scrollback included, as with {@code getLine(row, true)}.
+     * @return The number of cells of the line before the row's first cell.
+     * @throws IndexOutOfBoundsException if the row is out of bounds
+     */
+    public long getLineOffset(int row) {
+        if (row < 0 || row >= getScrollbackSize() + height) {
+            throw new IndexOutOfBoundsException("Row index out of bounds: " + row);
+        }
+        return lineOffsetAt(row);
+    }
+
+    /**
+     * @return The id of the oldest line still held, spilled ones included. Lower ids have been evicted.
+     */
+    public long getFirstLineId() {
+        int spilled = spilledRows();
+        return spilled > 0 ? spill.lineId(0) : lines.firstId();
     }
 
+    /**
+     * Finds the first row of a line still held, by binary search over the rows.
+     * @param lineId The line id.
+     * @return The row, scrollback included, or -1 if the line has been evicted.
+     * @throws IndexOutOfBoundsException if no line has the id yet
+     */
+    public int getRowOfLineId(long lineId) {
+        checkLineId(lineId);
+        int row = firstRowAfter(lineId, -1);
+        return row < getScrollbackSize() + height && lineIdAt(row) == lineId ? row : -1;
+    }
+
+    /**
+     * Finds the row holding a cell of a line, such as the first cell of a {@link SearchHit} found before a
+     * resize, by binary search over the rows.
+     * @param lineId The line id.
+     * @param offset The cell's offset within the line, see {@link #getLineOffset}. Offsets past the end of
+     * the line give its last row.
+     * @return The row, scrollback included, or -1 if the row holding the cell has been evicted.
+     * @throws IndexOutOfBoundsException if no line has the id yet
+     * @throws IllegalArgumentException if offset is negative
+     */
+    public int getRowOfLineId(long lineId, long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset cannot be negative");
+        }
+        checkLineId(lineId);
+        int row = firstRowAfter(lineId, offset) - 1;
+        return row >= 0 && lineIdAt(row) == lineId ? row : -1;
+    }
+
+    /**
+     * @param lineId The line id.
+     * @return The line's text, the rows it is wrapped onto joined, or null if the line has been evicted.
+     * Rows evicted from the start of the line are missing from the text.
+     * @throws IndexOutOfBoundsException if no line has the id yet
+     */
+    public String getLineById(long lineId) {
+        int row = getRowOfLineId(lineId);
+        if (row < 0) {
+            return null;
+        }
+        int rows = getScrollbackSize() + height;
+        StringBuilder text = new StringBuilder();
+        TerminalLine line;
+        do {
+            line = getTerminalLine(row++, true);
+            line.appendText(text);
+        } while (line.isWrapped() && row < rows);
+        return text.toString();
+    }
+
+    private void checkLineId(long lineId) {
+        if (lineId > lineIdAt(getScrollbackSize() + height - 1)) {
+            throw new IndexOutOfBoundsException("Line id out of bounds: " + lineId);
+        }
+    }
+
+    /**
+     * @return The first row whose line id and offset come after the given ones, or the number of rows.
+     */
+    private int firstRowAfter(long lineId, long offset) {
+        int low = 0;
+        int high = getScrollbackSize() + height;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long midId = lineIdAt(mid);
+            if (midId < lineId || midId == lineId && lineOffsetAt(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long lineIdAt(int row) {
+        int spilled = spilledRows();
+        if (row < spilled) {
+            return spill.lineId(row);
+        }
+        int held = heldRows();
+        if (row - spilled < held) {
+            return lines.lineAt(row - spilled);
+        }
+        long lineId = lines.topId();
+        for (int screenRow = 1; screenRow <= row - spilled - held; screenRow++) {
+            if (!screen.get(screenRow - 1).isWrapped()) {
+                lineId++;
+            }
+        }
+        return lineId;
+    }
+
+    private long lineOffsetAt(int row) {
+        int spilled = spilledRows();
+        if (row < spilled) {
+            return spill.lineOffset(row);
+        }
+        int held = heldRows();
+        if (row - spilled < held) {
+            return lines.lineOffset(row - spilled);
+        }
+        long offset = lines.topOffset();
+        for (int screenRow = 1; screenRow <= row - spilled - held; screenRow++) {
+            offset = screen.get(screenRow - 1).isWrapped() ? offset + width : 0;
+        }
+        return offset;
+    }
+
+    /**
+     * @return The number of spilled rows counted by {@link #getScrollbackSize()}.
+     */
+    private int spilledRows() {
+        return spill == null ? 0 : getScrollbackSize() - heldRows();
+    }
+
+    /**
+     * @return The number of in-memory scrollback rows at the current width.
+     */
+    private int heldRows() {
+        return (int) Math.min(Integer.MAX_VALUE - height, lines.size());
+    }
+
+    /**
+     * @return The number of scrollback lines, spilled ones included.
+     */
     public int getScrollbackSize() {
-        return scrollback.size();
+        if (spill != null) {
+            return (int) Math.min(Integer.MAX_VALUE - height, spill.size() + lines.size());
+        }
+        return heldRows();
+    }
+
+    /**
+     * Takes an immutable snapshot of the screen, scrollback and cursor.
+     * Lines are shared with the buffer rather than copied: the buffer copies a line only when it
+     * next changes it, and scrollback is shared in whole chunks, so a snapshot costs one reference
+     * per screen row and per {@value ScrollbackRing#CHUNK_SIZE} scrollback lines.
+     * Changes made through the lines returned by {@link #getScreen()} bypass this and show in snapshots.
+     * @return The snapshot.
+     */
+    public BufferSnapshot snapshot() {
+        TerminalLine[] rows = new TerminalLine[height];
+        for (int row = 0; row < height; row++) {
+            rows[row] = screen.get(row);
+            rows[row].markShared();
+        }
+        return new BufferSnapshot(width, cursor.getColumn(), cursor.getRow(), rows, lines.snapshot(scrollback.snapshot()));
     }
 
+    /**
+     * Resizes the screen. Logical lines, runs of lines {@link TerminalLine#isWrapped() wrapped} into the next,
+     * are rewrapped to the new width rather than cut, and the cursor moves with the cell it was on. The part of
+     * the top row's logical line that is in the scrollback is rewrapped with the screen. Blank rows
+     * below the cursor are dropped; if the rewrapped screen is still taller than the new height, its top rows
+     * scroll into the scrollback, otherwise blank rows are added at the bottom.
+     * <p>
+     * The screen is rewrapped at once. Scrollback lines keep the rows they were stored with and are shown
+     * rewrapped as they are read, a row at a time, so a resize costs no pass over the history and dragging a
+     * window through many sizes costs nothing per size. The first read that needs the number of rows the
+     * history takes at the new width counts them from the lengths of the lines, without reading cells. Lines
+     * keep their ids, see {@link #getLineId}. The line limit counts stored rows, so the scrollback may show
+     * more rows than the limit at a narrower width. Spilled lines are not rewrapped; they are shown cut or
+     * padded to the new width.
+     */
     public void resize(int newWidth, int newHeight) {
         if (newWidth <= 0 || newHeight <= 0) {
             throw new IllegalArgumentException("Width and height must be positive.");
         }
-
-        // 1. Update width of all lines
-        for (TerminalLine line : screen) {
-            line.setWidth(newWidth);
+        record(BufferJournal.RESIZE, newWidth, newHeight);
+
+        // 1. Rewrap the screen, tracking where the cursor's cell lands. A logical line that starts in the
+        // scrollback and continues on the screen is taken back and rewrapped as one with its screen part.
+        List<TerminalLine> rows = new ArrayList<>(height);
+        LineReflow reflow = new LineReflow(newWidth, rows::add);
+        if (newWidth != width) {
+            for (TerminalLine line : takeBackContinuedLine()) {
+                reflow.add(line);
+            }
+        }
+        int cursorRow = 0;
+        int cursorColumn = 0;
+        for (int row = 0; row < height; row++) {
+            TerminalLine line = screen.get(row);
+            if (row == cursor.getRow()) {
+                int offset = reflow.pendingLength() + cursor.getColumn();
+                cursorRow = rows.size() + offset / newWidth;
+                cursorColumn = offset % newWidth;
+                reflow.add(line, cursor.getColumn() + 1);
+            } else {
+                reflow.add(line);
+            }
         }
-        for (TerminalLine line : scrollback) {
-            line.setWidth(newWidth);
+        reflow.finish();
+        while (rows.size() > cursorRow + 1 && !rows.getLast().isWrapped() && rows.getLast().contentLength() == 0) {
+            rows.removeLast();
         }
 
-        int oldHeight = this.height;
+        if (newWidth != width) {
+            lines.setWidth(newWidth);
+            if (spill != null) {
+                spill.setWidth(newWidth);
+            }
+        }
         this.width = newWidth;
         this.height = newHeight;
 
-        // 2. Adjust height
-        if (newHeight < oldHeight) {
-            // Shrinking: move top lines to scrollback
-            int linesToMove = oldHeight - newHeight;
-            for (int i = 0; i < linesToMove; i++) {
-                scrollLineToScrollback(screen.removeFirst());
-            }
-        } else if (newHeight > oldHeight) {
-            // Expanding: add empty lines at the bottom
-            int linesToAdd = newHeight - oldHeight;
-            for (int i = 0; i < linesToAdd; i++) {
-                screen.add(createEmptyLine());
-            }
+        // 2. Fit the rows to the new height
+        // Too many: move top rows to scrollback
+        int linesToMove = Math.max(0, rows.size() - newHeight);
+        for (int i = 0; i < linesToMove; i++) {
+            scrollLineToScrollback(rows.get(i));
         }
+        // Too few: add empty lines at the bottom
+        TerminalLine[] screenRows = new TerminalLine[newHeight];
+        for (int i = 0; i < newHeight; i++) {
+            screenRows[i] = i + linesToMove < rows.size() ? rows.get(i + linesToMove) : createEmptyLine();
+        }
+        screen = new ScreenRing(screenRows);
+        resetDamageTracking();
+        accountScrollback();
 
-        // 3. Clamp cursor to new bounds
+        // 3. Move the cursor with its cell and clamp it to the new bounds
+        cursor.setRow(cursorRow - linesToMove);
+        cursor.setColumn(cursorColumn);
         clampCursorToBounds();
     }
-}
 
+    /**
+     * Takes the newest scrollback lines back out of the scrollback if they are wrapped, that is if they
+     * belong to the logical line the top screen row continues.
+     * @return The lines, oldest first.
+     */
+    private List<TerminalLine> takeBackContinuedLine() {
+        List<TerminalLine> taken = new ArrayList<>();
+        while (scrollback.size() > 0 && scrollback.get(scrollback.size() - 1).isWrapped()) {
+            taken.add(scrollback.removeNewest());
+            lines.removeNewest();
+        }
+        if (searchIndex != null && !taken.isEmpty()) {
+            searchIndex.removeFrom(lines.topId());
+        }
+        return taken.reversed();
+    }
+
+    /**
+     * Appends a scrollback line read by {@link BufferSerializer#restore}, oldest first.
+     * @param line The line.
+     */
+    void restoreScrollbackLine(TerminalLine line) {
+        scrollLineToScrollback(line);
+    }
+
+    /**
+     * Sets the screen, cursor and line ids read by {@link BufferSerializer#restore}, after the scrollback.
+     * @param rows The screen rows, top first, one per row of the buffer.
+     * @param firstLineId The id of the oldest scrollback line, or of the top row without scrollback.
+     * @param firstLineOffset The offset of that line's or row's first cell within its logical line.
+     */
+    void restoreScreen(TerminalLine[] rows, long firstLineId, long firstLineOffset, int cursorColumn, int cursorRow,
+                       boolean wrapPending) {
+        screen = new ScreenRing(rows);
+        lines.renumber(firstLineId, firstLineOffset);
+        cursor.setColumn(cursorColumn);
+        cursor.setRow(cursorRow);
+        this.wrapPending = wrapPending;
+        resetDamageTracking();
+    }
+
+    /**
+     * @return true if the cursor sits past the last column, waiting to wrap on the next character.
+     */
+    boolean isWrapPending() {
+        return wrapPending;
+    }
+
+    /**
+     * Lets reads keep the scrollback row counts they make, see {@link #resize}, or stops them while reads may
+     * run beside changes. A {@link ConcurrentTerminalBuffer} guards the buffer it wraps.
+     * @param guarded true if reads may run beside changes.
+     */
+    void setGuarded(boolean guarded) {
+        lines.setKeepRows(!guarded);
+    }
+
+    /**
+     * @return true if the scrollback rows are counted at the current width, so reads need not count them.
+     */
+    boolean hasScrollbackRows() {
+        return !lines.needsRows();
+    }
+
+    /**
+     * Counts the scrollback rows at the current width if a resize left them to count, keeping the counts
+     * even while guarded. Concurrent calls store equal counts, so a read lock that holds changes off is enough.
+     */
+    void prepareScrollbackRows() {
+        lines.prepareRows();
+    }
+}
@@ -1,70 +1,245 @@
 package org.example.buffer;
 
+import org.example.model.AttributeTable;
 import org.example.model.Cell;
 import org.example.model.CellAttributes;
+import org.example.model.Color;
 import org.example.model.StyleFlags;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * Represents a single line in a terminal buffer, containing a list of cells.
+ * Represents a single line in a terminal buffer.
+ * Cells are stored in packed primitive arrays: one char and one interned attribute id
+ * (see {@link AttributeTable}) per column. {@link Cell} objects are only
+ * created on demand as views over that storage.
  */
 public class TerminalLine {
-    /** The list of cells in the line. */
-    private ArrayList<Cell> cells;
+    /** The character of each cell in the line. */
+    private char[] characters;
+    /** The attribute id of each cell in the line, stored as an unsigned 16-bit value. */
+    private short[] attributes;
     /** The width of the line (number of cells). */
     private int width;
-    
+    /**
+     * Set once a snapshot holds this line. The buffer then copies the line before changing it,
+     * see {@link TerminalBuffer#snapshot()}.
+     */
+    private boolean shared;
+    /**
+     * Set when the line's content continues on the next line because it ran out of columns rather than
+     * because of a newline. A resize rewraps such lines together with their continuation.
+     */
+    private boolean wrapped;
+
     /**
      * Creates a new terminal line with a specified width and initializes cells.
      * @param width The width of the line.
      */
     public TerminalLine(int width) {
         this.width = width;
-        this.cells = new ArrayList<>(width);
-        for (int i = 0; i < width; i++) {
-            this.cells.add(new Cell());
-        }
+        this.characters = new char[width];
+        this.attributes = new short[width];
+        Arrays.fill(this.characters, ' ');
     }
-    
+
     /**
-     * Gets the cell at the specified column.
+     * Gets a view of the cell at the specified column.
+     * Changes made through the returned cell are written back to this line.
      * @param column The column index.
      * @return The cell at the specified column.
      */
     public Cell getCell(int column) {
-        return cells.get(column);
+        checkColumn(column);
+        return new CellView(column);
     }
-    
+
     /**
      * Sets the cell at the specified column.
+     * The character and attributes are copied; the cell itself is not retained.
      * @param column The column index.
      * @param cell The cell to set.
      */
     public void setCell(int column, Cell cell){
-        this.cells.set(column, cell);
+        checkColumn(column);
+        characters[column] = cell.getCharacter();
+        attributes[column] = (short) AttributeTable.intern(cell.getAttributes());
+    }
+
+    /**
+     * @param column The column index.
+     * @return The character at the specified column.
+     */
+    public char getCharacter(int column) {
+        return characters[column];
+    }
+
+    /**
+     * @param column The column index.
+     * @return The attribute id at the specified column, see {@link AttributeTable}.
+     */
+    public int getAttributeId(int column) {
+        return attributes[column] & 0xFFFF;
+    }
+
+    /**
+     * Sets the character and attribute id of a single cell.
+     * @param column The column index.
+     * @param character The character to set.
+     * @param attributeId The attribute id to set.
+     */
+    public void set(int column, char character, int attributeId) {
+        characters[column] = character;
+        attributes[column] = (short) attributeId;
+    }
+
+    /**
+     * Overwrites cells starting at the specified column with a run of text in one bulk copy.
+     * @param column The first column to write.
+     * @param text The text to write from.
+     * @param start The index of the first character to write.
+     * @param end The index after the last character to write; the run must fit in the line.
+     * @param attributeId The attribute id of the written cells.
+     */
+    public void write(int column, CharSequence text, int start, int end, int attributeId) {
+        CharSequences.copy(text, start, end, characters, column);
+        Arrays.fill(attributes, column, column + end - start, (short) attributeId);
+    }
+
+    /**
+     * Sets the characters in a range without touching their attributes.
+     * @param from The first column (inclusive).
+     * @param to The last column (exclusive).
+     * @param character The character to set.
+     */
+    public void fillCharacters(int from, int to, char character) {
+        Arrays.fill(characters, from, to, character);
+    }
+
+    /**
+     * Sets the character and attribute id of every cell in a range.
+     * @param from The first column (inclusive).
+     * @param to The last column (exclusive).
+     * @param character The character to set.
+     * @param attributeId The attribute id to set.
+     */
+    public void fill(int from, int to, char character, int attributeId) {
+        Arrays.fill(characters, from, to, character);
+        Arrays.fill(attributes, from, to, (short) attributeId);
     }
-    
+
+    /**
+     * Inserts a cell at the specified column, shifting the cells to its right by one.
+     * The last cell of the line is dropped.
+     * @param column The column index.
+     * @param character The character to insert.
+     * @param attributeId The attribute id to insert.
+     */
+    public void insert(int column, char character, int attributeId) {
+        int moved = width - 1 - column;
+        System.arraycopy(characters, column, characters, column + 1, moved);
+        System.arraycopy(attributes, column, attributes, column + 1, moved);
+        characters[column] = character;
+        attributes[column] = (short) attributeId;
+    }
+
+    /**
+     * Inserts a run of text with uniform attributes at the specified column,
+     * shifting the rest of the line right in one bulk move.
+     * The cells pushed past the end of the line are stored in {@code overflow}, in order.
+     * @param column The column index.
+     * @param text The text to insert.
+     * @param start The index of the first character to insert.
+     * @param end The index after the last character to insert.
+     * @param attributeId The attribute id of the inserted cells.
+     * @param overflow Receives the cells pushed past the end of the line, exactly {@code end - start} of them.
+     */
+    void insert(int column, CharSequence text, int start, int end, int attributeId, CellRun overflow) {
+        int count = end - start;
+        int tail = width - column;
+        overflow.ensureCapacity(count);
+        overflow.length = count;
+        if (count >= tail) {
+            // The inserted run covers the rest of the line: its end and the old tail overflow
+            int overflowFromText = count - tail;
+            CharSequences.copy(text, start + tail, end, overflow.characters, 0);
+            Arrays.fill(overflow.attributes, 0, overflowFromText, (short) attributeId);
+            System.arraycopy(characters, column, overflow.characters, overflowFromText, tail);
+            System.arraycopy(attributes, column, overflow.attributes, overflowFromText, tail);
+            CharSequences.copy(text, start, start + tail, characters, column);
+            Arrays.fill(attributes, column, width, (short) attributeId);
+        } else {
+            // The last count cells overflow, the rest of the tail moves right
+            System.arraycopy(characters, width - count, overflow.characters, 0, count);
+            System.arraycopy(attributes, width - count, overflow.attributes, 0, count);
+            System.arraycopy(characters, column, characters, column + count, tail - count);
+            System.arraycopy(attributes, column, attributes, column + count, tail - count);
+            CharSequences.copy(text, start, end, characters, column);
+            Arrays.fill(attributes, column, column + count, (short) attributeId);
+        }
+    }
+
+    /**
+     * Inserts a run of cells at the specified column, shifting the rest of the line right in one bulk move.
+     * The cells pushed past the end of the line are stored in {@code overflow}, in order.
+     * @param column The column index.
+     * @param run The cells to insert, must not be {@code overflow}.
+     * @param overflow Receives the cells pushed past the end of the line, exactly {@code run.length} of them.
+     */
+    void insert(int column, CellRun run, CellRun overflow) {
+        int count = run.length;
+        int tail = width - column;
+        overflow.ensureCapacity(count);
+        overflow.length = count;
+        if (count >= tail) {
+            int overflowFromRun = count - tail;
+            System.arraycopy(run.characters, tail, overflow.characters, 0, overflowFromRun);
+            System.arraycopy(run.attributes, tail, overflow.attributes, 0, overflowFromRun);
+            System.arraycopy(characters, column, overflow.characters, overflowFromRun, tail);
+            System.arraycopy(attributes, column, overflow.attributes, overflowFromRun, tail);
+            System.arraycopy(run.characters, 0, characters, column, tail);
+            System.arraycopy(run.attributes, 0, attributes, column, tail);
+        } else {
+            System.arraycopy(characters, width - count, overflow.characters, 0, count);
+            System.arraycopy(attributes, width - count, overflow.attributes, 0, count);
+            System.arraycopy(characters, column, characters, column + count, tail - count);
+            System.arraycopy(attributes, column, attributes, column + count, tail - count);
+            System.arraycopy(run.characters, 0, characters, column, count);
+            System.arraycopy(run.attributes, 0, attributes, column, count);
+        }
+    }
+
     /**
      * Resets all cells in the line to their default state.
      */
     public void clear(){
-        for (Cell cell : cells) {
-            cell.reset();
-        }
+        fill(0, width, ' ', AttributeTable.DEFAULT_ID);
+        wrapped = false;
     }
-    
+
     /**
      * Fills all cells in the line with a specified character and attributes.
      * @param cell The template cell containing the character.
      * @param attributes The attributes to apply to each cell.
      */
     public void fill(Cell cell, CellAttributes attributes){
-        for (int i = 0; i < width; i++) {
-            Cell currentCell = cells.get(i);
-            currentCell.setCharacter(cell.getCharacter());
-            attributes.applyToCell(currentCell);
-        }
+        fill(0, width, cell.getCharacter(), AttributeTable.intern(attributes));
+    }
+
+    /**
+     * @return The characters in the line as a string.
+     */
+    public String getText() {
+        return new String(characters, 0, width);
+    }
+
+    /**
+     * Appends the characters of the line to a builder.
+     * @param sb The builder to append to.
+     */
+    public void appendText(StringBuilder sb) {
+        sb.append(characters, 0, width);
     }
 
     /**
@@ -75,9 +250,7 @@ public class TerminalLine {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("TerminalLine{width=").append(width).append(", cells=[\n");
-        for (Cell cell : cells) {
-            sb.append(cell.getCharacter());
-        }
+        appendText(sb);
         sb.append("\n]}");
         return sb.toString();
     }
@@ -89,9 +262,9 @@ public class TerminalLine {
     public String toStringWithAttributes() {
         StringBuilder sb = new StringBuilder();
         sb.append("TerminalLine{width=").append(width).append(", cells=[\n");
-        for (int i = 0; i < cells.size(); i++) {
-            sb.append(cells.get(i).toString());
-            if (i < cells.size() - 1) {
+        for (int i = 0; i < width; i++) {
+            sb.append(getCell(i).toString());
+            if (i < width - 1) {
                 sb.append(", ");
             }
         }
@@ -100,36 +273,116 @@ public class TerminalLine {
     }
 
     /**
-     * Performs a deep copy of the TerminalLine, ensuring all cells and their
-     * styling attributes are copied to a new instance.
+     * Performs a deep copy of the TerminalLine. Since cells are stored as primitives
+     * this is two array copies.
      * @return A new TerminalLine instance that is a deep copy of this one.
      */
     public TerminalLine copy(){
-        TerminalLine newLine = new TerminalLine(this.width);
-        for (int i = 0; i < width; i++) {
-            Cell oldCell = this.cells.get(i);
-            Cell newCell = newLine.cells.get(i);
-            newCell.setCharacter(oldCell.getCharacter());
-            newCell.setForegroundColor(oldCell.getForegroundColor());
-            newCell.setBackgroundColor(oldCell.getBackgroundColor());
-            newCell.setStyle(new StyleFlags(oldCell.getStyle()));
-        }
+        TerminalLine newLine = new TerminalLine(0);
+        newLine.width = width;
+        newLine.characters = Arrays.copyOf(characters, width);
+        newLine.attributes = Arrays.copyOf(attributes, width);
+        newLine.wrapped = wrapped;
         return newLine;
     }
 
     /**
-     * @return The list of cells in the line.
+     * Creates a line that takes ownership of packed arrays of equal length.
+     * @param characters The characters.
+     * @param attributes The attribute ids.
+     * @return The line.
+     */
+    static TerminalLine of(char[] characters, short[] attributes) {
+        TerminalLine line = new TerminalLine(0);
+        line.width = characters.length;
+        line.characters = characters;
+        line.attributes = attributes;
+        return line;
+    }
+
+    /**
+     * Points a view at the line's characters without copying them.
+     * @param view The view to reuse; it is only valid until the line next changes.
+     * @return The view.
+     */
+    CharArraySequence viewCharacters(CharArraySequence view) {
+        return view.reset(characters, 0, width);
+    }
+
+    /**
+     * @return true if the line's content continues on the next line, see {@link TerminalBuffer#setAutoWrap}.
+     */
+    public boolean isWrapped() {
+        return wrapped;
+    }
+
+    /**
+     * @param wrapped Whether the line's content continues on the next line.
+     */
+    void setWrapped(boolean wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    /**
+     * @return The number of cells up to and including the last one that is not a blank with default attributes.
+     */
+    int contentLength() {
+        int length = width;
+        while (length > 0 && characters[length - 1] == ' ' && attributes[length - 1] == AttributeTable.DEFAULT_ID) {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * Marks the line as held by a snapshot. It is never unmarked; the buffer writes to a copy instead.
+     */
+    void markShared() {
+        shared = true;
+    }
+
+    /**
+     * @return true if a snapshot may hold this line, so it must not be changed in place.
+     */
+    boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Copies the cells into packed arrays laid out like the line's own storage.
+     * @param characters The destination for the characters.
+     * @param attributeIds The destination for the attribute ids.
+     * @param offset The destination index of the first cell.
+     */
+    public void copyTo(char[] characters, short[] attributeIds, int offset) {
+        System.arraycopy(this.characters, 0, characters, offset, width);
+        System.arraycopy(attributes, 0, attributeIds, offset, width);
+    }
+
+    /**
+     * @return Views of the cells in the line.
      */
     public ArrayList<Cell> getCells() {
-        return new ArrayList<>(cells);
+        ArrayList<Cell> cells = new ArrayList<>(width);
+        for (int i = 0; i < width; i++) {
+            cells.add(new CellView(i));
+        }
+        return cells;
     }
 
     /**
-     * @param cells The list of cells to set.
+     * @param cells The list of cells to set. Their contents are copied into the line.
      */
     public void setCells(ArrayList<Cell> cells) {
-        this.cells = cells;
-        this.width = cells.size();
+        char[] newCharacters = new char[cells.size()];
+        short[] newAttributes = new short[cells.size()];
+        for (int i = 0; i < newCharacters.length; i++) {
+            newCharacters[i] = cells.get(i).getCharacter();
+            newAttributes[i] = (short) AttributeTable.intern(cells.get(i).getAttributes());
+        }
+        this.characters = newCharacters;
+        this.attributes = newAttributes;
+        this.width = newCharacters.length;
     }
 
     /**
@@ -143,14 +396,101 @@ public class TerminalLine {
      * @param width The width to set.
      */
     public void setWidth(int width) {
-        if (width > this.cells.size()) {
-            this.cells.ensureCapacity(width);
-            while (this.cells.size() < width) {
-                this.cells.add(new Cell());
+        if (width != this.width) {
+            characters = Arrays.copyOf(characters, width);
+            attributes = Arrays.copyOf(attributes, width);
+            if (width > this.width) {
+                Arrays.fill(characters, this.width, width, ' ');
             }
-        } else if (width < this.cells.size()) {
-            this.cells.subList(width, this.cells.size()).clear();
         }
         this.width = width;
     }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= width) {
+            throw new IndexOutOfBoundsException("Column index out of bounds: " + column);
+        }
+    }
+
+    /**
+     * A cell that reads and writes the packed storage of this line.
+     * Attributes and style flags are returned as mutable copies; changes to them
+     * are only written back through the setters.
+     */
+    private final class CellView extends Cell {
+        private final int column;
+
+        private CellView(int column) {
+            this.column = column;
+        }
+
+        private int code() {
+            return AttributeTable.codeOf(attributes[column] & 0xFFFF);
+        }
+
+        private void setCode(int code) {
+            attributes[column] = (short) AttributeTable.intern(code);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return characters[column] == ' ';
+        }
+
+        @Override
+        public void reset() {
+            characters[column] = ' ';
+            attributes[column] = AttributeTable.DEFAULT_ID;
+        }
+
+        @Override
+        public char getCharacter() {
+            return characters[column];
+        }
+
+        @Override
+        public void setCharacter(char character) {
+            characters[column] = character;
+        }
+
+        @Override
+        public Color getForegroundColor() {
+            return CellAttributes.foregroundOf(code());
+        }
+
+        @Override
+        public void setForegroundColor(Color foregroundColor) {
+            setCode(CellAttributes.withForeground(code(), foregroundColor));
+        }
+
+        @Override
+        public Color getBackgroundColor() {
+            return CellAttributes.backgroundOf(code());
+        }
+
+        @Override
+        public void setBackgroundColor(Color backgroundColor) {
+            setCode(CellAttributes.withBackground(code(), backgroundColor));
+        }
+
+        @Override
+        public StyleFlags getStyle() {
+            return StyleFlags.fromBits(CellAttributes.styleBitsOf(code()));
+        }
+
+        @Override
+        public void setStyle(StyleFlags styleFlags) {
+            setCode(CellAttributes.withStyleBits(code(), styleFlags.toBits()));
+        }
+
+        @Override
+        public CellAttributes getAttributes() {
+            return CellAttributes.decode(code());
+        }
+
+        @Override
+        public void setAttributes(CellAttributes cellAttributes) {
+            attributes[column] = (short) AttributeTable.intern(cellAttributes);
+        }
+    }
 }
@@ -0,0 +1,348 @@
+package org.example.buffer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * An index from character trigrams to the scrollback lines containing them, see
+ * {@link TerminalBuffer#setSearchIndex}. Lines are logical lines numbered by their ids, see
+ * {@link TerminalBuffer#getLineId}, so numbers stay valid as old lines are evicted and as the width changes.
+ * The rows a line is wrapped onto are indexed as one text, trigrams across row ends included.
+ * <p>
+ * The index is kept in blocks of {@link #BLOCK_LINES} consecutive lines, each with its own open-addressing
+ * table from trigram to posting list. A posting is the line's offset within its block, a u16, so a
+ * posting list costs two bytes per line. Evicting lines only moves the first line; a block is dropped
+ * whole once all its lines are gone, so eviction never touches posting lists.
+ * <p>
+ * Trigrams are taken case-insensitively and trigrams of three spaces are skipped, since nearly every line
+ * has them. Lines are expected not to change once indexed. Not thread-safe; the owning buffer
+ * serializes access.
+ */
+public final class TrigramIndex {
+    /** The number of lines per block. At most 65536, so offsets fit in a char. */
+    static final int BLOCK_LINES = 1024;
+    /** Marks a table slot as used, so the trigram of three NULs is not mistaken for an empty slot. */
+    private static final long USED = 1L << 48;
+    private static final long SPACES = trigram(' ', ' ', ' ');
+    /** The approximate heap cost of a block's fixed fields. */
+    private static final int BLOCK_OVERHEAD_BYTES = 64;
+    /** The approximate heap cost of a posting list besides its postings: an array header and a reference. */
+    private static final int LIST_OVERHEAD_BYTES = 24;
+
+    /**
+     * The index of {@link #BLOCK_LINES} lines starting at {@link #firstLine}.
+     */
+    private static final class Block {
+        final long firstLine;
+        long[] keys = new long[256];
+        char[][] postings = new char[256][];
+        int[] counts = new int[256];
+        int trigrams;
+        long memoryBytes = BLOCK_OVERHEAD_BYTES + 256L * (Long.BYTES + Integer.BYTES + 8);
+
+        Block(long firstLine) {
+            this.firstLine = firstLine;
+        }
+
+        int slotOf(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void add(long key, char offset) {
+            int slot = slotOf(key);
+            if (keys[slot] == 0) {
+                if (trigrams * 2 >= keys.length) {
+                    grow();
+                    slot = slotOf(key);
+                }
+                keys[slot] = key;
+                postings[slot] = new char[2];
+                memoryBytes += LIST_OVERHEAD_BYTES + 2 * Character.BYTES;
+                trigrams++;
+            }
+            char[] list = postings[slot];
+            int count = counts[slot];
+            if (count > 0 && list[count - 1] == offset) {
+                return;
+            }
+            if (count == list.length) {
+                postings[slot] = list = Arrays.copyOf(list, count * 2);
+                memoryBytes += (long) count * Character.BYTES;
+            }
+            list[count] = offset;
+            counts[slot] = count + 1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            char[][] oldPostings = postings;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            postings = new char[keys.length][];
+            counts = new int[keys.length];
+            memoryBytes += oldKeys.length * (Long.BYTES + Integer.BYTES + 8L);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    postings[slot] = oldPostings[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    /** The blocks, oldest first. */
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+    /** The absolute number of the oldest indexed line. */
+    private long firstLine;
+    /** The absolute number after the newest indexed line. */
+    private long nextLine;
+    private long memoryBytes;
+    /** The last two characters of the newest row if it is wrapped, which trigrams of the next row start with. */
+    private char tailFirst;
+    private char tailSecond;
+    /** The number of those characters known, up to two; 0 if the newest row is not wrapped. */
+    private int tailLength;
+
+    private static long trigram(char a, char b, char c) {
+        return USED | (long) a << 32 | (long) b << 16 | c;
+    }
+
+    private static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Indexes a row that entered the scrollback as the newest one.
+     * @param row The row; it is read, not kept.
+     * @param lineId The id of its line: the newest line indexed if the row continues it, or a higher one.
+     */
+    void add(TerminalLine row, long lineId) {
+        int known = 0;
+        char a = 0;
+        char b = 0;
+        if (lineId == nextLine - 1 && !blocks.isEmpty()) {
+            known = tailLength;
+            a = tailFirst;
+            b = tailSecond;
+        } else {
+            if (blocks.isEmpty()) {
+                firstLine = lineId;
+            }
+            nextLine = lineId + 1;
+        }
+        Block block = blocks.peekLast();
+        if (block == null || lineId - block.firstLine >= BLOCK_LINES) {
+            block = new Block(lineId);
+            blocks.addLast(block);
+            memoryBytes += block.memoryBytes;
+        }
+        long before = block.memoryBytes;
+        char offset = (char) (lineId - block.firstLine);
+        int width = row.getWidth();
+        for (int column = 0; column < width; column++) {
+            char c = fold(row.getCharacter(column));
+            if (known >= 2) {
+                long key = trigram(a, b, c);
+                if (key != SPACES) {
+                    block.add(key, offset);
+                }
+            }
+            a = b;
+            b = c;
+            known++;
+        }
+        memoryBytes += block.memoryBytes - before;
+        tailLength = row.isWrapped() ? Math.min(known, 2) : 0;
+        tailFirst = a;
+        tailSecond = b;
+    }
+
+    /**
+     * Drops the lines before the given one, which left the scrollback. A line whose oldest rows left stays.
+     * @param lineId The id of the oldest line kept.
+     */
+    void evictBefore(long lineId) {
+        if (lineId <= firstLine) {
+            return;
+        }
+        firstLine = Math.min(lineId, nextLine);
+        while (!blocks.isEmpty()
+                && (firstLine - blocks.peekFirst().firstLine >= BLOCK_LINES || firstLine == nextLine)) {
+            memoryBytes -= blocks.removeFirst().memoryBytes;
+        }
+    }
+
+    /**
+     * Drops the lines from the given one on, whose rows were taken back out of the scrollback. Rows added
+     * next for such a line index it anew.
+     * @param lineId The id of the first line dropped.
+     */
+    void removeFrom(long lineId) {
+        while (nextLine > Math.max(lineId, firstLine)) {
+            removeNewest();
+        }
+        tailLength = 0;
+    }
+
+    private void removeNewest() {
+        nextLine--;
+        Block newest = blocks.peekLast();
+        if (nextLine == newest.firstLine || nextLine == firstLine) {
+            blocks.removeLast();
+            memoryBytes -= newest.memoryBytes;
+            return;
+        }
+        char offset = (char) (nextLine - newest.firstLine);
+        for (int slot = 0; slot < newest.keys.length; slot++) {
+            int count = newest.counts[slot];
+            if (count > 0 && newest.postings[slot][count - 1] == offset) {
+                newest.counts[slot] = count - 1;
+            }
+        }
+    }
+
+    /**
+     * Drops all lines. Numbering continues after the last line.
+     */
+    void clear() {
+        blocks.clear();
+        firstLine = nextLine;
+        memoryBytes = 0;
+        tailLength = 0;
+    }
+
+    /**
+     * Visits the lines that contain every trigram of the text, ignoring case, in ascending order.
+     * Every line containing the text is visited, plus some that do not and numbers of lines that were never
+     * indexed; the caller checks each one. Trailing spaces of the text are left out of the trigrams, since a
+     * row may match them with the blanks that pad it to the width.
+     * @param text The text, at least three characters long.
+     * @param action Receives each absolute line number; returns false to stop.
+     */
+    void forEachCandidate(CharSequence text, LongPredicate action) {
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == ' ') {
+            length--;
+        }
+        long[] query = new long[Math.max(0, length - 2)];
+        int n = 0;
+        for (int i = 0; i + 2 < length; i++) {
+            long key = trigram(fold(text.charAt(i)), fold(text.charAt(i + 1)), fold(text.charAt(i + 2)));
+            if (key != SPACES) {
+                query[n++] = key;
+            }
+        }
+        char[] candidates = new char[BLOCK_LINES];
+        char[] scratch = new char[BLOCK_LINES];
+        for (Block block : blocks) {
+            int count;
+            if (n == 0) {
+                count = (int) Math.min(BLOCK_LINES, nextLine - block.firstLine);
+                for (int i = 0; i < count; i++) {
+                    candidates[i] = (char) i;
+                }
+            } else {
+                count = intersect(block, query, n, candidates, scratch);
+            }
+            for (int i = 0; i < count; i++) {
+                long line = block.firstLine + candidates[i];
+                if (line >= firstLine && !action.test(line)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Intersects the posting lists of the query trigrams in a block, starting from the shortest.
+     * @return The number of offsets written to result.
+     */
+    private static int intersect(Block block, long[] query, int n, char[] result, char[] scratch) {
+        int shortest = -1;
+        for (int q = 0; q < n; q++) {
+            int slot = block.slotOf(query[q]);
+            if (block.keys[slot] == 0) {
+                return 0;
+            }
+            if (shortest < 0 || block.counts[slot] < block.counts[shortest]) {
+                shortest = slot;
+            }
+        }
+        int count = block.counts[shortest];
+        System.arraycopy(block.postings[shortest], 0, result, 0, count);
+        for (int q = 0; q < n && count > 0; q++) {
+            int slot = block.slotOf(query[q]);
+            if (slot == shortest) {
+                continue;
+            }
+            char[] list = block.postings[slot];
+            int listCount = block.counts[slot];
+            int kept = 0;
+            for (int i = 0, j = 0; i < count && j < listCount; ) {
+                if (result[i] < list[j]) {
+                    i++;
+                } else if (result[i] > list[j]) {
+                    j++;
+                } else {
+                    scratch[kept++] = result[i];
+                    i++;
+                    j++;
+                }
+            }
+            System.arraycopy(scratch, 0, result, 0, kept);
+            count = kept;
+        }
+        return count;
+    }
+
+    /**
+     * @return The absolute number of the oldest indexed line.
+     */
+    public long getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * @return The number of lines indexed.
+     */
+    public long getIndexedLines() {
+        return nextLine - firstLine;
+    }
+
+    /**
+     * @return The number of distinct trigrams across all blocks, counted once per block.
+     */
+    public long getTrigramCount() {
+        long trigrams = 0;
+        for (Block block : blocks) {
+            trigrams += block.trigrams;
+        }
+        return trigrams;
+    }
+
+    /**
+     * @return The approximate heap held by the index.
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return The approximate heap held per indexed line, or 0 if none is indexed.
+     */
+    public double getBytesPerLine() {
+        long lines = getIndexedLines();
+        return lines == 0 ? 0 : (double) memoryBytes / lines;
+    }
+}
@@ -0,0 +1,14 @@
+package org.example.io;
+
+/**
+ * Receives decoded text in slices of a char array that is reused after the call returns.
+ */
+@FunctionalInterface
+public interface CharSink {
+    /**
+     * @param chars The array holding the text. Only valid during the call.
+     * @param offset The index of the first character.
+     * @param length The number of characters.
+     */
+    void write(char[] chars, int offset, int length);
+}
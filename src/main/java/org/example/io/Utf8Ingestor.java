@@ -0,0 +1,275 @@
+package org.example.io;
+
+import org.example.buffer.TerminalBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams UTF-8 process output into a {@link TerminalBuffer} or another {@link CharSink}.
+ * Bytes are read into a reusable direct buffer and decoded incrementally, so a code point
+ * split across two reads is completed by the second one. Decoded characters are handed to the sink
+ * straight from the decoder's output array; no String is created per chunk.
+ * Malformed input is replaced with U+FFFD.
+ * <p>
+ * When writing to a buffer directly, each line is written up to its newline separately. Without
+ * {@link TerminalBuffer#setAutoWrap auto-wrap}, text between the end of a screen line and the next
+ * newline is dropped, the newline itself is kept, and the screen does not depend on where reads split the input.
+ * <p>
+ * Not thread-safe; use one ingestor per buffer and source.
+ */
+public class Utf8Ingestor {
+    /** The default size of the byte and character buffers. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    /** The smallest accepted buffer size, enough for any UTF-8 sequence and surrogate pair. */
+    public static final int MIN_BUFFER_SIZE = 16;
+
+    private final CharSink sink;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private long bytesRead;
+    private long charsDecoded;
+    private long chunkCount;
+    /** System.nanoTime() at the start of the first read since the last reset, 0 if none. */
+    private long firstReadNanos;
+    private long lastChunkNanos;
+
+    /**
+     * Creates an ingestor with buffers of {@link #DEFAULT_BUFFER_SIZE}.
+     * @param buffer The buffer to write decoded text to.
+     */
+    public Utf8Ingestor(TerminalBuffer buffer) {
+        this(buffer, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param buffer The buffer to write decoded text to.
+     * @param bufferSize The size of the byte buffer and of the character buffer.
+     */
+    public Utf8Ingestor(TerminalBuffer buffer, int bufferSize) {
+        this(lineWriter(buffer), bufferSize);
+    }
+
+    /**
+     * Creates an ingestor with buffers of {@link #DEFAULT_BUFFER_SIZE}.
+     * @param sink The sink to hand decoded text to, such as a parser.
+     */
+    public Utf8Ingestor(CharSink sink) {
+        this(sink, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param sink The sink to hand decoded text to, such as a parser.
+     * @param bufferSize The size of the byte buffer and of the character buffer.
+     */
+    public Utf8Ingestor(CharSink sink, int bufferSize) {
+        if (sink == null) {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE);
+        }
+        this.sink = sink;
+        this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        this.chars = CharBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Reads a channel until end of stream, handing everything to the sink.
+     * The trailing partial sequence, if any, is written as U+FFFD.
+     * @param channel The channel to read.
+     * @return The number of bytes read.
+     * @throws IOException if reading fails
+     */
+    public long ingest(ReadableByteChannel channel) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = read(channel)) >= 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Reads a stream until end of stream, handing everything to the sink.
+     * The stream is not closed.
+     * @param in The stream to read.
+     * @return The number of bytes read.
+     * @throws IOException if reading fails
+     * @see #ingest(ReadableByteChannel)
+     */
+    public long ingest(InputStream in) throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream cannot be null");
+        }
+        return ingest(Channels.newChannel(in));
+    }
+
+    /**
+     * Performs a single read from a channel and hands whatever it completes to the sink.
+     * Bytes of an incomplete sequence are kept for the next read. Suits non-blocking channels,
+     * where a read may return 0.
+     * @param channel The channel to read.
+     * @return The number of bytes read, or -1 at end of stream, after which {@link #finish()} has been called.
+     * @throws IOException if reading fails
+     */
+    public int read(ReadableByteChannel channel) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel cannot be null");
+        }
+        if (firstReadNanos == 0) {
+            firstReadNanos = System.nanoTime();
+        }
+        int n = channel.read(bytes);
+        if (n < 0) {
+            finish();
+            return -1;
+        }
+        if (n > 0) {
+            bytesRead += n;
+            chunkCount++;
+            bytes.flip();
+            decode(false);
+            bytes.compact();
+            lastChunkNanos = System.nanoTime();
+        }
+        return n;
+    }
+
+    /**
+     * Ends the current stream: a pending incomplete sequence is written as U+FFFD
+     * and the decoder is reset for the next stream. Statistics are kept.
+     */
+    public void finish() {
+        bytes.flip();
+        decode(true);
+        while (decoder.flush(chars).isOverflow()) {
+            writeChars();
+        }
+        writeChars();
+        bytes.clear();
+        decoder.reset();
+    }
+
+    private void decode(boolean endOfInput) {
+        while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+            writeChars();
+        }
+        writeChars();
+    }
+
+    /**
+     * Hands the decoded characters to the sink and empties the character buffer.
+     */
+    private void writeChars() {
+        chars.flip();
+        int length = chars.remaining();
+        if (length > 0) {
+            charsDecoded += length;
+            sink.write(chars.array(), chars.arrayOffset() + chars.position(), length);
+        }
+        chars.clear();
+    }
+
+    /**
+     * @return A sink that writes to the buffer one line at a time.
+     */
+    private static CharSink lineWriter(TerminalBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        return new LineWriter(buffer);
+    }
+
+    /**
+     * Writes each line up to its newline separately. Once a line is full and auto-wrap is off,
+     * the rest of it is dropped up to the next newline, even when it arrives in a later read.
+     */
+    private static final class LineWriter implements CharSink {
+        private final TerminalBuffer buffer;
+        /** Whether the current line was filled without auto-wrap, so text up to the next newline is dropped. */
+        private boolean lineFull;
+
+        LineWriter(TerminalBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            int start = offset;
+            int end = offset + length;
+            while (start < end) {
+                int newline = start;
+                while (newline < end && chars[newline] != '\n') {
+                    newline++;
+                }
+                if (!lineFull && newline > start) {
+                    int room = buffer.getWidth() - buffer.getCursor().getColumn();
+                    buffer.writeText(chars, start, newline - start);
+                    lineFull = !buffer.isAutoWrap() && newline - start >= room;
+                }
+                if (newline == end) {
+                    return;
+                }
+                buffer.writeText(chars, newline, 1);
+                lineFull = false;
+                start = newline + 1;
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes read since the last reset.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The number of characters handed to the sink since the last reset.
+     */
+    public long getCharsDecoded() {
+        return charsDecoded;
+    }
+
+    /**
+     * @return The number of non-empty reads since the last reset.
+     */
+    public long getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * @return The bytes read per second, measured from the start of the first read
+     * to the end of the last non-empty one, or 0 if nothing was read yet.
+     */
+    public double getBytesPerSecond() {
+        long elapsed = lastChunkNanos - firstReadNanos;
+        if (chunkCount == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return bytesRead * 1_000_000_000.0 / elapsed;
+    }
+
+    /**
+     * Resets the byte, character and chunk counters and the throughput clock.
+     */
+    public void resetStatistics() {
+        bytesRead = 0;
+        charsDecoded = 0;
+        chunkCount = 0;
+        firstReadNanos = 0;
+        lastChunkNanos = 0;
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Process-wide interning table for cell attributes.
+ * Every distinct attribute set (see {@link CellAttributes#encode()}) gets a small integer id
+ * that cells store instead of an attributes object, and a shared immutable
+ * {@link CellAttributes} instance that is handed out for lookups.
+ * Ids fit in 16 bits; id {@link #DEFAULT_ID} always denotes the default attributes.
+ * Lookups are lock-free and allocation-free, interning a new attribute set takes a lock.
+ */
+public final class AttributeTable {
+    /** The id of the default attributes. */
+    public static final int DEFAULT_ID = 0;
+    /** The maximum number of distinct attribute sets. */
+    public static final int MAX_IDS = 1 << 16;
+
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * Open-addressed index from code to id, at most half full. A key holds code + 1, 0 marks an empty slot.
+     * The id is written before its key is released, so a reader that sees the key sees the id.
+     */
+    private static final class Index {
+        final int[] keys;
+        final int[] ids;
+
+        Index(int capacity) {
+            keys = new int[capacity];
+            ids = new int[capacity];
+        }
+    }
+
+    private static volatile Index index = new Index(128);
+    /**
+     * Packed attribute code by id. Slots past {@link #size} are filled in place while the array is
+     * published; the array is replaced only to grow it. A new id's slot is written before {@link #put}
+     * releases its key, so a reader that found the id through the index sees the slot.
+     */
+    private static volatile int[] codes = new int[64];
+    /** Shared immutable attributes by id, written in the same order as {@link #codes}. */
+    private static volatile CellAttributes[] views = new CellAttributes[64];
+    private static int size;
+
+    static {
+        intern(CellAttributes.DEFAULT_CODE);
+    }
+
+    private AttributeTable() {
+    }
+
+    /**
+     * Returns the id of an attribute set, assigning a new one on first use.
+     * @param code The packed attribute code, see {@link CellAttributes#encode()}.
+     * @return The id of the attribute set.
+     * @throws IllegalStateException if the table is full
+     */
+    public static int intern(int code) {
+        int id = lookup(index, code);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (AttributeTable.class) {
+            id = lookup(index, code);
+            if (id >= 0) {
+                return id;
+            }
+            if (size == MAX_IDS) {
+                throw new IllegalStateException("Attribute table is full");
+            }
+            int[] newCodes = codes;
+            CellAttributes[] newViews = views;
+            if (size == newCodes.length) {
+                newCodes = Arrays.copyOf(newCodes, Math.min(MAX_IDS, size * 2));
+                newViews = Arrays.copyOf(newViews, newCodes.length);
+            }
+            // Unused slots of the published arrays: no reader looks at them until put releases the id.
+            newCodes[size] = code;
+            newViews[size] = CellAttributes.immutable(code);
+            codes = newCodes;
+            views = newViews;
+            Index current = index;
+            if ((size + 1) * 2 > current.keys.length) {
+                current = rehash(current);
+                index = current;
+            }
+            put(current, code, size);
+            return size++;
+        }
+    }
+
+    private static int lookup(Index index, int code) {
+        int[] keys = index.keys;
+        int mask = keys.length - 1;
+        for (int i = slot(code, mask); ; i = (i + 1) & mask) {
+            int key = (int) KEYS.getAcquire(keys, i);
+            if (key == 0) {
+                return -1;
+            }
+            if (key == code + 1) {
+                return index.ids[i];
+            }
+        }
+    }
+
+    private static void put(Index index, int code, int id) {
+        int[] keys = index.keys;
+        int mask = keys.length - 1;
+        int i = slot(code, mask);
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index.ids[i] = id;
+        KEYS.setRelease(keys, i, code + 1);
+    }
+
+    private static Index rehash(Index old) {
+        Index grown = new Index(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            if (old.keys[i] != 0) {
+                put(grown, old.keys[i] - 1, old.ids[i]);
+            }
+        }
+        return grown;
+    }
+
+    private static int slot(int code, int mask) {
+        int h = code * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the id of an attribute set, assigning a new one on first use.
+     * @param attributes The attributes to intern.
+     * @return The id of the attribute set.
+     */
+    public static int intern(CellAttributes attributes) {
+        return intern(attributes.encode());
+    }
+
+    /**
+     * @param id An id returned by {@link #intern(int)}.
+     * @return The packed attribute code of the id.
+     */
+    public static int codeOf(int id) {
+        return codes[id];
+    }
+
+    /**
+     * @param id An id returned by {@link #intern(int)}.
+     * @return The shared immutable attributes of the id.
+     */
+    public static CellAttributes attributesOf(int id) {
+        return views[id];
+    }
+
+    /**
+     * @return The number of distinct attribute sets interned so far.
+     */
+    public static synchronized int size() {
+        return size;
+    }
+}
@@ -4,6 +4,8 @@ import java.util.Objects;
 
 /**
  * Represents a single cell in a terminal buffer, containing a character and its styling attributes.
+ * Terminal lines store their cells in packed primitive arrays and hand out cells only as views,
+ * so subclasses may override the accessors to read and write that storage directly.
  */
 public class Cell {
     /** The character stored in the cell. */
@@ -13,12 +15,13 @@ public class Cell {
 
     /**
      * Creates a new cell with specified character and attributes.
+     * Shared immutable attributes are referenced directly and only copied once the cell is modified.
      * @param character The character to display.
      * @param attributes The cell attributes (colors and styles).
      */
     public Cell(char character, CellAttributes attributes) {
         this.character = character;
-        this.attributes = new CellAttributes(attributes);
+        this.attributes = attributes.isImmutable() ? attributes : new CellAttributes(attributes);
     }
 
     /**
@@ -37,7 +40,7 @@ public class Cell {
      * Creates a default empty cell with a space character and default colors.
      */
     public Cell() {
-        this(' ', new CellAttributes());
+        this(' ', AttributeTable.attributesOf(AttributeTable.DEFAULT_ID));
     }
 
     /**
@@ -45,14 +48,14 @@ public class Cell {
      * @param cell The cell to copy.
      */
     public Cell(Cell cell) {
-        this(cell.character, cell.attributes);
+        this(cell.getCharacter(), cell.getAttributes());
     }
 
     /**
      * @return true if the cell contains only a space character.
      */
     public boolean isEmpty() {
-        return character == ' ';
+        return getCharacter() == ' ';
     }
 
     /**
@@ -60,26 +63,26 @@ public class Cell {
      */
     public void reset() {
         character = ' ';
-        attributes.reset();
+        attributes = AttributeTable.attributesOf(AttributeTable.DEFAULT_ID);
     }
 
     @Override
     public boolean equals(Object o) {
-        if (o == null || getClass() != o.getClass()) return false;
-        Cell cell = (Cell) o;
-        return character == cell.character && attributes.equals(cell.attributes);
+        if (this == o) return true;
+        if (!(o instanceof Cell cell)) return false;
+        return getCharacter() == cell.getCharacter() && getAttributes().equals(cell.getAttributes());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(character, attributes);
+        return Objects.hash(getCharacter(), getAttributes());
     }
 
     @Override
     public String toString() {
         return "Cell{" +
-                "character=" + character +
-                ", " + attributes.toString() +
+                "character=" + getCharacter() +
+                ", " + getAttributes().toString() +
                 '}';
     }
 
@@ -108,7 +111,7 @@ public class Cell {
      * @param foregroundColor The foreground color to set.
      */
     public void setForegroundColor(Color foregroundColor) {
-        attributes.setForegroundColor(foregroundColor);
+        ownAttributes().setForegroundColor(foregroundColor);
     }
 
     /**
@@ -122,28 +125,28 @@ public class Cell {
      * @param backgroundColor The background color to set.
      */
     public void setBackgroundColor(Color backgroundColor) {
-        attributes.setBackgroundColor(backgroundColor);
+        ownAttributes().setBackgroundColor(backgroundColor);
     }
 
     /**
      * @return The style flags applied to the cell.
      */
     public StyleFlags getStyle() {
-        return attributes.getStyle();
+        return ownAttributes().getStyle();
     }
 
     /**
      * @param styleFlags The style flags to set.
      */
     public void setStyle(StyleFlags styleFlags) {
-        attributes.setStyle(styleFlags);
+        ownAttributes().setStyle(styleFlags);
     }
 
     /**
      * @return A copy of the cell attributes.
      */
     public CellAttributes getAttributes() {
-        return attributes;
+        return ownAttributes();
     }
 
     /**
@@ -152,4 +155,14 @@ public class Cell {
     public void setAttributes(CellAttributes attributes) {
         this.attributes = attributes;
     }
-}
\ No newline at end of file
+
+    /**
+     * Replaces shared immutable attributes with a private mutable copy before they are handed out or changed.
+     */
+    private CellAttributes ownAttributes() {
+        if (attributes.isImmutable()) {
+            attributes = new CellAttributes(attributes);
+        }
+        return attributes;
+    }
+}
@@ -1,25 +1,125 @@
 package org.example.model;
 
+import java.util.Objects;
+
+/**
+ * The colors and style flags of a cell.
+ * Instances handed out by {@link AttributeTable} are shared and immutable;
+ * all other instances are mutable.
+ */
 public class CellAttributes {
+    /** Packed code of default colors with no style flags, see {@link #encode()}. */
+    public static final int DEFAULT_CODE = 0;
+
+    private static final Color[] COLORS = Color.values();
+    private static final int BACKGROUND_SHIFT = 8;
+    private static final int STYLE_SHIFT = 16;
+    private static final int COLOR_MASK = 0xFF;
+    private static final int STYLE_MASK = 0xFF;
+
     private Color foregroundColor;
     private Color backgroundColor;
     private StyleFlags style;
+    private final boolean immutable;
 
     public CellAttributes(Color foregroundColor, Color backgroundColor, StyleFlags style){
-        this.foregroundColor = foregroundColor;
-        this.backgroundColor = backgroundColor;
-        this.style = new StyleFlags(style);
+        this(foregroundColor, backgroundColor, new StyleFlags(style), false);
     }
 
     public CellAttributes(){
-        this(Color.DEFAULT, Color.DEFAULT, new StyleFlags());
+        this(Color.DEFAULT, Color.DEFAULT, new StyleFlags(), false);
     }
 
     public CellAttributes(CellAttributes attributes){
-        this(attributes.foregroundColor, attributes.backgroundColor, new StyleFlags(attributes.style));
+        this(attributes.foregroundColor, attributes.backgroundColor, new StyleFlags(attributes.style), false);
+    }
+
+    /**
+     * Takes ownership of the given style flags without copying them.
+     */
+    private CellAttributes(Color foregroundColor, Color backgroundColor, StyleFlags style, boolean immutable){
+        this.foregroundColor = foregroundColor;
+        this.backgroundColor = backgroundColor;
+        this.style = style;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Creates the shared immutable instance for an attribute code, used by {@link AttributeTable}.
+     */
+    static CellAttributes immutable(int code){
+        return new CellAttributes(foregroundOf(code), backgroundOf(code),
+                StyleFlags.immutable(styleBitsOf(code)), true);
+    }
+
+    /**
+     * Packs colors and style bits into a single int code.
+     * Layout: bits 0-7 foreground ordinal, 8-15 background ordinal, 16-23 style bits.
+     * @param foregroundColor The foreground color.
+     * @param backgroundColor The background color.
+     * @param styleBits The style bits, see {@link StyleFlags#toBits()}.
+     * @return The packed attribute code.
+     */
+    public static int encode(Color foregroundColor, Color backgroundColor, int styleBits){
+        return foregroundColor.ordinal()
+                | backgroundColor.ordinal() << BACKGROUND_SHIFT
+                | (styleBits & STYLE_MASK) << STYLE_SHIFT;
+    }
+
+    /**
+     * Unpacks an attribute code into a new mutable instance.
+     * @param code The packed attribute code.
+     * @return The unpacked attributes.
+     */
+    public static CellAttributes decode(int code){
+        return new CellAttributes(foregroundOf(code), backgroundOf(code), StyleFlags.fromBits(styleBitsOf(code)), false);
+    }
+
+    public static Color foregroundOf(int code){
+        return COLORS[code & COLOR_MASK];
+    }
+
+    public static Color backgroundOf(int code){
+        return COLORS[(code >>> BACKGROUND_SHIFT) & COLOR_MASK];
+    }
+
+    public static int styleBitsOf(int code){
+        return (code >>> STYLE_SHIFT) & STYLE_MASK;
+    }
+
+    public static int withForeground(int code, Color color){
+        return encode(color, backgroundOf(code), styleBitsOf(code));
+    }
+
+    public static int withBackground(int code, Color color){
+        return encode(foregroundOf(code), color, styleBitsOf(code));
+    }
+
+    public static int withStyleBit(int code, int bit, boolean enabled){
+        int bits = styleBitsOf(code);
+        return encode(foregroundOf(code), backgroundOf(code), enabled ? bits | bit : bits & ~bit);
+    }
+
+    public static int withStyleBits(int code, int styleBits){
+        return encode(foregroundOf(code), backgroundOf(code), styleBits);
+    }
+
+    /**
+     * @return The packed code of these attributes.
+     */
+    public int encode(){
+        return encode(foregroundColor, backgroundColor, style.toBits());
+    }
+
+    /**
+     * @return true if this is a shared instance that cannot be modified.
+     */
+    public boolean isImmutable(){
+        return immutable;
     }
 
     public void reset(){
+        checkMutable();
         foregroundColor = Color.DEFAULT;
         backgroundColor = Color.DEFAULT;
         style.reset();
@@ -31,11 +131,35 @@ public class CellAttributes {
         cell.setStyle(new StyleFlags(style));
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CellAttributes other)) return false;
+        return foregroundColor == other.foregroundColor
+                && backgroundColor == other.backgroundColor
+                && style.equals(other.style);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(foregroundColor, backgroundColor, style);
+    }
+
+    @Override
+    public String toString() {
+        return "CellAttributes{" +
+                "foregroundColor=" + foregroundColor +
+                ", backgroundColor=" + backgroundColor +
+                ", style=" + style +
+                '}';
+    }
+
     public Color getForegroundColor() {
         return foregroundColor;
     }
 
     public void setForegroundColor(Color foregroundColor) {
+        checkMutable();
         this.foregroundColor = foregroundColor;
     }
 
@@ -44,6 +168,7 @@ public class CellAttributes {
     }
 
     public void setBackgroundColor(Color backgroundColor) {
+        checkMutable();
         this.backgroundColor = backgroundColor;
     }
 
@@ -52,6 +177,13 @@ public class CellAttributes {
     }
 
     public void setStyle(StyleFlags style) {
+        checkMutable();
         this.style = new StyleFlags(style);
     }
-}
\ No newline at end of file
+
+    private void checkMutable(){
+        if (immutable) {
+            throw new UnsupportedOperationException("Shared attributes cannot be modified");
+        }
+    }
+}
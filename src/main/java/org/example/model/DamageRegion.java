@@ -0,0 +1,64 @@
+package org.example.model;
+
+import java.util.Objects;
+
+/**
+ * A changed span of one screen row, reported by {@link org.example.buffer.TerminalBuffer#collectDamage()}.
+ */
+public class DamageRegion {
+    /** The screen row. */
+    private final int row;
+    /** The first changed column. */
+    private final int startColumn;
+    /** The column after the last changed one. */
+    private final int endColumn;
+
+    /**
+     * @param row The screen row.
+     * @param startColumn The first changed column.
+     * @param endColumn The column after the last changed one.
+     */
+    public DamageRegion(int row, int startColumn, int endColumn) {
+        this.row = row;
+        this.startColumn = startColumn;
+        this.endColumn = endColumn;
+    }
+
+    /**
+     * @return The screen row.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return The first changed column.
+     */
+    public int getStartColumn() {
+        return startColumn;
+    }
+
+    /**
+     * @return The column after the last changed one.
+     */
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        DamageRegion that = (DamageRegion) o;
+        return row == that.row && startColumn == that.startColumn && endColumn == that.endColumn;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(row, startColumn, endColumn);
+    }
+
+    @Override
+    public String toString() {
+        return "DamageRegion{row=" + row + ", columns=" + startColumn + ".." + endColumn + '}';
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.model;
+
+import java.util.Objects;
+
+/**
+ * A match found by {@link org.example.buffer.TerminalBuffer#search}. Rows count scrollback and screen
+ * together, as with {@code getLine(row, true)}: row 0 is the oldest scrollback line. Rows shift as old
+ * lines are evicted; the line id does not, see {@link org.example.buffer.TerminalBuffer#getLineId}.
+ */
+public class SearchHit {
+    /** The row, scrollback included. */
+    private final int row;
+    /** The first matching column. */
+    private final int column;
+    /** The number of matching cells. */
+    private final int length;
+    /** The absolute id of the line. */
+    private final long lineId;
+    /** The offset of the first matching cell within the logical line. */
+    private final long lineOffset;
+
+    /**
+     * Creates a hit in a row that starts its logical line.
+     * @param row The row, scrollback included.
+     * @param column The first matching column.
+     * @param length The number of matching cells.
+     * @param lineId The absolute id of the line.
+     */
+    public SearchHit(int row, int column, int length, long lineId) {
+        this(row, column, length, lineId, column);
+    }
+
+    /**
+     * @param row The row, scrollback included.
+     * @param column The first matching column.
+     * @param length The number of matching cells.
+     * @param lineId The absolute id of the line.
+     * @param lineOffset The offset of the first matching cell within the logical line.
+     */
+    public SearchHit(int row, int column, int length, long lineId, long lineOffset) {
+        this.row = row;
+        this.column = column;
+        this.length = length;
+        this.lineId = lineId;
+        this.lineOffset = lineOffset;
+    }
+
+    /**
+     * @return The row, scrollback included.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @return The first matching column.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return The number of matching cells.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return The absolute id of the line, which stays valid as older lines are evicted.
+     */
+    public long getLineId() {
+        return lineId;
+    }
+
+    /**
+     * @return The offset of the first matching cell within the logical line, which together with the line id
+     * finds the match again after a resize, see
+     * {@link org.example.buffer.TerminalBuffer#getRowOfLineId(long, long)}.
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        SearchHit that = (SearchHit) o;
+        return row == that.row && column == that.column && length == that.length && lineId == that.lineId
+                && lineOffset == that.lineOffset;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(row, column, length, lineId, lineOffset);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchHit{row=" + row + ", column=" + column + ", length=" + length + ", lineId=" + lineId + ", lineOffset=" + lineOffset + '}';
+    }
+}
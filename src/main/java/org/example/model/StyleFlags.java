@@ -6,20 +6,27 @@ import java.util.Objects;
  * Represents style attributes for a terminal cell, such as bold, italic, and underline.
  */
 public class StyleFlags{
+    /** Bit set in {@link #toBits()} when the text is bold. */
+    public static final int BOLD = 1;
+    /** Bit set in {@link #toBits()} when the text is italic. */
+    public static final int ITALIC = 1 << 1;
+    /** Bit set in {@link #toBits()} when the text is underlined. */
+    public static final int UNDERLINE = 1 << 2;
+
     /** Whether the text is bold. */
     private boolean bold;
     /** Whether the text is italic. */
     private boolean italic;
     /** Whether the text is underlined. */
     private boolean underline;
+    /** Whether this is a shared instance that cannot be modified. */
+    private final boolean immutable;
 
     /**
      * Creates a new set of style flags with all styles disabled.
      */
     public StyleFlags(){
-        this.bold = false;
-        this.italic = false;
-        this.underline = false;
+        this(false, false, false);
     }
 
     /**
@@ -27,9 +34,7 @@ public class StyleFlags{
      * @param styleFlags The style flags to copy.
      */
     public StyleFlags(StyleFlags styleFlags){
-        this.bold = styleFlags.bold;
-        this.italic = styleFlags.italic;
-        this.underline = styleFlags.underline;
+        this(styleFlags.bold, styleFlags.italic, styleFlags.underline);
     }
 
     /**
@@ -39,15 +44,45 @@ public class StyleFlags{
      * @param underline Whether the text is underlined.
      */
     public StyleFlags(boolean bold, boolean italic, boolean underline){
+        this(bold, italic, underline, false);
+    }
+
+    private StyleFlags(boolean bold, boolean italic, boolean underline, boolean immutable){
         this.bold = bold;
         this.italic = italic;
         this.underline = underline;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Creates a shared instance that cannot be modified, used by {@link AttributeTable}.
+     */
+    static StyleFlags immutable(int bits){
+        return new StyleFlags((bits & BOLD) != 0, (bits & ITALIC) != 0, (bits & UNDERLINE) != 0, true);
+    }
+
+    /**
+     * Creates a new set of style flags from a packed bit set.
+     * @param bits A combination of {@link #BOLD}, {@link #ITALIC} and {@link #UNDERLINE}.
+     * @return The unpacked style flags.
+     */
+    public static StyleFlags fromBits(int bits){
+        return new StyleFlags((bits & BOLD) != 0, (bits & ITALIC) != 0, (bits & UNDERLINE) != 0);
+    }
+
+    /**
+     * Packs the flags into a bit set.
+     * @return A combination of {@link #BOLD}, {@link #ITALIC} and {@link #UNDERLINE}.
+     */
+    public int toBits(){
+        return (bold ? BOLD : 0) | (italic ? ITALIC : 0) | (underline ? UNDERLINE : 0);
     }
 
     /**
      * Resets all style flags to false.
      */
     public void reset(){
+        checkMutable();
         this.bold = false;
         this.italic = false;
         this.underline = false;
@@ -88,6 +123,7 @@ public class StyleFlags{
      * @param bold true if the text should be bold.
      */
     public void setBold(boolean bold) {
+        checkMutable();
         this.bold = bold;
     }
 
@@ -103,6 +139,7 @@ public class StyleFlags{
      * @param italic true if the text should be italic.
      */
     public void setItalic(boolean italic) {
+        checkMutable();
         this.italic = italic;
     }
 
@@ -118,6 +155,13 @@ public class StyleFlags{
      * @param underline true if the text should be underlined.
      */
     public void setUnderline(boolean underline) {
+        checkMutable();
         this.underline = underline;
     }
-}
\ No newline at end of file
+
+    private void checkMutable(){
+        if (immutable) {
+            throw new UnsupportedOperationException("Shared style flags cannot be modified");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.session;
+
+/**
+ * Aggregate figures of a {@link SessionHost} at one point in time.
+ * Take two and use {@link #bytesPerSecondSince} for the recent rate.
+ */
+public final class HostStatistics {
+    private final long timestampNanos;
+    private final int sessionCount;
+    private final int runningCount;
+    private final long bytesRead;
+    private final long memoryBytes;
+    private final double averageBytesPerSecond;
+
+    HostStatistics(long timestampNanos, int sessionCount, int runningCount, long bytesRead,
+                   long memoryBytes, double averageBytesPerSecond) {
+        this.timestampNanos = timestampNanos;
+        this.sessionCount = sessionCount;
+        this.runningCount = runningCount;
+        this.bytesRead = bytesRead;
+        this.memoryBytes = memoryBytes;
+        this.averageBytesPerSecond = averageBytesPerSecond;
+    }
+
+    /**
+     * @return System.nanoTime() when the figures were taken.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return The number of open sessions.
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * @return The number of open sessions still draining their source.
+     */
+    public int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * @return The bytes read by all sessions since the host was created, closed sessions included.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The average bytes read per second over the host's whole lifetime, not the current rate;
+     * see {@link #bytesPerSecondSince} for that.
+     */
+    public double getAverageBytesPerSecond() {
+        return averageBytesPerSecond;
+    }
+
+    /**
+     * @return The estimated heap held by all open sessions, see {@link Session#estimateMemoryBytes()}.
+     */
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * @return The estimated heap per open session, or 0 if there are none.
+     */
+    public long getMemoryPerSession() {
+        return sessionCount == 0 ? 0 : memoryBytes / sessionCount;
+    }
+
+    /**
+     * @param earlier Figures taken before these.
+     * @return The bytes read per second between the two, or 0 if no time passed.
+     */
+    public double bytesPerSecondSince(HostStatistics earlier) {
+        long elapsed = timestampNanos - earlier.timestampNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (bytesRead - earlier.bytesRead) * 1_000_000_000.0 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "HostStatistics{" +
+                "sessions=" + sessionCount +
+                ", running=" + runningCount +
+                ", bytesRead=" + bytesRead +
+                ", averageBytesPerSecond=" + (long) averageBytesPerSecond +
+                ", memoryPerSession=" + getMemoryPerSession() +
+                '}';
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.session;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded in-process byte pipe that stands in for a PTY in tests and load simulations.
+ * Unlike {@link java.nio.channels.Pipe} it needs no file descriptors, so tens of thousands can be open at once,
+ * and it blocks with a {@link ReentrantLock}, which parks a virtual thread without pinning its carrier.
+ * <p>
+ * Closing the sink is end of stream for the source once the pipe is drained. Closing the source makes a blocked
+ * read throw {@link AsynchronousCloseException} and later writes fail.
+ */
+public class LocalPipe {
+    private final byte[] ring;
+    private int head;
+    private int size;
+    private boolean sinkClosed;
+    private boolean sourceClosed;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ReadableByteChannel source = new Source();
+    private final WritableByteChannel sink = new Sink();
+
+    /**
+     * @param capacity The number of bytes the pipe holds before writes block.
+     */
+    public LocalPipe(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.ring = new byte[capacity];
+    }
+
+    /**
+     * @return The reading end.
+     */
+    public ReadableByteChannel source() {
+        return source;
+    }
+
+    /**
+     * @return The writing end. A write blocks until all bytes are in the pipe.
+     */
+    public WritableByteChannel sink() {
+        return sink;
+    }
+
+    private final class Source implements ReadableByteChannel {
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            lock.lock();
+            try {
+                if (sourceClosed) {
+                    throw new ClosedChannelException();
+                }
+                while (size == 0 && !sinkClosed) {
+                    awaitOrClose(notEmpty);
+                    if (sourceClosed) {
+                        throw new AsynchronousCloseException();
+                    }
+                }
+                if (size == 0) {
+                    return -1;
+                }
+                int n = Math.min(size, dst.remaining());
+                int first = Math.min(n, ring.length - head);
+                dst.put(ring, head, first);
+                dst.put(ring, 0, n - first);
+                head = (head + n) % ring.length;
+                size -= n;
+                notFull.signal();
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            lock.lock();
+            try {
+                return !sourceClosed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                sourceClosed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final class Sink implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            lock.lock();
+            try {
+                int written = 0;
+                while (src.hasRemaining()) {
+                    if (sinkClosed) {
+                        throw new ClosedChannelException();
+                    }
+                    if (sourceClosed) {
+                        throw new IOException("Broken pipe");
+                    }
+                    if (size == ring.length) {
+                        awaitOrClose(notFull);
+                        continue;
+                    }
+                    int tail = (head + size) % ring.length;
+                    int n = Math.min(src.remaining(), Math.min(ring.length - size, ring.length - tail));
+                    src.get(ring, tail, n);
+                    size += n;
+                    written += n;
+                    notEmpty.signal();
+                }
+                return written;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            lock.lock();
+            try {
+                return !sinkClosed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                sinkClosed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits for a signal. An interrupt closes the source, as it would for an interruptible channel.
+     */
+    private void awaitOrClose(Condition condition) throws ClosedByInterruptException {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            sourceClosed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            Thread.currentThread().interrupt();
+            throw new ClosedByInterruptException();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.session;
+
+import org.example.buffer.CellArena;
+import org.example.buffer.ConcurrentTerminalBuffer;
+import org.example.buffer.ScrollbackBudget;
+import org.example.buffer.TerminalBuffer;
+import org.example.io.Utf8Ingestor;
+import org.example.vt.VtParser;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * One terminal session of a {@link SessionHost}: a buffer and the thread that drains the session's
+ * output into it. The thread decodes UTF-8, parses escape sequences and applies each decoded chunk
+ * to the buffer under a single write stamp, so readers on other threads see whole chunks.
+ * <p>
+ * The session stays registered with its host after the source reaches end of stream, so the final
+ * screen can still be read, until it is closed. A session with off-heap scrollback owns its
+ * {@link CellArena} and frees it when it closes.
+ */
+public final class Session implements AutoCloseable {
+    private final long id;
+    private final SessionHost host;
+    private final ConcurrentTerminalBuffer buffer;
+    private final ReadableByteChannel source;
+    private final Utf8Ingestor ingestor;
+    private final int readBufferSize;
+    /** The arena holding the scrollback cells, or null if they are on the heap. */
+    private final CellArena cellArena;
+    private Thread thread;
+    /** Written only by the draining thread. */
+    private volatile long bytesRead;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    Session(long id, SessionHost host, int width, int height, int maxScrollbackLines,
+            ReadableByteChannel source, int readBufferSize, CellArena cellArena) {
+        TerminalBuffer terminal = new TerminalBuffer(width, height, maxScrollbackLines);
+        if (cellArena != null) {
+            terminal.setCellArena(cellArena);
+        }
+        VtParser parser = new VtParser(terminal);
+        this.id = id;
+        this.host = host;
+        this.buffer = new ConcurrentTerminalBuffer(terminal);
+        this.source = source;
+        this.readBufferSize = readBufferSize;
+        this.cellArena = cellArena;
+        this.ingestor = new Utf8Ingestor(
+                (chars, offset, length) -> buffer.update(b -> parser.parse(chars, offset, length)),
+                readBufferSize);
+    }
+
+    void start(ThreadFactory threads) {
+        thread = threads.newThread(this::drain);
+        thread.start();
+    }
+
+    private void drain() {
+        long total = 0;
+        try {
+            int n;
+            while ((n = ingestor.read(source)) >= 0) {
+                total += n;
+                bytesRead = total;
+            }
+        } catch (AsynchronousCloseException e) {
+            // Closed by close(), nothing left to do.
+        } catch (IOException e) {
+            if (!closed) {
+                failure = e;
+            }
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return The session's buffer, safe to read from any thread.
+     */
+    public ConcurrentTerminalBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The number of bytes drained from the source so far.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return true while the draining thread runs, that is until end of stream, a read error or close.
+     */
+    public boolean isRunning() {
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * @return The error that stopped the draining thread, or null if there was none.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits for the draining thread to stop.
+     * @param timeout The longest time to wait.
+     * @return true if the thread has stopped.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitEnd(Duration timeout) throws InterruptedException {
+        return thread.join(timeout);
+    }
+
+    /**
+     * Estimates the heap held by the session: its lines at {@link ScrollbackBudget#bytesPerLine}
+     * and the read buffers.
+     * @return The estimate in bytes.
+     */
+    public long estimateMemoryBytes() {
+        long lines = buffer.getHeight() + buffer.getScrollbackSize();
+        return lines * ScrollbackBudget.bytesPerLine(buffer.getWidth()) + readBufferSize * 3L;
+    }
+
+    /**
+     * @return The arena holding the session's scrollback cells, or null if they are on the heap.
+     */
+    public CellArena getCellArena() {
+        return cellArena;
+    }
+
+    /**
+     * Closes the source, which stops the draining thread, and removes the session from its host.
+     * A source that does not support asynchronous close, such as a channel over an InputStream,
+     * stops the thread only at its next read. Off-heap scrollback is cleared and its arena freed
+     * right away; the screen can still be read.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            source.close();
+        } catch (IOException e) {
+            // The session is going away; there is no one left to report to.
+        }
+        if (cellArena != null) {
+            buffer.update(b -> {
+                b.setCellArena(null);
+                b.clearScrollback();
+                cellArena.close();
+            });
+        }
+        host.remove(this);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
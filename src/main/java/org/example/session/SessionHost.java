@@ -0,0 +1,186 @@
+package org.example.session;
+
+import org.example.buffer.CellArena;
+import org.example.buffer.ScrollbackBudget;
+import org.example.io.Utf8Ingestor;
+
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Owns many terminal sessions in one JVM, each drained by its own virtual thread.
+ * A blocked read parks only its virtual thread, so thousands of mostly idle sessions cost
+ * memory for their buffers but no platform threads.
+ * <p>
+ * Sessions are created with {@link #open}, found by id with {@link #get} and removed with {@link #close(long)}
+ * or {@link Session#close()}. Closing the host closes every session. All methods are thread-safe.
+ */
+public class SessionHost implements AutoCloseable {
+    /**
+     * The default size of each session's byte and character buffers. Smaller than the
+     * ingestor's default, since with thousands of sessions these add up.
+     */
+    public static final int DEFAULT_READ_BUFFER_SIZE = 1024;
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ThreadFactory threads = Thread.ofVirtual().name("session-", 1).factory();
+    private final int readBufferSize;
+    /** The budget every session's scrollback joins, or null. */
+    private final ScrollbackBudget scrollbackBudget;
+    /** Whether each session keeps its scrollback cells in an arena of its own. */
+    private final boolean offHeapScrollback;
+    private final long createdNanos = System.nanoTime();
+    /** The bytes read by sessions that have been closed. */
+    private final LongAdder closedBytes = new LongAdder();
+    private volatile boolean closed;
+
+    public SessionHost() {
+        this(DEFAULT_READ_BUFFER_SIZE, null);
+    }
+
+    /**
+     * @param readBufferSize The size of each session's byte and character buffers.
+     * @param scrollbackBudget A memory budget all sessions' scrollback shares, or null for none.
+     * @throws IllegalArgumentException if the size is below {@link Utf8Ingestor#MIN_BUFFER_SIZE}
+     */
+    public SessionHost(int readBufferSize, ScrollbackBudget scrollbackBudget) {
+        this(readBufferSize, scrollbackBudget, false);
+    }
+
+    /**
+     * @param readBufferSize The size of each session's byte and character buffers.
+     * @param scrollbackBudget A memory budget all sessions' scrollback shares, or null for none.
+     * @param offHeapScrollback Whether each session keeps its scrollback cells off the heap in a
+     * {@link CellArena} of its own, freed when the session closes.
+     * @throws IllegalArgumentException if the size is below {@link Utf8Ingestor#MIN_BUFFER_SIZE}
+     */
+    public SessionHost(int readBufferSize, ScrollbackBudget scrollbackBudget, boolean offHeapScrollback) {
+        if (readBufferSize < Utf8Ingestor.MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + Utf8Ingestor.MIN_BUFFER_SIZE);
+        }
+        this.readBufferSize = readBufferSize;
+        this.scrollbackBudget = scrollbackBudget;
+        this.offHeapScrollback = offHeapScrollback;
+    }
+
+    /**
+     * Creates a session and starts draining its source.
+     * @param width The screen width.
+     * @param height The screen height.
+     * @param maxScrollbackLines The scrollback limit.
+     * @param source The session output, such as a PTY. Closed when the session is.
+     * @return The new session.
+     * @throws IllegalArgumentException if source is null
+     * @throws IllegalStateException if the host is closed
+     */
+    public Session open(int width, int height, int maxScrollbackLines, ReadableByteChannel source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source cannot be null");
+        }
+        if (closed) {
+            throw new IllegalStateException("Session host is closed");
+        }
+        Session session = new Session(nextId.getAndIncrement(), this, width, height, maxScrollbackLines,
+                source, readBufferSize, offHeapScrollback ? new CellArena() : null);
+        if (scrollbackBudget != null) {
+            session.getBuffer().setScrollbackBudget(scrollbackBudget);
+        }
+        sessions.put(session.getId(), session);
+        session.start(threads);
+        if (closed) {
+            session.close();
+            throw new IllegalStateException("Session host is closed");
+        }
+        return session;
+    }
+
+    /**
+     * @param id The session id.
+     * @return The open session with the id, or null if there is none.
+     */
+    public Session get(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Closes a session.
+     * @param id The session id.
+     * @return true if an open session with the id was closed.
+     */
+    public boolean close(long id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        return true;
+    }
+
+    void remove(Session session) {
+        if (scrollbackBudget != null) {
+            session.getBuffer().setScrollbackBudget(null);
+        }
+        if (sessions.remove(session.getId(), session)) {
+            closedBytes.add(session.getBytesRead());
+        }
+    }
+
+    /**
+     * @return A live, unmodifiable view of the open sessions.
+     */
+    public Collection<Session> getSessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * @return The budget all sessions' scrollback shares, or null if there is none.
+     */
+    public ScrollbackBudget getScrollbackBudget() {
+        return scrollbackBudget;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Collects aggregate figures. Walks all sessions, so call it at monitoring rate rather than per operation.
+     * @return The current figures.
+     */
+    public HostStatistics getStatistics() {
+        int count = 0;
+        int running = 0;
+        long bytes = closedBytes.sum();
+        long memory = 0;
+        for (Session session : sessions.values()) {
+            count++;
+            if (session.isRunning()) {
+                running++;
+            }
+            bytes += session.getBytesRead();
+            memory += session.estimateMemoryBytes();
+        }
+        long now = System.nanoTime();
+        long elapsed = now - createdNanos;
+        double averageBytesPerSecond = elapsed > 0 ? bytes * 1_000_000_000.0 / elapsed : 0;
+        return new HostStatistics(now, count, running, bytes, memory, averageBytesPerSecond);
+    }
+
+    /**
+     * Closes every session and refuses new ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package org.example.vt;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.model.AttributeTable;
+import org.example.model.CellAttributes;
+import org.example.model.StyleFlags;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes the difference between two screen states as a UTF-8 ANSI byte stream that turns a terminal
+ * showing the first state into one showing the second.
+ * <p>
+ * The encoder keeps the output small: a screen that moved up is scrolled with SU before diffing,
+ * only changed cells are written (short unchanged gaps are rewritten rather than skipped), cursor
+ * motion uses the shortest of CUP, relative moves, CR and CR LF, a changed blank row tail is cleared
+ * with EL, and SGR emits only the attributes that change, or a reset when that is shorter.
+ * <p>
+ * Used statefully through {@link #encode(TerminalBuffer, ByteBuffer)}, the encoder remembers the last
+ * frame it produced and the client's SGR state; the first frame repaints the whole screen.
+ * Each cell is assumed to occupy one column. Not thread-safe.
+ */
+public class FrameEncoder {
+    private static final byte ESC = 0x1B;
+    private static final int UNKNOWN = -1;
+    /** The longest run of unchanged cells that is rewritten instead of skipped with a cursor move. */
+    private static final int MAX_REWRITE_GAP = 3;
+    /** The shortest span of changed cells in a blank row tail that is cleared with EL. */
+    private static final int MIN_ERASE_SPAN = 4;
+    /** The fewest extra matching rows that make scrolling worth it. */
+    private static final int MIN_SCROLL_GAIN = 2;
+
+    private ScreenState previous;
+    private ScreenState current;
+    private final ScreenState scratch = new ScreenState(1, 1);
+    /** The client's SGR state after the last frame, or UNKNOWN. */
+    private int clientSgr = UNKNOWN;
+
+    private ByteBuffer out;
+    private int cursorColumn;
+    private int cursorRow;
+    private int sgr;
+    private int[] previousHashes = new int[0];
+    private int[] currentHashes = new int[0];
+    private final int[] incremental = new int[8];
+    private final int[] fromReset = new int[8];
+
+    /**
+     * Encodes the changes to the buffer's screen since the last frame encoded by this encoder.
+     * The first frame, and the first after {@link #reset()} or a size change, repaints the whole screen.
+     * @param buffer The buffer whose screen to encode.
+     * @param out The destination, written from its position.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException if the frame does not fit; out's position and this encoder are left unchanged
+     */
+    public int encode(TerminalBuffer buffer, ByteBuffer out) {
+        if (buffer == null || out == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        if (current == null) {
+            current = ScreenState.of(buffer);
+        } else {
+            current.copyFrom(buffer);
+        }
+        int written = encode(previous, current, clientSgr, out);
+        clientSgr = sgr;
+        ScreenState swap = previous;
+        previous = current;
+        current = swap;
+        return written;
+    }
+
+    /**
+     * Encodes the difference between two screen states, assuming nothing about the client's SGR state.
+     * @param from The state the client shows, or null if unknown, in which case the whole screen is repainted.
+     * @param to The state to turn it into.
+     * @param out The destination, written from its position.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException if the frame does not fit; out's position is left unchanged
+     */
+    public int encode(ScreenState from, ScreenState to, ByteBuffer out) {
+        if (to == null || out == null) {
+            throw new IllegalArgumentException("State cannot be null");
+        }
+        return encode(from, to, UNKNOWN, out);
+    }
+
+    /**
+     * Forgets the last frame, so the next one repaints the whole screen.
+     */
+    public void reset() {
+        previous = null;
+        clientSgr = UNKNOWN;
+    }
+
+    private int encode(ScreenState from, ScreenState to, int initialSgr, ByteBuffer out) {
+        int start = out.position();
+        this.out = out;
+        this.sgr = initialSgr;
+        try {
+            ScreenState base;
+            if (from == null || from.getWidth() != to.getWidth() || from.getHeight() != to.getHeight()) {
+                setSgr(CellAttributes.DEFAULT_CODE);
+                putCsi(UNKNOWN, 'H');
+                putCsi(2, 'J');
+                cursorColumn = 0;
+                cursorRow = 0;
+                scratch.clear(to.getWidth(), to.getHeight());
+                base = scratch;
+            } else {
+                cursorColumn = from.getCursorColumn();
+                cursorRow = from.getCursorRow();
+                base = from;
+                int lines = scrollDistance(from, to);
+                if (lines > 0) {
+                    setSgr(CellAttributes.DEFAULT_CODE);
+                    putCsi(lines == 1 ? UNKNOWN : lines, 'S');
+                    scratch.scrolledCopyOf(from, lines);
+                    base = scratch;
+                }
+            }
+            for (int row = 0; row < to.getHeight(); row++) {
+                encodeRow(base, to, row);
+            }
+            moveTo(to.getCursorColumn(), to.getCursorRow());
+            return out.position() - start;
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        } finally {
+            this.out = null;
+        }
+    }
+
+    /**
+     * @return The number of lines the screen moved up, if scrolling first saves enough rows, else 0.
+     */
+    private int scrollDistance(ScreenState from, ScreenState to) {
+        int height = to.getHeight();
+        previousHashes = rowHashes(from, previousHashes);
+        currentHashes = rowHashes(to, currentHashes);
+        int unscrolled = 0;
+        for (int row = 0; row < height; row++) {
+            if (previousHashes[row] == currentHashes[row]) {
+                unscrolled++;
+            }
+        }
+        int best = 0;
+        int bestMatches = unscrolled + MIN_SCROLL_GAIN - 1;
+        for (int lines = 1; height - lines > bestMatches; lines++) {
+            int matches = 0;
+            for (int row = 0; row < height - lines; row++) {
+                if (currentHashes[row] == previousHashes[row + lines]) {
+                    matches++;
+                }
+            }
+            if (matches > bestMatches) {
+                best = lines;
+                bestMatches = matches;
+            }
+        }
+        return best;
+    }
+
+    private static int[] rowHashes(ScreenState state, int[] hashes) {
+        int width = state.getWidth();
+        int height = state.getHeight();
+        if (hashes.length < height) {
+            hashes = new int[height];
+        }
+        for (int row = 0; row < height; row++) {
+            int h = 1;
+            for (int i = row * width, end = i + width; i < end; i++) {
+                h = 31 * h + state.characters[i];
+                h = 31 * h + state.attributes[i];
+            }
+            hashes[row] = h;
+        }
+        return hashes;
+    }
+
+    private void encodeRow(ScreenState base, ScreenState to, int row) {
+        int width = to.getWidth();
+        int offset = row * width;
+        int first = firstChange(base, to, offset, 0, width);
+        if (first < 0) {
+            return;
+        }
+
+        char[] chars = to.characters;
+        short tailAttribute = to.attributes[offset + width - 1];
+        int blankFrom = width;
+        while (blankFrom > 0 && chars[offset + blankFrom - 1] == ' '
+                && to.attributes[offset + blankFrom - 1] == tailAttribute) {
+            blankFrom--;
+        }
+        int limit = width;
+        int firstInTail = first >= blankFrom ? first : firstChange(base, to, offset, blankFrom, width);
+        if (firstInTail >= 0 && lastChange(base, to, offset, firstInTail, width) - firstInTail + 1 >= MIN_ERASE_SPAN) {
+            limit = firstInTail;
+        }
+
+        int column = first < limit ? first : UNKNOWN;
+        while (column >= 0) {
+            int end = column + 1;
+            int next;
+            while ((next = firstChange(base, to, offset, end, limit)) >= 0 && next - end <= MAX_REWRITE_GAP) {
+                end = next + 1;
+            }
+            if (column > 0 && Character.isLowSurrogate(chars[offset + column])
+                    && Character.isHighSurrogate(chars[offset + column - 1])) {
+                column--;
+            }
+            if (end < limit && Character.isHighSurrogate(chars[offset + end - 1])
+                    && Character.isLowSurrogate(chars[offset + end])) {
+                end++;
+                next = firstChange(base, to, offset, end, limit);
+            }
+            moveTo(column, row);
+            writeCells(to, row, column, end);
+            column = next;
+        }
+
+        if (limit < width) {
+            moveTo(limit, row);
+            setSgr(AttributeTable.codeOf(tailAttribute & 0xFFFF));
+            putCsi(UNKNOWN, 'K');
+        }
+    }
+
+    private static int firstChange(ScreenState a, ScreenState b, int offset, int from, int to) {
+        if (from >= to) {
+            return UNKNOWN;
+        }
+        int chars = Arrays.mismatch(a.characters, offset + from, offset + to, b.characters, offset + from, offset + to);
+        int attributes = Arrays.mismatch(a.attributes, offset + from, offset + to, b.attributes, offset + from, offset + to);
+        if (chars < 0) {
+            return attributes < 0 ? UNKNOWN : from + attributes;
+        }
+        return from + (attributes < 0 ? chars : Math.min(chars, attributes));
+    }
+
+    private static int lastChange(ScreenState a, ScreenState b, int offset, int from, int to) {
+        for (int i = offset + to - 1; i >= offset + from; i--) {
+            if (a.characters[i] != b.characters[i] || a.attributes[i] != b.attributes[i]) {
+                return i - offset;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private void writeCells(ScreenState to, int row, int from, int end) {
+        int offset = row * to.getWidth();
+        boolean pair = false;
+        for (int column = from; column < end; column++) {
+            setSgr(AttributeTable.codeOf(to.attributes[offset + column] & 0xFFFF));
+            char c = to.characters[offset + column];
+            if (Character.isHighSurrogate(c) && column + 1 < end
+                    && Character.isLowSurrogate(to.characters[offset + column + 1])) {
+                putCodePoint(Character.toCodePoint(c, to.characters[offset + ++column]));
+                pair = true;
+            } else {
+                putChar(c);
+            }
+        }
+        if (pair || end >= to.getWidth()) {
+            // A pair may take one or two columns, and the last column leaves the terminal waiting to wrap.
+            cursorColumn = UNKNOWN;
+            cursorRow = UNKNOWN;
+        } else {
+            cursorColumn = end;
+        }
+    }
+
+    /**
+     * Moves the cursor with the shortest sequence that gets there.
+     */
+    private void moveTo(int column, int row) {
+        if (column == cursorColumn && row == cursorRow) {
+            return;
+        }
+        int best = cupLength(column, row);
+        char move = 'H';
+        if (cursorColumn != UNKNOWN && cursorRow != UNKNOWN) {
+            if (row == cursorRow) {
+                if (column == 0) {
+                    out.put((byte) '\r');
+                    cursorColumn = 0;
+                    return;
+                }
+                int distance = Math.abs(column - cursorColumn);
+                if (csiLength(distance) < best) {
+                    best = csiLength(distance);
+                    move = column > cursorColumn ? 'C' : 'D';
+                }
+                if (1 + csiLength(column) < best) {
+                    best = 1 + csiLength(column);
+                    move = '\r';
+                }
+            } else if (column == cursorColumn) {
+                int distance = Math.abs(row - cursorRow);
+                if (csiLength(distance) < best) {
+                    best = csiLength(distance);
+                    move = row > cursorRow ? 'B' : 'A';
+                }
+            }
+            if (row == cursorRow + 1 && column == 0 && 2 < best) {
+                move = '\n';
+            }
+        }
+        switch (move) {
+            case 'C', 'D' -> putCsi(Math.abs(column - cursorColumn), move);
+            case 'A', 'B' -> putCsi(Math.abs(row - cursorRow), move);
+            case '\r' -> {
+                out.put((byte) '\r');
+                putCsi(column, 'C');
+            }
+            case '\n' -> {
+                out.put((byte) '\r');
+                out.put((byte) '\n');
+            }
+            default -> {
+                out.put(ESC).put((byte) '[');
+                if (row != 0 || column != 0) {
+                    putNumber(row + 1);
+                    if (column != 0) {
+                        out.put((byte) ';');
+                        putNumber(column + 1);
+                    }
+                }
+                out.put((byte) 'H');
+            }
+        }
+        cursorColumn = column;
+        cursorRow = row;
+    }
+
+    private static int cupLength(int column, int row) {
+        if (row == 0 && column == 0) {
+            return 3;
+        }
+        return 3 + digits(row + 1) + (column == 0 ? 0 : 1 + digits(column + 1));
+    }
+
+    /**
+     * @return The length of a CSI sequence with one numeric parameter, which is left out when it is 1.
+     */
+    private static int csiLength(int n) {
+        return n == 1 ? 3 : 3 + digits(n);
+    }
+
+    private static int digits(int n) {
+        return n < 10 ? 1 : n < 100 ? 2 : n < 1000 ? 3 : n < 10000 ? 4 : String.valueOf(n).length();
+    }
+
+    /**
+     * Switches the client to the attributes, naming only the ones that change or starting from a reset,
+     * whichever is shorter.
+     */
+    private void setSgr(int code) {
+        if (code == sgr) {
+            return;
+        }
+        if (code == CellAttributes.DEFAULT_CODE) {
+            putCsi(UNKNOWN, 'm');
+            sgr = code;
+            return;
+        }
+        int resetCount = 0;
+        fromReset[resetCount++] = 0;
+        resetCount = appendDifference(CellAttributes.DEFAULT_CODE, code, fromReset, resetCount);
+        if (sgr == UNKNOWN) {
+            putSgr(fromReset, resetCount);
+        } else {
+            int count = appendDifference(sgr, code, incremental, 0);
+            if (sgrLength(count, incremental) <= sgrLength(resetCount, fromReset)) {
+                putSgr(incremental, count);
+            } else {
+                putSgr(fromReset, resetCount);
+            }
+        }
+        sgr = code;
+    }
+
+    private static int appendDifference(int from, int to, int[] params, int count) {
+        int fromStyle = CellAttributes.styleBitsOf(from);
+        int toStyle = CellAttributes.styleBitsOf(to);
+        count = appendStyle(fromStyle, toStyle, StyleFlags.BOLD, 1, 22, params, count);
+        count = appendStyle(fromStyle, toStyle, StyleFlags.ITALIC, 3, 23, params, count);
+        count = appendStyle(fromStyle, toStyle, StyleFlags.UNDERLINE, 4, 24, params, count);
+        int foreground = CellAttributes.foregroundOf(to).ordinal();
+        if (foreground != CellAttributes.foregroundOf(from).ordinal()) {
+            params[count++] = colorParam(foreground, 30, 90, 39);
+        }
+        int background = CellAttributes.backgroundOf(to).ordinal();
+        if (background != CellAttributes.backgroundOf(from).ordinal()) {
+            params[count++] = colorParam(background, 40, 100, 49);
+        }
+        return count;
+    }
+
+    private static int appendStyle(int from, int to, int bit, int on, int off, int[] params, int count) {
+        if ((from & bit) != (to & bit)) {
+            params[count++] = (to & bit) != 0 ? on : off;
+        }
+        return count;
+    }
+
+    /**
+     * Maps a {@link org.example.model.Color} ordinal (DEFAULT, 8 standard, 8 bright) to its SGR parameter.
+     */
+    private static int colorParam(int ordinal, int standard, int bright, int defaultParam) {
+        if (ordinal == 0) {
+            return defaultParam;
+        }
+        return ordinal <= 8 ? standard + ordinal - 1 : bright + ordinal - 9;
+    }
+
+    private static int sgrLength(int count, int[] params) {
+        int length = 3 + count - 1;
+        for (int i = 0; i < count; i++) {
+            length += digits(params[i]);
+        }
+        return length;
+    }
+
+    private void putSgr(int[] params, int count) {
+        out.put(ESC).put((byte) '[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.put((byte) ';');
+            }
+            putNumber(params[i]);
+        }
+        out.put((byte) 'm');
+    }
+
+    /**
+     * Writes a CSI sequence with at most one parameter; UNKNOWN or 1 leaves it out.
+     */
+    private void putCsi(int param, char command) {
+        out.put(ESC).put((byte) '[');
+        if (param != UNKNOWN && param != 1) {
+            putNumber(param);
+        }
+        out.put((byte) command);
+    }
+
+    private void putNumber(int n) {
+        if (n >= 10) {
+            putNumber(n / 10);
+        }
+        out.put((byte) ('0' + n % 10));
+    }
+
+    private void putChar(char c) {
+        if (c < 0x20 || c == 0x7F) {
+            out.put((byte) ' ');
+        } else if (c < 0x80) {
+            out.put((byte) c);
+        } else if (Character.isSurrogate(c)) {
+            putCodePoint(0xFFFD);
+        } else {
+            putCodePoint(c);
+        }
+    }
+
+    private void putCodePoint(int cp) {
+        if (cp < 0x80) {
+            out.put((byte) cp);
+        } else if (cp < 0x800) {
+            out.put((byte) (0xC0 | cp >> 6));
+            out.put((byte) (0x80 | cp & 0x3F));
+        } else if (cp < 0x10000) {
+            out.put((byte) (0xE0 | cp >> 12));
+            out.put((byte) (0x80 | cp >> 6 & 0x3F));
+            out.put((byte) (0x80 | cp & 0x3F));
+        } else {
+            out.put((byte) (0xF0 | cp >> 18));
+            out.put((byte) (0x80 | cp >> 12 & 0x3F));
+            out.put((byte) (0x80 | cp >> 6 & 0x3F));
+            out.put((byte) (0x80 | cp & 0x3F));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.vt;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.model.AttributeTable;
+
+import java.util.Arrays;
+
+/**
+ * A flat copy of a buffer's visible screen and cursor: one char and one attribute id
+ * (see {@link AttributeTable}) per cell, row by row. Reused between frames by {@link FrameEncoder}.
+ */
+public class ScreenState {
+    private int width;
+    private int height;
+    char[] characters;
+    short[] attributes;
+    private int cursorColumn;
+    private int cursorRow;
+
+    /**
+     * Creates a blank screen: spaces with the default attributes and the cursor at the origin.
+     * @param width The number of columns.
+     * @param height The number of rows.
+     */
+    public ScreenState(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be positive.");
+        }
+        this.width = width;
+        this.height = height;
+        this.characters = new char[width * height];
+        this.attributes = new short[width * height];
+        Arrays.fill(characters, ' ');
+    }
+
+    /**
+     * @param buffer The buffer to copy.
+     * @return A copy of the buffer's screen and cursor.
+     */
+    public static ScreenState of(TerminalBuffer buffer) {
+        ScreenState state = new ScreenState(buffer.getWidth(), buffer.getHeight());
+        state.copyFrom(buffer);
+        return state;
+    }
+
+    /**
+     * Replaces this state with a copy of the buffer's screen and cursor, reusing the arrays when they are large enough.
+     * @param buffer The buffer to copy.
+     */
+    public void copyFrom(TerminalBuffer buffer) {
+        setSize(buffer.getWidth(), buffer.getHeight());
+        for (int row = 0; row < height; row++) {
+            buffer.getScreen().get(row).copyTo(characters, attributes, row * width);
+        }
+        cursorColumn = buffer.getCursor().getColumn();
+        cursorRow = buffer.getCursor().getRow();
+    }
+
+    /**
+     * Makes this state a blank screen of the given size.
+     */
+    void clear(int width, int height) {
+        setSize(width, height);
+        Arrays.fill(characters, 0, width * height, ' ');
+        Arrays.fill(attributes, 0, width * height, (short) AttributeTable.DEFAULT_ID);
+        cursorColumn = 0;
+        cursorRow = 0;
+    }
+
+    /**
+     * Makes this state a copy of another one scrolled up by some lines, with blank lines coming in at the bottom.
+     */
+    void scrolledCopyOf(ScreenState other, int lines) {
+        clear(other.width, other.height);
+        int kept = (height - lines) * width;
+        System.arraycopy(other.characters, lines * width, characters, 0, kept);
+        System.arraycopy(other.attributes, lines * width, attributes, 0, kept);
+        cursorColumn = other.cursorColumn;
+        cursorRow = other.cursorRow;
+    }
+
+    private void setSize(int width, int height) {
+        int cells = width * height;
+        if (characters.length < cells) {
+            characters = new char[cells];
+            attributes = new short[cells];
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return The number of columns.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @param column The column index.
+     * @param row The row index.
+     * @return The character of the cell.
+     */
+    public char getCharAt(int column, int row) {
+        return characters[index(column, row)];
+    }
+
+    /**
+     * @param column The column index.
+     * @param row The row index.
+     * @return The attribute id of the cell.
+     */
+    public int getAttributeId(int column, int row) {
+        return attributes[index(column, row)] & 0xFFFF;
+    }
+
+    /**
+     * @return The cursor column.
+     */
+    public int getCursorColumn() {
+        return cursorColumn;
+    }
+
+    /**
+     * @return The cursor row.
+     */
+    public int getCursorRow() {
+        return cursorRow;
+    }
+
+    private int index(int column, int row) {
+        if (column < 0 || column >= width || row < 0 || row >= height) {
+            throw new IndexOutOfBoundsException("Invalid cell position: " + column + ", " + row);
+        }
+        return row * width + column;
+    }
+}
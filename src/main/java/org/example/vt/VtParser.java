@@ -0,0 +1,531 @@
+package org.example.vt;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.model.Color;
+import org.example.model.CursorPosition;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A table-driven parser for VT/ANSI (ECMA-48) output that drives a {@link TerminalBuffer}.
+ * <p>
+ * The states and transitions follow the DEC parser model: every character is looked up in a
+ * state by character-class table that yields an action and the next state. Runs of printable
+ * characters in the ground state bypass the table and go to the buffer as one write.
+ * Numeric parameters are collected into a reusable int array and the OSC payload into a reusable
+ * char array, so parsing does not allocate per sequence. Sequences may be split across calls.
+ * <p>
+ * Supported: the C0 controls BS, HT, LF, VT, FF and CR; CSI cursor movement (CUU, CUD, CUF, CUB,
+ * CNL, CPL, CHA, HPA, VPA, CUP, HVP), erasing (ED, EL), scrolling up (SU), cursor save and restore
+ * (DECSC, DECRC and CSI s/u), IND, NEL, SGR for bold, italic, underline and the 16 standard colors,
+ * and auto-wrap mode (DECAWM, CSI ?7h and CSI ?7l), which the parser turns on when it is created,
+ * as a terminal does at power-up.
+ * Other sequences are consumed and ignored; DCS, SOS, PM and APC strings are skipped.
+ * Line feed does not return the carriage, as on a real terminal.
+ * <p>
+ * For byte input, decode with {@link org.example.io.Utf8Ingestor}: {@code new Utf8Ingestor(parser::parse)}.
+ * <p>
+ * Not thread-safe; use one parser per buffer.
+ */
+public class VtParser {
+    /** Receives operating system commands such as window title changes. */
+    @FunctionalInterface
+    public interface OscHandler {
+        /**
+         * @param command The numeric command before the first ';', or -1 if there is none.
+         * @param payload The text after the first ';'. Only valid during the call.
+         */
+        void onOsc(int command, CharSequence payload);
+    }
+
+    /** The maximum number of CSI parameters kept; further ones are ignored. */
+    public static final int MAX_PARAMS = 16;
+    /** The maximum OSC payload length kept; further characters are ignored. */
+    public static final int MAX_OSC_LENGTH = 4096;
+    private static final int MAX_PARAM_VALUE = 9999;
+
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI_ENTRY = 3;
+    private static final int CSI_PARAM = 4;
+    private static final int CSI_INTERMEDIATE = 5;
+    private static final int CSI_IGNORE = 6;
+    private static final int OSC_STRING = 7;
+    private static final int STRING_IGNORE = 8;
+    private static final int STATE_COUNT = 9;
+
+    private static final int NONE = 0;
+    private static final int PRINT = 1;
+    private static final int EXECUTE = 2;
+    private static final int CLEAR = 3;
+    private static final int COLLECT = 4;
+    private static final int PARAM = 5;
+    private static final int ESC_DISPATCH = 6;
+    private static final int CSI_DISPATCH = 7;
+    private static final int OSC_START = 8;
+    private static final int OSC_PUT = 9;
+    private static final int OSC_END = 10;
+
+    /** The character class shared by everything at or above U+0080. */
+    private static final int NON_ASCII = 0x80;
+    private static final int CLASS_COUNT = NON_ASCII + 1;
+
+    /** Transitions indexed by state * CLASS_COUNT + class: the action in the high nibble, the next state in the low one. */
+    private static final byte[] TABLE = new byte[STATE_COUNT * CLASS_COUNT];
+
+    private static final Color[] COLORS = Color.values();
+    private static final int TAB_WIDTH = 8;
+
+    static {
+        for (int state = 0; state < STATE_COUNT; state++) {
+            on(state, 0x00, NON_ASCII, NONE, state);
+        }
+
+        on(GROUND, 0x00, 0x1F, EXECUTE, GROUND);
+        on(GROUND, 0x20, 0x7E, PRINT, GROUND);
+        on(GROUND, NON_ASCII, NON_ASCII, PRINT, GROUND);
+
+        on(ESCAPE, 0x00, 0x1F, EXECUTE, ESCAPE);
+        on(ESCAPE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        on(ESCAPE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+        on(ESCAPE, '[', '[', NONE, CSI_ENTRY);
+        on(ESCAPE, ']', ']', OSC_START, OSC_STRING);
+        on(ESCAPE, 'P', 'P', NONE, STRING_IGNORE);
+        on(ESCAPE, 'X', 'X', NONE, STRING_IGNORE);
+        on(ESCAPE, '^', '_', NONE, STRING_IGNORE);
+
+        on(ESCAPE_INTERMEDIATE, 0x00, 0x1F, EXECUTE, ESCAPE_INTERMEDIATE);
+        on(ESCAPE_INTERMEDIATE, 0x20, 0x2F, COLLECT, ESCAPE_INTERMEDIATE);
+        on(ESCAPE_INTERMEDIATE, 0x30, 0x7E, ESC_DISPATCH, GROUND);
+
+        on(CSI_ENTRY, 0x00, 0x1F, EXECUTE, CSI_ENTRY);
+        on(CSI_ENTRY, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        on(CSI_ENTRY, 0x30, 0x3B, PARAM, CSI_PARAM);
+        on(CSI_ENTRY, 0x3C, 0x3F, COLLECT, CSI_PARAM);
+        on(CSI_ENTRY, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        on(CSI_PARAM, 0x00, 0x1F, EXECUTE, CSI_PARAM);
+        on(CSI_PARAM, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        on(CSI_PARAM, 0x30, 0x3B, PARAM, CSI_PARAM);
+        on(CSI_PARAM, 0x3C, 0x3F, NONE, CSI_IGNORE);
+        on(CSI_PARAM, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        on(CSI_INTERMEDIATE, 0x00, 0x1F, EXECUTE, CSI_INTERMEDIATE);
+        on(CSI_INTERMEDIATE, 0x20, 0x2F, COLLECT, CSI_INTERMEDIATE);
+        on(CSI_INTERMEDIATE, 0x30, 0x3F, NONE, CSI_IGNORE);
+        on(CSI_INTERMEDIATE, 0x40, 0x7E, CSI_DISPATCH, GROUND);
+
+        on(CSI_IGNORE, 0x00, 0x1F, EXECUTE, CSI_IGNORE);
+        on(CSI_IGNORE, 0x40, 0x7E, NONE, GROUND);
+
+        on(OSC_STRING, 0x20, 0x7F, OSC_PUT, OSC_STRING);
+        on(OSC_STRING, NON_ASCII, NON_ASCII, OSC_PUT, OSC_STRING);
+        on(OSC_STRING, 0x07, 0x07, OSC_END, GROUND);
+
+        for (int state = 0; state < STATE_COUNT; state++) {
+            on(state, 0x18, 0x18, EXECUTE, GROUND);
+            on(state, 0x1A, 0x1A, EXECUTE, GROUND);
+            on(state, 0x1B, 0x1B, state == OSC_STRING ? OSC_END : CLEAR, ESCAPE);
+        }
+    }
+
+    private static void on(int state, int from, int to, int action, int next) {
+        byte entry = (byte) (action << 4 | next);
+        Arrays.fill(TABLE, state * CLASS_COUNT + from, state * CLASS_COUNT + to + 1, entry);
+    }
+
+    private final TerminalBuffer buffer;
+    private OscHandler oscHandler;
+
+    private int state = GROUND;
+    private final int[] params = new int[MAX_PARAMS];
+    private int paramCount;
+    private boolean paramsOverflowed;
+    /** The private marker of a CSI sequence ('<', '=', '>' or '?'), or 0. */
+    private char privateMarker;
+    /** The intermediate characters of the sequence, packed one per byte, last in the low byte. */
+    private int intermediates;
+    private final char[] osc = new char[MAX_OSC_LENGTH];
+    private int oscLength;
+    private final CharBuffer oscView = CharBuffer.wrap(osc);
+    private final char[] single = new char[1];
+    private final char[] scratch = new char[1024];
+    private int savedColumn;
+    private int savedRow;
+
+    /**
+     * Turns on the buffer's auto-wrap, see {@link TerminalBuffer#setAutoWrap}.
+     * @param buffer The buffer to drive.
+     */
+    public VtParser(TerminalBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Buffer cannot be null");
+        }
+        this.buffer = buffer;
+        buffer.setAutoWrap(true);
+    }
+
+    /**
+     * @param handler The handler for OSC strings, or null to ignore them.
+     */
+    public void setOscHandler(OscHandler handler) {
+        this.oscHandler = handler;
+    }
+
+    /**
+     * Parses a slice of a char array.
+     * @param chars The array holding the output.
+     * @param offset The index of the first character.
+     * @param length The number of characters.
+     * @throws IndexOutOfBoundsException if the slice is outside the array
+     */
+    public void parse(char[] chars, int offset, int length) {
+        if (chars == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        Objects.checkFromIndexSize(offset, length, chars.length);
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            char c = chars[i];
+            if (state == GROUND && isPrintable(c)) {
+                int start = i;
+                do {
+                    i++;
+                } while (i < end && isPrintable(chars[i]));
+                buffer.writeText(chars, start, i - start);
+            } else {
+                advance(c);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Parses text. The text is copied into a reusable array in chunks and parsed from there.
+     * @param text The output to parse.
+     */
+    public void parse(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException("Text cannot be null");
+        }
+        int length = text.length();
+        for (int start = 0; start < length; start += scratch.length) {
+            int end = Math.min(length, start + scratch.length);
+            if (text instanceof String string) {
+                string.getChars(start, end, scratch, 0);
+            } else {
+                for (int i = start; i < end; i++) {
+                    scratch[i - start] = text.charAt(i);
+                }
+            }
+            parse(scratch, 0, end - start);
+        }
+    }
+
+    /**
+     * Returns to the ground state, dropping any partially parsed sequence.
+     */
+    public void reset() {
+        state = GROUND;
+        clear();
+        oscLength = 0;
+    }
+
+    private static boolean isPrintable(char c) {
+        return c >= 0x20 && c != 0x7F;
+    }
+
+    private void advance(char c) {
+        int entry = TABLE[state * CLASS_COUNT + Math.min(c, NON_ASCII)] & 0xFF;
+        switch (entry >>> 4) {
+            case PRINT -> {
+                single[0] = c;
+                buffer.writeText(single, 0, 1);
+            }
+            case EXECUTE -> execute(c);
+            case CLEAR -> clear();
+            case COLLECT -> collect(c);
+            case PARAM -> param(c);
+            case ESC_DISPATCH -> {
+                dispatchEsc(c);
+                clear();
+            }
+            case CSI_DISPATCH -> dispatchCsi(c);
+            case OSC_START -> oscLength = 0;
+            case OSC_PUT -> {
+                if (oscLength < osc.length) {
+                    osc[oscLength++] = c;
+                }
+            }
+            case OSC_END -> {
+                dispatchOsc();
+                clear();
+            }
+            default -> {
+            }
+        }
+        state = entry & 0x0F;
+    }
+
+    private void execute(char c) {
+        switch (c) {
+            case '\b' -> buffer.moveCursorLeft(1);
+            case '\t' -> {
+                int column = buffer.getCursor().getColumn();
+                buffer.moveCursorRight(TAB_WIDTH - column % TAB_WIDTH);
+            }
+            case '\n', 0x0B, 0x0C -> buffer.lineFeed();
+            case '\r' -> buffer.carriageReturn();
+            default -> {
+            }
+        }
+    }
+
+    private void clear() {
+        paramCount = 0;
+        paramsOverflowed = false;
+        privateMarker = 0;
+        intermediates = 0;
+    }
+
+    private void collect(char c) {
+        if (c >= 0x3C && c <= 0x3F) {
+            privateMarker = c;
+        } else {
+            intermediates = intermediates << 8 | c;
+        }
+    }
+
+    private void param(char c) {
+        if (paramCount == 0) {
+            params[0] = 0;
+            paramCount = 1;
+        }
+        if (c == ';' || c == ':') {
+            if (paramCount < MAX_PARAMS) {
+                params[paramCount++] = 0;
+            } else {
+                paramsOverflowed = true;
+            }
+        } else if (!paramsOverflowed) {
+            int last = paramCount - 1;
+            params[last] = Math.min(params[last] * 10 + (c - '0'), MAX_PARAM_VALUE);
+        }
+    }
+
+    /**
+     * @return The parameter at the index, or the default if it is missing or 0.
+     */
+    private int param(int index, int defaultValue) {
+        return index < paramCount && params[index] != 0 ? params[index] : defaultValue;
+    }
+
+    private void dispatchEsc(char command) {
+        if (intermediates != 0) {
+            return;
+        }
+        switch (command) {
+            case '7' -> saveCursor();
+            case '8' -> restoreCursor();
+            case 'D' -> buffer.lineFeed();
+            case 'E' -> {
+                buffer.lineFeed();
+                buffer.carriageReturn();
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void saveCursor() {
+        savedColumn = buffer.getCursor().getColumn();
+        savedRow = buffer.getCursor().getRow();
+    }
+
+    private void restoreCursor() {
+        moveCursorTo(savedColumn, savedRow);
+    }
+
+    private void dispatchCsi(char command) {
+        if (privateMarker == '?' && intermediates == 0 && (command == 'h' || command == 'l')) {
+            setDecModes(command == 'h');
+            return;
+        }
+        if (privateMarker != 0 || intermediates != 0) {
+            return;
+        }
+        CursorPosition cursor = buffer.getCursor();
+        switch (command) {
+            case 'A' -> buffer.moveCursorUp(param(0, 1));
+            case 'B', 'e' -> buffer.moveCursorDown(param(0, 1));
+            case 'C', 'a' -> buffer.moveCursorRight(param(0, 1));
+            case 'D' -> buffer.moveCursorLeft(param(0, 1));
+            case 'E' -> {
+                buffer.moveCursorDown(param(0, 1));
+                buffer.carriageReturn();
+            }
+            case 'F' -> {
+                buffer.moveCursorUp(param(0, 1));
+                buffer.carriageReturn();
+            }
+            case 'G', '`' -> moveCursorTo(param(0, 1) - 1, cursor.getRow());
+            case 'd' -> moveCursorTo(cursor.getColumn(), param(0, 1) - 1);
+            case 'H', 'f' -> moveCursorTo(param(1, 1) - 1, param(0, 1) - 1);
+            case 'J' -> eraseInDisplay(param(0, 0));
+            case 'K' -> eraseInLine(param(0, 0));
+            case 'S' -> {
+                for (int n = param(0, 1); n > 0; n--) {
+                    buffer.insertEmptyLineAtBottom();
+                }
+            }
+            case 'm' -> selectGraphicRendition();
+            case 's' -> saveCursor();
+            case 'u' -> restoreCursor();
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Sets or resets the DEC private modes in the parameters (DECSET, DECRST). Only DECAWM is supported.
+     */
+    private void setDecModes(boolean set) {
+        for (int i = 0; i < paramCount; i++) {
+            if (params[i] == 7) {
+                buffer.setAutoWrap(set);
+            }
+        }
+    }
+
+    private void moveCursorTo(int column, int row) {
+        buffer.setCursorPosition(
+                Math.max(0, Math.min(column, buffer.getWidth() - 1)),
+                Math.max(0, Math.min(row, buffer.getHeight() - 1)));
+    }
+
+    private void eraseInLine(int mode) {
+        int column = buffer.getCursor().getColumn();
+        switch (mode) {
+            case 0 -> buffer.fillLine(' ', column, buffer.getWidth() - 1);
+            case 1 -> buffer.fillLine(' ', 0, column);
+            case 2 -> buffer.fillLine(' ');
+            default -> {
+            }
+        }
+    }
+
+    private void eraseInDisplay(int mode) {
+        CursorPosition cursor = buffer.getCursor();
+        int column = cursor.getColumn();
+        int row = cursor.getRow();
+        switch (mode) {
+            case 0 -> {
+                eraseInLine(0);
+                eraseRows(row + 1, buffer.getHeight());
+            }
+            case 1 -> {
+                eraseRows(0, row);
+                eraseInLine(1);
+            }
+            case 2 -> eraseRows(0, buffer.getHeight());
+            case 3 -> buffer.clearScrollback();
+            default -> {
+            }
+        }
+        buffer.setCursorPosition(column, row);
+    }
+
+    /**
+     * Blanks whole screen rows with the current attributes. Moves the cursor.
+     */
+    private void eraseRows(int from, int to) {
+        for (int row = from; row < to; row++) {
+            buffer.setCursorPosition(0, row);
+            buffer.fillLine(' ');
+        }
+    }
+
+    private void selectGraphicRendition() {
+        if (paramCount == 0) {
+            buffer.resetAttributes();
+            return;
+        }
+        for (int i = 0; i < paramCount; i++) {
+            int p = params[i];
+            switch (p) {
+                case 0 -> buffer.resetAttributes();
+                case 1 -> buffer.setBold(true);
+                case 3 -> buffer.setItalic(true);
+                case 4 -> buffer.setUnderline(true);
+                case 22 -> buffer.setBold(false);
+                case 23 -> buffer.setItalic(false);
+                case 24 -> buffer.setUnderline(false);
+                case 38, 48 -> i = extendedColor(i, p == 38);
+                case 39 -> buffer.setForegroundColor(Color.DEFAULT);
+                case 49 -> buffer.setBackgroundColor(Color.DEFAULT);
+                default -> {
+                    if (p >= 30 && p <= 37) {
+                        buffer.setForegroundColor(COLORS[Color.BLACK.ordinal() + p - 30]);
+                    } else if (p >= 40 && p <= 47) {
+                        buffer.setBackgroundColor(COLORS[Color.BLACK.ordinal() + p - 40]);
+                    } else if (p >= 90 && p <= 97) {
+                        buffer.setForegroundColor(COLORS[Color.BRIGHT_BLACK.ordinal() + p - 90]);
+                    } else if (p >= 100 && p <= 107) {
+                        buffer.setBackgroundColor(COLORS[Color.BRIGHT_BLACK.ordinal() + p - 100]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles 38/48;5;n and 38/48;2;r;g;b. Only the first 16 palette entries map to a {@link Color};
+     * other colors are skipped.
+     * @return The index of the last parameter consumed.
+     */
+    private int extendedColor(int i, boolean foreground) {
+        int kind = i + 1 < paramCount ? params[i + 1] : -1;
+        if (kind == 5) {
+            int index = i + 2 < paramCount ? params[i + 2] : -1;
+            if (index >= 0 && index < 16) {
+                Color color = COLORS[Color.BLACK.ordinal() + index];
+                if (foreground) {
+                    buffer.setForegroundColor(color);
+                } else {
+                    buffer.setBackgroundColor(color);
+                }
+            }
+            return i + 2;
+        }
+        if (kind == 2) {
+            return i + 4;
+        }
+        return i + 1;
+    }
+
+    private void dispatchOsc() {
+        if (oscHandler == null) {
+            return;
+        }
+        int command = -1;
+        int start = 0;
+        int separator = 0;
+        while (separator < oscLength && osc[separator] != ';') {
+            separator++;
+        }
+        if (separator < oscLength && separator > 0) {
+            command = 0;
+            for (int i = 0; i < separator && command >= 0; i++) {
+                char c = osc[i];
+                command = c >= '0' && c <= '9' ? Math.min(command * 10 + (c - '0'), MAX_PARAM_VALUE) : -1;
+            }
+            start = separator + 1;
+        }
+        oscView.limit(oscLength).position(start);
+        oscHandler.onOsc(command, oscView);
+    }
+}
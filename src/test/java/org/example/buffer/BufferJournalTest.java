@@ -0,0 +1,212 @@
+package org.example.buffer;
+
+import org.example.model.CellAttributes;
+import org.example.model.Color;
+import org.example.model.StyleFlags;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferJournalTest {
+
+    private static Path tempDirectory() throws IOException {
+        return Files.createTempDirectory("journal-test");
+    }
+
+    private static List<String> fileNames(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void assertSameState(TerminalBuffer expected, TerminalBuffer actual) {
+        assertEquals(expected.getAllLines(), actual.getAllLines());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getCurrentCursorPosition().getColumn(), actual.getCurrentCursorPosition().getColumn());
+        assertEquals(expected.getCurrentCursorPosition().getRow(), actual.getCurrentCursorPosition().getRow());
+        assertEquals(expected.getCurrentAttributes(), actual.getCurrentAttributes());
+        assertEquals(expected.getFirstLineId(), actual.getFirstLineId());
+        for (int row = 0; row < expected.getScrollbackSize() + expected.getHeight(); row++) {
+            assertEquals(expected.getLineId(row), actual.getLineId(row));
+            assertEquals(expected.getLineOffset(row), actual.getLineOffset(row));
+            for (int column = 0; column < expected.getWidth(); column++) {
+                assertEquals(expected.getAttributesAt(column, row, true), actual.getAttributesAt(column, row, true));
+            }
+        }
+    }
+
+    @Test
+    void recoveryReplaysEveryKindOfChange() throws IOException {
+        Path directory = tempDirectory();
+        TerminalBuffer buffer = new TerminalBuffer(12, 4, 20);
+        buffer.writeText("before the journal\n");
+        try (BufferJournal journal = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, false)) {
+            buffer.setJournal(journal);
+            buffer.setAutoWrap(true);
+            for (int i = 0; i < 30; i++) {
+                buffer.setForegroundColor(i % 3 == 0 ? Color.RED : Color.DEFAULT);
+                buffer.setBold(i % 5 == 0);
+                buffer.writeText("line " + i + " wraps past the edge\n");
+            }
+            buffer.resize(9, 5);
+            buffer.writeText("written before the rewrap\n");
+            buffer.getAllLines();
+            buffer.writeText("and after it\n");
+            char[] text = "...sliced...".toCharArray();
+            buffer.writeText(text, 3, 6);
+            buffer.insertText("ins");
+            buffer.setCursorPosition(2, 1);
+            buffer.moveCursorDown(2);
+            buffer.moveCursorRight(3);
+            buffer.moveCursorUp(1);
+            buffer.moveCursorLeft(1);
+            buffer.applyToCurrentCell(new CellAttributes(Color.GREEN, Color.BLUE, new StyleFlags()));
+            buffer.fillLine('-', 1, 4);
+            buffer.lineFeed();
+            buffer.fillLine('=');
+            buffer.carriageReturn();
+            buffer.insertEmptyLineAtBottom();
+            buffer.resetAttributes();
+            buffer.setBackgroundColor(Color.GREEN);
+            buffer.writeText("tail");
+            char[] large = new char[3 * BufferJournal.MIN_BATCH_BYTES];
+            Arrays.fill(large, 'x');
+            buffer.writeText(large, 0, large.length);
+            journal.commit();
+
+            assertEquals(1, journal.getSequence());
+            assertTrue(journal.getBatchCount() > 1);
+            assertTrue(journal.getRecordCount() > 100);
+        }
+
+        assertSameState(buffer, BufferJournal.recover(directory));
+    }
+
+    @Test
+    void resizesAreReplayedWithLineIdsAndOffsets() throws IOException {
+        Path directory = tempDirectory();
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 6);
+        buffer.setAutoWrap(true);
+        try (BufferJournal journal = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, false)) {
+            buffer.setJournal(journal);
+            for (int i = 0; i < 4; i++) {
+                buffer.writeText("logical line " + i + " spans four rows of ten\n");
+            }
+            buffer.resize(7, 2);
+            buffer.writeText("a\nb\nc\n");
+            buffer.resize(9, 3);
+            buffer.writeText("the last line is wrapped at nine");
+            journal.commit();
+        }
+
+        assertSameState(buffer, BufferJournal.recover(directory));
+    }
+
+    @Test
+    void trimsByASharedBudgetAreReplayed() throws IOException {
+        Path directory = tempDirectory();
+        ScrollbackBudget budget = new ScrollbackBudget(30 * ScrollbackBudget.bytesPerLine(10));
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 100);
+        TerminalBuffer other = new TerminalBuffer(10, 2, 100);
+        buffer.setScrollbackBudget(budget);
+        other.setScrollbackBudget(budget);
+        try (BufferJournal journal = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, false)) {
+            buffer.setJournal(journal);
+            for (int i = 0; i < 25; i++) {
+                buffer.writeText("mine " + i + "\n");
+            }
+            other.getLine(0, true);
+            for (int i = 0; i < 20; i++) {
+                other.writeText("other " + i + "\n");
+            }
+            buffer.writeText("after the trim\n");
+            journal.commit();
+        }
+
+        assertTrue(budget.getEvictedLines() > 0);
+        assertTrue(buffer.getScrollbackSize() < 20);
+        assertSameState(buffer, BufferJournal.recover(directory));
+    }
+
+    @Test
+    void uncommittedRecordsAndTornBatchesAreLost() throws IOException {
+        Path directory = tempDirectory();
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        BufferJournal journal = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, true);
+        buffer.setJournal(journal);
+        buffer.writeText("first\nsecond\n");
+        journal.commit();
+        List<String> committed = buffer.getAllLines();
+        long committedBytes = journal.getCommittedBytes();
+
+        buffer.writeText("third\n");
+        journal.commit();
+        buffer.writeText("never committed\n");
+        Path log = directory.resolve("journal-000000000001.log");
+        assertEquals(journal.getCommittedBytes(), Files.size(log));
+
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(log) - 3);
+        }
+        assertEquals(committed, BufferJournal.recover(directory).getAllLines());
+
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(committedBytes);
+        }
+        assertEquals(committed, BufferJournal.recover(directory).getAllLines());
+    }
+
+    @Test
+    void checkpointStartsANewLogAndDeletesTheOldFiles() throws IOException {
+        Path directory = tempDirectory();
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(8, 2, 50);
+        try (BufferJournal journal = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, false)) {
+            buffer.setJournal(journal);
+            buffer.writeText("one\ntwo\nthree\n");
+            buffer.resize(5, 2);
+            buffer.checkpointJournal();
+            buffer.writeText("four\n");
+            buffer.commitJournal();
+
+            assertEquals(2, journal.getSequence());
+            assertEquals(List.of("checkpoint-000000000002.img", "journal-000000000002.log"), fileNames(directory));
+        }
+        assertEquals(buffer.getAllLines(), BufferJournal.recover(directory).getAllLines());
+
+        try (BufferJournal reopened = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, false)) {
+            assertEquals(2, reopened.getSequence());
+            TerminalBuffer recovered = BufferJournal.recover(directory);
+            recovered.setJournal(reopened);
+            recovered.writeText("five");
+            reopened.commit();
+            assertEquals(3, reopened.getSequence());
+            assertEquals(recovered.getAllLines(), BufferJournal.recover(directory).getAllLines());
+        }
+    }
+
+    @Test
+    void misuseIsRejected() throws IOException {
+        Path directory = tempDirectory();
+        assertThrows(IllegalArgumentException.class, () -> new BufferJournal(null, BufferJournal.MIN_BATCH_BYTES, false));
+        assertThrows(IllegalArgumentException.class, () -> new BufferJournal(directory, 16, false));
+        assertThrows(IOException.class, () -> BufferJournal.recover(directory));
+        assertThrows(IllegalStateException.class, () -> new ConcurrentTerminalBuffer(4, 2, 0).commitJournal());
+
+        BufferJournal journal = new BufferJournal(directory, BufferJournal.MIN_BATCH_BYTES, false);
+        assertThrows(IllegalStateException.class, () -> journal.record(BufferJournal.LINE_FEED));
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 0);
+        buffer.setJournal(journal);
+        journal.close();
+        assertThrows(IllegalStateException.class, () -> buffer.writeText("x"));
+    }
+}
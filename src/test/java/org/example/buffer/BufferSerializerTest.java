@@ -0,0 +1,145 @@
+package org.example.buffer;
+
+import org.example.model.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferSerializerTest {
+
+    private static byte[] save(TerminalBuffer buffer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long written = BufferSerializer.save(buffer, Channels.newChannel(bytes));
+        assertEquals(bytes.size(), written);
+        return bytes.toByteArray();
+    }
+
+    private static TerminalBuffer restore(byte[] image) throws IOException {
+        return BufferSerializer.restore(Channels.newChannel(new ByteArrayInputStream(image)));
+    }
+
+    @Test
+    void restoresContentAttributesCursorAndLineIds() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 5);
+        buffer.setAutoWrap(true);
+        for (int i = 0; i < 8; i++) {
+            buffer.setForegroundColor(i % 2 == 0 ? Color.RED : Color.GREEN);
+            buffer.writeText("line " + i + "\n");
+        }
+        buffer.writeText("wrapped text");
+        buffer.setBold(true);
+
+        TerminalBuffer restored = restore(save(buffer));
+
+        assertEquals(buffer.getAllLines(), restored.getAllLines());
+        assertEquals(10, restored.getWidth());
+        assertEquals(3, restored.getHeight());
+        assertEquals(5, restored.getMaxScrollbackLines());
+        assertEquals(buffer.getCurrentCursorPosition().getColumn(), restored.getCurrentCursorPosition().getColumn());
+        assertEquals(buffer.getCurrentCursorPosition().getRow(), restored.getCurrentCursorPosition().getRow());
+        assertEquals(buffer.getCurrentAttributes(), restored.getCurrentAttributes());
+        assertTrue(restored.isAutoWrap());
+        assertEquals(buffer.getFirstLineId(), restored.getFirstLineId());
+        assertEquals(buffer.getLineById(6), restored.getLineById(6));
+        for (int row = 0; row < buffer.getScrollbackSize() + 3; row++) {
+            assertEquals(buffer.getAttributesAt(0, row, true), restored.getAttributesAt(0, row, true));
+        }
+        assertTrue(restored.getScreen().get(1).isWrapped());
+
+        restored.writeText("\nmore");
+        assertEquals("more      ", restored.getLine(2));
+    }
+
+    @Test
+    void pendingWrapIsRestored() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 0);
+        buffer.setAutoWrap(true);
+        buffer.writeText("abcd");
+
+        TerminalBuffer restored = restore(save(buffer));
+        buffer.writeText("e");
+        restored.writeText("e");
+
+        assertEquals(buffer.getAllLines(), restored.getAllLines());
+        assertEquals("e   ", restored.getLine(1));
+    }
+
+    @Test
+    void imagesLargerThanTheTransferBufferRoundTrip() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(200, 10, 5000);
+        buffer.setScrollbackCompression(64);
+        char[] text = new char[190];
+        for (int i = 0; i < 4000; i++) {
+            Arrays.fill(text, (char) ('a' + i % 26));
+            buffer.setBackgroundColor(i % 3 == 0 ? Color.BLUE : Color.DEFAULT);
+            buffer.writeText(i + " ");
+            buffer.writeText(text, 0, 150 + i % 40);
+            buffer.writeText("\n");
+        }
+
+        byte[] image = save(buffer);
+        assertTrue(image.length > BufferSerializer.BUFFER_BYTES);
+        TerminalBuffer restored = restore(image);
+
+        assertEquals(buffer.getAllLines(), restored.getAllLines());
+        assertEquals(Color.BLUE, restored.getAttributesAt(5, 3, true).getBackgroundColor());
+    }
+
+    @Test
+    void lineIdsAndOffsetsSurviveAResizeAndARestore() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(8, 2, 3);
+        buffer.setAutoWrap(true);
+        buffer.writeText("first line wraps onto three rows\nsecond\n");
+        buffer.resize(5, 2);
+        buffer.writeText("third line is long");
+
+        TerminalBuffer restored = restore(save(buffer));
+
+        assertEquals(buffer.getFirstLineId(), restored.getFirstLineId());
+        for (int row = 0; row < buffer.getScrollbackSize() + 2; row++) {
+            assertEquals(buffer.getLine(row, true), restored.getLine(row, true));
+            assertEquals(buffer.getLineId(row), restored.getLineId(row));
+            assertEquals(buffer.getLineOffset(row), restored.getLineOffset(row));
+        }
+        buffer.resize(8, 2);
+        restored.resize(8, 2);
+        assertEquals(buffer.getAllLines(), restored.getAllLines());
+        int row = buffer.getRowOfLineId(2, 10);
+        assertEquals(row, restored.getRowOfLineId(2, 10));
+        assertEquals(buffer.getLineOffset(row), restored.getLineOffset(row));
+    }
+
+    @Test
+    void rejectsForeignTruncatedAndNewerImages() throws IOException {
+        byte[] image = save(new TerminalBuffer(8, 2, 10));
+
+        assertThrows(EOFException.class, () -> restore(Arrays.copyOf(image, image.length - 1)));
+        byte[] foreign = image.clone();
+        foreign[0] = 'X';
+        assertThrows(StreamCorruptedException.class, () -> restore(foreign));
+        byte[] newer = image.clone();
+        newer[4] = (byte) (BufferSerializer.VERSION + 1);
+        assertThrows(StreamCorruptedException.class, () -> restore(newer));
+        assertThrows(IllegalArgumentException.class, () -> BufferSerializer.restore(null));
+    }
+
+    @Test
+    void concurrentBufferIsSavedFromASnapshot() throws IOException {
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(8, 2, 10);
+        buffer.writeText("one\ntwo\nthree");
+        buffer.resize(4, 2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buffer.save(Channels.newChannel(bytes));
+
+        TerminalBuffer restored = restore(bytes.toByteArray());
+        assertEquals(buffer.getAllLines(), restored.getAllLines());
+    }
+}
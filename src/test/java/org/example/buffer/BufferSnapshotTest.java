@@ -0,0 +1,88 @@
+package org.example.buffer;
+
+import org.example.model.Color;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferSnapshotTest {
+
+    @Test
+    void snapshot_isUnaffectedByLaterWrites() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        buffer.writeText("ab");
+        BufferSnapshot snapshot = buffer.snapshot();
+
+        buffer.setCursorPosition(0, 0);
+        buffer.setForegroundColor(Color.RED);
+        buffer.writeText("xyz");
+        buffer.insertText("q");
+        buffer.fillLine('-');
+
+        assertEquals("ab   ", snapshot.getLine(0));
+        assertEquals(Color.DEFAULT, snapshot.getAttributesAt(0, 0).getForegroundColor());
+        assertEquals(2, snapshot.getCursorPosition().getColumn());
+        assertEquals(0, snapshot.getCursorPosition().getRow());
+        assertEquals("-----", buffer.getLine(0));
+    }
+
+    @Test
+    void snapshot_isUnaffectedByScrollingAndEviction() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 2);
+        buffer.writeText("a\nb\nc");
+        BufferSnapshot snapshot = buffer.snapshot();
+
+        buffer.writeText("\nd\ne\nf\ng");
+
+        assertEquals(1, snapshot.getScrollbackSize());
+        assertEquals("a  \nb  \nc  ", snapshot.getAllContent());
+        assertEquals("f  \ng  ", buffer.getScreenContent());
+        assertEquals('a', snapshot.getCharAt(0, 0, true));
+    }
+
+    @Test
+    void snapshot_isUnaffectedByClearAndResize() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 10);
+        buffer.writeText("one\ntwo\nsix");
+        buffer.insertEmptyLineAtBottom();
+        BufferSnapshot snapshot = buffer.snapshot();
+
+        buffer.resize(2, 1);
+        buffer.clearScreenAndScrollback();
+
+        assertEquals(4, snapshot.getWidth());
+        assertEquals(3, snapshot.getHeight());
+        assertEquals("one ", snapshot.getLine(0, true));
+        assertEquals("two \nsix \n    ", snapshot.getScreenContent());
+        assertEquals("  ", buffer.getLine(0));
+    }
+
+    @Test
+    void consecutiveSnapshots_shareUnchangedLines() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 10);
+        buffer.writeText("top\nmid\nend");
+        BufferSnapshot first = buffer.snapshot();
+
+        buffer.setCursorPosition(0, 1);
+        buffer.writeText("M");
+        BufferSnapshot second = buffer.snapshot();
+
+        assertSame(first.getScreenLine(0), second.getScreenLine(0));
+        assertNotSame(first.getScreenLine(1), second.getScreenLine(1));
+        assertSame(first.getScreenLine(2), second.getScreenLine(2));
+        assertEquals("mid  ", first.getLine(1));
+        assertEquals("Mid  ", second.getLine(1));
+    }
+
+    @Test
+    void getLine_outOfBoundsThrows() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        buffer.insertEmptyLineAtBottom();
+        BufferSnapshot snapshot = buffer.snapshot();
+
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getLine(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getLine(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getLine(3, true));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getLine(-1, true));
+    }
+}
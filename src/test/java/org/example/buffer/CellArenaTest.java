@@ -0,0 +1,97 @@
+package org.example.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayDeque;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellArenaTest {
+
+    @Test
+    void freedPiecesAreReusedZeroed() {
+        try (CellArena arena = new CellArena()) {
+            MemorySegment first = arena.allocate(1000);
+            first.set(ValueLayout.JAVA_BYTE, 0, (byte) 7);
+            long used = arena.getUsedBytes();
+            assertTrue(used >= 1000);
+
+            arena.free(first);
+            assertEquals(0, arena.getUsedBytes());
+            MemorySegment second = arena.allocate(1000);
+
+            assertEquals(first.address(), second.address());
+            assertEquals(0, second.get(ValueLayout.JAVA_BYTE, 0));
+            assertEquals(used, arena.getUsedBytes());
+            assertEquals(CellArena.SLAB_BYTES, arena.getReservedBytes());
+        }
+    }
+
+    @Test
+    void largePiecesGetMemoryOfTheirOwn() {
+        try (CellArena arena = new CellArena()) {
+            arena.allocate(100);
+            arena.allocate(CellArena.SLAB_BYTES);
+            assertEquals(2 * CellArena.SLAB_BYTES, arena.getReservedBytes());
+        }
+    }
+
+    @Test
+    void sizesShareClasses() {
+        assertEquals(64, CellArena.sizeClass(1));
+        assertEquals(128, CellArena.sizeClass(65));
+        assertEquals(192, CellArena.sizeClass(129));
+        assertEquals(256, CellArena.sizeClass(193));
+        assertEquals(3 << 10, CellArena.sizeClass(2049));
+        assertEquals(4 << 10, CellArena.sizeClass(3073));
+    }
+
+    @Test
+    void reservedMemoryFollowsUseAcrossManyWidths() {
+        try (CellArena arena = new CellArena()) {
+            ArrayDeque<MemorySegment> live = new ArrayDeque<>();
+            long peakUsed = 0;
+            for (int round = 0; round < 200; round++) {
+                int width = 40 + round * 7 % 400;
+                live.add(arena.allocate(512 + width * 64L * 4));
+                if (live.size() > 20) {
+                    arena.free(live.poll());
+                }
+                peakUsed = Math.max(peakUsed, arena.getUsedBytes());
+            }
+            assertTrue(arena.getReservedBytes() <= peakUsed + 8 * CellArena.SLAB_BYTES,
+                    "reserved " + arena.getReservedBytes() + " for at most " + peakUsed + " used");
+
+            while (!live.isEmpty()) {
+                arena.free(live.poll());
+            }
+            assertEquals(0, arena.getUsedBytes());
+            assertTrue(arena.getReservedBytes() <= CellArena.SLAB_BYTES);
+        }
+    }
+
+    @Test
+    void largePiecesAreGivenBackWhenFreed() {
+        try (CellArena arena = new CellArena()) {
+            MemorySegment large = arena.allocate(CellArena.SLAB_BYTES);
+            arena.free(large);
+            assertEquals(0, arena.getReservedBytes());
+            assertThrows(IllegalStateException.class, () -> large.get(ValueLayout.JAVA_BYTE, 0));
+        }
+    }
+
+    @Test
+    void closeFreesEverything() {
+        CellArena arena = new CellArena();
+        MemorySegment piece = arena.allocate(64);
+        arena.close();
+
+        assertTrue(arena.isClosed());
+        assertThrows(IllegalStateException.class, () -> piece.get(ValueLayout.JAVA_BYTE, 0));
+        assertThrows(IllegalStateException.class, () -> arena.allocate(64));
+        arena.free(piece);
+        arena.close();
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.buffer;
+
+import org.example.model.Color;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentTerminalBufferTest {
+
+    @Test
+    void writesAndReadsGoThroughToTheBuffer() {
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(5, 2, 10);
+        buffer.setForegroundColor(Color.RED);
+        buffer.writeText("ab\ncd");
+        buffer.update(b -> b.writeText("e"));
+
+        assertEquals("ab   ", buffer.getLine(0));
+        assertEquals('e', buffer.getCharAt(2, 1));
+        assertEquals(Color.RED, buffer.getAttributesAt(0, 0).getForegroundColor());
+        assertEquals("ab   \ncde  ", buffer.getScreenContent());
+        assertEquals(3, buffer.getCurrentCursorPosition().getColumn());
+        assertEquals(0, buffer.getLockedRetries());
+    }
+
+    @Test
+    void scrollbackReadsRewrapAfterAResize() {
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(6, 2, 10);
+        buffer.setAutoWrap(true);
+        buffer.writeText("abcdefgh\nij\nk");
+        buffer.resize(12, 2);
+
+        assertEquals("abcdefgh    ", buffer.getLine(0, true));
+        assertEquals(1, buffer.getScrollbackSize());
+        buffer.resize(4, 2);
+        assertEquals("abcd", buffer.getLine(0, true));
+        assertEquals(2, buffer.getScrollbackSize());
+    }
+
+    @Test
+    void scrollbackRowsAreCountedOnceAfterAResize() {
+        TerminalBuffer wrapped = new TerminalBuffer(6, 2, 10);
+        wrapped.setAutoWrap(true);
+        wrapped.writeText("abcdefgh\nij\nk");
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(wrapped);
+
+        buffer.resize(12, 2);
+        assertFalse(wrapped.hasScrollbackRows());
+        assertEquals("abcdefgh    ", buffer.getLine(0, true));
+        assertTrue(wrapped.hasScrollbackRows());
+        long retries = buffer.getLockedRetries();
+        assertEquals("ij          ", buffer.getLine(1, true));
+        assertEquals(0, buffer.getLineId(0));
+        assertEquals(retries, buffer.getLockedRetries());
+
+        buffer.update(b -> {
+            b.resize(4, 2);
+            assertEquals("abcd", b.getLine(0, true));
+        });
+        assertTrue(wrapped.hasScrollbackRows());
+    }
+
+    @Test
+    void invalidArgumentsStillThrow() {
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(5, 2, 10);
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getLine(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getCharAt(0, -1));
+        assertThrows(IllegalArgumentException.class, () -> buffer.setCursorPosition(5, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentTerminalBuffer(null));
+    }
+
+    @Test
+    void readersNeverSeeHalfWrittenLines() throws InterruptedException {
+        int width = 40;
+        ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(width, 10, 100);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> torn = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                char c = (char) ('a' + i % 26);
+                buffer.writeText(String.valueOf(c).repeat(width) + "\n");
+                if (i % 1000 == 999) {
+                    buffer.resize(width, 8 + i % 3);
+                }
+            }
+            done.set(true);
+        });
+        Thread[] readers = new Thread[3];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (!done.get() && torn.get() == null) {
+                    String line = buffer.getLine(3);
+                    if (!line.isBlank() && !line.equals(String.valueOf(line.charAt(0)).repeat(width))) {
+                        torn.set(line);
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(torn.get());
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineIndexTest {
+
+    private static TerminalLine row(String text, int width, boolean wrapped) {
+        TerminalLine line = new TerminalLine(width);
+        line.write(0, text, 0, text.length(), 0);
+        line.setWrapped(wrapped);
+        return line;
+    }
+
+    /**
+     * The stored rows with the line id and offset each was appended with, and the rows they take at a width
+     * worked out the slow way.
+     */
+    private static final class Model {
+        final List<TerminalLine> stored = new ArrayList<>();
+        final List<long[]> positions = new ArrayList<>();
+        final LineIndex index = new LineIndex(stored, 5);
+        long lastId = -1;
+        boolean open;
+        long nextOffset;
+
+        void append(TerminalLine line) {
+            long id = open ? lastId : lastId + 1;
+            long offset = open ? nextOffset : 0;
+            stored.add(line);
+            positions.add(new long[]{id, offset});
+            assertEquals(id, index.append(line));
+            lastId = id;
+            open = line.isWrapped();
+            nextOffset = offset + line.getWidth();
+        }
+
+        void evictOldest() {
+            index.evictOldest();
+            stored.removeFirst();
+            positions.removeFirst();
+        }
+
+        void removeNewest() {
+            index.removeNewest();
+            stored.removeLast();
+            nextOffset = positions.removeLast()[1];
+        }
+
+        /**
+         * @return The rows at the width as {text, wrapped, id, offset}.
+         */
+        List<Object[]> expected(int width) {
+            List<Object[]> rows = new ArrayList<>();
+            for (int from = 0; from < stored.size(); ) {
+                long id = positions.get(from)[0];
+                int to = from;
+                boolean sameWidth = true;
+                while (to < stored.size() && positions.get(to)[0] == id) {
+                    sameWidth &= stored.get(to).getWidth() == width;
+                    to++;
+                }
+                if (sameWidth) {
+                    for (int i = from; i < to; i++) {
+                        rows.add(new Object[]{stored.get(i).getText(), stored.get(i).isWrapped(), id, positions.get(i)[1]});
+                    }
+                } else {
+                    StringBuilder cells = new StringBuilder();
+                    for (int i = from; i < to; i++) {
+                        TerminalLine line = stored.get(i);
+                        cells.append(line.getText(), 0, line.isWrapped() ? line.getWidth() : line.contentLength());
+                    }
+                    boolean continues = stored.get(to - 1).isWrapped();
+                    int count = Math.max(1, (cells.length() + width - 1) / width);
+                    for (int k = 0; k < count; k++) {
+                        String text = cells.substring(k * width, Math.min(cells.length(), (k + 1) * width));
+                        rows.add(new Object[]{String.format("%-" + width + "s", text), k < count - 1 || continues, id,
+                                positions.get(from)[1] + (long) k * width});
+                    }
+                }
+                from = to;
+            }
+            return rows;
+        }
+
+        void check(int width) {
+            List<Object[]> expected = expected(width);
+            assertEquals(expected.size(), index.size());
+            for (int r = 0; r < expected.size(); r++) {
+                TerminalLine line = index.get(r);
+                assertEquals(expected.get(r)[0], line.getText(), "row " + r);
+                assertEquals(expected.get(r)[1], line.isWrapped(), "row " + r);
+                assertEquals(expected.get(r)[2], index.lineAt(r), "row " + r);
+                assertEquals(expected.get(r)[3], index.lineOffset(r), "row " + r);
+                long id = (long) expected.get(r)[2];
+                assertTrue(index.holds(id));
+                assertTrue(index.rowOf(id) <= r && r < index.rowOf(id) + index.rowsOf(id));
+            }
+            if (!stored.isEmpty()) {
+                assertEquals(positions.getFirst()[0], index.firstId());
+                assertEquals(positions.getFirst()[1], index.firstOffset());
+            }
+            assertEquals(open ? lastId : lastId + 1, index.topId());
+        }
+    }
+
+    @Test
+    void rowsAreCutOutOfLinesStoredAtAnotherWidth() {
+        Model model = new Model();
+        model.append(row("abcde", 5, true));
+        model.append(row("fg", 5, false));
+        model.append(row("hi", 5, false));
+        TerminalLine same = model.stored.get(2);
+
+        model.index.setWidth(3);
+        assertEquals(List.of("abc", "def", "g  ", "hi "), texts(model.index));
+        assertEquals(List.of(0L, 0L, 0L, 1L), List.of(model.index.lineAt(0), model.index.lineAt(1),
+                model.index.lineAt(2), model.index.lineAt(3)));
+        assertEquals(6, model.index.lineOffset(2));
+        assertTrue(model.index.get(1).isWrapped());
+        assertFalse(model.index.get(2).isWrapped());
+
+        model.index.setWidth(5);
+        assertSame(same, model.index.get(2));
+        model.check(5);
+    }
+
+    @Test
+    void evictionCutsTheOldestLineAndKeepsItsOffsets() {
+        Model model = new Model();
+        model.append(row("abcde", 5, true));
+        model.append(row("fghij", 5, true));
+        model.append(row("k", 5, false));
+        model.index.setWidth(4);
+        model.check(4);
+
+        model.evictOldest();
+        assertEquals(List.of("fghi", "jk  "), texts(model.index));
+        assertEquals(5, model.index.firstOffset());
+        model.check(4);
+        model.evictOldest();
+        model.evictOldest();
+        assertEquals(0, model.index.size());
+        assertEquals(1, model.index.firstId());
+    }
+
+    @Test
+    void snapshotsKeepTheirRowsWhileTheIndexChanges() {
+        Model model = new Model();
+        for (int i = 0; i < 200; i++) {
+            model.append(row("line " + i, 8, i % 3 == 0));
+        }
+        model.index.setWidth(4);
+        LineIndex snapshot = model.index.snapshot(List.copyOf(model.stored));
+        List<String> before = texts(model.index);
+
+        for (int i = 0; i < 150; i++) {
+            model.evictOldest();
+            model.append(row("n " + i, 6, false));
+        }
+        model.check(4);
+        assertEquals(before, texts(snapshot));
+    }
+
+    @Test
+    void randomChangesMatchRewrappingTheStoredRows() {
+        Random random = new Random(7);
+        int[] widths = {3, 4, 5, 8};
+        for (int round = 0; round < 20; round++) {
+            Model model = new Model();
+            int width = 5;
+            int lineWidth = 5;
+            for (int step = 0; step < 400; step++) {
+                int action = random.nextInt(20);
+                if (action < 12) {
+                    boolean openRowsStored = model.open && !model.stored.isEmpty() && model.stored.getLast().isWrapped();
+                    if (!openRowsStored) {
+                        lineWidth = widths[random.nextInt(widths.length)];
+                    }
+                    String text = "abcdefghijklmnopqrstuvwxyz".substring(0, random.nextInt(lineWidth + 1));
+                    model.append(row(text, lineWidth, random.nextInt(3) == 0));
+                } else if (action < 16 && !model.stored.isEmpty()) {
+                    model.evictOldest();
+                } else if (action < 17 && !model.stored.isEmpty() && model.stored.getLast().isWrapped()) {
+                    model.removeNewest();
+                } else if (action < 19) {
+                    width = widths[random.nextInt(widths.length)];
+                    model.index.setWidth(width);
+                } else if (random.nextInt(10) == 0) {
+                    model.index.clear();
+                    model.stored.clear();
+                    model.positions.clear();
+                    model.nextOffset = model.index.topOffset();
+                }
+                if (random.nextInt(4) == 0) {
+                    model.check(width);
+                }
+            }
+            model.check(width);
+        }
+    }
+
+    private static List<String> texts(LineIndex index) {
+        List<String> texts = new ArrayList<>();
+        for (long r = 0; r < index.size(); r++) {
+            texts.add(index.get(r).getText());
+        }
+        return texts;
+    }
+}
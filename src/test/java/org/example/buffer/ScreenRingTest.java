@@ -0,0 +1,56 @@
+package org.example.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScreenRingTest {
+
+    private static TerminalLine[] rows(int count) {
+        TerminalLine[] rows = new TerminalLine[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new TerminalLine(1);
+            rows[i].set(0, (char) ('0' + i), 0);
+        }
+        return rows;
+    }
+
+    @Test
+    void getReturnsRowsTopFirst() {
+        ScreenRing screen = new ScreenRing(rows(3));
+        assertEquals(3, screen.size());
+        assertEquals('0', screen.get(0).getCharacter(0));
+        assertEquals('2', screen.get(2).getCharacter(0));
+    }
+
+    @Test
+    void scrollUpReturnsTopRowAndAppendsBottom() {
+        ScreenRing screen = new ScreenRing(rows(3));
+        TerminalLine top = screen.get(0);
+        TerminalLine bottom = new TerminalLine(1);
+
+        assertSame(top, screen.scrollUp(bottom));
+        assertEquals('1', screen.get(0).getCharacter(0));
+        assertEquals('2', screen.get(1).getCharacter(0));
+        assertSame(bottom, screen.get(2));
+    }
+
+    @Test
+    void scrollUpWrapsAroundManyTimes() {
+        ScreenRing screen = new ScreenRing(rows(3));
+        for (int i = 0; i < 7; i++) {
+            TerminalLine line = new TerminalLine(1);
+            line.set(0, (char) ('a' + i), 0);
+            screen.scrollUp(line);
+        }
+        assertEquals('e', screen.get(0).getCharacter(0));
+        assertEquals('f', screen.get(1).getCharacter(0));
+        assertEquals('g', screen.get(2).getCharacter(0));
+    }
+
+    @Test
+    void getOutOfRangeThrows() {
+        ScreenRing screen = new ScreenRing(rows(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> screen.get(2));
+    }
+}
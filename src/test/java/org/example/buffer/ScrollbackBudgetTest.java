@@ -0,0 +1,135 @@
+package org.example.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScrollbackBudgetTest {
+    private static final long LINE = ScrollbackBudget.bytesPerLine(10);
+
+    private static void scroll(TerminalBuffer buffer, int lines) {
+        for (int i = 0; i < lines; i++) {
+            buffer.insertEmptyLineAtBottom();
+        }
+    }
+
+    @Test
+    void buffersAccountTheirScrollbackInBytes() {
+        ScrollbackBudget budget = new ScrollbackBudget(1_000_000);
+        TerminalBuffer a = new TerminalBuffer(10, 2, 100);
+        TerminalBuffer b = new TerminalBuffer(10, 2, 100);
+        scroll(a, 3);
+        a.setScrollbackBudget(budget);
+        b.setScrollbackBudget(budget);
+        scroll(b, 5);
+
+        assertEquals(2, budget.getMemberCount());
+        assertEquals(8 * LINE, budget.getUsedBytes());
+
+        a.resize(20, 2);
+        assertEquals(3 * ScrollbackBudget.bytesPerLine(20) + 5 * LINE, budget.getUsedBytes());
+        a.clearScrollback();
+        assertEquals(5 * LINE, budget.getUsedBytes());
+        b.setScrollbackBudget(null);
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(1, budget.getMemberCount());
+    }
+
+    @Test
+    void linesRecycledByTheLineLimitDoNotGrowUsage() {
+        ScrollbackBudget budget = new ScrollbackBudget(1_000_000);
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 4);
+        buffer.setScrollbackBudget(budget);
+        scroll(buffer, 50);
+
+        assertEquals(4 * LINE, budget.getUsedBytes());
+        assertEquals(0, budget.getEvictionRuns());
+    }
+
+    @Test
+    void exceedingTheBudgetEvictsFromTheLeastRecentlyReadBufferFirst() {
+        ScrollbackBudget budget = new ScrollbackBudget(100 * LINE);
+        TerminalBuffer idle = new TerminalBuffer(10, 2, 1000);
+        TerminalBuffer watched = new TerminalBuffer(10, 2, 1000);
+        idle.setScrollbackBudget(budget);
+        watched.setScrollbackBudget(budget);
+        scroll(idle, 40);
+        scroll(watched, 40);
+        watched.getLine(0, true);
+
+        scroll(watched, 21);
+
+        assertEquals(1, budget.getEvictionRuns());
+        assertTrue(budget.getUsedBytes() <= budget.getLowWaterBytes());
+        assertEquals(61, watched.getScrollbackSize());
+        assertTrue(idle.getScrollbackSize() < 40);
+        assertEquals(40 - idle.getScrollbackSize(), budget.getEvictedLines());
+        assertEquals(budget.getEvictedLines() * LINE, budget.getEvictedBytes());
+    }
+
+    @Test
+    void aBufferAloneInTheBudgetTrimsItself() {
+        ScrollbackBudget budget = new ScrollbackBudget(32 * LINE);
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 1000);
+        buffer.setScrollbackBudget(budget);
+        for (int i = 0; i < 100; i++) {
+            buffer.writeText("line" + i + "\n");
+        }
+
+        assertTrue(budget.getUsedBytes() <= budget.getLimitBytes());
+        assertEquals(buffer.getScrollbackSize() * LINE, budget.getUsedBytes());
+        assertEquals("line" + (99 - buffer.getScrollbackSize()), buffer.getLine(0, true).trim());
+    }
+
+    @Test
+    void concurrentBuffersAreTrimmedFromOtherThreads() throws InterruptedException {
+        ScrollbackBudget budget = new ScrollbackBudget(200 * LINE);
+        ConcurrentTerminalBuffer[] buffers = new ConcurrentTerminalBuffer[4];
+        Thread[] writers = new Thread[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            ConcurrentTerminalBuffer buffer = new ConcurrentTerminalBuffer(10, 2, 10_000);
+            buffer.setScrollbackBudget(budget);
+            buffers[i] = buffer;
+            writers[i] = new Thread(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    buffer.insertEmptyLineAtBottom();
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        long lines = 0;
+        for (ConcurrentTerminalBuffer buffer : buffers) {
+            lines += buffer.getScrollbackSize();
+        }
+        assertEquals(lines * LINE, budget.getUsedBytes());
+        // Runs that find every victim busy are skipped, so usage may overshoot briefly, but not by much.
+        assertTrue(budget.getUsedBytes() <= 2 * budget.getLimitBytes());
+        assertEquals(buffers.length * 5000L, lines + budget.getEvictedLines());
+    }
+
+    @Test
+    void compressedScrollbackIsAccountedAtItsCompressedSize() {
+        ScrollbackBudget budget = new ScrollbackBudget(1_000_000);
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 1000);
+        buffer.setScrollbackBudget(budget);
+        scroll(buffer, 640);
+        assertEquals(640 * LINE, budget.getUsedBytes());
+
+        buffer.setScrollbackCompression(0);
+
+        assertTrue(budget.getUsedBytes() < 64 * LINE);
+        buffer.setScrollbackBudget(null);
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void negativeLimitThrows() {
+        assertThrows(IllegalArgumentException.class, () -> new ScrollbackBudget(-1));
+    }
+}
@@ -0,0 +1,296 @@
+package org.example.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScrollbackRingTest {
+
+    private static TerminalLine lineOf(char c) {
+        TerminalLine line = new TerminalLine(1);
+        line.set(0, c, 0);
+        return line;
+    }
+
+    @Test
+    void appendAndGetKeepInsertionOrder() {
+        ScrollbackRing ring = new ScrollbackRing(100);
+        for (int i = 0; i < 40; i++) {
+            ring.append(lineOf((char) ('0' + i)));
+        }
+        assertEquals(40, ring.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals((char) ('0' + i), ring.get(i).getCharacter(0));
+        }
+    }
+
+    @Test
+    void evictOldestWrapsAroundBackingArray() {
+        ScrollbackRing ring = new ScrollbackRing(3);
+        ring.append(lineOf('a'));
+        ring.append(lineOf('b'));
+        ring.append(lineOf('c'));
+        assertTrue(ring.isFull());
+        assertEquals('a', ring.evictOldest().getCharacter(0));
+        ring.append(lineOf('d'));
+        assertEquals('b', ring.get(0).getCharacter(0));
+        assertEquals('c', ring.get(1).getCharacter(0));
+        assertEquals('d', ring.get(2).getCharacter(0));
+    }
+
+    @Test
+    void growingPreservesOrderAfterWrap() {
+        ScrollbackRing ring = new ScrollbackRing(64);
+        for (int i = 0; i < 16; i++) {
+            ring.append(lineOf((char) ('A' + i)));
+        }
+        ring.evictOldest();
+        ring.evictOldest();
+        for (int i = 0; i < 10; i++) {
+            ring.append(lineOf((char) ('a' + i)));
+        }
+        assertEquals(24, ring.size());
+        assertEquals('C', ring.get(0).getCharacter(0));
+        assertEquals('P', ring.get(13).getCharacter(0));
+        assertEquals('j', ring.get(23).getCharacter(0));
+    }
+
+    @Test
+    void appendToFullRingThrows() {
+        ScrollbackRing ring = new ScrollbackRing(1);
+        ring.append(lineOf('x'));
+        assertThrows(IllegalStateException.class, () -> ring.append(lineOf('y')));
+    }
+
+    @Test
+    void getOutOfRangeThrows() {
+        ScrollbackRing ring = new ScrollbackRing(5);
+        ring.append(lineOf('x'));
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.get(-1));
+    }
+
+    @Test
+    void listViewIsReadOnly() {
+        ScrollbackRing ring = new ScrollbackRing(5);
+        assertThrows(UnsupportedOperationException.class, () -> ring.add(lineOf('x')));
+    }
+
+    @Test
+    void evictAcrossChunkBoundariesKeepsOrder() {
+        ScrollbackRing ring = new ScrollbackRing(100);
+        for (int i = 0; i < 1000; i++) {
+            if (ring.isFull()) {
+                assertEquals((char) (i - 100), ring.evictOldest().getCharacter(0));
+            }
+            ring.append(lineOf((char) i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals((char) (900 + i), ring.get(i).getCharacter(0));
+        }
+    }
+
+    @Test
+    void snapshotIsUnaffectedByAppendEvictAndClear() {
+        ScrollbackRing ring = new ScrollbackRing(ScrollbackRing.CHUNK_SIZE + 2);
+        for (int i = 0; i < ScrollbackRing.CHUNK_SIZE + 2; i++) {
+            ring.append(lineOf((char) i));
+        }
+        List<TerminalLine> snapshot = ring.snapshot();
+
+        for (int i = 0; i < ScrollbackRing.CHUNK_SIZE; i++) {
+            ring.evictOldest();
+            ring.append(lineOf('x'));
+        }
+        ring.clear();
+
+        assertEquals(ScrollbackRing.CHUNK_SIZE + 2, snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals((char) i, snapshot.get(i).getCharacter(0));
+            assertTrue(snapshot.get(i).isShared());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(lineOf('y')));
+    }
+
+    private static TerminalLine textLine(String text) {
+        TerminalLine line = new TerminalLine(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            line.set(i, text.charAt(i), i % 3);
+        }
+        return line;
+    }
+
+    @Test
+    void removeNewestLeavesSnapshotsAndStoredChunksIntact() {
+        ScrollbackRing ring = new ScrollbackRing(1000);
+        ring.setCompression(0);
+        for (int i = 0; i < 2 * ScrollbackRing.CHUNK_SIZE; i++) {
+            ring.append(lineOf((char) ('0' + i)));
+        }
+        List<TerminalLine> snapshot = ring.snapshot();
+        assertEquals(2 * ScrollbackRing.CHUNK_SIZE, ring.coldLines());
+
+        int last = 2 * ScrollbackRing.CHUNK_SIZE - 1;
+        assertEquals((char) ('0' + last), ring.removeNewest().getCharacter(0));
+        assertEquals((char) ('0' + last - 1), ring.removeNewest().getCharacter(0));
+        assertEquals(ScrollbackRing.CHUNK_SIZE, ring.coldLines());
+        ring.append(lineOf('x'));
+        ring.append(lineOf('y'));
+
+        assertEquals('x', ring.get(last - 1).getCharacter(0));
+        assertEquals('y', ring.get(last).getCharacter(0));
+        assertEquals((char) ('0' + last), snapshot.get(last).getCharacter(0));
+        assertEquals(2 * ScrollbackRing.CHUNK_SIZE, ring.coldLines());
+        while (ring.size() > 0) {
+            ring.removeNewest();
+        }
+        assertEquals(0, ring.coldLines());
+        assertThrows(IllegalStateException.class, ring::removeNewest);
+    }
+
+    @Test
+    void compressedLinesReadBackUnchanged() {
+        ScrollbackRing ring = new ScrollbackRing(1000);
+        ring.setCompression(10);
+        for (int i = 0; i < 300; i++) {
+            ring.append(textLine(String.format("line %4d", i)));
+        }
+
+        assertEquals(256, ring.coldLines());
+        for (int i = 0; i < 300; i++) {
+            TerminalLine line = ring.get(i);
+            assertEquals(String.format("line %4d", i), line.getText());
+            assertEquals(2, line.getAttributeId(2));
+        }
+        assertTrue(ring.memoryBytes(ScrollbackBudget.bytesPerLine(9)) < 300 * ScrollbackBudget.bytesPerLine(9) / 2);
+    }
+
+    @Test
+    void readingThroughHistoryDecompressesEachBlockOnce() {
+        ScrollbackRing ring = new ScrollbackRing(1000);
+        ring.setCompression(0);
+        for (int i = 0; i < 640; i++) {
+            ring.append(textLine("x" + i));
+        }
+        for (int i = 0; i < 640; i++) {
+            ring.get(i);
+        }
+        assertEquals(10, ring.decompressedBlocks());
+    }
+
+    @Test
+    void evictionDropsCompressedChunks() {
+        ScrollbackRing ring = new ScrollbackRing(100);
+        ring.setCompression(0);
+        for (int i = 0; i < 1000; i++) {
+            if (ring.isFull()) {
+                ring.evictOldest();
+            }
+            ring.append(lineOf((char) i));
+        }
+        assertEquals(100, ring.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals((char) (900 + i), ring.get(i).getCharacter(0));
+        }
+        // Only full chunks are compressed, the newest one is still being filled.
+        assertEquals(60, ring.coldLines());
+        assertNull(ring.evictOldest());
+    }
+
+    @Test
+    void snapshotKeepsChunksCompressedAfterItWasTaken() {
+        ScrollbackRing ring = new ScrollbackRing(1000);
+        for (int i = 0; i < 130; i++) {
+            ring.append(lineOf((char) ('0' + i)));
+        }
+        List<TerminalLine> snapshot = ring.snapshot();
+        ring.setCompression(0);
+        ring.clear();
+
+        for (int i = 0; i < 130; i++) {
+            assertEquals((char) ('0' + i), snapshot.get(i).getCharacter(0));
+        }
+    }
+
+    @Test
+    void offHeapLinesReadBackUnchanged() {
+        ScrollbackRing ring = new ScrollbackRing(1000);
+        try (CellArena arena = new CellArena()) {
+            ring.setCellArena(arena);
+            for (int i = 0; i < 300; i++) {
+                ring.append(textLine(String.format("line %4d", i)));
+            }
+
+            assertEquals(256, ring.coldLines());
+            assertNull(ring.evictOldest());
+            for (int i = 0; i < 299; i++) {
+                TerminalLine line = ring.get(i);
+                assertEquals(String.format("line %4d", i + 1), line.getText());
+                assertEquals(2, line.getAttributeId(2));
+            }
+        }
+    }
+
+    @Test
+    void evictedOffHeapChunksAreReused() {
+        ScrollbackRing ring = new ScrollbackRing(100);
+        try (CellArena arena = new CellArena()) {
+            ring.setCellArena(arena);
+            for (int i = 0; i < 10_000; i++) {
+                if (ring.isFull()) {
+                    ring.evictOldest();
+                }
+                ring.append(lineOf((char) i));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals((char) (9900 + i), ring.get(i).getCharacter(0));
+            }
+            assertEquals(CellArena.SLAB_BYTES, arena.getReservedBytes());
+            assertTrue(arena.getUsedBytes() <= 2 * ring.memoryBytes(0));
+
+            ring.clear();
+            assertEquals(0, arena.getUsedBytes());
+        }
+    }
+
+    @Test
+    void snapshotHoldsOffHeapChunksAfterTheRingDropsThem() {
+        ScrollbackRing ring = new ScrollbackRing(1000);
+        try (CellArena arena = new CellArena()) {
+            ring.setCompression(100);
+            ring.setCellArena(arena);
+            for (int i = 0; i < 200; i++) {
+                ring.append(textLine("abcdef"));
+            }
+            List<TerminalLine> before = ring.snapshot();
+            long used = arena.getUsedBytes();
+
+            ring.clear();
+            assertEquals(used, arena.getUsedBytes());
+            assertEquals("abcdef", before.get(0).getText());
+            assertEquals("abcdef", before.get(199).getText());
+        }
+    }
+
+    @Test
+    void storedChunksKeepTheWrappedFlagAndRejectLinesTooWideToStore() {
+        TerminalLine widest = textLine("x".repeat(StoredChunk.WIDTH_MASK));
+        widest.setWrapped(true);
+        TerminalLine[] chunk = {widest, textLine("short")};
+        TerminalLine[] tooWide = {new TerminalLine(StoredChunk.WIDTH_MASK + 1)};
+
+        TerminalLine[] decompressed = ScrollbackBlock.compress(chunk).decompress();
+        assertEquals(StoredChunk.WIDTH_MASK, decompressed[0].getWidth());
+        assertTrue(decompressed[0].isWrapped());
+        assertFalse(decompressed[1].isWrapped());
+        assertThrows(IllegalArgumentException.class, () -> ScrollbackBlock.compress(tooWide));
+        try (CellArena arena = new CellArena()) {
+            TerminalLine stored = OffHeapChunk.store(chunk, arena).line(0, null);
+            assertEquals(StoredChunk.WIDTH_MASK, stored.getWidth());
+            assertTrue(stored.isWrapped());
+            assertThrows(IllegalArgumentException.class, () -> OffHeapChunk.store(tooWide, arena));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.buffer;
+
+import org.example.model.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScrollbackSpillTest {
+
+    private static Path tempDirectory() throws IOException {
+        return Files.createTempDirectory("spill-test");
+    }
+
+    @Test
+    void evictedLinesAreReadBackFromDisk() throws IOException {
+        try (ScrollbackSpill spill = new ScrollbackSpill(tempDirectory(), 1 << 20, 4)) {
+            TerminalBuffer buffer = new TerminalBuffer(12, 3, 10);
+            buffer.setScrollbackSpill(spill);
+            for (int i = 0; i < 1000; i++) {
+                buffer.setForegroundColor(i % 2 == 0 ? Color.RED : Color.BLUE);
+                buffer.writeText("line " + i + "\n");
+            }
+
+            assertEquals(988, spill.getLineCount());
+            assertEquals(998, buffer.getScrollbackSize());
+            for (int i = 0; i < 998; i++) {
+                assertEquals(String.format("%-12s", "line " + i), buffer.getLine(i, true));
+            }
+            assertEquals(Color.BLUE, buffer.getAttributesAt(0, 1, true).getForegroundColor());
+            assertEquals(Color.DEFAULT, buffer.getAttributesAt(11, 1, true).getForegroundColor());
+            assertEquals(1001, buffer.getAllLines().size());
+        }
+    }
+
+    @Test
+    void retentionDeletesTheOldestSegments() throws IOException {
+        Path directory = tempDirectory();
+        try (ScrollbackSpill spill = new ScrollbackSpill(directory, ScrollbackSpill.MIN_SEGMENT_BYTES, 2)) {
+            TerminalBuffer buffer = new TerminalBuffer(40, 2, 0);
+            buffer.setScrollbackSpill(spill);
+            for (int i = 0; i < 5000; i++) {
+                buffer.writeText("row " + i + "\n");
+            }
+
+            assertEquals(2, spill.getSegmentCount());
+            assertTrue(spill.getDeletedSegments() > 0);
+            assertTrue(spill.getUsedBytes() <= 2 * ScrollbackSpill.MIN_SEGMENT_BYTES);
+            int size = buffer.getScrollbackSize();
+            assertEquals("row " + (4999 - size), buffer.getLine(0, true).trim());
+            assertEquals("row 4998", buffer.getLine(size - 1, true).trim());
+            try (Stream<Path> files = Files.list(spill.getDirectory())) {
+                assertEquals(2, files.count());
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void spilledLinesKeepTheirCellsAcrossResizesWhileLinesInMemoryAreRewrapped() throws IOException {
+        try (ScrollbackSpill spill = new ScrollbackSpill(tempDirectory(), 1 << 16, 4)) {
+            TerminalBuffer buffer = new TerminalBuffer(8, 2, 2);
+            buffer.setScrollbackSpill(spill);
+            for (int i = 0; i < 6; i++) {
+                buffer.writeText("abcdef" + i + "\n");
+            }
+            buffer.resize(3, 2);
+            buffer.resize(8, 2);
+            buffer.writeText("abcdefg\n");
+            for (int i = 0; i < 3; i++) {
+                buffer.writeText("x\n");
+            }
+
+            assertEquals("abcdef0 ", buffer.getLine(0, true));
+            assertEquals("abcdef4 ", buffer.getLine(4, true));
+            assertEquals("abcdef5 ", buffer.getLine(5, true));
+            assertEquals("abcdefg ", buffer.getLine(6, true));
+        }
+    }
+
+    @Test
+    void clearScrollbackDeletesSpilledHistory() throws IOException {
+        try (ScrollbackSpill spill = new ScrollbackSpill(tempDirectory(), 1 << 16, 4)) {
+            TerminalBuffer buffer = new TerminalBuffer(8, 2, 2);
+            buffer.setScrollbackSpill(spill);
+            for (int i = 0; i < 20; i++) {
+                buffer.writeText(i + "\n");
+            }
+            buffer.clearScrollback();
+
+            assertEquals(0, buffer.getScrollbackSize());
+            assertEquals(0, spill.getSegmentCount());
+            for (int i = 0; i < 5; i++) {
+                buffer.writeText("new" + i + "\n");
+            }
+            // The screen was left as it was, so its last line is the first to scroll off.
+            assertEquals("19      ", buffer.getLine(0, true));
+            assertEquals("new0    ", buffer.getLine(1, true));
+        }
+    }
+
+    @Test
+    void invalidArgumentsThrow() throws IOException {
+        Path directory = tempDirectory();
+        assertThrows(IllegalArgumentException.class, () -> new ScrollbackSpill(directory, 100, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ScrollbackSpill(directory, 1 << 16, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ScrollbackSpill(null, 1 << 16, 1));
+    }
+}
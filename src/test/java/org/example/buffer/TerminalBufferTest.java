@@ -3,6 +3,9 @@ package org.example.buffer;
 import org.example.model.*;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TerminalBufferTest {
@@ -626,6 +629,18 @@ public class TerminalBufferTest {
         assertTrue(buffer.getScreen().get(0).getCell(0).getAttributes().getStyle().getBold());
     }
 
+    @Test
+    void writeText_appliesCurrentAttributesToEveryCharacter() {
+        TerminalBuffer buffer = new TerminalBuffer(80, 24, 100);
+        buffer.setForegroundColor(Color.MAGENTA);
+        buffer.writeText("abc");
+        buffer.resetAttributes();
+        buffer.writeText("d");
+        assertEquals(Color.MAGENTA, buffer.getAttributesAt(0, 0).getForegroundColor());
+        assertEquals(Color.MAGENTA, buffer.getAttributesAt(2, 0).getForegroundColor());
+        assertEquals(Color.DEFAULT, buffer.getAttributesAt(3, 0).getForegroundColor());
+    }
+
     @Test
     void writeText_movesCursorRightByTextLength() {
         TerminalBuffer buffer = new TerminalBuffer(80, 24, 100);
@@ -647,6 +662,28 @@ public class TerminalBufferTest {
         assertEquals(9, buffer.getCurrentCursorPosition().getColumn());
     }
 
+    @Test
+    void writeText_continuesAfterNewlineWithinText() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 100);
+        buffer.writeText("abc\ndef\n\ng");
+        assertEquals("abc       ", buffer.getLine(0, true));
+        assertEquals("def       ", buffer.getLine(0));
+        assertEquals("          ", buffer.getLine(1));
+        assertEquals("g         ", buffer.getLine(2));
+        assertEquals(1, buffer.getScrollbackSize());
+        assertEquals(1, buffer.getCurrentCursorPosition().getColumn());
+    }
+
+    @Test
+    void writeText_ignoresRestOfTextAfterLastColumn() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 100);
+        buffer.writeText("abcdef\nxyz");
+        assertEquals("abcd", buffer.getLine(0));
+        assertEquals("    ", buffer.getLine(1));
+        assertEquals(3, buffer.getCurrentCursorPosition().getColumn());
+        assertEquals(0, buffer.getCurrentCursorPosition().getRow());
+    }
+
     @Test
     void writeText_emptyStringDoesNothing() {
         TerminalBuffer buffer = new TerminalBuffer(80, 24, 100);
@@ -794,6 +831,282 @@ public class TerminalBufferTest {
         assertEquals('X', buffer.getScreen().get(0).getCell(9).getCharacter());
     }
 
+    @Test
+    void insertText_overflowCascadesIntoFollowingRows() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        buffer.writeText("ABCDE");
+        buffer.setCursorPosition(0, 1);
+        buffer.writeText("FGHIJ");
+        buffer.setCursorPosition(0, 0);
+
+        buffer.insertText("xy");
+
+        assertEquals("xyABC", buffer.getLine(0));
+        assertEquals("DEFGH", buffer.getLine(1));
+        assertEquals("IJ   ", buffer.getLine(2));
+        assertEquals(2, buffer.getCurrentCursorPosition().getColumn());
+    }
+
+    @Test
+    void insertText_wrappedCellsKeepTheirAttributes() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 100);
+        buffer.setForegroundColor(Color.RED);
+        buffer.writeText("abc");
+        buffer.setForegroundColor(Color.BLUE);
+        buffer.setCursorPosition(0, 1);
+        buffer.writeText("d");
+        buffer.resetAttributes();
+        buffer.setCursorPosition(0, 0);
+
+        buffer.insertText("X");
+
+        assertEquals("Xab", buffer.getLine(0));
+        assertEquals("cd ", buffer.getLine(1));
+        assertEquals(Color.DEFAULT, buffer.getAttributesAt(0, 0).getForegroundColor());
+        assertEquals(Color.RED, buffer.getAttributesAt(0, 1).getForegroundColor());
+        assertEquals(Color.BLUE, buffer.getAttributesAt(1, 1).getForegroundColor());
+    }
+
+    @Test
+    void insertText_runLongerThanLineWrapsInOrder() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 3, 100);
+        buffer.insertText("abcdefg");
+
+        assertEquals("abc", buffer.getLine(0));
+        assertEquals("def", buffer.getLine(1));
+        assertEquals("g  ", buffer.getLine(2));
+        assertEquals(2, buffer.getCurrentCursorPosition().getColumn());
+    }
+
+    @Test
+    void insertText_overflowFromBottomRowIsLost() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 100);
+        buffer.writeText("abc");
+        buffer.setCursorPosition(0, 1);
+        buffer.writeText("def");
+        buffer.setCursorPosition(0, 0);
+
+        buffer.insertText("XY");
+
+        assertEquals("XYa", buffer.getLine(0));
+        assertEquals("bcd", buffer.getLine(1));
+        assertEquals(0, buffer.getScrollbackSize());
+    }
+
+    @Test
+    void insertText_blankOverflowDoesNotShiftNextRow() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 100);
+        buffer.writeText("ab");
+        buffer.setCursorPosition(0, 1);
+        buffer.writeText("cd");
+        buffer.setCursorPosition(0, 0);
+
+        buffer.insertText("XY");
+
+        assertEquals("XYab ", buffer.getLine(0));
+        assertEquals("cd   ", buffer.getLine(1));
+    }
+
+    @Test
+    void insertText_newlineSplitsRuns() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        buffer.insertText("ab\ncd");
+
+        assertEquals("ab   ", buffer.getLine(0));
+        assertEquals("cd   ", buffer.getLine(1));
+        assertEquals(2, buffer.getCurrentCursorPosition().getColumn());
+        assertEquals(1, buffer.getCurrentCursorPosition().getRow());
+    }
+
+    // ==================== char[] / CharSequence overload Tests ====================
+
+    @Test
+    void writeText_charArraySliceWritesOnlyTheSlice() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        char[] chars = "xxab\ncdxx".toCharArray();
+        buffer.writeText(chars, 2, 5);
+
+        assertEquals("ab   ", buffer.getLine(0));
+        assertEquals("cd   ", buffer.getLine(1));
+        assertEquals(2, buffer.getCurrentCursorPosition().getColumn());
+    }
+
+    @Test
+    void writeText_charArraySliceOutOfBoundsThrowsException() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        char[] chars = new char[4];
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.writeText(chars, 2, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.writeText(chars, -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> buffer.writeText(null, 0, 0));
+    }
+
+    @Test
+    void writeText_acceptsStringBuilder() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        buffer.writeText(new StringBuilder("hi\nyo"));
+
+        assertEquals("hi   ", buffer.getLine(0));
+        assertEquals("yo   ", buffer.getLine(1));
+    }
+
+    @Test
+    void writeText_charBufferIsReadFromItsPositionAndNotConsumed() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        java.nio.CharBuffer chars = java.nio.CharBuffer.wrap("--abc\nde--".toCharArray(), 2, 6);
+        buffer.writeText(chars);
+
+        assertEquals("abc  ", buffer.getLine(0));
+        assertEquals("de   ", buffer.getLine(1));
+        assertEquals(2, chars.position());
+    }
+
+    @Test
+    void writeText_slicedCharBufferHonoursArrayOffset() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        java.nio.CharBuffer chars = java.nio.CharBuffer.wrap("..hello".toCharArray());
+        chars.position(2);
+        java.nio.CharBuffer slice = chars.slice();
+        slice.position(1);
+        buffer.writeText(slice);
+
+        assertEquals("ello ", buffer.getLine(0));
+    }
+
+    @Test
+    void insertText_charArraySliceShiftsExistingContent() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 3, 100);
+        buffer.writeText("abc");
+        buffer.setCursorPosition(1, 0);
+        buffer.insertText("-XY-".toCharArray(), 1, 2);
+
+        assertEquals("aXYbc ", buffer.getLine(0));
+        assertEquals(3, buffer.getCurrentCursorPosition().getColumn());
+    }
+
+    @Test
+    void writeText_charArrayCanBeReusedAfterWrite() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 100);
+        char[] chars = "one".toCharArray();
+        buffer.writeText(chars, 0, 3);
+        chars[0] = 'X';
+
+        assertEquals("one  ", buffer.getLine(0));
+    }
+
+    @Test
+    void lineFeed_keepsColumnAndScrollsAtBottom() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        buffer.writeText("ab");
+        buffer.lineFeed();
+        assertEquals(2, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+
+        buffer.lineFeed();
+        assertEquals(1, buffer.getCursor().getRow());
+        assertEquals("ab   ", buffer.getLine(0, true));
+
+        buffer.carriageReturn();
+        assertEquals(0, buffer.getCursor().getColumn());
+    }
+
+    @Test
+    void clearScrollback_keepsScreenAndCursor() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        buffer.writeText("a\nb\nc");
+
+        buffer.clearScrollback();
+
+        assertEquals(0, buffer.getScrollbackSize());
+        assertEquals("b    ", buffer.getLine(0));
+        assertEquals("c    ", buffer.getLine(1));
+        assertEquals(1, buffer.getCursor().getColumn());
+    }
+
+    // ==================== Damage tracking Tests ====================
+
+    @Test
+    void collectDamage_newBufferIsFullyDamagedThenClean() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+
+        assertEquals(List.of(new DamageRegion(0, 0, 4), new DamageRegion(1, 0, 4)), buffer.collectDamage());
+        assertTrue(buffer.collectDamage().isEmpty());
+        assertFalse(buffer.hasDamage());
+    }
+
+    @Test
+    void collectDamage_writeTextDamagesWrittenColumns() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        buffer.collectDamage();
+
+        buffer.setCursorPosition(2, 1);
+        buffer.writeText("abc");
+        buffer.setCursorPosition(7, 1);
+        buffer.writeText("x");
+
+        assertTrue(buffer.hasDamage());
+        assertEquals(List.of(new DamageRegion(1, 2, 8)), buffer.collectDamage());
+    }
+
+    @Test
+    void collectDamage_fillLineDamagesFilledRange() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        buffer.collectDamage();
+
+        buffer.setCursorPosition(0, 2);
+        buffer.fillLine('-', 3, 5);
+
+        assertEquals(List.of(new DamageRegion(2, 3, 6)), buffer.collectDamage());
+    }
+
+    @Test
+    void collectDamage_insertTextDamagesShiftedCellsAndCascadedRows() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 10);
+        buffer.writeText("abcd");
+        buffer.collectDamage();
+
+        buffer.setCursorPosition(1, 0);
+        buffer.insertText("XY");
+
+        assertEquals(List.of(new DamageRegion(0, 1, 4), new DamageRegion(1, 0, 4)), buffer.collectDamage());
+    }
+
+    @Test
+    void collectDamage_scrollingDamagesEveryRow() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        buffer.collectDamage();
+
+        buffer.insertEmptyLineAtBottom();
+
+        assertEquals(2, buffer.collectDamage().size());
+    }
+
+    @Test
+    void collectDamage_attributeSettersOnlyDamageWhenACellChanges() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        buffer.collectDamage();
+
+        buffer.setForegroundColor(Color.RED);
+        buffer.setBold(true);
+        assertFalse(buffer.hasDamage());
+
+        buffer.setCursorPosition(3, 1);
+        buffer.applyToCurrentCell(new CellAttributes(Color.GREEN, Color.BLACK, new StyleFlags()));
+        assertEquals(List.of(new DamageRegion(1, 3, 4)), buffer.collectDamage());
+    }
+
+    @Test
+    void collectDamage_clearScreenAndResizeDamageEverything() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 10);
+        buffer.collectDamage();
+
+        buffer.clearScreen();
+        assertEquals(2, buffer.collectDamage().size());
+
+        buffer.resize(6, 3);
+        assertEquals(List.of(new DamageRegion(0, 0, 6), new DamageRegion(1, 0, 6), new DamageRegion(2, 0, 6)),
+                buffer.collectDamage());
+    }
+
     // ==================== fillLine(char c) Tests ====================
 
     @Test
@@ -1083,6 +1396,50 @@ public class TerminalBufferTest {
         assertEquals('4', buffer.getScrollback().get(2).getCell(4).getCharacter());
     }
 
+    @Test
+    void insertEmptyLineAtBottom_keepsNewestLinesAfterManyEvictions() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 1, 20);
+        for (int i = 0; i < 1000; i++) {
+            buffer.setCursorPosition(0, 0);
+            buffer.writeText(Integer.toString(i));
+            buffer.insertEmptyLineAtBottom();
+        }
+
+        assertEquals(20, buffer.getScrollbackSize());
+        assertEquals("980       ", buffer.getLine(0, true));
+        assertEquals("999       ", buffer.getLine(19, true));
+    }
+
+    @Test
+    void insertEmptyLineAtBottom_handsTopLineToScrollbackWithoutCopying() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 100);
+        TerminalLine top = buffer.getScreen().get(0);
+
+        buffer.insertEmptyLineAtBottom();
+
+        assertSame(top, buffer.getScrollback().getFirst());
+    }
+
+    @Test
+    void insertEmptyLineAtBottom_reusesEvictedLineWhenScrollbackIsFull() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 1);
+        buffer.writeText("OLD");
+        buffer.insertEmptyLineAtBottom();
+        TerminalLine oldest = buffer.getScrollback().getFirst();
+
+        buffer.insertEmptyLineAtBottom();
+
+        assertSame(oldest, buffer.getScreen().get(1));
+        assertEquals("          ", buffer.getLine(1));
+    }
+
+    @Test
+    void getScrollback_isReadOnly() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 100);
+        assertThrows(UnsupportedOperationException.class,
+                () -> buffer.getScrollback().add(new TerminalLine(10)));
+    }
+
     @Test
     void insertEmptyLineAtBottom_withZeroMaxScrollback() {
         TerminalBuffer buffer = new TerminalBuffer(10, 5, 0);  // no scrollback allowed
@@ -1442,6 +1799,16 @@ public class TerminalBufferTest {
         assertEquals(Color.RED, attrs.getForegroundColor());
     }
 
+    @Test
+    void getAttributesAt_returnsSharedViewForEqualAttributes() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 100);
+        buffer.setForegroundColor(Color.YELLOW);
+        buffer.writeText("ab");
+
+        assertSame(buffer.getAttributesAt(0, 0), buffer.getAttributesAt(1, 0));
+        assertSame(buffer.getAttributesAt(5, 0), buffer.getAttributesAt(0, 1));
+    }
+
     @Test
     void getAttributesAt_withIncludeScrollback() {
         TerminalBuffer buffer = new TerminalBuffer(10, 5, 100);
@@ -1626,4 +1993,348 @@ public class TerminalBufferTest {
         assertThrows(IllegalArgumentException.class, () -> buffer.resize(-1, 10));
         assertThrows(IllegalArgumentException.class, () -> buffer.resize(10, -1));
     }
-}
\ No newline at end of file
+
+    @Test
+    void autoWrap_continuesOnTheNextLineAndMarksTheLineWrapped() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 4, 10);
+        buffer.setAutoWrap(true);
+        buffer.writeText("abcdefgh\n12345\nx");
+
+        assertEquals("abcde", buffer.getLine(0));
+        assertEquals("fgh  ", buffer.getLine(1));
+        assertEquals("12345", buffer.getLine(2));
+        assertEquals("x    ", buffer.getLine(3));
+        assertTrue(buffer.getScreen().get(0).isWrapped());
+        assertFalse(buffer.getScreen().get(1).isWrapped());
+        assertFalse(buffer.getScreen().get(2).isWrapped());
+
+        buffer.setAutoWrap(false);
+        buffer.writeText("yyyyyyy");
+        assertEquals("xyyyy", buffer.getLine(3));
+        assertFalse(buffer.getScreen().get(3).isWrapped());
+    }
+
+    @Test
+    void resize_rewrapsLogicalLinesAndRejoinsThemWhenWidened() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 10);
+        buffer.setAutoWrap(true);
+        buffer.writeText("0123456789abcde");
+
+        buffer.resize(5, 5);
+        assertEquals(List.of("01234", "56789", "abcde", "     ", "     "), buffer.getScreenLines());
+        assertEquals(0, buffer.getCursor().getColumn());
+        assertEquals(3, buffer.getCursor().getRow());
+
+        buffer.resize(10, 5);
+        assertEquals("0123456789", buffer.getLine(0));
+        assertEquals("abcde     ", buffer.getLine(1));
+        assertTrue(buffer.getScreen().get(0).isWrapped());
+        assertFalse(buffer.getScreen().get(1).isWrapped());
+        assertEquals(5, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+        assertEquals(0, buffer.getScrollbackSize());
+    }
+
+    @Test
+    void resize_rewrapsALogicalLineThatStartsInTheScrollbackAsOne() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        buffer.setAutoWrap(true);
+        buffer.writeText("ABCDEFGHIJKLMNOPQRSTUVWXY");
+        List<String> original = buffer.getAllLines();
+
+        buffer.resize(7, 2);
+        assertEquals(List.of("ABCDEFG", "HIJKLMN", "OPQRSTU", "VWXY   "), buffer.getAllLines());
+        assertEquals(4, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+
+        buffer.resize(10, 2);
+        assertEquals(original, buffer.getAllLines());
+        assertEquals(List.of("KLMNOPQRST", "UVWXY     "), buffer.getScreenLines());
+        assertEquals(5, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+        buffer.writeText("Z");
+        assertEquals("UVWXYZ    ", buffer.getLine(1));
+    }
+
+    @Test
+    void resize_showsScrollbackRewrappedWithoutRewritingIt() {
+        TerminalBuffer buffer = new TerminalBuffer(12, 2, 100);
+        buffer.setAutoWrap(true);
+        for (int i = 0; i < 10; i++) {
+            buffer.writeText("line " + i + " abcdefghij\n");
+        }
+        assertEquals(19, buffer.getScrollbackSize());
+        long firstLineId = buffer.getFirstLineId();
+        TerminalLine stored = buffer.getScrollback().get(0);
+
+        buffer.resize(6, 2);
+        buffer.resize(9, 2);
+        buffer.resize(30, 2);
+        assertEquals(9, buffer.getScrollbackSize());
+        for (int i = 0; i < 9; i++) {
+            assertEquals(String.format("%-30s", "line " + i + " abcdefghij"), buffer.getLine(i, true));
+            assertEquals(firstLineId + i, buffer.getLineId(i));
+        }
+        assertEquals(firstLineId, buffer.getFirstLineId());
+
+        buffer.resize(12, 2);
+        assertSame(stored, buffer.getScrollback().get(0));
+
+        buffer.resize(8, 2);
+        assertEquals(List.of("line 0 a", "bcdefghi", "j       "), buffer.getAllLines().subList(0, 3));
+        assertTrue(buffer.getScrollback().get(0).isWrapped());
+        assertFalse(buffer.getScrollback().get(2).isWrapped());
+    }
+
+    @Test
+    void resize_rewrapsCompressedAndOffHeapScrollbackLikeLinesOnTheHeap() {
+        TerminalBuffer plain = new TerminalBuffer(12, 2, 500);
+        TerminalBuffer compressed = new TerminalBuffer(12, 2, 500);
+        TerminalBuffer offHeap = new TerminalBuffer(12, 2, 500);
+        compressed.setScrollbackCompression(0);
+        try (CellArena arena = new CellArena()) {
+            offHeap.setCellArena(arena);
+            for (TerminalBuffer buffer : List.of(plain, compressed, offHeap)) {
+                buffer.setAutoWrap(true);
+                for (int i = 0; i < 150; i++) {
+                    buffer.writeText("entry " + i + " with a long tail\n");
+                }
+                buffer.resize(40, 2);
+            }
+
+            assertEquals(String.format("%-40s", "entry 0 with a long tail"), plain.getLine(0, true));
+            assertEquals(plain.getAllLines(), compressed.getAllLines());
+            assertEquals(plain.getAllLines(), offHeap.getAllLines());
+        }
+    }
+
+    @Test
+    void scrollbackCompression_keepsContentReadable() {
+        TerminalBuffer plain = new TerminalBuffer(12, 4, 500);
+        TerminalBuffer compressed = new TerminalBuffer(12, 4, 500);
+        compressed.setScrollbackCompression(16);
+        for (int i = 0; i < 700; i++) {
+            plain.setForegroundColor(i % 2 == 0 ? Color.RED : Color.GREEN);
+            compressed.setForegroundColor(i % 2 == 0 ? Color.RED : Color.GREEN);
+            plain.writeText("line " + i + "\n");
+            compressed.writeText("line " + i + "\n");
+        }
+
+        assertEquals(plain.getAllLines(), compressed.getAllLines());
+        assertEquals(plain.getCharAt(1, 3, true), compressed.getCharAt(1, 3, true));
+        assertEquals(Color.GREEN, compressed.getAttributesAt(0, 0, true).getForegroundColor());
+
+        compressed.resize(6, 4);
+        plain.resize(6, 4);
+        assertEquals(plain.getAllLines(), compressed.getAllLines());
+    }
+
+    @Test
+    void cellArena_keepsContentReadable() {
+        TerminalBuffer plain = new TerminalBuffer(12, 4, 500);
+        TerminalBuffer offHeap = new TerminalBuffer(12, 4, 500);
+        try (CellArena arena = new CellArena()) {
+            offHeap.setCellArena(arena);
+            for (int i = 0; i < 700; i++) {
+                plain.setForegroundColor(i % 2 == 0 ? Color.RED : Color.GREEN);
+                offHeap.setForegroundColor(i % 2 == 0 ? Color.RED : Color.GREEN);
+                plain.writeText("line " + i + "\n");
+                offHeap.writeText("line " + i + "\n");
+            }
+
+            assertTrue(arena.getUsedBytes() > 0);
+            assertEquals(plain.getAllLines(), offHeap.getAllLines());
+            assertEquals(Color.GREEN, offHeap.getAttributesAt(0, 0, true).getForegroundColor());
+
+            offHeap.resize(6, 4);
+            plain.resize(6, 4);
+            assertEquals(plain.getAllLines(), offHeap.getAllLines());
+
+            offHeap.clearScrollback();
+            assertEquals(0, arena.getUsedBytes());
+        }
+    }
+
+    @Test
+    void search_findsLiteralHitsInScrollbackAndScreenInOrder() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 3, 100);
+        buffer.writeText("ok\nerror one error\nok\nerror two\nok");
+
+        List<SearchHit> hits = buffer.search(new SearchQuery("error", SearchQuery.Mode.LITERAL));
+
+        assertEquals(List.of(new SearchHit(1, 0, 5, buffer.getLineId(1)), new SearchHit(1, 10, 5, buffer.getLineId(1)),
+                new SearchHit(3, 0, 5, buffer.getLineId(3))), hits);
+        assertEquals(2, buffer.getScrollbackSize());
+        assertEquals("error two", buffer.getLine(3, true).substring(0, 9));
+    }
+
+    @Test
+    void search_ignoreCaseAndRegexModes() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 3, 100);
+        buffer.writeText("Error 404\nERROR 500\nerr 7");
+
+        assertEquals(2, buffer.search(new SearchQuery("error", SearchQuery.Mode.IGNORE_CASE)).size());
+        assertEquals(List.of(new SearchHit(0, 6, 3, buffer.getLineId(0)), new SearchHit(1, 6, 3, buffer.getLineId(1))),
+                buffer.search(new SearchQuery("\\d{3}", SearchQuery.Mode.REGEX)));
+        assertTrue(buffer.search(new SearchQuery("x*", SearchQuery.Mode.REGEX)).isEmpty());
+    }
+
+    @Test
+    void search_splitsLargeHistoryAndKeepsTheFirstHitsUpToTheLimit() {
+        TerminalBuffer buffer = new TerminalBuffer(16, 4, 20_000);
+        buffer.setScrollbackCompression(1000);
+        for (int i = 0; i < 20_000; i++) {
+            buffer.writeText((i % 100 == 0 ? "match " : "line ") + i + "\n");
+        }
+
+        List<SearchHit> all = buffer.search(new SearchQuery("match", SearchQuery.Mode.LITERAL));
+        assertEquals(200, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertTrue(buffer.getLine(all.get(i).getRow(), true).startsWith("match " + i * 100));
+        }
+
+        List<SearchHit> first = buffer.search(new SearchQuery("match", SearchQuery.Mode.LITERAL, 15));
+        assertEquals(all.subList(0, 15), first);
+    }
+
+    @Test
+    void search_stopsWhenCancelled() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10_000);
+        for (int i = 0; i < 10_000; i++) {
+            buffer.writeText("line\n");
+        }
+        SearchQuery query = new SearchQuery("line", SearchQuery.Mode.LITERAL);
+        query.cancel();
+
+        assertThrows(CancellationException.class, () -> buffer.search(query));
+        assertThrows(IllegalArgumentException.class, () -> new SearchQuery("", SearchQuery.Mode.LITERAL));
+    }
+
+    @Test
+    void searchIndex_findsTheSameHitsAsScanning() {
+        TerminalBuffer scanned = new TerminalBuffer(30, 4, 3000);
+        TerminalBuffer indexed = new TerminalBuffer(30, 4, 3000);
+        indexed.setSearchIndex(true);
+        for (int i = 0; i < 8000; i++) {
+            String text = (i % 97 == 0 ? "Disk QUOTA exceeded " : "line ") + i + "\n";
+            scanned.writeText(text);
+            indexed.writeText(text);
+        }
+        SearchQuery query = new SearchQuery("quota exc", SearchQuery.Mode.IGNORE_CASE);
+
+        assertEquals(3000, indexed.getSearchIndex().getIndexedLines());
+        assertEquals(scanned.search(query), indexed.search(query));
+        assertFalse(indexed.search(query).isEmpty());
+        SearchQuery limited = new SearchQuery("QUOTA", SearchQuery.Mode.LITERAL, 3);
+        assertEquals(scanned.search(limited), indexed.search(limited));
+
+        scanned.resize(12, 4);
+        indexed.resize(12, 4);
+        assertEquals(scanned.search(query), indexed.search(query));
+        assertEquals(scanned.search(new SearchQuery("Disk QUOTA", SearchQuery.Mode.LITERAL)),
+                indexed.search(new SearchQuery("Disk QUOTA", SearchQuery.Mode.LITERAL)));
+
+        indexed.clearScrollback();
+        assertEquals(0, indexed.getSearchIndex().getIndexedLines());
+        assertEquals(0, indexed.getSearchIndex().getMemoryBytes());
+    }
+
+    @Test
+    void lineIds_stayStableWhileOldLinesAreEvicted() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 5);
+        buffer.writeText("a0\na1\na2");
+        long id = buffer.getLineId(1);
+        assertEquals(1, id);
+        assertEquals(0, buffer.getFirstLineId());
+
+        for (int i = 3; i < 10; i++) {
+            buffer.writeText("\na" + i);
+        }
+
+        assertEquals(5, buffer.getScrollbackSize());
+        assertEquals(2, buffer.getFirstLineId());
+        assertEquals(-1, buffer.getRowOfLineId(id));
+        assertNull(buffer.getLineById(id));
+        assertEquals("a9        ", buffer.getLineById(9));
+        assertEquals(7, buffer.getRowOfLineId(9));
+        assertEquals(9, buffer.getLineId(7));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getLineById(10));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.getLineId(8));
+
+        buffer.clearScrollback();
+        assertEquals("a9        ", buffer.getLineById(9));
+        assertNull(buffer.getLineById(6));
+    }
+
+    @Test
+    void lineIds_surviveResizesAndOffsetsFindCellsAgain() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        buffer.setAutoWrap(true);
+        buffer.writeText("kept 0\nwrapped line 1\nkept 2");
+        assertEquals(List.of(0L, 1L, 1L, 2L), List.of(buffer.getLineId(0), buffer.getLineId(1),
+                buffer.getLineId(2), buffer.getLineId(3)));
+        assertEquals(10, buffer.getLineOffset(2));
+        assertEquals("wrapped line 1      ", buffer.getLineById(1));
+
+        buffer.resize(20, 2);
+        assertEquals(List.of("kept 0              ", "wrapped line 1      ", "kept 2              "),
+                buffer.getAllLines());
+        assertEquals(List.of(0, 1, 2), List.of(buffer.getRowOfLineId(0), buffer.getRowOfLineId(1),
+                buffer.getRowOfLineId(2)));
+        SearchHit hit = buffer.search(new SearchQuery("line", SearchQuery.Mode.LITERAL)).getFirst();
+        assertEquals(new SearchHit(1, 8, 4, 1, 8), hit);
+
+        buffer.resize(5, 2);
+        assertEquals(List.of("kept ", "0    ", "wrapp", "ed li", "ne 1 ", "kept ", "2    "), buffer.getAllLines());
+        assertEquals(0, buffer.getRowOfLineId(0));
+        assertEquals(2, buffer.getRowOfLineId(1));
+        assertEquals(5, buffer.getRowOfLineId(2));
+        assertEquals(3, buffer.getRowOfLineId(hit.getLineId(), hit.getLineOffset()));
+        assertEquals(4, buffer.getRowOfLineId(1, 100));
+        assertEquals(6, buffer.getRowOfLineId(2, 5));
+        assertEquals(5, buffer.getLineOffset(1));
+        assertEquals(2, buffer.getLineId(6));
+        assertEquals("wrapped line 1 ", buffer.getLineById(1));
+        assertEquals(List.of(new SearchHit(3, 0, 4, 1, 5)),
+                buffer.search(new SearchQuery("ed l", SearchQuery.Mode.LITERAL)));
+        assertThrows(IllegalArgumentException.class, () -> buffer.getRowOfLineId(1, -1));
+    }
+
+    @Test
+    void lineIds_followRowsEvictedFromTheMiddleOfALine() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 2, 2);
+        buffer.setAutoWrap(true);
+        buffer.writeText("abcdefghijklmnop\nq");
+
+        assertEquals(List.of("efgh", "ijkl", "mnop", "q   "), buffer.getAllLines());
+        assertEquals(0, buffer.getFirstLineId());
+        assertEquals(4, buffer.getLineOffset(0));
+        assertEquals(-1, buffer.getRowOfLineId(0, 2));
+        assertEquals(1, buffer.getRowOfLineId(0, 9));
+        assertEquals("efghijklmnop", buffer.getLineById(0));
+
+        buffer.resize(6, 2);
+        assertEquals(List.of("efghij", "klmnop", "q     "), buffer.getAllLines());
+        assertEquals(1, buffer.getRowOfLineId(0, 10));
+        assertEquals(4, buffer.getLineOffset(0));
+        assertEquals(10, buffer.getLineOffset(1));
+        assertEquals(1, buffer.getLineId(2));
+    }
+
+    @Test
+    void lineIds_areSharedBySearchHitsAndSnapshots() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 3);
+        for (int i = 0; i < 20; i++) {
+            buffer.writeText((i == 17 ? "hit " : "miss ") + i + "\n");
+        }
+        SearchHit hit = buffer.search(new SearchQuery("hit", SearchQuery.Mode.LITERAL)).getFirst();
+        BufferSnapshot snapshot = buffer.snapshot();
+        buffer.writeText("more\n");
+
+        assertEquals(17, hit.getLineId());
+        assertEquals("hit 17    ", buffer.getLineById(hit.getLineId()));
+        assertEquals("hit 17    ", snapshot.getLineById(hit.getLineId()));
+        assertEquals(17, snapshot.getLineId(hit.getRow()));
+        assertNull(snapshot.getLineById(3));
+    }
+}
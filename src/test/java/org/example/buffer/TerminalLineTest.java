@@ -81,4 +81,75 @@ public class TerminalLineTest {
         line.setWidth(1);
         assertEquals(1, line.getWidth());
     }
-}
\ No newline at end of file
+
+    @Test
+    void packedAccessorsReadAndWriteCells() {
+        TerminalLine line = new TerminalLine(3);
+        int id = AttributeTable.intern(CellAttributes.encode(Color.RED, Color.BLUE, StyleFlags.BOLD));
+        line.set(1, 'Z', id);
+        assertEquals('Z', line.getCharacter(1));
+        assertEquals(id, line.getAttributeId(1));
+        assertEquals(Color.RED, line.getCell(1).getForegroundColor());
+        assertTrue(line.getCell(1).getStyle().getBold());
+        assertEquals(" Z ", line.getText());
+    }
+
+    @Test
+    void cellViewWritesThroughToLine() {
+        TerminalLine line = new TerminalLine(2);
+        Cell view = line.getCell(0);
+        view.setCharacter('K');
+        view.setBackgroundColor(Color.GREEN);
+        assertEquals('K', line.getCharacter(0));
+        assertEquals(Color.GREEN, AttributeTable.attributesOf(line.getAttributeId(0)).getBackgroundColor());
+    }
+
+    @Test
+    void insertShiftsCellsRightAndDropsLast() {
+        TerminalLine line = new TerminalLine(4);
+        line.fill(0, 4, 'A', AttributeTable.DEFAULT_ID);
+        line.set(3, 'D', AttributeTable.DEFAULT_ID);
+        line.insert(1, 'X', AttributeTable.intern(CellAttributes.encode(Color.CYAN, Color.DEFAULT, 0)));
+        assertEquals("AXAA", line.getText());
+        assertEquals(Color.CYAN, line.getCell(1).getForegroundColor());
+    }
+
+    @Test
+    void setWidthPadsWithBlankCells() {
+        TerminalLine line = new TerminalLine(2);
+        line.fill(0, 2, 'X', AttributeTable.DEFAULT_ID);
+        line.setWidth(4);
+        assertEquals("XX  ", line.getText());
+    }
+
+    @Test
+    void insertRunShiftsTailAndReportsOverflow() {
+        TerminalLine line = new TerminalLine(5);
+        line.fill(0, 5, ' ', AttributeTable.DEFAULT_ID);
+        line.insert(0, "abcde", 0, 5, AttributeTable.DEFAULT_ID, new CellRun());
+        CellRun overflow = new CellRun();
+
+        line.insert(1, "XYZ", 1, 3, AttributeTable.DEFAULT_ID, overflow);
+
+        assertEquals("aYZbc", line.getText());
+        assertEquals(2, overflow.length);
+        assertEquals('d', overflow.characters[0]);
+        assertEquals('e', overflow.characters[1]);
+    }
+
+    @Test
+    void insertRunLongerThanTailOverflowsRunThenTail() {
+        TerminalLine line = new TerminalLine(3);
+        line.insert(0, "abc", 0, 3, AttributeTable.DEFAULT_ID, new CellRun());
+        CellRun run = new CellRun();
+        run.ensureCapacity(3);
+        run.length = 3;
+        "XYZ".getChars(0, 3, run.characters, 0);
+        CellRun overflow = new CellRun();
+
+        line.insert(2, run, overflow);
+
+        assertEquals("abX", line.getText());
+        assertEquals("YZc", new String(overflow.characters, 0, overflow.length));
+    }
+}
@@ -0,0 +1,90 @@
+package org.example.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrigramIndexTest {
+
+    private static TerminalLine textLine(String text) {
+        TerminalLine line = new TerminalLine(text.length());
+        line.write(0, text, 0, text.length(), 0);
+        return line;
+    }
+
+    private static List<Long> candidates(TrigramIndex index, String text) {
+        List<Long> lines = new ArrayList<>();
+        index.forEachCandidate(text, line -> lines.add(line));
+        return lines;
+    }
+
+    @Test
+    void candidatesContainEveryTrigramIgnoringCase() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(textLine("Disk quota exceeded"), 0);
+        index.add(textLine("all good"), 1);
+        index.add(textLine("QUOTA low"), 2);
+        index.add(textLine("quo ta"), 3);
+
+        assertEquals(List.of(0L, 2L), candidates(index, "quota"));
+        assertEquals(List.of(0L), candidates(index, "disk quota"));
+        assertEquals(List.of(), candidates(index, "missing"));
+    }
+
+    @Test
+    void evictionDropsWholeBlocksAndKeepsNumbering() {
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < 3 * TrigramIndex.BLOCK_LINES; i++) {
+            index.add(textLine(i % 10 == 0 ? "needle " + i : "hay " + i), i);
+        }
+        long full = index.getMemoryBytes();
+        index.evictBefore(TrigramIndex.BLOCK_LINES + 5);
+
+        assertEquals(TrigramIndex.BLOCK_LINES + 5, index.getFirstLine());
+        assertEquals(2 * TrigramIndex.BLOCK_LINES - 5, index.getIndexedLines());
+        assertTrue(index.getMemoryBytes() < full);
+        List<Long> lines = candidates(index, "needle");
+        assertEquals(1030L, lines.getFirst().longValue());
+        assertEquals(3L * TrigramIndex.BLOCK_LINES - 2, lines.getLast().longValue());
+
+        index.clear();
+        assertEquals(0, index.getIndexedLines());
+        assertEquals(0, index.getMemoryBytes());
+        index.add(textLine("needle"), 3L * TrigramIndex.BLOCK_LINES);
+        assertEquals(List.of(3L * TrigramIndex.BLOCK_LINES), candidates(index, "needle"));
+    }
+
+    @Test
+    void memoryIsReportedPerIndexedLine() {
+        TrigramIndex index = new TrigramIndex();
+        assertEquals(0.0, index.getBytesPerLine());
+        for (int i = 0; i < 5000; i++) {
+            index.add(textLine(String.format("%-80s", "build step " + i + " finished")), i);
+        }
+        assertTrue(index.getTrigramCount() > 0);
+        assertEquals((double) index.getMemoryBytes() / 5000, index.getBytesPerLine());
+        assertTrue(index.getBytesPerLine() < 200, "bytes per line: " + index.getBytesPerLine());
+    }
+
+    @Test
+    void wrappedRowsAreIndexedAsOneLine() {
+        TrigramIndex index = new TrigramIndex();
+        TerminalLine first = textLine("disk qu");
+        first.setWrapped(true);
+        index.add(first, 7);
+        index.add(textLine("ota low"), 7);
+        index.add(textLine("quota"), 8);
+
+        assertEquals(List.of(7L, 8L), candidates(index, "quota"));
+        assertEquals(List.of(7L), candidates(index, "k quota l"));
+
+        index.removeFrom(8);
+        assertEquals(List.of(7L), candidates(index, "quota"));
+        index.evictBefore(8);
+        assertEquals(List.of(), candidates(index, "quota"));
+        assertEquals(0, index.getIndexedLines());
+    }
+}
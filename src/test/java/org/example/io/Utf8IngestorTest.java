@@ -0,0 +1,185 @@
+package org.example.io;
+
+import org.example.buffer.TerminalBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Utf8IngestorTest {
+
+    /** A channel that hands out at most a fixed number of bytes per read. */
+    private static ReadableByteChannel trickle(byte[] data, int bytesPerRead) {
+        return new ReadableByteChannel() {
+            private int position;
+
+            @Override
+            public int read(ByteBuffer dst) {
+                if (position == data.length) {
+                    return -1;
+                }
+                int n = Math.min(Math.min(bytesPerRead, dst.remaining()), data.length - position);
+                dst.put(data, position, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    void ingest_inputStreamWritesLines() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(5, 3, 10);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+
+        long n = ingestor.ingest(new ByteArrayInputStream("ab\ncd".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(5, n);
+        assertEquals("ab   ", buffer.getLine(0));
+        assertEquals("cd   ", buffer.getLine(1));
+        assertEquals(2, buffer.getCurrentCursorPosition().getColumn());
+    }
+
+    @Test
+    void ingest_completesCodePointsSplitAcrossReads() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+        byte[] data = "é€😀x".getBytes(StandardCharsets.UTF_8);
+
+        ingestor.ingest(trickle(data, 1));
+
+        assertEquals("é€😀x     ", buffer.getLine(0));
+        assertEquals(data.length, ingestor.getBytesRead());
+        assertEquals(data.length, ingestor.getChunkCount());
+        assertEquals(5, ingestor.getCharsDecoded());
+    }
+
+    @Test
+    void ingest_inputLargerThanBufferIsWrittenInChunks() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 100);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer, Utf8Ingestor.MIN_BUFFER_SIZE);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            text.append(i % 10).append("\n");
+        }
+
+        ingestor.ingest(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(100, ingestor.getBytesRead());
+        assertTrue(ingestor.getChunkCount() >= 100 / Utf8Ingestor.MIN_BUFFER_SIZE);
+        assertEquals("9  ", buffer.getLine(0));
+        assertEquals("8  ", buffer.getLine(buffer.getScrollbackSize() - 1, true));
+    }
+
+    @Test
+    void ingest_newlineAfterFullLineIsNotLost() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(3, 3, 10);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+
+        ingestor.ingest(new ByteArrayInputStream("abcdef\ngh".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("abc", buffer.getLine(0));
+        assertEquals("gh ", buffer.getLine(1));
+    }
+
+    @Test
+    void ingest_screenDoesNotDependOnWhereReadsSplitTheInput() throws IOException {
+        byte[] data = "abcdefgh\nxy\n€fghij€\nz".getBytes(StandardCharsets.UTF_8);
+        TerminalBuffer whole = new TerminalBuffer(4, 4, 10);
+        new Utf8Ingestor(whole).ingest(new ByteArrayInputStream(data));
+        assertEquals("abcd", whole.getLine(0));
+        assertEquals("xy  ", whole.getLine(1));
+        assertEquals("€fgh", whole.getLine(2));
+        assertEquals("z   ", whole.getLine(3));
+
+        for (int split = 1; split < data.length; split++) {
+            TerminalBuffer buffer = new TerminalBuffer(4, 4, 10);
+            Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+            ingestor.read(trickle(Arrays.copyOfRange(data, 0, split), data.length));
+            ingestor.ingest(trickle(Arrays.copyOfRange(data, split, data.length), data.length));
+
+            assertEquals(whole.getScreenContent(), buffer.getScreenContent(), "split after " + split + " bytes");
+            assertEquals(whole.getCursor().getColumn(), buffer.getCursor().getColumn());
+            assertEquals(whole.getCursor().getRow(), buffer.getCursor().getRow());
+        }
+    }
+
+    @Test
+    void ingest_malformedInputIsReplaced() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+
+        ingestor.ingest(new ByteArrayInputStream(new byte[]{'a', (byte) 0xFF, 'b'}));
+
+        assertEquals("a�b  ", buffer.getLine(0));
+    }
+
+    @Test
+    void ingest_truncatedSequenceAtEndOfStreamIsReplaced() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+
+        ingestor.ingest(new ByteArrayInputStream(new byte[]{'a', (byte) 0xE2, (byte) 0x82}));
+
+        assertEquals("a�   ", buffer.getLine(0));
+    }
+
+    @Test
+    void read_keepsIncompleteSequenceUntilNextRead() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        Utf8Ingestor ingestor = new Utf8Ingestor(buffer);
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(2, ingestor.read(trickle(new byte[]{euro[0], euro[1]}, 2)));
+        assertEquals("     ", buffer.getLine(0));
+        assertEquals(1, ingestor.read(trickle(new byte[]{euro[2]}, 1)));
+
+        assertEquals("€    ", buffer.getLine(0));
+    }
+
+    @Test
+    void read_returnsMinusOneAtEndOfStream() throws IOException {
+        Utf8Ingestor ingestor = new Utf8Ingestor(new TerminalBuffer(5, 2, 10));
+        assertEquals(-1, ingestor.read(trickle(new byte[0], 1)));
+        assertEquals(0, ingestor.getChunkCount());
+    }
+
+    @Test
+    void statistics_reportThroughputAndReset() throws IOException {
+        Utf8Ingestor ingestor = new Utf8Ingestor(new TerminalBuffer(80, 24, 100));
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 'x');
+
+        ingestor.ingest(trickle(data, 512));
+
+        assertEquals(8, ingestor.getChunkCount());
+        assertTrue(ingestor.getBytesPerSecond() > 0);
+
+        ingestor.resetStatistics();
+        assertEquals(0, ingestor.getBytesRead());
+        assertEquals(0, ingestor.getChunkCount());
+        assertEquals(0, ingestor.getCharsDecoded());
+        assertEquals(0.0, ingestor.getBytesPerSecond());
+    }
+
+    @Test
+    void constructor_rejectsInvalidArguments() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        assertThrows(IllegalArgumentException.class, () -> new Utf8Ingestor((TerminalBuffer) null));
+        assertThrows(IllegalArgumentException.class, () -> new Utf8Ingestor(buffer, Utf8Ingestor.MIN_BUFFER_SIZE - 1));
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeTableTest {
+
+    @Test
+    void defaultAttributesHaveDefaultId() {
+        assertEquals(AttributeTable.DEFAULT_ID, AttributeTable.intern(new CellAttributes()));
+        assertEquals(CellAttributes.DEFAULT_CODE, AttributeTable.codeOf(AttributeTable.DEFAULT_ID));
+    }
+
+    @Test
+    void internReturnsSameIdForEqualAttributes() {
+        int first = AttributeTable.intern(new CellAttributes(Color.RED, Color.BLACK, new StyleFlags(true, false, false)));
+        int second = AttributeTable.intern(new CellAttributes(Color.RED, Color.BLACK, new StyleFlags(true, false, false)));
+        int other = AttributeTable.intern(new CellAttributes(Color.RED, Color.BLACK, new StyleFlags(false, false, false)));
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    void attributesOfReturnsSharedImmutableView() {
+        CellAttributes attrs = new CellAttributes(Color.CYAN, Color.WHITE, new StyleFlags(false, true, false));
+        int id = AttributeTable.intern(attrs);
+        CellAttributes view = AttributeTable.attributesOf(id);
+
+        assertSame(view, AttributeTable.attributesOf(id));
+        assertEquals(attrs, view);
+        assertTrue(view.isImmutable());
+        assertThrows(UnsupportedOperationException.class, () -> view.setForegroundColor(Color.RED));
+        assertThrows(UnsupportedOperationException.class, () -> view.getStyle().setBold(true));
+    }
+
+    @Test
+    void cellSharesImmutableAttributesUntilModified() {
+        CellAttributes shared = AttributeTable.attributesOf(AttributeTable.DEFAULT_ID);
+        Cell cell = new Cell('x', shared);
+
+        cell.setForegroundColor(Color.GREEN);
+
+        assertEquals(Color.GREEN, cell.getForegroundColor());
+        assertEquals(Color.DEFAULT, shared.getForegroundColor());
+    }
+
+    @Test
+    void internKeepsIdsStableAcrossGrowth() {
+        int[] ids = new int[Color.values().length * Color.values().length];
+        int n = 0;
+        for (Color fg : Color.values()) {
+            for (Color bg : Color.values()) {
+                ids[n++] = AttributeTable.intern(CellAttributes.encode(fg, bg, StyleFlags.UNDERLINE));
+            }
+        }
+        n = 0;
+        for (Color fg : Color.values()) {
+            for (Color bg : Color.values()) {
+                int code = CellAttributes.encode(fg, bg, StyleFlags.UNDERLINE);
+                assertEquals(ids[n++], AttributeTable.intern(code));
+                assertEquals(code, AttributeTable.codeOf(AttributeTable.intern(code)));
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellAttributesTest {
+
+    @Test
+    void defaultAttributesEncodeToDefaultCode() {
+        assertEquals(CellAttributes.DEFAULT_CODE, new CellAttributes().encode());
+    }
+
+    @Test
+    void encodeDecodeRoundTrips() {
+        CellAttributes attrs = new CellAttributes(Color.BRIGHT_WHITE, Color.MAGENTA, new StyleFlags(true, false, true));
+        CellAttributes decoded = CellAttributes.decode(attrs.encode());
+        assertEquals(attrs, decoded);
+        assertEquals(Color.BRIGHT_WHITE, decoded.getForegroundColor());
+        assertEquals(Color.MAGENTA, decoded.getBackgroundColor());
+        assertTrue(decoded.getStyle().getBold());
+        assertFalse(decoded.getStyle().getItalic());
+        assertTrue(decoded.getStyle().getUnderline());
+    }
+
+    @Test
+    void codeHelpersChangeOneFieldOnly() {
+        int code = CellAttributes.encode(Color.RED, Color.BLUE, StyleFlags.ITALIC);
+        int changed = CellAttributes.withStyleBit(CellAttributes.withForeground(code, Color.GREEN), StyleFlags.BOLD, true);
+        assertEquals(Color.GREEN, CellAttributes.foregroundOf(changed));
+        assertEquals(Color.BLUE, CellAttributes.backgroundOf(changed));
+        assertEquals(StyleFlags.ITALIC | StyleFlags.BOLD, CellAttributes.styleBitsOf(changed));
+    }
+}
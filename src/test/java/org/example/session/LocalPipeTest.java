@@ -0,0 +1,66 @@
+package org.example.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalPipeTest {
+
+    @Test
+    void bytesArriveInOrderAcrossWrapAround() throws Exception {
+        LocalPipe pipe = new LocalPipe(7);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Thread writer = Thread.ofVirtual().start(() -> {
+            try {
+                pipe.sink().write(ByteBuffer.wrap(data));
+                pipe.sink().close();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        ByteBuffer received = ByteBuffer.allocate(data.length + 1);
+        ByteBuffer chunk = ByteBuffer.allocate(5);
+        int n;
+        while ((n = pipe.source().read(chunk)) >= 0) {
+            assertTrue(n > 0);
+            received.put(chunk.flip());
+            chunk.clear();
+        }
+        writer.join();
+
+        assertEquals(data.length, received.position());
+        assertArrayEquals(data, Arrays.copyOf(received.array(), data.length));
+    }
+
+    @Test
+    void closingTheSourceWakesABlockedReader() throws Exception {
+        LocalPipe pipe = new LocalPipe(8);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread reader = Thread.ofVirtual().start(() -> {
+            try {
+                pipe.source().read(ByteBuffer.allocate(4));
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        while (reader.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+
+        pipe.source().close();
+        reader.join();
+
+        assertTrue(thrown.get() instanceof AsynchronousCloseException);
+        assertThrows(ClosedChannelException.class, () -> pipe.source().read(ByteBuffer.allocate(4)));
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionHostTest {
+
+    private static void send(LocalPipe pipe, String text) throws IOException {
+        pipe.sink().write(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void sessionDrainsItsSourceIntoTheBuffer() throws Exception {
+        try (SessionHost host = new SessionHost()) {
+            LocalPipe pipe = new LocalPipe(64);
+            Session session = host.open(10, 3, 10, pipe.source());
+
+            send(pipe, "hello\r\n\u001b[31mred");
+            pipe.sink().close();
+
+            assertTrue(session.awaitEnd(Duration.ofSeconds(10)));
+            assertFalse(session.isRunning());
+            assertNull(session.getFailure());
+            assertEquals("hello     ", session.getBuffer().getLine(0));
+            assertEquals("red       ", session.getBuffer().getLine(1));
+            assertEquals(15, session.getBytesRead());
+            assertSame(session, host.get(session.getId()));
+        }
+    }
+
+    @Test
+    void sessionOutputWrapsAtTheRightMargin() throws Exception {
+        try (SessionHost host = new SessionHost()) {
+            LocalPipe pipe = new LocalPipe(64);
+            Session session = host.open(5, 3, 10, pipe.source());
+
+            send(pipe, "abcdefg\r\nh");
+            pipe.sink().close();
+
+            assertTrue(session.awaitEnd(Duration.ofSeconds(10)));
+            assertEquals("abcde", session.getBuffer().getLine(0));
+            assertEquals("fg   ", session.getBuffer().getLine(1));
+            assertEquals("h    ", session.getBuffer().getLine(2));
+        }
+    }
+
+    @Test
+    void closeStopsABlockedSessionAndRemovesIt() throws Exception {
+        SessionHost host = new SessionHost();
+        LocalPipe pipe = new LocalPipe(64);
+        Session session = host.open(10, 3, 10, pipe.source());
+
+        assertTrue(host.close(session.getId()));
+
+        assertTrue(session.awaitEnd(Duration.ofSeconds(10)));
+        assertNull(session.getFailure());
+        assertNull(host.get(session.getId()));
+        assertFalse(host.close(session.getId()));
+        assertEquals(0, host.getSessionCount());
+    }
+
+    @Test
+    void statisticsAggregateAcrossSessions() throws Exception {
+        try (SessionHost host = new SessionHost()) {
+            Session[] sessions = new Session[20];
+            for (int i = 0; i < sessions.length; i++) {
+                LocalPipe pipe = new LocalPipe(16);
+                sessions[i] = host.open(20, 5, 10, pipe.source());
+                send(pipe, "0123456789\r\n");
+                pipe.sink().close();
+            }
+            for (Session session : sessions) {
+                assertTrue(session.awaitEnd(Duration.ofSeconds(10)));
+            }
+            sessions[0].close();
+
+            HostStatistics statistics = host.getStatistics();
+            assertEquals(19, statistics.getSessionCount());
+            assertEquals(0, statistics.getRunningCount());
+            assertEquals(20 * 12, statistics.getBytesRead());
+            assertEquals(sessions[1].estimateMemoryBytes(), statistics.getMemoryPerSession());
+            assertTrue(statistics.getAverageBytesPerSecond() > 0);
+        }
+    }
+
+    @Test
+    void closedHostRefusesNewSessions() {
+        SessionHost host = new SessionHost();
+        Session session = host.open(10, 3, 10, new LocalPipe(8).source());
+        host.close();
+
+        assertTrue(session.isClosed());
+        assertThrows(IllegalStateException.class, () -> host.open(10, 3, 10, new LocalPipe(8).source()));
+        assertThrows(IllegalArgumentException.class, () -> new SessionHost(1, null));
+    }
+
+    @Test
+    void closingAnOffHeapSessionFreesItsArena() throws Exception {
+        try (SessionHost host = new SessionHost(SessionHost.DEFAULT_READ_BUFFER_SIZE, null, true)) {
+            LocalPipe pipe = new LocalPipe(4096);
+            Session session = host.open(10, 3, 1000, pipe.source());
+            StringBuilder output = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                output.append("line ").append(i).append("\r\n");
+            }
+            send(pipe, output.toString());
+            pipe.sink().close();
+            assertTrue(session.awaitEnd(Duration.ofSeconds(10)));
+
+            assertTrue(session.getCellArena().getUsedBytes() > 0);
+            assertEquals("line 0    ", session.getBuffer().getLine(0, true));
+
+            session.close();
+            assertTrue(session.getCellArena().isClosed());
+            assertEquals(0, session.getBuffer().getScrollbackSize());
+        }
+    }
+}
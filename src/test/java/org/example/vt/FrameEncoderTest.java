@@ -0,0 +1,170 @@
+package org.example.vt;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.model.Color;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameEncoderTest {
+
+    /** Encodes a frame and returns it as text. */
+    private static String frame(FrameEncoder encoder, TerminalBuffer buffer) {
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+        int n = encoder.encode(buffer, out);
+        assertEquals(n, out.position());
+        return new String(out.array(), 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameScreen(TerminalBuffer expected, TerminalBuffer actual) {
+        for (int row = 0; row < expected.getHeight(); row++) {
+            assertEquals(expected.getLine(row), actual.getLine(row), "row " + row);
+            for (int column = 0; column < expected.getWidth(); column++) {
+                assertEquals(expected.getAttributesAt(column, row), actual.getAttributesAt(column, row),
+                        "attributes at " + column + ", " + row);
+            }
+        }
+        assertEquals(expected.getCursor().getColumn(), actual.getCursor().getColumn(), "cursor column");
+        assertEquals(expected.getCursor().getRow(), actual.getCursor().getRow(), "cursor row");
+    }
+
+    @Test
+    void encode_firstFrameRepaintsScreen() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        buffer.writeText("hi");
+
+        assertEquals("\u001b[m\u001b[H\u001b[2Jhi", frame(new FrameEncoder(), buffer));
+    }
+
+    @Test
+    void encode_unchangedScreenProducesNothing() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        FrameEncoder encoder = new FrameEncoder();
+        frame(encoder, buffer);
+
+        assertEquals("", frame(encoder, buffer));
+    }
+
+    @Test
+    void encode_singleChangeMovesCursorAndWritesOnlyThatCell() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        FrameEncoder encoder = new FrameEncoder();
+        frame(encoder, buffer);
+
+        buffer.setCursorPosition(4, 2);
+        buffer.writeText("x");
+        buffer.setCursorPosition(0, 0);
+
+        assertEquals("\u001b[3;5Hx\u001b[H", frame(encoder, buffer));
+    }
+
+    @Test
+    void encode_emitsOnlyChangedAttributes() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 3, 10);
+        FrameEncoder encoder = new FrameEncoder();
+        frame(encoder, buffer);
+
+        buffer.setBold(true);
+        buffer.setForegroundColor(Color.RED);
+        buffer.writeText("a");
+        buffer.setBold(false);
+        buffer.writeText("b");
+
+        assertEquals("\u001b[1;31ma\u001b[22mb", frame(encoder, buffer));
+    }
+
+    @Test
+    void encode_clearedTailUsesEraseToEndOfLine() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 2, 10);
+        buffer.writeText("hello world, again");
+        FrameEncoder encoder = new FrameEncoder();
+        frame(encoder, buffer);
+
+        // Column 5 is already blank, so the erase starts at column 6.
+        buffer.fillLine(' ', 5, 19);
+        buffer.setCursorPosition(5, 0);
+
+        assertEquals("\u001b[12D\u001b[K\u001b[D", frame(encoder, buffer));
+    }
+
+    @Test
+    void encode_scrolledScreenUsesScrollUp() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 6, 10);
+        for (int i = 0; i < 5; i++) {
+            buffer.writeText("line " + i + "\n");
+        }
+        FrameEncoder encoder = new FrameEncoder();
+        frame(encoder, buffer);
+
+        buffer.writeText("line 5\n");
+        buffer.writeText("line 6");
+
+        String frame = frame(encoder, buffer);
+        assertTrue(frame.startsWith("\u001b[S"), frame);
+        assertTrue(frame.length() < 30, frame);
+    }
+
+    @Test
+    void encode_overflowLeavesBufferAndEncoderUnchanged() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 2, 10);
+        buffer.writeText("some text that is long");
+        FrameEncoder encoder = new FrameEncoder();
+        ByteBuffer small = ByteBuffer.allocate(8);
+        small.put((byte) 'z');
+
+        assertThrows(BufferOverflowException.class, () -> encoder.encode(buffer, small));
+        assertEquals(1, small.position());
+        assertTrue(frame(encoder, buffer).startsWith("\u001b[m\u001b[H\u001b[2J"));
+    }
+
+    @Test
+    void encode_stateDiffWithoutEncoderHistory() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        ScreenState before = ScreenState.of(buffer);
+        buffer.setUnderline(true);
+        buffer.writeText("u");
+        ScreenState after = ScreenState.of(buffer);
+
+        ByteBuffer out = ByteBuffer.allocate(64);
+        new FrameEncoder().encode(before, after, out);
+
+        assertEquals("\u001b[0;4mu", new String(out.array(), 0, out.position(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encode_framesReplayedThroughParserReproduceTheScreen() {
+        Random random = new Random(42);
+        TerminalBuffer source = new TerminalBuffer(30, 8, 50);
+        TerminalBuffer client = new TerminalBuffer(30, 8, 50);
+        VtParser parser = new VtParser(client);
+        FrameEncoder encoder = new FrameEncoder();
+        Color[] colors = Color.values();
+        ByteBuffer out = ByteBuffer.allocate(1 << 16);
+
+        for (int frame = 0; frame < 300; frame++) {
+            for (int op = random.nextInt(6); op >= 0; op--) {
+                switch (random.nextInt(8)) {
+                    case 0 -> source.insertEmptyLineAtBottom();
+                    case 1 -> source.fillLine(' ', random.nextInt(10), 10 + random.nextInt(20));
+                    case 2 -> source.setForegroundColor(colors[random.nextInt(colors.length)]);
+                    case 3 -> source.setBackgroundColor(colors[random.nextInt(colors.length)]);
+                    case 4 -> source.setBold(random.nextBoolean());
+                    case 5 -> source.writeText("é€ line\n");
+                    default -> {
+                        source.setCursorPosition(random.nextInt(30), random.nextInt(8));
+                        source.writeText("w" + random.nextInt(100000));
+                    }
+                }
+            }
+            out.clear();
+            encoder.encode(source, out);
+            parser.parse(new String(out.array(), 0, out.position(), StandardCharsets.UTF_8));
+            assertSameScreen(source, client);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.example.vt;
+
+import org.example.buffer.TerminalBuffer;
+import org.example.io.Utf8Ingestor;
+import org.example.model.CellAttributes;
+import org.example.model.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VtParserTest {
+    private static final String ESC = "\u001b";
+    private static final String CSI = ESC + "[";
+
+    @Test
+    void parse_printsTextAndHandlesCarriageReturnAndLineFeed() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 3, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse("ab\r\ncd\nef");
+
+        assertEquals("ab    ", buffer.getLine(0));
+        assertEquals("cd    ", buffer.getLine(1));
+        assertEquals("  ef  ", buffer.getLine(2));
+    }
+
+    @Test
+    void parse_cursorPositionIsOneBasedAndClamped() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(CSI + "3;4H");
+        assertEquals(3, buffer.getCursor().getColumn());
+        assertEquals(2, buffer.getCursor().getRow());
+
+        parser.parse(CSI + "H");
+        assertEquals(0, buffer.getCursor().getColumn());
+        assertEquals(0, buffer.getCursor().getRow());
+
+        parser.parse(CSI + "99;99f");
+        assertEquals(9, buffer.getCursor().getColumn());
+        assertEquals(4, buffer.getCursor().getRow());
+    }
+
+    @Test
+    void parse_relativeCursorMovement() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(CSI + "2B" + CSI + "5C" + CSI + "A" + CSI + "2D");
+
+        assertEquals(3, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+
+        parser.parse(CSI + "7G" + CSI + "4d");
+        assertEquals(6, buffer.getCursor().getColumn());
+        assertEquals(3, buffer.getCursor().getRow());
+    }
+
+    @Test
+    void parse_sgrSetsAndResetsAttributes() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(CSI + "1;31;44mA" + CSI + "22;39mB" + CSI + "mC" + CSI + "93;4mD");
+
+        CellAttributes a = buffer.getAttributesAt(0, 0);
+        assertEquals(Color.RED, a.getForegroundColor());
+        assertEquals(Color.BLUE, a.getBackgroundColor());
+        assertTrue(a.getStyle().getBold());
+
+        CellAttributes b = buffer.getAttributesAt(1, 0);
+        assertEquals(Color.DEFAULT, b.getForegroundColor());
+        assertEquals(Color.BLUE, b.getBackgroundColor());
+        assertFalse(b.getStyle().getBold());
+
+        assertEquals(new CellAttributes(), buffer.getAttributesAt(2, 0));
+
+        CellAttributes d = buffer.getAttributesAt(3, 0);
+        assertEquals(Color.BRIGHT_YELLOW, d.getForegroundColor());
+        assertTrue(d.getStyle().getUnderline());
+        assertEquals("ABCD      ", buffer.getLine(0));
+    }
+
+    @Test
+    void parse_sgrExtendedColorsConsumeTheirArguments() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(CSI + "38;5;9;48;2;1;2;3;3mX");
+
+        CellAttributes x = buffer.getAttributesAt(0, 0);
+        assertEquals(Color.BRIGHT_RED, x.getForegroundColor());
+        assertEquals(Color.DEFAULT, x.getBackgroundColor());
+        assertTrue(x.getStyle().getItalic());
+    }
+
+    @Test
+    void parse_eraseInLine() {
+        TerminalBuffer buffer = new TerminalBuffer(6, 2, 10);
+        VtParser parser = new VtParser(buffer);
+        parser.parse("abcdef\r" + CSI + "3C" + CSI + "K");
+        assertEquals("abc   ", buffer.getLine(0));
+
+        parser.parse(CSI + "1K");
+        assertEquals("      ", buffer.getLine(0));
+    }
+
+    @Test
+    void parse_eraseInDisplayKeepsCursor() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 3, 10);
+        VtParser parser = new VtParser(buffer);
+        parser.parse("abc\r\ndef\r\nghi" + CSI + "2;2H" + CSI + "J");
+
+        assertEquals("abc", buffer.getLine(0));
+        assertEquals("d  ", buffer.getLine(1));
+        assertEquals("   ", buffer.getLine(2));
+        assertEquals(1, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+
+        parser.parse(CSI + "2J");
+        assertEquals("         ", buffer.getLine(0) + buffer.getLine(1) + buffer.getLine(2));
+        assertEquals(1, buffer.getCursor().getRow());
+    }
+
+    @Test
+    void parse_sequenceSplitAcrossCalls() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(ESC);
+        parser.parse("[3");
+        parser.parse(";5");
+        parser.parse("H");
+
+        assertEquals(4, buffer.getCursor().getColumn());
+        assertEquals(2, buffer.getCursor().getRow());
+    }
+
+    @Test
+    void parse_privateAndUnknownSequencesAreConsumed() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse("a" + CSI + "?25l" + CSI + "?1049h" + CSI + ">c" + ESC + "(Bb" + ESC + "Pq#0!\u001b\\c");
+
+        assertEquals("abc       ", buffer.getLine(0));
+    }
+
+    @Test
+    void parse_autoWrapIsOnByDefaultAndFollowsDecawm() {
+        TerminalBuffer buffer = new TerminalBuffer(4, 3, 10);
+        VtParser parser = new VtParser(buffer);
+        assertTrue(buffer.isAutoWrap());
+
+        parser.parse("abcdef\r\n");
+        assertEquals("abcd", buffer.getLine(0));
+        assertEquals("ef  ", buffer.getLine(1));
+
+        parser.parse(CSI + "?7l" + "ghijkl");
+        assertFalse(buffer.isAutoWrap());
+        assertEquals("ghij", buffer.getLine(2));
+
+        parser.parse(CSI + "?25;7h");
+        assertTrue(buffer.isAutoWrap());
+    }
+
+    @Test
+    void parse_oscIsDispatchedWithBelOrStringTerminator() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 2, 10);
+        VtParser parser = new VtParser(buffer);
+        StringBuilder seen = new StringBuilder();
+        parser.setOscHandler((command, payload) -> seen.append(command).append('=').append(payload).append(';'));
+
+        parser.parse(ESC + "]0;title\u0007x" + ESC + "]2;other" + ESC + "\\y");
+
+        assertEquals("0=title;2=other;", seen.toString());
+        assertEquals("xy        ", buffer.getLine(0));
+    }
+
+    @Test
+    void parse_tabAndBackspace() {
+        TerminalBuffer buffer = new TerminalBuffer(20, 2, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse("ab\tc\bd");
+
+        assertEquals("ab      d           ", buffer.getLine(0));
+    }
+
+    @Test
+    void parse_saveAndRestoreCursor() {
+        TerminalBuffer buffer = new TerminalBuffer(10, 5, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(CSI + "2;3H" + ESC + "7" + CSI + "5;5H" + ESC + "8");
+
+        assertEquals(2, buffer.getCursor().getColumn());
+        assertEquals(1, buffer.getCursor().getRow());
+    }
+
+    @Test
+    void parse_lineFeedOnBottomRowScrolls() {
+        TerminalBuffer buffer = new TerminalBuffer(3, 2, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse("a\r\nb\r\nc");
+
+        assertEquals("a  ", buffer.getLine(0, true));
+        assertEquals("b  ", buffer.getLine(0));
+        assertEquals("c  ", buffer.getLine(1));
+    }
+
+    @Test
+    void parse_charArraySlice() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        VtParser parser = new VtParser(buffer);
+        char[] chars = ("xx" + CSI + "1mab").toCharArray();
+
+        parser.parse(chars, 2, chars.length - 3);
+
+        assertEquals("a    ", buffer.getLine(0));
+        assertTrue(buffer.getAttributesAt(0, 0).getStyle().getBold());
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.parse(chars, 4, chars.length));
+    }
+
+    @Test
+    void parse_bytesThroughIngestor() throws IOException {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        VtParser parser = new VtParser(buffer);
+        Utf8Ingestor ingestor = new Utf8Ingestor(parser::parse);
+
+        ingestor.ingest(new ByteArrayInputStream((CSI + "32mé€\r\nok").getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("é€   ", buffer.getLine(0));
+        assertEquals("ok   ", buffer.getLine(1));
+        assertEquals(Color.GREEN, buffer.getAttributesAt(0, 1).getForegroundColor());
+    }
+
+    @Test
+    void reset_dropsPartialSequence() {
+        TerminalBuffer buffer = new TerminalBuffer(5, 2, 10);
+        VtParser parser = new VtParser(buffer);
+
+        parser.parse(CSI + "3");
+        parser.reset();
+        parser.parse("H");
+
+        assertEquals("H    ", buffer.getLine(0));
+    }
+}